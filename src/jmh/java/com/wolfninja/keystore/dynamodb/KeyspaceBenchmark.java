@@ -0,0 +1,216 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Expected;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+
+/**
+ * Client-side cost of every {@link DynamoDbKeyspace} operation and of {@link DynamoDbAdapter#getKeyspace(String)}
+ * <p>
+ * Requests are answered by {@link StandInDynamoDB}, so results show the time and allocation of building requests and
+ * converting responses, not network latency. Run with {@code gradle jmh}, which repeats the run for each thread count
+ * and adds the GC profiler for allocation rates.
+ * </p>
+ * <p>
+ * The {@code legacy} benchmarks send the {@code Expected} / {@code AttributeUpdates} requests returning
+ * {@code ALL_OLD} that {@link DynamoDbKeyspace#checkAndSet(String, String, long)},
+ * {@link DynamoDbKeyspace#delete(String)} and {@link DynamoDbKeyspace#replace(String, String)} used before condition
+ * and update expressions, for comparing the bytes allocated per operation ({@code gc.alloc.rate.norm}).
+ * </p>
+ * 
+ * @since 0.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyspaceBenchmark {
+
+	private static final String TABLE_NAME = "benchmark";
+	private static final String KEYSPACE_NAME = "bench";
+	private static final String KEY = "key000000";
+	private static final int BATCH_KEYS = DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS;
+	private static final int PARTITION_KEYS = 250;
+
+	@Param({ "16", "1024", "65536" })
+	public int valueSize;
+
+	private DynamoDbAdapter adapter;
+	private Table table;
+	private DynamoDbKeyspace keyspace;
+	private String value;
+	private long version;
+	private List<String> batchKeys;
+	private Map<String, String> batchValues;
+
+	@Setup
+	public void setup() {
+		final char[] chars = new char[valueSize];
+		Arrays.fill(chars, 'v');
+		value = new String(chars);
+		version = value.hashCode();
+
+		final AmazonDynamoDB client = StandInDynamoDB.create(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE,
+				DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY, value, PARTITION_KEYS);
+		final DynamoDB dynamoDB = new DynamoDB(client);
+		table = dynamoDB.getTable(TABLE_NAME);
+		adapter = DynamoDbAdapter.builder(table) //
+				.withDynamoDB(dynamoDB) //
+				.build();
+		keyspace = (DynamoDbKeyspace) adapter.getKeyspace(KEYSPACE_NAME);
+
+		batchKeys = new ArrayList<>(BATCH_KEYS);
+		batchValues = new HashMap<>();
+		for (int i = 0; i < BATCH_KEYS; i++) {
+			final String key = String.format("key%06d", i);
+			batchKeys.add(key);
+			batchValues.put(key, value);
+		}
+	}
+
+	@Benchmark
+	public boolean add() {
+		return keyspace.add(KEY, value);
+	}
+
+	@Benchmark
+	public boolean checkAndSet() {
+		return keyspace.checkAndSet(KEY, value, version);
+	}
+
+	@Benchmark
+	public boolean delete() {
+		return keyspace.delete(KEY);
+	}
+
+	@Benchmark
+	public void deleteAll() {
+		keyspace.deleteAll(batchKeys);
+	}
+
+	@Benchmark
+	public boolean deletes() {
+		return keyspace.deletes(KEY, version);
+	}
+
+	@Benchmark
+	public long entries() {
+		return keyspace.entries().count();
+	}
+
+	@Benchmark
+	public boolean exists() {
+		return keyspace.exists(KEY);
+	}
+
+	@Benchmark
+	public Optional<String> get() {
+		return keyspace.get(KEY);
+	}
+
+	@Benchmark
+	public Map<String, String> getAll() {
+		return keyspace.getAll(batchKeys);
+	}
+
+	@Benchmark
+	public Keyspace getKeyspace() {
+		return adapter.getKeyspace(KEYSPACE_NAME);
+	}
+
+	@Benchmark
+	public Optional<KeyValue> gets() {
+		return keyspace.gets(KEY);
+	}
+
+	@Benchmark
+	public Map<String, KeyValue> getsAll() {
+		return keyspace.getsAll(batchKeys);
+	}
+
+	@Benchmark
+	public long keys() {
+		return keyspace.keys().count();
+	}
+
+	@Benchmark
+	public UpdateItemOutcome legacyCheckAndSet() {
+		return table.updateItem(new UpdateItemSpec() //
+				.withPrimaryKey(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE, KEYSPACE_NAME,
+						DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY, KEY) //
+				.withExpected(new Expected(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VERSION).eq(version)) //
+				.withAttributeUpdate( //
+						new AttributeUpdate(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VALUE).put(value), //
+						new AttributeUpdate(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VERSION).put(value.hashCode())));
+	}
+
+	@Benchmark
+	public Item legacyDelete() {
+		return table.deleteItem(new DeleteItemSpec() //
+				.withReturnValues(ReturnValue.ALL_OLD) //
+				.withPrimaryKey(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE, KEYSPACE_NAME,
+						DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY, KEY)) //
+				.getItem();
+	}
+
+	@Benchmark
+	public boolean legacyReplace() {
+		final Item old = table.updateItem(new UpdateItemSpec() //
+				.withReturnValues(ReturnValue.ALL_OLD) //
+				.withPrimaryKey(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE, KEYSPACE_NAME,
+						DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY, KEY) //
+				.withExpected(new Expected(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY).exists()) //
+				.withAttributeUpdate( //
+						new AttributeUpdate(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VALUE).put(value), //
+						new AttributeUpdate(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VERSION).put(value.hashCode()))) //
+				.getItem();
+		return !Objects.equals(old.getString(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VALUE), value);
+	}
+
+	@Benchmark
+	public boolean replace() {
+		return keyspace.replace(KEY, value);
+	}
+
+	@Benchmark
+	public boolean set() {
+		return keyspace.set(KEY, value);
+	}
+
+	@Benchmark
+	public void setAll() {
+		keyspace.setAll(batchValues);
+	}
+}
@@ -0,0 +1,162 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+/**
+ * In-process stand-in for the DynamoDB service, answering every request as if each key held a value of a fixed size
+ * <p>
+ * Nothing is stored and no condition is evaluated, so benchmarks measure only the client-side cost: building the
+ * request, converting it for the low-level client and converting the response. Responses are built anew for each
+ * request, like the response parser of the real client does.
+ * </p>
+ * <p>
+ * Unlike {@link InMemoryDynamoDB}, every invocation sees the same item whatever earlier invocations wrote, so a
+ * benchmark of {@code add} or {@code delete} keeps measuring the same path, and threads never wait for a table lock.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class StandInDynamoDB implements InvocationHandler {
+
+	/**
+	 * Create a low-level client answering with values of the given size
+	 * 
+	 * @param attributeNameKeyspace
+	 *            Name of the keyspace attribute
+	 * @param attributeNameKey
+	 *            Name of the key attribute
+	 * @param value
+	 *            Value every key holds
+	 * @param partitionSize
+	 *            Number of keys a Query finds in each partition
+	 * @return {@link AmazonDynamoDB} stand-in
+	 * @since 0.2
+	 */
+	static AmazonDynamoDB create(final String attributeNameKeyspace, final String attributeNameKey, final String value,
+			final int partitionSize) {
+		return (AmazonDynamoDB) Proxy.newProxyInstance(AmazonDynamoDB.class.getClassLoader(),
+				new Class<?>[] { AmazonDynamoDB.class },
+				new StandInDynamoDB(attributeNameKeyspace, attributeNameKey, value, partitionSize));
+	}
+
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final String value;
+	private final int partitionSize;
+
+	private StandInDynamoDB(final String attributeNameKeyspace, final String attributeNameKey, final String value,
+			final int partitionSize) {
+		this.attributeNameKeyspace = attributeNameKeyspace;
+		this.attributeNameKey = attributeNameKey;
+		this.value = value;
+		this.partitionSize = partitionSize;
+	}
+
+	@Override
+	public Object invoke(final Object proxy, final Method method, final Object[] args) {
+		switch (method.getName()) {
+		case "batchGetItem":
+			return batchGetItem((BatchGetItemRequest) args[0]);
+		case "batchWriteItem":
+			return new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap());
+		case "deleteItem":
+			final DeleteItemRequest delete = (DeleteItemRequest) args[0];
+			return new DeleteItemResult().withAttributes(returned(delete.getReturnValues(), delete.getKey()));
+		case "getItem":
+			return new GetItemResult().withItem(item(((GetItemRequest) args[0]).getKey()));
+		case "putItem":
+			final PutItemRequest put = (PutItemRequest) args[0];
+			return new PutItemResult().withAttributes(returned(put.getReturnValues(), put.getItem()));
+		case "query":
+			return query((QueryRequest) args[0]);
+		case "updateItem":
+			final UpdateItemRequest update = (UpdateItemRequest) args[0];
+			return new UpdateItemResult().withAttributes(returned(update.getReturnValues(), update.getKey()));
+		case "toString":
+			return "StandInDynamoDB";
+		default:
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+
+	private BatchGetItemResult batchGetItem(final BatchGetItemRequest request) {
+		final Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+		for (final Map.Entry<String, KeysAndAttributes> table : request.getRequestItems().entrySet()) {
+			final List<Map<String, AttributeValue>> items = new ArrayList<>(table.getValue().getKeys().size());
+			for (final Map<String, AttributeValue> key : table.getValue().getKeys()) {
+				items.add(item(key));
+			}
+			responses.put(table.getKey(), items);
+		}
+		return new BatchGetItemResult().withResponses(responses).withUnprocessedKeys(Collections.emptyMap());
+	}
+
+	private Map<String, AttributeValue> item(final Map<String, AttributeValue> key) {
+		final Map<String, AttributeValue> item = new HashMap<>();
+		item.put(attributeNameKeyspace, new AttributeValue(key.get(attributeNameKeyspace).getS()));
+		item.put(attributeNameKey, new AttributeValue(key.get(attributeNameKey).getS()));
+		item.put(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VALUE, new AttributeValue(new String(value.toCharArray())));
+		item.put(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VERSION,
+				new AttributeValue().withN(Integer.toString(value.hashCode())));
+		return item;
+	}
+
+	private QueryResult query(final QueryRequest request) {
+		final String partition = request.getKeyConditions() != null
+				? request.getKeyConditions().get(attributeNameKeyspace).getAttributeValueList().get(0).getS()
+				: request.getExpressionAttributeValues().values().iterator().next().getS();
+		int next = 0;
+		if (request.getExclusiveStartKey() != null) {
+			next = Integer.parseInt(request.getExclusiveStartKey().get(attributeNameKey).getS().substring(3)) + 1;
+		}
+		final int end = Math.min(next + (request.getLimit() == null ? partitionSize : request.getLimit()),
+				partitionSize);
+		final List<Map<String, AttributeValue>> items = new ArrayList<>(end - next);
+		for (int i = next; i < end; i++) {
+			final Map<String, AttributeValue> key = new HashMap<>();
+			key.put(attributeNameKeyspace, new AttributeValue(partition));
+			key.put(attributeNameKey, new AttributeValue(String.format("key%06d", i)));
+			items.add(item(key));
+		}
+		final QueryResult result = new QueryResult().withItems(items).withCount(items.size());
+		if (end < partitionSize) {
+			final Map<String, AttributeValue> last = new HashMap<>();
+			last.put(attributeNameKeyspace, new AttributeValue(partition));
+			last.put(attributeNameKey, new AttributeValue(String.format("key%06d", end - 1)));
+			result.withLastEvaluatedKey(last);
+		}
+		return result;
+	}
+
+	private Map<String, AttributeValue> returned(final String returnValues, final Map<String, AttributeValue> key) {
+		if (returnValues == null || ReturnValue.NONE.toString().equals(returnValues)) {
+			return null;
+		}
+		return item(key);
+	}
+}
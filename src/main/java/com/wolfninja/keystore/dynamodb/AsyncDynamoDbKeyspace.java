@@ -0,0 +1,659 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.Manifest;
+
+/**
+ * Asynchronous DynamoDB keyspace, mirroring the operations of {@link Keyspace}
+ * <p>
+ * Backed by an {@link AmazonDynamoDBAsync} client, so no thread is blocked while a request is outstanding. Results are
+ * completed on the adapter's {@link Executor}, and the number of requests in flight is capped per adapter. Each
+ * operation stores and reads items exactly like the matching {@link DynamoDbKeyspace} operation, including conditional
+ * failures completing with false rather than exceptionally.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public class AsyncDynamoDbKeyspace {
+
+	private final String keyspaceName;
+	private final String tableName;
+	private final AmazonDynamoDBAsync client;
+	private final Executor executor;
+	private final InFlightLimiter limiter;
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final String attributeNameValue;
+	private final String attributeNameVersion;
+	private final String attributeNameExpiry;
+	private final KeyspaceExpressions expressions;
+	private final ReadConsistency readConsistency;
+	private final WriteTracker writes;
+	private final int shards;
+	private final ValueCodec valueCodec;
+	private final boolean monotonic;
+	private final boolean chunking;
+	private final ChunkedValueStore chunkStore;
+	private final DynamoDbKeyspace chunkedReader;
+
+	/**
+	 * Create new asynchronous Keyspace instance, using the configuration of the given adapter
+	 * 
+	 * @param keyspaceName
+	 * @param adapter
+	 * @since 0.2
+	 */
+	protected AsyncDynamoDbKeyspace(@Nonnull final String keyspaceName, @Nonnull final DynamoDbAdapter adapter) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+
+		this.keyspaceName = keyspaceName;
+		this.tableName = adapter.getTable().getTableName();
+		this.client = adapter.getAsyncClient()
+				.orElseThrow(() -> new IllegalStateException("Adapter has no asynchronous client configured"));
+		this.executor = adapter.getExecutor();
+		this.limiter = adapter.getInFlightLimiter();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.attributeNameVersion = adapter.getAttributeNameVersion();
+		this.attributeNameExpiry = adapter.getAttributeNameExpiry().orElse(null);
+		this.expressions = adapter.getExpressions();
+		this.readConsistency = adapter.getReadConsistency(keyspaceName);
+		this.writes = new WriteTracker(keyspaceName, adapter);
+		this.shards = adapter.getShards(keyspaceName);
+		this.valueCodec = adapter.getValueCodec().orElse(null);
+		this.monotonic = adapter.getVersionScheme() == VersionScheme.MONOTONIC;
+		this.chunking = adapter.getValueChunkBytes() > 0;
+		this.chunkStore = adapter.getChunkStore();
+		this.chunkedReader = new DynamoDbKeyspace(keyspaceName, adapter);
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#add(String, String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @return Future completing with true if added, false if the key already exists
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> add(@Nonnull final String key, @Nonnull final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+
+		if (monotonic) {
+			final UpdateItemRequest request = expressions.isExpiring()
+					? buildExpiringUpdate(key, value, expressions.getNotExists(), expressions.getReplaceNames(), null)
+					: new UpdateItemRequest() //
+							.withTableName(tableName) //
+							.withKey(buildPrimaryKey(key)) //
+							.withAttributeUpdates(buildUpdates(value)) //
+							.withExpected(Collections.singletonMap(attributeNameKeyspace,
+									new ExpectedAttributeValue(false)));
+			return conditional(
+					written(key, this.<UpdateItemRequest, UpdateItemResult> call(request, client::updateItemAsync)));
+		}
+		final PutItemRequest request = new PutItemRequest() //
+				.withTableName(tableName) //
+				.withItem(buildItem(key, value)) //
+				.withConditionExpression(expressions.getNotExists()) //
+				.withExpressionAttributeNames(expressions.getKeyspaceNames()) //
+				.withExpressionAttributeValues(withNow(null));
+		return conditional(written(key, this.<PutItemRequest, PutItemResult> call(request, client::putItemAsync)));
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#checkAndSet(String, String, long)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @param version
+	 *            Expected version
+	 * @return Future completing with true if set, false on version mismatch or missing key
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> checkAndSet(@Nonnull final String key, @Nonnull final String value,
+			final long version) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+
+		final UpdateItemRequest request = expressions.isExpiring()
+				? buildExpiringUpdate(key, value, expressions.getVersionMatches(), expressions.getValueNames(), version)
+				: new UpdateItemRequest() //
+						.withTableName(tableName) //
+						.withKey(buildPrimaryKey(key)) //
+						.withExpected(Collections.singletonMap(attributeNameVersion,
+								new ExpectedAttributeValue(number(version)))) //
+						.withAttributeUpdates(buildUpdates(value)) //
+						.withReturnValues(chunking ? ReturnValue.ALL_OLD : ReturnValue.NONE);
+		return written(key, this.<UpdateItemRequest, UpdateItemResult> call(request, client::updateItemAsync)) //
+				.handleAsync((result, error) -> {
+					if (error != null) {
+						return conditionalFailure(error);
+					}
+					deleteChunks(key, result.getAttributes());
+					return true;
+				}, executor);
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#delete(String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @return Future completing with true if deleted, false if the key did not exist
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> delete(@Nonnull final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+
+		if (expressions.isExpiring()) {
+			// An expired item counts as missing, which the condition tells without returning the item
+			final DeleteItemRequest request = new DeleteItemRequest() //
+					.withTableName(tableName) //
+					.withKey(buildPrimaryKey(key)) //
+					.withConditionExpression(expressions.getExists()) //
+					.withExpressionAttributeNames(expressions.getKeyspaceNames()) //
+					.withExpressionAttributeValues(withNow(null));
+			return conditional(
+					written(key, this.<DeleteItemRequest, DeleteItemResult> call(request, client::deleteItemAsync)));
+		}
+		final DeleteItemRequest request = new DeleteItemRequest() //
+				.withTableName(tableName) //
+				.withKey(buildPrimaryKey(key)) //
+				.withReturnValues(ReturnValue.ALL_OLD);
+		return written(key, this.<DeleteItemRequest, DeleteItemResult> call(request, client::deleteItemAsync)) //
+				.thenApplyAsync(result -> result.getAttributes() != null, executor);
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#deletes(String, long)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param version
+	 *            Expected version
+	 * @return Future completing with true if deleted, false on version mismatch or missing key
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> deletes(@Nonnull final String key, final long version) {
+		Objects.requireNonNull(key, "Key must not be null");
+
+		final DeleteItemRequest request = new DeleteItemRequest() //
+				.withTableName(tableName) //
+				.withKey(buildPrimaryKey(key)) //
+				.withReturnValues(ReturnValue.ALL_OLD);
+		if (expressions.isExpiring()) {
+			final Map<String, AttributeValue> values = new HashMap<>();
+			values.put(KeyspaceExpressions.VALUE_EXPECTED, number(version));
+			request.withConditionExpression(expressions.getVersionMatches()) //
+					.withExpressionAttributeNames(expressions.getVersionNames()) //
+					.withExpressionAttributeValues(withNow(values));
+		} else {
+			request.withExpected(Collections.singletonMap(attributeNameVersion,
+					new ExpectedAttributeValue(number(version))));
+		}
+		return written(key, this.<DeleteItemRequest, DeleteItemResult> call(request, client::deleteItemAsync)) //
+				.handleAsync((result, error) -> {
+					if (error == null) {
+						return result.getAttributes() != null;
+					}
+					return conditionalFailure(error);
+				}, executor);
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#exists(String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @return Future completing with true if the key exists
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> exists(@Nonnull final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		if (!writes.mightContain(key)) {
+			return CompletableFuture.completedFuture(false);
+		}
+
+		final GetItemRequest request = buildGetRequest(key);
+		if (attributeNameExpiry == null) {
+			request.withAttributesToGet(attributeNameKey);
+		} else {
+			request.withAttributesToGet(attributeNameKey, attributeNameExpiry);
+		}
+		return getItem(request).thenApply(item -> item != null);
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#get(String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @return Future completing with the value, {@link Optional#empty()} if the key does not exist
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Optional<String>> get(@Nonnull final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		if (!writes.mightContain(key)) {
+			return CompletableFuture.completedFuture(Optional.empty());
+		}
+
+		return getItem(buildGetRequest(key)).thenCompose(item -> {
+			if (isChunked(item)) {
+				return CompletableFuture.supplyAsync(() -> chunkedReader.get(key, ReadConsistency.STRONG), executor);
+			}
+			return CompletableFuture.completedFuture(
+					item == null ? Optional.empty() : Optional.ofNullable(decodeValue(item.get(attributeNameValue))));
+		});
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#gets(String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @return Future completing with the {@link KeyValue}, {@link Optional#empty()} if the key does not exist
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Optional<KeyValue>> gets(@Nonnull final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		if (!writes.mightContain(key)) {
+			return CompletableFuture.completedFuture(Optional.empty());
+		}
+
+		return getItem(buildGetRequest(key)).thenCompose(item -> {
+			if (isChunked(item)) {
+				return CompletableFuture.supplyAsync(() -> chunkedReader.gets(key, ReadConsistency.STRONG), executor);
+			}
+			if (item == null) {
+				return CompletableFuture.completedFuture(Optional.empty());
+			}
+			return CompletableFuture.completedFuture(Optional.of(KeyValue.create(key,
+					decodeValue(item.get(attributeNameValue)), Long.parseLong(item.get(attributeNameVersion).getN()))));
+		});
+	}
+
+	/**
+	 * Get the name of this keyspace
+	 * 
+	 * @return Keyspace name
+	 * @since 0.2
+	 */
+	@Nonnull
+	public String getKeyspaceName() {
+		return keyspaceName;
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#replace(String, String)}
+	 * <p>
+	 * The value is always written, and compared with the decoded previous value, like
+	 * {@link DynamoDbKeyspace#replace(String, String)} does with a {@link ValueCodec}. Under
+	 * {@link VersionScheme#MONOTONIC}, an unchanged value therefore increments the version.
+	 * </p>
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @return Future completing with true if the value was replaced, false if the key does not exist or already held
+	 *         the value
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> replace(@Nonnull final String key, @Nonnull final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+
+		final UpdateItemRequest request = expressions.isExpiring()
+				? buildExpiringUpdate(key, value, expressions.getExists(), expressions.getReplaceNames(), null)
+				: new UpdateItemRequest() //
+						.withTableName(tableName) //
+						.withKey(buildPrimaryKey(key)) //
+						.withAttributeUpdates(buildUpdates(value)) //
+						.withExpected(Collections.singletonMap(attributeNameKey, new ExpectedAttributeValue(true)));
+		request.withReturnValues(ReturnValue.ALL_OLD);
+		return written(key, this.<UpdateItemRequest, UpdateItemResult> call(request, client::updateItemAsync)) //
+				.handleAsync((result, error) -> {
+					if (error != null) {
+						return conditionalFailure(error);
+					}
+					final Map<String, AttributeValue> old = result.getAttributes();
+					if (old == null) {
+						return true;
+					}
+					deleteChunks(key, old);
+					return !Objects.equals(decodeValue(old.get(attributeNameValue)), value);
+				}, executor);
+	}
+
+	/**
+	 * Asynchronous {@link Keyspace#set(String, String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @return Future completing with true once stored
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Boolean> set(@Nonnull final String key, @Nonnull final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+
+		if (monotonic) {
+			final UpdateItemRequest request = new UpdateItemRequest() //
+					.withTableName(tableName) //
+					.withKey(buildPrimaryKey(key)) //
+					.withAttributeUpdates(buildUpdates(value)) //
+					.withReturnValues(chunking ? ReturnValue.ALL_OLD : ReturnValue.NONE);
+			return written(key, this.<UpdateItemRequest, UpdateItemResult> call(request, client::updateItemAsync)) //
+					.thenApplyAsync(result -> {
+						deleteChunks(key, result.getAttributes());
+						return true;
+					}, executor);
+		}
+		final PutItemRequest request = new PutItemRequest() //
+				.withTableName(tableName) //
+				.withItem(buildItem(key, value)) //
+				.withReturnValues(chunking ? ReturnValue.ALL_OLD : ReturnValue.NONE);
+		return written(key, this.<PutItemRequest, PutItemResult> call(request, client::putItemAsync)) //
+				.thenApplyAsync(result -> {
+					deleteChunks(key, result.getAttributes());
+					return true;
+				}, executor);
+	}
+
+	private Map<String, AttributeValue> buildItem(final String key, final String value) {
+		final Map<String, AttributeValue> item = buildPrimaryKey(key);
+		item.put(attributeNameValue, encodeValue(value));
+		item.put(attributeNameVersion, number(value.hashCode()));
+		return item;
+	}
+
+	private GetItemRequest buildGetRequest(final String key) {
+		return new GetItemRequest() //
+				.withTableName(tableName) //
+				.withKey(buildPrimaryKey(key)) //
+				.withConsistentRead(writes.isConsistentRead(key, readConsistency));
+	}
+
+	private Map<String, AttributeValue> buildPrimaryKey(final String key) {
+		final Map<String, AttributeValue> primaryKey = new HashMap<>();
+		primaryKey.put(attributeNameKeyspace,
+				new AttributeValue(KeyspaceItems.partitionValue(keyspaceName, shards, key)));
+		primaryKey.put(attributeNameKey, new AttributeValue(key));
+		return primaryKey;
+	}
+
+	private Map<String, AttributeValueUpdate> buildUpdates(final String value) {
+		final Map<String, AttributeValueUpdate> updates = new HashMap<>();
+		updates.put(attributeNameValue, new AttributeValueUpdate(encodeValue(value), AttributeAction.PUT));
+		updates.put(attributeNameVersion, monotonic ? new AttributeValueUpdate(number(1), AttributeAction.ADD)
+				: new AttributeValueUpdate(number(value.hashCode()), AttributeAction.PUT));
+		final AttributeValueUpdate removal = new AttributeValueUpdate().withAction(AttributeAction.DELETE);
+		if (chunking) {
+			// The value is stored in the item, so a manifest of a value written chunked before no longer applies
+			updates.put(ChunkedValueStore.ATTRIBUTE_CHUNKS, removal);
+			updates.put(ChunkedValueStore.ATTRIBUTE_CHUNK_ID, removal);
+			updates.put(ChunkedValueStore.ATTRIBUTE_CHUNK_ENCODED, removal);
+		}
+		if (attributeNameExpiry != null) {
+			// Writes without a time to live make the key permanent
+			updates.put(attributeNameExpiry, removal);
+		}
+		return updates;
+	}
+
+	/**
+	 * Build an update storing the value of a key with the expressions of the adapter, for an adapter with an expiry
+	 * attribute: the conditions treat expired items as missing, which the legacy {@code Expected} parameter cannot
+	 * express, and the update removes the expiry
+	 * 
+	 * @param key
+	 *            Key
+	 * @param value
+	 *            Value
+	 * @param condition
+	 *            Condition expression, see {@link KeyspaceExpressions}
+	 * @param names
+	 *            Name map of the update and condition
+	 * @param expected
+	 *            Expected version of {@link KeyspaceExpressions#getVersionMatches()}, null without that condition
+	 * @return new {@link UpdateItemRequest}
+	 * @since 0.2
+	 */
+	private UpdateItemRequest buildExpiringUpdate(final String key, final String value, final String condition,
+			final Map<String, String> names, final Long expected) {
+		final Map<String, AttributeValue> values = new HashMap<>();
+		values.put(KeyspaceExpressions.VALUE_VALUE, encodeValue(value));
+		values.put(KeyspaceExpressions.VALUE_VERSION, number(expressions.version(value)));
+		if (expected != null) {
+			values.put(KeyspaceExpressions.VALUE_EXPECTED, number(expected));
+		}
+		return new UpdateItemRequest() //
+				.withTableName(tableName) //
+				.withKey(buildPrimaryKey(key)) //
+				.withUpdateExpression(expressions.getSetValue()) //
+				.withConditionExpression(condition) //
+				.withExpressionAttributeNames(names) //
+				.withExpressionAttributeValues(withNow(values));
+	}
+
+	/**
+	 * Start a request through the in-flight limiter, adapting the SDK callback to a {@link CompletableFuture}
+	 * 
+	 * @param request
+	 *            Request to send
+	 * @param method
+	 *            Async client method to send it with
+	 * @return Future completing with the SDK result, or exceptionally with the SDK error
+	 * @since 0.2
+	 */
+	private <Q extends AmazonWebServiceRequest, R> CompletableFuture<R> call(final Q request,
+			final AsyncMethod<Q, R> method) {
+		return limiter.submit(() -> {
+			final CompletableFuture<R> future = new CompletableFuture<>();
+			method.send(request, new AsyncHandler<Q, R>() {
+
+				@Override
+				public void onError(final Exception exception) {
+					future.completeExceptionally(exception);
+				}
+
+				@Override
+				public void onSuccess(final Q request, final R result) {
+					future.complete(result);
+				}
+			});
+			return future;
+		});
+	}
+
+	private CompletableFuture<Boolean> conditional(final CompletableFuture<?> future) {
+		return future.handleAsync((result, error) -> error == null ? true : conditionalFailure(error), executor);
+	}
+
+	/**
+	 * Map a failed conditional request to false, rethrowing any other error
+	 * 
+	 * @param error
+	 *            Error the request completed with
+	 * @return false, when the error is a {@link ConditionalCheckFailedException}
+	 * @since 0.2
+	 */
+	private static boolean conditionalFailure(final Throwable error) {
+		final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+				: error;
+		if (cause instanceof ConditionalCheckFailedException) {
+			return false;
+		}
+		throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+	}
+
+	/**
+	 * Delete the chunks the previous item of a key referenced, once a write stored the value in the item instead. Runs
+	 * on the executor, as the chunks are deleted with synchronous requests.
+	 * 
+	 * @param key
+	 *            Key written
+	 * @param old
+	 *            Previous item of the key, may be null
+	 * @since 0.2
+	 */
+	private void deleteChunks(final String key, final Map<String, AttributeValue> old) {
+		if (!isChunked(old)) {
+			return;
+		}
+		try {
+			chunkStore.delete(KeyspaceItems.partitionValue(keyspaceName, shards, key), key,
+					Manifest.of(ItemUtils.toItem(old)));
+		} catch (final AmazonClientException e) {
+			// Left for collectGarbage
+		}
+	}
+
+	private String decodeValue(final AttributeValue stored) {
+		if (stored == null || stored.getB() == null) {
+			// Counters are stored as a Number
+			return stored == null ? null : stored.getS() != null ? stored.getS() : stored.getN();
+		}
+		if (valueCodec == null)
+			throw new IllegalStateException("Value is stored encoded, but no ValueCodec is configured");
+		final ByteBuffer buffer = stored.getB().duplicate();
+		final byte[] encoded = new byte[buffer.remaining()];
+		buffer.get(encoded);
+		return valueCodec.decode(encoded);
+	}
+
+	private AttributeValue encodeValue(final String value) {
+		final byte[] encoded = valueCodec == null ? null : valueCodec.encode(value);
+		return encoded == null ? new AttributeValue(value) : new AttributeValue().withB(ByteBuffer.wrap(encoded));
+	}
+
+	private CompletableFuture<Map<String, AttributeValue>> getItem(final GetItemRequest request) {
+		return this.<GetItemRequest, GetItemResult> call(request, client::getItemAsync) //
+				.thenApplyAsync(result -> isExpired(result.getItem()) ? null : result.getItem(), executor);
+	}
+
+	/**
+	 * Whether an item holds a chunk manifest rather than its value. Chunked values are read again through the
+	 * synchronous keyspace on the executor, off the SDK callback thread.
+	 * 
+	 * @param item
+	 *            Item read, may be null
+	 * @return true if the item is a manifest
+	 */
+	private static boolean isChunked(final Map<String, AttributeValue> item) {
+		return item != null && item.containsKey(ChunkedValueStore.ATTRIBUTE_CHUNK_ID);
+	}
+
+	/**
+	 * Check whether an item is past its expiry, but was not removed by DynamoDB yet
+	 * 
+	 * @param item
+	 *            Item read, may be null
+	 * @return true if expired
+	 * @since 0.2
+	 */
+	private boolean isExpired(final Map<String, AttributeValue> item) {
+		if (attributeNameExpiry == null || item == null || !item.containsKey(attributeNameExpiry)) {
+			return false;
+		}
+		return Long.parseLong(item.get(attributeNameExpiry).getN()) <= KeyspaceExpressions
+				.epochSecond(System.currentTimeMillis());
+	}
+
+	/**
+	 * Record a write of the given key once it completes, whatever its outcome, see {@link WriteTracker}
+	 * 
+	 * @param key
+	 *            Key written
+	 * @param future
+	 *            Future of the write request
+	 * @return Future completing like the given one, after the write was recorded
+	 * @since 0.2
+	 */
+	private <R> CompletableFuture<R> written(final String key, final CompletableFuture<R> future) {
+		return future.whenComplete((result, error) -> writes.written(key));
+	}
+
+	private static AttributeValue number(final long number) {
+		return new AttributeValue().withN(Long.toString(number));
+	}
+
+	/**
+	 * Add the current time, compared by the conditions of an adapter with an expiry attribute, to the values of a
+	 * request
+	 * 
+	 * @param values
+	 *            Value map of the request, may be null
+	 * @return Value map, null if it was null and there is no expiry attribute
+	 * @since 0.2
+	 */
+	private Map<String, AttributeValue> withNow(final Map<String, AttributeValue> values) {
+		if (!expressions.isExpiring()) {
+			return values;
+		}
+		final Map<String, AttributeValue> extended = values == null ? new HashMap<>(2) : values;
+		extended.put(KeyspaceExpressions.VALUE_NOW,
+				number(KeyspaceExpressions.epochSecond(System.currentTimeMillis())));
+		return extended;
+	}
+
+	/**
+	 * Callback-style method of {@link AmazonDynamoDBAsync}
+	 * 
+	 * @since 0.2
+	 */
+	@FunctionalInterface
+	private interface AsyncMethod<Q extends AmazonWebServiceRequest, R> {
+
+		void send(Q request, AsyncHandler<Q, R> handler);
+	}
+}
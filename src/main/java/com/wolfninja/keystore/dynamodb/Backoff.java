@@ -0,0 +1,101 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.util.Throwables;
+
+/**
+ * Exponential backoff with full jitter, used when retrying throttled or partially processed requests
+ * 
+ * @since 0.2
+ */
+final class Backoff {
+
+	/**
+	 * Backoff used for retrying unprocessed batch keys/items
+	 * 
+	 * @since 0.2
+	 */
+	static final Backoff BATCH = new Backoff(25L, 1000L, 10);
+
+	private final long baseDelayMillis;
+
+	private final long maxDelayMillis;
+
+	private final int maxAttempts;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param baseDelayMillis
+	 *            Delay ceiling of the first retry, in milliseconds
+	 * @param maxDelayMillis
+	 *            Upper bound of any delay, in milliseconds
+	 * @param maxAttempts
+	 *            Maximum number of attempts (including the first)
+	 * @since 0.2
+	 */
+	Backoff(final long baseDelayMillis, final long maxDelayMillis, final int maxAttempts) {
+		if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis)
+			throw new IllegalArgumentException("Invalid delay bounds: " + baseDelayMillis + ", " + maxDelayMillis);
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("MaxAttempts must be positive");
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Compute the delay before the given retry
+	 * 
+	 * @param attempt
+	 *            Number of attempts already made, starting at 1
+	 * @return Random delay between 0 and the exponential ceiling for the attempt, in milliseconds
+	 * @since 0.2
+	 */
+	long delayMillis(final int attempt) {
+		final int shift = Math.min(Math.max(attempt - 1, 0), 30);
+		final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Get the maximum number of attempts
+	 * 
+	 * @return Maximum number of attempts, including the first
+	 * @since 0.2
+	 */
+	int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Block for a jittered delay before the next attempt
+	 * 
+	 * @param attempt
+	 *            Number of attempts already made, starting at 1
+	 * @since 0.2
+	 */
+	void pause(final int attempt) {
+		pause(attempt, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Block for a jittered delay before the next attempt, at most the given time
+	 * 
+	 * @param attempt
+	 *            Number of attempts already made, starting at 1
+	 * @param limitMillis
+	 *            Longest delay, in milliseconds
+	 * @since 0.2
+	 */
+	void pause(final int attempt, final long limitMillis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(Math.min(delayMillis(attempt), limitMillis));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Throwables.failure(e);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Sends batched requests: splits keys into chunks, runs the chunks concurrently on an executor, and retries the
+ * unprocessed keys and items of BatchGetItem and BatchWriteItem requests with {@link Backoff#BATCH}
+ * 
+ * @since 0.2
+ */
+final class BatchRequests {
+
+	private BatchRequests() {
+	}
+
+	/**
+	 * Run an operation for each chunk concurrently, waiting for all of them to complete. Called from a task of the
+	 * adapter's executor, the chunks run one by one on the calling thread instead, so that no task of the executor
+	 * waits for another; see {@link RequestExecutor}.
+	 * 
+	 * @param executor
+	 *            {@link Executor} running all chunks but the first
+	 * @param chunks
+	 *            Chunks to process
+	 * @param operation
+	 *            Operation to run for each chunk
+	 * @return Results of each chunk
+	 * @since 0.2
+	 */
+	static <T, R> List<R> executeChunks(final Executor executor, final List<T> chunks,
+			final Function<T, R> operation) {
+		if (chunks.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final Executor chunkExecutor = RequestExecutor.isNested(executor) ? Runnable::run : executor;
+		final List<CompletableFuture<R>> pending = new ArrayList<>(chunks.size() - 1);
+		for (final T chunk : chunks.subList(1, chunks.size())) {
+			pending.add(CompletableFuture.supplyAsync(() -> operation.apply(chunk), chunkExecutor));
+		}
+
+		final List<R> results = new ArrayList<>(chunks.size());
+		RuntimeException failure = null;
+		// Run the first chunk on the calling thread, the rest are already in flight
+		try {
+			results.add(operation.apply(chunks.get(0)));
+		} catch (final RuntimeException e) {
+			failure = e;
+		}
+		for (final CompletableFuture<R> future : pending) {
+			try {
+				results.add(join(future));
+			} catch (final RuntimeException e) {
+				// Wait for every chunk before reporting, so no request is still running on return
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * Fetch the items of a single BatchGetItem request, retrying any unprocessed keys with backoff
+	 * 
+	 * @param dynamoDB
+	 *            {@link DynamoDB} to send the requests with
+	 * @param keysAndAttributes
+	 *            {@link TableKeysAndAttributes} holding at most {@value DynamoDbKeyspace#MAX_BATCH_GET_KEYS} keys
+	 * @return Fetched items
+	 * @since 0.2
+	 */
+	static List<Item> batchGetItems(final DynamoDB dynamoDB, final TableKeysAndAttributes keysAndAttributes) {
+		return batchGetItems(dynamoDB, keysAndAttributes, () -> {
+		});
+	}
+
+	/**
+	 * Fetch the items of a single BatchGetItem request, retrying any unprocessed keys with backoff
+	 * 
+	 * @param dynamoDB
+	 *            {@link DynamoDB} to send the requests with
+	 * @param keysAndAttributes
+	 *            {@link TableKeysAndAttributes} holding at most {@value DynamoDbKeyspace#MAX_BATCH_GET_KEYS} keys
+	 * @param retried
+	 *            Called before each retry
+	 * @return Fetched items
+	 * @since 0.2
+	 */
+	static List<Item> batchGetItems(final DynamoDB dynamoDB, final TableKeysAndAttributes keysAndAttributes,
+			final Runnable retried) {
+		final List<Item> items = new ArrayList<>();
+		BatchGetItemOutcome outcome = dynamoDB.batchGetItem(keysAndAttributes);
+		for (int attempt = 1;; attempt++) {
+			final List<Item> tableItems = outcome.getTableItems().get(keysAndAttributes.getTableName());
+			if (tableItems != null) {
+				items.addAll(tableItems);
+			}
+
+			final Map<String, KeysAndAttributes> unprocessed = outcome.getUnprocessedKeys();
+			if (unprocessed == null || unprocessed.isEmpty()) {
+				return items;
+			}
+			if (attempt >= Backoff.BATCH.getMaxAttempts()) {
+				throw new AmazonClientException("Unable to get unprocessed keys after " + attempt + " attempts");
+			}
+			Backoff.BATCH.pause(attempt);
+			retried.run();
+			outcome = dynamoDB.batchGetItemUnprocessed(unprocessed);
+		}
+	}
+
+	/**
+	 * Wait for the given future, unwrapping any {@link CompletionException}
+	 * 
+	 * @param future
+	 *            {@link CompletableFuture} to wait for
+	 * @return Completed value
+	 * @since 0.2
+	 */
+	static <T> T join(final CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Split distinct keys into chunks, preserving iteration order
+	 * 
+	 * @param keys
+	 *            Keys to split, none null
+	 * @param chunkSize
+	 *            Maximum size of each chunk
+	 * @return List of chunks
+	 * @since 0.2
+	 */
+	static List<List<String>> partition(final Collection<String> keys, final int chunkSize) {
+		final List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+		final List<List<String>> chunks = new ArrayList<>((distinct.size() + chunkSize - 1) / chunkSize);
+		for (int i = 0; i < distinct.size(); i += chunkSize) {
+			final List<String> chunk = distinct.subList(i, Math.min(i + chunkSize, distinct.size()));
+			for (final String key : chunk) {
+				Objects.requireNonNull(key, "Key must not be null");
+			}
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	/**
+	 * Write a single chunk, retrying any unprocessed items with backoff
+	 * 
+	 * @param dynamoDB
+	 *            {@link DynamoDB} to send the requests with
+	 * @param writeItems
+	 *            {@link TableWriteItems} holding at most {@value DynamoDbKeyspace#MAX_BATCH_WRITE_ITEMS} items, with
+	 *            distinct keys
+	 * @return Always null
+	 * @since 0.2
+	 */
+	static Void batchWriteChunk(final DynamoDB dynamoDB, final TableWriteItems writeItems) {
+		return batchWriteChunk(dynamoDB, writeItems, () -> {
+		});
+	}
+
+	/**
+	 * Write a single chunk, retrying any unprocessed items with backoff
+	 * 
+	 * @param dynamoDB
+	 *            {@link DynamoDB} to send the requests with
+	 * @param writeItems
+	 *            {@link TableWriteItems} holding at most {@value DynamoDbKeyspace#MAX_BATCH_WRITE_ITEMS} items, with
+	 *            distinct keys
+	 * @param retried
+	 *            Called before each retry
+	 * @return Always null
+	 * @since 0.2
+	 */
+	static Void batchWriteChunk(final DynamoDB dynamoDB, final TableWriteItems writeItems, final Runnable retried) {
+		BatchWriteItemOutcome outcome = dynamoDB.batchWriteItem(writeItems);
+		for (int attempt = 1;; attempt++) {
+			final Map<String, List<WriteRequest>> unprocessed = outcome.getUnprocessedItems();
+			if (unprocessed == null || unprocessed.isEmpty()) {
+				return null;
+			}
+			if (attempt >= Backoff.BATCH.getMaxAttempts()) {
+				throw new AmazonClientException("Unable to write unprocessed items after " + attempt + " attempts");
+			}
+			Backoff.BATCH.pause(attempt);
+			retried.run();
+			outcome = dynamoDB.batchWriteItemUnprocessed(unprocessed);
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.Expected;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.wolfninja.keystore.api.Keyspace;
+
+/**
+ * Keyspace storing binary values in a DynamoDB Binary attribute, next to the string values of {@link DynamoDbKeyspace}
+ * in the same table
+ * <p>
+ * Values are passed to the SDK without copying; callers must not modify a buffer until the call returns. Values read
+ * are read-only views of the bytes the SDK received. Versions follow the adapter's {@link VersionScheme}; under
+ * {@link VersionScheme#HASH_CODE} they are the {@link ByteBuffer#hashCode()} of the value.
+ * Keys are shared with the string {@link Keyspace} of the same name, so each key should only be used through one of
+ * the two.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public class BinaryDynamoDbKeyspace {
+
+	private final String keyspaceName;
+	private final Table table;
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final String attributeNameValue;
+	private final String attributeNameVersion;
+	private final ReadConsistency readConsistency;
+	private final WriteTracker writes;
+	private final int shards;
+	private final boolean monotonic;
+
+	/**
+	 * Create new binary Keyspace instance, using the configuration of the given adapter
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} to use, not null
+	 * @since 0.2
+	 */
+	protected BinaryDynamoDbKeyspace(@Nonnull final String keyspaceName, @Nonnull final DynamoDbAdapter adapter) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+
+		this.keyspaceName = keyspaceName;
+		this.table = adapter.getTable();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.attributeNameVersion = adapter.getAttributeNameVersion();
+		this.readConsistency = adapter.getReadConsistency(keyspaceName);
+		this.writes = new WriteTracker(keyspaceName, adapter);
+		this.shards = adapter.getShards(keyspaceName);
+		this.monotonic = adapter.getVersionScheme() == VersionScheme.MONOTONIC;
+	}
+
+	/**
+	 * Binary {@link Keyspace#checkAndSet(String, String, long)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @param version
+	 *            Expected version of the current value
+	 * @return true if stored, false if the version did not match
+	 * @since 0.2
+	 */
+	public boolean checkAndSet(@Nonnull final String key, @Nonnull final byte[] value, final long version) {
+		Objects.requireNonNull(value, "Value must not be null");
+		return checkAndSet(key, ByteBuffer.wrap(value), version);
+	}
+
+	/**
+	 * Binary {@link Keyspace#checkAndSet(String, String, long)}, storing the remaining bytes of the buffer
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null; its position is not changed
+	 * @param version
+	 *            Expected version of the current value
+	 * @return true if stored, false if the version did not match
+	 * @since 0.2
+	 */
+	public boolean checkAndSet(@Nonnull final String key, @Nonnull final ByteBuffer value, final long version) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+
+		final UpdateItemSpec spec = new UpdateItemSpec() //
+				.withPrimaryKey(buildPrimaryKey(key)) //
+				.withExpected(new Expected(attributeNameVersion).eq(version)) //
+				.withAttributeUpdate( //
+						new AttributeUpdate(attributeNameValue).put(value.duplicate()), //
+						buildVersionUpdate(value) //
+		);
+
+		try {
+			table.updateItem(spec);
+			return true;
+		} catch (final ConditionalCheckFailedException e) {
+			return false;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Binary {@link Keyspace#get(String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @return Read-only value, {@link Optional#empty()} if the key does not exist
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<ByteBuffer> get(@Nonnull final String key) {
+		return gets(key).map(BinaryKeyValue::getValue);
+	}
+
+	/**
+	 * Get the name of this keyspace
+	 * 
+	 * @return Keyspace name
+	 * @since 0.2
+	 */
+	@Nonnull
+	public String getKeyspaceName() {
+		return keyspaceName;
+	}
+
+	/**
+	 * Binary {@link Keyspace#gets(String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @return Optional {@link BinaryKeyValue}, {@link Optional#empty()} if the key does not exist
+	 * @throws IllegalStateException
+	 *             if the key holds a string value
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<BinaryKeyValue> gets(@Nonnull final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		final GetItemSpec spec = new GetItemSpec() //
+				.withPrimaryKey(buildPrimaryKey(key)) //
+				.withConsistentRead(writes.isConsistentRead(key, readConsistency));
+
+		final Item item = table.getItem(spec);
+		if (item == null || item.get(attributeNameValue) == null) {
+			return Optional.empty();
+		}
+		if (item.get(attributeNameValue) instanceof String)
+			throw new IllegalStateException("Key holds a string value");
+		return Optional.of(BinaryKeyValue.create(key, item.getByteBuffer(attributeNameValue),
+				item.getLong(attributeNameVersion)));
+	}
+
+	/**
+	 * Binary {@link Keyspace#set(String, String)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @return true once stored
+	 * @since 0.2
+	 */
+	public boolean set(@Nonnull final String key, @Nonnull final byte[] value) {
+		Objects.requireNonNull(value, "Value must not be null");
+		return set(key, ByteBuffer.wrap(value));
+	}
+
+	/**
+	 * Binary {@link Keyspace#set(String, String)}, storing the remaining bytes of the buffer
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null; its position is not changed
+	 * @return true once stored
+	 * @since 0.2
+	 */
+	public boolean set(@Nonnull final String key, @Nonnull final ByteBuffer value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+
+		try {
+			if (monotonic) {
+				table.updateItem(new UpdateItemSpec() //
+						.withPrimaryKey(buildPrimaryKey(key)) //
+						.withAttributeUpdate( //
+								new AttributeUpdate(attributeNameValue).put(value.duplicate()), //
+								buildVersionUpdate(value) //
+				));
+			} else {
+				table.putItem(new Item() //
+						.withPrimaryKey(buildPrimaryKey(key)) //
+						.withBinary(attributeNameValue, value.duplicate()) //
+						.withLong(attributeNameVersion, value.hashCode()));
+			}
+			return true;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	private AttributeUpdate buildVersionUpdate(final ByteBuffer value) {
+		final AttributeUpdate update = new AttributeUpdate(attributeNameVersion);
+		return monotonic ? update.addNumeric(1) : update.put(value.hashCode());
+	}
+
+	private PrimaryKey buildPrimaryKey(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		return new PrimaryKey(attributeNameKeyspace, KeyspaceItems.partitionValue(keyspaceName, shards, key),
+				attributeNameKey, key);
+	}
+}
@@ -0,0 +1,74 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Key with a binary value and its version, read by {@link BinaryDynamoDbKeyspace#gets(String)}
+ * 
+ * @since 0.2
+ */
+public final class BinaryKeyValue {
+
+	/**
+	 * Create new instance
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @param version
+	 *            Version of the value
+	 * @return new {@link BinaryKeyValue} instance
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static BinaryKeyValue create(@Nonnull final String key, @Nonnull final ByteBuffer value,
+			final long version) {
+		return new BinaryKeyValue(key, value, version);
+	}
+
+	private final String key;
+	private final ByteBuffer value;
+	private final long version;
+
+	private BinaryKeyValue(final String key, final ByteBuffer value, final long version) {
+		this.key = Objects.requireNonNull(key, "Key must not be null");
+		this.value = Objects.requireNonNull(value, "Value must not be null").asReadOnlyBuffer();
+		this.version = version;
+	}
+
+	/**
+	 * Get the key
+	 * 
+	 * @return Key
+	 * @since 0.2
+	 */
+	@Nonnull
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the value
+	 * 
+	 * @return Read-only view of the value, positioned at its start
+	 * @since 0.2
+	 */
+	@Nonnull
+	public ByteBuffer getValue() {
+		return value.duplicate();
+	}
+
+	/**
+	 * Get the version of the value, for {@link BinaryDynamoDbKeyspace#checkAndSet(String, ByteBuffer, long)}
+	 * 
+	 * @return Version
+	 * @since 0.2
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,139 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the {@link CacheInvalidator} of an adapter
+ * 
+ * @since 0.2
+ */
+public final class CacheInvalidationConfig {
+
+	/**
+	 * Default time between reads of the change stream
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+
+	/**
+	 * Default time reading the change stream may keep failing before the whole cache is dropped
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(10);
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final Duration pollInterval;
+
+	private final Duration maxLag;
+
+	private CacheInvalidationConfig(final Builder builder) {
+		this.pollInterval = builder.pollInterval;
+		this.maxLag = builder.maxLag;
+	}
+
+	/**
+	 * Get the time reading the change stream may keep failing before the whole cache is dropped
+	 * 
+	 * @return Maximum lag
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getMaxLag() {
+		return maxLag;
+	}
+
+	/**
+	 * Get the time between reads of the change stream
+	 * 
+	 * @return Poll interval
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getPollInterval() {
+		return pollInterval;
+	}
+
+	/**
+	 * Builder for {@link CacheInvalidationConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private Duration pollInterval = DEFAULT_POLL_INTERVAL;
+
+		private Duration maxLag = DEFAULT_MAX_LAG;
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link CacheInvalidationConfig}
+		 * 
+		 * @return new {@link CacheInvalidationConfig} instance, not null
+		 * @throws IllegalStateException
+		 *             if the maximum lag is shorter than the poll interval
+		 * @since 0.2
+		 */
+		@Nonnull
+		public CacheInvalidationConfig build() {
+			if (maxLag.compareTo(pollInterval) < 0)
+				throw new IllegalStateException("MaxLag must not be shorter than PollInterval");
+			return new CacheInvalidationConfig(this);
+		}
+
+		/**
+		 * Set the time reading the change stream may keep failing before the whole cache is dropped. Cached values
+		 * then miss writes of other nodes for at most this long, plus the poll interval and the delay of the stream
+		 * itself. Defaults to 10 seconds.
+		 * 
+		 * @param maxLag
+		 *            Maximum lag, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxLag(@Nonnull final Duration maxLag) {
+			this.maxLag = requirePositive(maxLag, "MaxLag");
+			return this;
+		}
+
+		/**
+		 * Set the time between reads of the change stream. <br>
+		 * <b>Note</b>, DynamoDB Streams allows about 5 reads per second of each shard, shared by every node reading it.
+		 * Defaults to 1 second.
+		 * 
+		 * @param pollInterval
+		 *            Poll interval, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withPollInterval(@Nonnull final Duration pollInterval) {
+			this.pollInterval = requirePositive(pollInterval, "PollInterval");
+			return this;
+		}
+
+		private static Duration requirePositive(final Duration duration, final String name) {
+			Objects.requireNonNull(duration, name + " must not be null");
+			if (duration.isNegative() || duration.isZero())
+				throw new IllegalArgumentException(name + " must be positive");
+			return duration;
+		}
+	}
+}
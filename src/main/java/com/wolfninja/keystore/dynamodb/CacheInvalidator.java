@@ -0,0 +1,234 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+
+/**
+ * Keeps the {@link KeyspaceCache} of an adapter coherent with the writes of every node, by reading the change stream
+ * of the table
+ * <p>
+ * Every poll interval, {@link #poll()} reads the changes made since the previous poll from a
+ * {@link ChangeStreamSource}, and drops the cached value of each changed key, unless the cached version already
+ * reflects the change. Changes of the shards of a keyspace count for the keyspace, while changes of chunks are
+ * skipped, as the item of their key changes as well.
+ * </p>
+ * <p>
+ * If reading the stream keeps failing for longer than the maximum lag, the whole cache is dropped, and again after
+ * every further maximum lag until the stream is read. If the source reports lost changes, the whole cache is dropped
+ * at once. A cached value is thus never older than the maximum lag plus the poll interval and the
+ * delay of the stream, or its time to live, whichever is shorter.
+ * </p>
+ * <p>
+ * Keys added or changed are added to the {@link KeyFilter} of their keyspace as well. Whenever the cache is dropped,
+ * key filters are discarded and rebuilt, as they may have missed keys added meanwhile.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class CacheInvalidator {
+
+	private static final String CHUNK_PARTITION_SUFFIX = ChunkedValueStore.chunkPartition("");
+
+	private final CacheInvalidationConfig config;
+	private final ChangeStreamSource source;
+	private final KeyspaceCache cache;
+	private final DynamoDbAdapter adapter;
+	private final LongSupplier ticker;
+	private final LongAdder records = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder gaps = new LongAdder();
+	private volatile long caughtUpAt;
+	private boolean started;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            {@link CacheInvalidationConfig} to apply
+	 * @param source
+	 *            {@link ChangeStreamSource} of the table of the adapter
+	 * @param cache
+	 *            {@link KeyspaceCache} to invalidate
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} owning the cache, for its attribute names, shards and version scheme
+	 * @param ticker
+	 *            Source of the current time, in nanoseconds
+	 * @since 0.2
+	 */
+	CacheInvalidator(final CacheInvalidationConfig config, final ChangeStreamSource source, final KeyspaceCache cache,
+			final DynamoDbAdapter adapter, final LongSupplier ticker) {
+		this.config = config;
+		this.source = source;
+		this.cache = cache;
+		this.adapter = adapter;
+		this.ticker = ticker;
+		this.caughtUpAt = ticker.getAsLong();
+	}
+
+	/**
+	 * Get the number of failed reads of the change stream
+	 * 
+	 * @return Failure count
+	 * @since 0.2
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/**
+	 * Get the number of times the source reported lost changes
+	 * 
+	 * @return Gap count
+	 * @since 0.2
+	 */
+	public long getGapCount() {
+		return gaps.sum();
+	}
+
+	/**
+	 * Get the number of cached values dropped because of a change
+	 * 
+	 * @return Invalidation count
+	 * @since 0.2
+	 */
+	public long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * Get the time since the start of the last poll that read the change stream to its end
+	 * 
+	 * @return Lag, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getLag() {
+		return Duration.ofNanos(Math.max(0L, ticker.getAsLong() - caughtUpAt));
+	}
+
+	/**
+	 * Get the number of change records read
+	 * 
+	 * @return Record count
+	 * @since 0.2
+	 */
+	public long getRecordCount() {
+		return records.sum();
+	}
+
+	/**
+	 * Read the changes made since the previous poll and invalidate the cached values they affect
+	 * 
+	 * @return Number of change records read, 0 if reading failed
+	 * @since 0.2
+	 */
+	public synchronized int poll() {
+		final long startedAt = ticker.getAsLong();
+		final List<Record> changes;
+		try {
+			changes = source.poll();
+		} catch (final ChangeStreamGapException e) {
+			gaps.increment();
+			cache.invalidateAll();
+			adapter.resetKeyFilters();
+			caughtUpAt = startedAt;
+			return 0;
+		} catch (final RuntimeException e) {
+			failures.increment();
+			if (startedAt - caughtUpAt > config.getMaxLag().toNanos()) {
+				// Changes since are still read once the source recovers, so the emptied cache stays coherent
+				cache.invalidateAll();
+				adapter.resetKeyFilters();
+				caughtUpAt = startedAt;
+			}
+			return 0;
+		}
+
+		if (!started) {
+			// The stream is read from where the first poll found its end, values cached before may have changed since
+			cache.invalidateAll();
+			adapter.resetKeyFilters();
+			started = true;
+		}
+		final boolean monotonic = adapter.getVersionScheme() == VersionScheme.MONOTONIC;
+		for (final Record change : changes) {
+			apply(change, monotonic);
+		}
+		records.add(changes.size());
+		caughtUpAt = startedAt;
+		return changes.size();
+	}
+
+	private void apply(final Record change, final boolean monotonic) {
+		final StreamRecord streamRecord = change.getDynamodb();
+		if (streamRecord == null || streamRecord.getKeys() == null) {
+			return;
+		}
+		final AttributeValue partition = streamRecord.getKeys().get(adapter.getAttributeNameKeyspace());
+		final AttributeValue key = streamRecord.getKeys().get(adapter.getAttributeNameKey());
+		if (partition == null || partition.getS() == null || key == null || key.getS() == null) {
+			return;
+		}
+		final String keyspaceName = keyspaceName(partition.getS());
+		if (keyspaceName == null) {
+			return;
+		}
+
+		Long version = null;
+		final Map<String, AttributeValue> newImage = streamRecord.getNewImage();
+		final boolean removed = OperationType.REMOVE.toString().equals(change.getEventName());
+		if (!removed) {
+			adapter.getKeyFilter(keyspaceName).ifPresent(filter -> filter.put(key.getS()));
+		}
+		if (!removed && newImage != null) {
+			final AttributeValue versionValue = newImage.get(adapter.getAttributeNameVersion());
+			if (versionValue != null && versionValue.getN() != null) {
+				version = Long.valueOf(versionValue.getN());
+			}
+		}
+		if (cache.invalidate(keyspaceName, key.getS(), version, monotonic)) {
+			invalidations.increment();
+		}
+	}
+
+	/**
+	 * Get the keyspace a partition value belongs to
+	 * 
+	 * @param partition
+	 *            Partition value of a changed item
+	 * @return Keyspace name, null for a chunk partition, whose key item changes as well
+	 */
+	private String keyspaceName(final String partition) {
+		if (partition.endsWith(CHUNK_PARTITION_SUFFIX)) {
+			return null;
+		}
+		final int separator = partition.lastIndexOf('#');
+		if (separator > 0 && separator < partition.length() - 1) {
+			final String keyspaceName = partition.substring(0, separator);
+			if (adapter.getShards(keyspaceName) > 1 && isDigits(partition, separator + 1)) {
+				return keyspaceName;
+			}
+		}
+		return partition;
+	}
+
+	private static boolean isDigits(final String value, final int from) {
+		for (int i = from; i < value.length(); i++) {
+			if (!Character.isDigit(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
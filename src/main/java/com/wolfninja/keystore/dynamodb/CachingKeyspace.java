@@ -0,0 +1,159 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+
+/**
+ * {@link Keyspace} decorator that serves reads from a local {@link KeyspaceCache}
+ * <p>
+ * Misses read through to the delegate using {@link Keyspace#gets(String)}, so cached entries carry the stored
+ * version. Every write invalidates the key once the delegate returns, whether or not it succeeded. Values written by
+ * other nodes become visible once the cached entry expires.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public class CachingKeyspace implements Keyspace {
+
+	private final String keyspaceName;
+	private final Keyspace delegate;
+	private final KeyspaceCache cache;
+
+	/**
+	 * Create new caching Keyspace instance
+	 * 
+	 * @param keyspaceName
+	 *            Name of the delegate keyspace, used to partition the cache
+	 * @param delegate
+	 *            {@link Keyspace} to read through and write to
+	 * @param cache
+	 *            {@link KeyspaceCache} to use, usually shared by all keyspaces of an adapter
+	 * @since 0.2
+	 */
+	protected CachingKeyspace(@Nonnull final String keyspaceName, @Nonnull final Keyspace delegate,
+			@Nonnull final KeyspaceCache cache) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(delegate, "Delegate must not be null");
+		Objects.requireNonNull(cache, "Cache must not be null");
+		this.keyspaceName = keyspaceName;
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public boolean add(final String key, final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		try {
+			return delegate.add(key, value);
+		} finally {
+			cache.invalidate(keyspaceName, key);
+		}
+	}
+
+	@Override
+	public boolean checkAndSet(final String key, final String value, final long version) {
+		Objects.requireNonNull(key, "Key must not be null");
+		try {
+			return delegate.checkAndSet(key, value, version);
+		} finally {
+			cache.invalidate(keyspaceName, key);
+		}
+	}
+
+	@Override
+	public boolean delete(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		try {
+			return delegate.delete(key);
+		} finally {
+			cache.invalidate(keyspaceName, key);
+		}
+	}
+
+	@Override
+	public boolean deletes(final String key, final long version) {
+		Objects.requireNonNull(key, "Key must not be null");
+		try {
+			return delegate.deletes(key, version);
+		} finally {
+			cache.invalidate(keyspaceName, key);
+		}
+	}
+
+	@Override
+	public boolean exists(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		if (cache.get(keyspaceName, key).isPresent()) {
+			return true;
+		}
+		return delegate.exists(key);
+	}
+
+	@Override
+	public Optional<String> get(final String key) {
+		return gets(key).map(KeyValue::getValue);
+	}
+
+	/**
+	 * Get the cache backing this keyspace
+	 * 
+	 * @return {@link KeyspaceCache} instance
+	 * @since 0.2
+	 */
+	@Nonnull
+	public KeyspaceCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Get the keyspace reads and writes are delegated to
+	 * 
+	 * @return Delegate {@link Keyspace}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Keyspace getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Optional<KeyValue> gets(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		final Optional<KeyValue> cached = cache.get(keyspaceName, key);
+		if (cached.isPresent()) {
+			return cached;
+		}
+
+		final long readSequence = cache.readStarted();
+		final Optional<KeyValue> value = delegate.gets(key);
+		if (value.isPresent()) {
+			cache.put(keyspaceName, value.get(), readSequence);
+		}
+		return value;
+	}
+
+	@Override
+	public boolean replace(final String key, final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		try {
+			return delegate.replace(key, value);
+		} finally {
+			cache.invalidate(keyspaceName, key);
+		}
+	}
+
+	@Override
+	public boolean set(final String key, final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		try {
+			return delegate.set(key, value);
+		} finally {
+			cache.invalidate(keyspaceName, key);
+		}
+	}
+}
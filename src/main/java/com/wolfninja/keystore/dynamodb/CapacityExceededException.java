@@ -0,0 +1,45 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Thrown instead of sending a request that would exceed the client-side capacity limit, under
+ * {@link RateLimitConfig.Mode#FAIL_FAST}
+ * 
+ * @since 0.2
+ */
+public class CapacityExceededException extends AmazonClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Duration retryAfter;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message
+	 *            Detail message
+	 * @param retryAfter
+	 *            Time until the capacity is available, not null
+	 * @since 0.2
+	 */
+	public CapacityExceededException(final String message, @Nonnull final Duration retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Get the time until the capacity of the rejected request is available, if no other request consumes it first
+	 * 
+	 * @return Retry delay
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+}
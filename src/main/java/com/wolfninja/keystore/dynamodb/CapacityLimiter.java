@@ -0,0 +1,195 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+
+/**
+ * Limits the read and write capacity consumed by the keyspaces of an adapter, before requests are sent
+ * <p>
+ * Each operation is charged the capacity units it is estimated to consume: one read unit per 4 KB read, half of that
+ * for eventually consistent reads, and one write unit per 1 KB written. Reads are charged for a single unit per item
+ * up front, and for the size of the items read once they returned. When adaptive, the limits are halved whenever
+ * DynamoDB throttles a request, and recover gradually, see {@link CapacityThrottle}.
+ * </p>
+ * <p>
+ * Only the operations of {@link DynamoDbKeyspace} are limited, except the lazy streams of
+ * {@link DynamoDbKeyspace#keys()} and {@link DynamoDbKeyspace#entries()}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class CapacityLimiter {
+
+	/**
+	 * Item size covered by a read capacity unit
+	 */
+	static final int READ_UNIT_BYTES = 4 * 1024;
+
+	/**
+	 * Item size covered by a write capacity unit
+	 */
+	static final int WRITE_UNIT_BYTES = 1024;
+
+	/**
+	 * Estimate the read capacity consumed by reading items
+	 * 
+	 * @param items
+	 *            Number of items read
+	 * @param bytes
+	 *            Total size of the items
+	 * @param consistent
+	 *            Whether the items are read with strong consistency
+	 * @return Read capacity units
+	 */
+	static double readUnits(final int items, final long bytes, final boolean consistent) {
+		final double units = Math.max(items, Math.ceil((double) bytes / READ_UNIT_BYTES));
+		return consistent ? units : units / 2;
+	}
+
+	/**
+	 * Estimate the write capacity consumed by writing items
+	 * 
+	 * @param items
+	 *            Number of items written
+	 * @param bytes
+	 *            Total size of the items
+	 * @return Write capacity units
+	 */
+	static double writeUnits(final int items, final long bytes) {
+		return Math.max(items, Math.ceil((double) bytes / WRITE_UNIT_BYTES));
+	}
+
+	/**
+	 * Create a limiter for a table
+	 * 
+	 * @param config
+	 *            {@link RateLimitConfig} to apply
+	 * @param table
+	 *            {@link Table} whose provisioned throughput is read, unless the config sets the capacity units
+	 * @return new {@link CapacityLimiter}
+	 * @throws IllegalStateException
+	 *             if the table has no provisioned throughput, and the config sets no capacity units
+	 */
+	static CapacityLimiter create(final RateLimitConfig config, final Table table) {
+		double readUnits = config.getReadCapacityUnits().orElse(0d);
+		double writeUnits = config.getWriteCapacityUnits().orElse(0d);
+		if (readUnits == 0) {
+			final ProvisionedThroughputDescription throughput = table.describe().getProvisionedThroughput();
+			if (throughput == null || throughput.getReadCapacityUnits() == null
+					|| throughput.getWriteCapacityUnits() == null || throughput.getReadCapacityUnits() < 1
+					|| throughput.getWriteCapacityUnits() < 1)
+				throw new IllegalStateException("Table has no provisioned throughput, use withCapacityUnits");
+			readUnits = throughput.getReadCapacityUnits() * config.getCapacityFraction();
+			writeUnits = throughput.getWriteCapacityUnits() * config.getCapacityFraction();
+		}
+		return new CapacityLimiter(config, readUnits, writeUnits, System::nanoTime);
+	}
+
+	private final RateLimitConfig.Mode mode;
+	private final boolean adaptive;
+	private final CapacityThrottle reads;
+	private final CapacityThrottle writes;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            {@link RateLimitConfig} to apply
+	 * @param readUnitsPerSecond
+	 *            Read capacity limit, positive
+	 * @param writeUnitsPerSecond
+	 *            Write capacity limit, positive
+	 * @param ticker
+	 *            Source of the current time, in nanoseconds
+	 * @since 0.2
+	 */
+	CapacityLimiter(final RateLimitConfig config, final double readUnitsPerSecond, final double writeUnitsPerSecond,
+			final LongSupplier ticker) {
+		this.mode = config.getMode();
+		this.adaptive = config.isAdaptive();
+		this.reads = new CapacityThrottle(readUnitsPerSecond, ticker);
+		this.writes = new CapacityThrottle(writeUnitsPerSecond, ticker);
+	}
+
+	/**
+	 * Get the current read capacity limit, lowered while adapting to throttling
+	 * 
+	 * @return Read capacity units per second
+	 * @since 0.2
+	 */
+	public double getReadUnitsPerSecond() {
+		return reads.getUnitsPerSecond();
+	}
+
+	/**
+	 * Get the current write capacity limit, lowered while adapting to throttling
+	 * 
+	 * @return Write capacity units per second
+	 * @since 0.2
+	 */
+	public double getWriteUnitsPerSecond() {
+		return writes.getUnitsPerSecond();
+	}
+
+	/**
+	 * Acquire read capacity before sending a request
+	 * 
+	 * @param units
+	 *            Read capacity units the request is estimated to consume
+	 * @throws CapacityExceededException
+	 *             if the capacity is not available in {@link RateLimitConfig.Mode#FAIL_FAST} mode
+	 */
+	void acquireRead(final double units) {
+		acquire(reads, units, "read");
+	}
+
+	/**
+	 * Acquire write capacity before sending a request
+	 * 
+	 * @param units
+	 *            Write capacity units the request is estimated to consume
+	 * @throws CapacityExceededException
+	 *             if the capacity is not available in {@link RateLimitConfig.Mode#FAIL_FAST} mode
+	 */
+	void acquireWrite(final double units) {
+		acquire(writes, units, "write");
+	}
+
+	/**
+	 * Charge read capacity consumed beyond what was acquired, without waiting; later requests pay for it
+	 * 
+	 * @param units
+	 *            Additional read capacity units
+	 */
+	void chargeRead(final double units) {
+		if (units > 0) {
+			reads.reserve(units);
+		}
+	}
+
+	/**
+	 * Report that DynamoDB throttled a request
+	 * 
+	 * @param write
+	 *            Whether the request was a write
+	 */
+	void throttled(final boolean write) {
+		if (adaptive) {
+			(write ? writes : reads).decrease();
+		}
+	}
+
+	private void acquire(final CapacityThrottle throttle, final double units, final String kind) {
+		if (mode == RateLimitConfig.Mode.BLOCKING) {
+			throttle.consume(units);
+			return;
+		}
+		final long wait = throttle.tryReserve(units);
+		if (wait > 0)
+			throw new CapacityExceededException("Not enough " + kind + " capacity for " + units + " units",
+					Duration.ofNanos(wait));
+	}
+}
@@ -0,0 +1,163 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.util.Throwables;
+
+/**
+ * Paces requests to an average rate of consumed capacity units per second
+ * <p>
+ * Capacity is paid for after a request reports what it consumed: the caller is delayed until the consumption so far
+ * fits the target rate. Idle time is not saved up beyond one second of capacity, so a burst after a pause stays
+ * bounded.
+ * </p>
+ * <p>
+ * The rate adapts additive-increase/multiplicative-decrease style once {@link #decrease()} reports throttling: it is
+ * halved, at most once per second and down to {@value #MIN_RATE_FRACTION} of the target rate, then grows back to the
+ * target rate by {@value #INCREASE_FRACTION_PER_SECOND} of it per second.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class CapacityThrottle {
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Lowest share of the target rate that {@link #decrease()} goes down to
+	 */
+	static final double MIN_RATE_FRACTION = 0.05d;
+
+	/**
+	 * Share of the target rate regained per second after a {@link #decrease()}
+	 */
+	static final double INCREASE_FRACTION_PER_SECOND = 0.05d;
+
+	private final double targetUnitsPerSecond;
+	private final LongSupplier ticker;
+	private double unitsPerSecond;
+	private long nextFreeNanos;
+	private long decreasedNanos;
+	private long increasedNanos;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param unitsPerSecond
+	 *            Target capacity units per second, positive
+	 * @param ticker
+	 *            Source of the current time, in nanoseconds
+	 * @since 0.2
+	 */
+	CapacityThrottle(final double unitsPerSecond, final LongSupplier ticker) {
+		if (!(unitsPerSecond > 0))
+			throw new IllegalArgumentException("UnitsPerSecond must be positive");
+		this.targetUnitsPerSecond = unitsPerSecond;
+		this.ticker = ticker;
+		this.unitsPerSecond = unitsPerSecond;
+		this.nextFreeNanos = ticker.getAsLong() - NANOS_PER_SECOND;
+		this.decreasedNanos = nextFreeNanos;
+		this.increasedNanos = nextFreeNanos;
+	}
+
+	/**
+	 * Account for consumed capacity, blocking while the target rate is exceeded
+	 * 
+	 * @param units
+	 *            Capacity units consumed by a completed request
+	 * @since 0.2
+	 */
+	void consume(final double units) {
+		final long delayNanos = reserve(units);
+		if (delayNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(delayNanos);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw Throwables.failure(e);
+			}
+		}
+	}
+
+	/**
+	 * Account for consumed capacity without blocking
+	 * 
+	 * @param units
+	 *            Capacity units consumed by a completed request
+	 * @return Nanoseconds the caller should wait before its next request
+	 * @since 0.2
+	 */
+	synchronized long reserve(final double units) {
+		final long now = ticker.getAsLong();
+		increase(now);
+		// Allow at most one second of unused capacity to accumulate
+		nextFreeNanos = Math.max(nextFreeNanos, now - NANOS_PER_SECOND);
+		nextFreeNanos += duration(units);
+		return nextFreeNanos - now;
+	}
+
+	/**
+	 * Account for capacity about to be consumed, only if it is available now
+	 * <p>
+	 * A request for more than one second of capacity is accepted once a full second of capacity is available.
+	 * </p>
+	 * 
+	 * @param units
+	 *            Capacity units the caller is about to consume
+	 * @return 0 if the capacity was reserved, otherwise the nanoseconds until it would be available
+	 * @since 0.2
+	 */
+	synchronized long tryReserve(final double units) {
+		final long now = ticker.getAsLong();
+		increase(now);
+		final long free = Math.max(nextFreeNanos, now - NANOS_PER_SECOND);
+		final long needed = Math.min(duration(units), NANOS_PER_SECOND);
+		final long wait = free + needed - now;
+		if (wait > 0) {
+			return wait;
+		}
+		nextFreeNanos = free + duration(units);
+		return 0L;
+	}
+
+	/**
+	 * Halve the rate after the server throttled a request, unless it was halved less than a second ago
+	 * 
+	 * @since 0.2
+	 */
+	synchronized void decrease() {
+		final long now = ticker.getAsLong();
+		increase(now);
+		if (now - decreasedNanos < NANOS_PER_SECOND) {
+			return;
+		}
+		unitsPerSecond = Math.max(unitsPerSecond / 2, targetUnitsPerSecond * MIN_RATE_FRACTION);
+		decreasedNanos = now;
+		increasedNanos = now;
+	}
+
+	/**
+	 * Get the current rate
+	 * 
+	 * @return Capacity units per second, at most the target rate
+	 * @since 0.2
+	 */
+	synchronized double getUnitsPerSecond() {
+		increase(ticker.getAsLong());
+		return unitsPerSecond;
+	}
+
+	private long duration(final double units) {
+		return (long) (Math.max(units, 0d) / unitsPerSecond * NANOS_PER_SECOND);
+	}
+
+	private void increase(final long now) {
+		if (unitsPerSecond < targetUnitsPerSecond && now > increasedNanos) {
+			final double seconds = (double) (now - increasedNanos) / NANOS_PER_SECOND;
+			unitsPerSecond = Math.min(targetUnitsPerSecond,
+					unitsPerSecond + targetUnitsPerSecond * INCREASE_FRACTION_PER_SECOND * seconds);
+			increasedNanos = now;
+		}
+	}
+}
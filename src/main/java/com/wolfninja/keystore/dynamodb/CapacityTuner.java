@@ -0,0 +1,183 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+
+/**
+ * Tunes the provisioned throughput of a table to the capacity consumed by the keyspaces of an adapter
+ * <p>
+ * The keyspaces report the capacity units each operation is estimated to consume, by the same rules as the
+ * {@link CapacityLimiter}, including operations DynamoDB throttled. Every sample interval, {@link #tune()} turns them
+ * into a rate per second and updates the table, within the configured bounds, so the rate is the target utilization of
+ * its throughput:
+ * </p>
+ * <ul>
+ * <li>The throughput is increased as soon as a sample exceeds the target utilization</li>
+ * <li>It is decreased once it was unchanged for the decrease delay, to fit the peak sample since the last change, as
+ * long as DynamoDB reports fewer decreases of the table today than allowed</li>
+ * </ul>
+ * <p>
+ * Only the throughput of the table is tuned, not that of its global secondary indexes. Updates are skipped while the
+ * table is not active. Other clients of the table are not seen, so sharing it calls for a lower target utilization.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class CapacityTuner {
+
+	private final CapacityTuningConfig config;
+	private final Table table;
+	private final LongSupplier clock;
+	private final DoubleAdder readUnits = new DoubleAdder();
+	private final DoubleAdder writeUnits = new DoubleAdder();
+	private long sampledMillis;
+	private long changedMillis;
+	private double readRate;
+	private double writeRate;
+	private double peakReadRate;
+	private double peakWriteRate;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            {@link CapacityTuningConfig} to apply
+	 * @param table
+	 *            {@link Table} to tune
+	 * @param clock
+	 *            Source of the current time, in milliseconds
+	 * @since 0.2
+	 */
+	CapacityTuner(final CapacityTuningConfig config, final Table table, final LongSupplier clock) {
+		this.config = config;
+		this.table = table;
+		this.clock = clock;
+		this.sampledMillis = clock.getAsLong();
+		this.changedMillis = sampledMillis;
+	}
+
+	/**
+	 * Get the read capacity consumed during the last sample
+	 * 
+	 * @return Read capacity units per second, 0 before the first sample
+	 * @since 0.2
+	 */
+	public synchronized double getReadUnitsPerSecond() {
+		return readRate;
+	}
+
+	/**
+	 * Get the write capacity consumed during the last sample
+	 * 
+	 * @return Write capacity units per second, 0 before the first sample
+	 * @since 0.2
+	 */
+	public synchronized double getWriteUnitsPerSecond() {
+		return writeRate;
+	}
+
+	/**
+	 * Record read capacity consumed by an operation
+	 * 
+	 * @param units
+	 *            Read capacity units
+	 */
+	void recordRead(final double units) {
+		readUnits.add(units);
+	}
+
+	/**
+	 * Record write capacity consumed by an operation
+	 * 
+	 * @param units
+	 *            Write capacity units
+	 */
+	void recordWrite(final double units) {
+		writeUnits.add(units);
+	}
+
+	/**
+	 * Sample the capacity consumed since the previous sample, and update the provisioned throughput of the table if it
+	 * does not fit
+	 * 
+	 * @return true if the table was updated
+	 * @since 0.2
+	 */
+	public synchronized boolean tune() {
+		final long now = clock.getAsLong();
+		if (now <= sampledMillis) {
+			return false;
+		}
+		final double seconds = (now - sampledMillis) / 1000d;
+		sampledMillis = now;
+		readRate = readUnits.sumThenReset() / seconds;
+		writeRate = writeUnits.sumThenReset() / seconds;
+		peakReadRate = Math.max(peakReadRate, readRate);
+		peakWriteRate = Math.max(peakWriteRate, writeRate);
+
+		final TableDescription description = table.describe();
+		final ProvisionedThroughputDescription throughput = description.getProvisionedThroughput();
+		if (!TableStatus.ACTIVE.toString().equals(description.getTableStatus()) || throughput == null
+				|| throughput.getReadCapacityUnits() == null || throughput.getWriteCapacityUnits() == null) {
+			return false;
+		}
+		final long decreases = throughput.getNumberOfDecreasesToday() == null ? 0
+				: throughput.getNumberOfDecreasesToday();
+		final boolean decrease = now - changedMillis >= config.getDecreaseDelay().toMillis()
+				&& decreases < config.getMaxDecreasesPerDay();
+		final long read = throughput.getReadCapacityUnits();
+		final long write = throughput.getWriteCapacityUnits();
+		final long tunedRead = tuned(read, readRate, peakReadRate, config.getMinReadCapacityUnits(),
+				config.getMaxReadCapacityUnits(), decrease);
+		final long tunedWrite = tuned(write, writeRate, peakWriteRate, config.getMinWriteCapacityUnits(),
+				config.getMaxWriteCapacityUnits(), decrease);
+		if (tunedRead == read && tunedWrite == write) {
+			return false;
+		}
+		table.updateTable(new ProvisionedThroughput(tunedRead, tunedWrite));
+		changedMillis = now;
+		peakReadRate = readRate;
+		peakWriteRate = writeRate;
+		return true;
+	}
+
+	/**
+	 * Tune the capacity units of one kind
+	 * 
+	 * @param current
+	 *            Provisioned capacity units
+	 * @param rate
+	 *            Capacity units per second consumed during the last sample
+	 * @param peakRate
+	 *            Highest capacity units per second consumed since the last change
+	 * @param min
+	 *            Lower bound
+	 * @param max
+	 *            Upper bound
+	 * @param decrease
+	 *            Whether a decrease is allowed
+	 * @return Tuned capacity units, the current ones if unchanged
+	 */
+	private long tuned(final long current, final double rate, final double peakRate, final long min, final long max,
+			final boolean decrease) {
+		final long needed = bounded((long) Math.ceil(rate / config.getTargetUtilization()), min, max);
+		if (needed > current) {
+			return needed;
+		}
+		final long peakNeeded = bounded((long) Math.ceil(peakRate / config.getTargetUtilization()), min, max);
+		if (decrease && peakNeeded < current) {
+			return peakNeeded;
+		}
+		return current;
+	}
+
+	private static long bounded(final long units, final long min, final long max) {
+		return Math.min(Math.max(units, min), max);
+	}
+}
@@ -0,0 +1,320 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the {@link CapacityTuner} of an adapter
+ * 
+ * @since 0.2
+ */
+public final class CapacityTuningConfig {
+
+	/**
+	 * Default share of the provisioned throughput the consumed capacity is tuned to
+	 * 
+	 * @since 0.2
+	 */
+	public static final double DEFAULT_TARGET_UTILIZATION = 0.7d;
+
+	/**
+	 * Default time between samples of the consumed capacity
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_SAMPLE_INTERVAL = Duration.ofMinutes(1);
+
+	/**
+	 * Default time the throughput is kept after a change, before it may be decreased
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_DECREASE_DELAY = Duration.ofHours(1);
+
+	/**
+	 * Default number of decreases of a table per UTC day, the limit of DynamoDB
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_MAX_DECREASES_PER_DAY = 4;
+
+	/**
+	 * Default upper bound of the read and of the write capacity units
+	 * 
+	 * @since 0.2
+	 */
+	public static final long DEFAULT_MAX_CAPACITY_UNITS = 100L;
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final double targetUtilization;
+
+	private final Duration sampleInterval;
+
+	private final Duration decreaseDelay;
+
+	private final int maxDecreasesPerDay;
+
+	private final long minReadCapacityUnits;
+
+	private final long maxReadCapacityUnits;
+
+	private final long minWriteCapacityUnits;
+
+	private final long maxWriteCapacityUnits;
+
+	private CapacityTuningConfig(final Builder builder) {
+		this.targetUtilization = builder.targetUtilization;
+		this.sampleInterval = builder.sampleInterval;
+		this.decreaseDelay = builder.decreaseDelay;
+		this.maxDecreasesPerDay = builder.maxDecreasesPerDay;
+		this.minReadCapacityUnits = builder.minReadCapacityUnits;
+		this.maxReadCapacityUnits = builder.maxReadCapacityUnits;
+		this.minWriteCapacityUnits = builder.minWriteCapacityUnits;
+		this.maxWriteCapacityUnits = builder.maxWriteCapacityUnits;
+	}
+
+	/**
+	 * Get the time the throughput is kept after a change, before it may be decreased
+	 * 
+	 * @return Decrease delay
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getDecreaseDelay() {
+		return decreaseDelay;
+	}
+
+	/**
+	 * Get the number of decreases of the table per UTC day, counting those made by others
+	 * 
+	 * @return Maximum decreases per day
+	 * @since 0.2
+	 */
+	public int getMaxDecreasesPerDay() {
+		return maxDecreasesPerDay;
+	}
+
+	/**
+	 * Get the upper bound of the read capacity units
+	 * 
+	 * @return Read capacity units
+	 * @since 0.2
+	 */
+	public long getMaxReadCapacityUnits() {
+		return maxReadCapacityUnits;
+	}
+
+	/**
+	 * Get the upper bound of the write capacity units
+	 * 
+	 * @return Write capacity units
+	 * @since 0.2
+	 */
+	public long getMaxWriteCapacityUnits() {
+		return maxWriteCapacityUnits;
+	}
+
+	/**
+	 * Get the lower bound of the read capacity units
+	 * 
+	 * @return Read capacity units
+	 * @since 0.2
+	 */
+	public long getMinReadCapacityUnits() {
+		return minReadCapacityUnits;
+	}
+
+	/**
+	 * Get the lower bound of the write capacity units
+	 * 
+	 * @return Write capacity units
+	 * @since 0.2
+	 */
+	public long getMinWriteCapacityUnits() {
+		return minWriteCapacityUnits;
+	}
+
+	/**
+	 * Get the time between samples of the consumed capacity
+	 * 
+	 * @return Sample interval
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Get the share of the provisioned throughput the consumed capacity is tuned to
+	 * 
+	 * @return Target utilization, above 0 and at most 1
+	 * @since 0.2
+	 */
+	public double getTargetUtilization() {
+		return targetUtilization;
+	}
+
+	/**
+	 * Builder for {@link CapacityTuningConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private double targetUtilization = DEFAULT_TARGET_UTILIZATION;
+
+		private Duration sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+		private Duration decreaseDelay = DEFAULT_DECREASE_DELAY;
+
+		private int maxDecreasesPerDay = DEFAULT_MAX_DECREASES_PER_DAY;
+
+		private long minReadCapacityUnits = 1L;
+
+		private long maxReadCapacityUnits = DEFAULT_MAX_CAPACITY_UNITS;
+
+		private long minWriteCapacityUnits = 1L;
+
+		private long maxWriteCapacityUnits = DEFAULT_MAX_CAPACITY_UNITS;
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link CapacityTuningConfig}
+		 * 
+		 * @return new {@link CapacityTuningConfig} instance, not null
+		 * @since 0.2
+		 */
+		@Nonnull
+		public CapacityTuningConfig build() {
+			return new CapacityTuningConfig(this);
+		}
+
+		/**
+		 * Set the time the throughput is kept after a change, before it may be decreased. The peak consumption since
+		 * the change decides how far it is decreased. Defaults to 1 hour.
+		 * 
+		 * @param decreaseDelay
+		 *            Decrease delay, not negative
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withDecreaseDelay(@Nonnull final Duration decreaseDelay) {
+			Objects.requireNonNull(decreaseDelay, "DecreaseDelay must not be null");
+			if (decreaseDelay.isNegative())
+				throw new IllegalArgumentException("DecreaseDelay must not be negative");
+			this.decreaseDelay = decreaseDelay;
+			return this;
+		}
+
+		/**
+		 * Set the number of decreases of the table per UTC day, as reported by DynamoDB, beyond which the tuner stops
+		 * decreasing it. Lower it to leave decreases to others. Defaults to
+		 * {@value CapacityTuningConfig#DEFAULT_MAX_DECREASES_PER_DAY}.
+		 * 
+		 * @param maxDecreasesPerDay
+		 *            Maximum decreases per day, not negative, 0 to never decrease
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxDecreasesPerDay(final int maxDecreasesPerDay) {
+			if (maxDecreasesPerDay < 0)
+				throw new IllegalArgumentException("MaxDecreasesPerDay must not be negative");
+			this.maxDecreasesPerDay = maxDecreasesPerDay;
+			return this;
+		}
+
+		/**
+		 * Set the bounds of the provisioned read capacity units. Defaults to 1 to
+		 * {@value CapacityTuningConfig#DEFAULT_MAX_CAPACITY_UNITS}.
+		 * 
+		 * @param minReadCapacityUnits
+		 *            Lower bound, positive
+		 * @param maxReadCapacityUnits
+		 *            Upper bound, at least the lower bound
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withReadCapacityBounds(final long minReadCapacityUnits, final long maxReadCapacityUnits) {
+			if (minReadCapacityUnits < 1 || maxReadCapacityUnits < minReadCapacityUnits)
+				throw new IllegalArgumentException(
+						"Invalid read capacity bounds: " + minReadCapacityUnits + ", " + maxReadCapacityUnits);
+			this.minReadCapacityUnits = minReadCapacityUnits;
+			this.maxReadCapacityUnits = maxReadCapacityUnits;
+			return this;
+		}
+
+		/**
+		 * Set the time between samples of the consumed capacity, each of which may update the table. Defaults to 1
+		 * minute.
+		 * 
+		 * @param sampleInterval
+		 *            Sample interval, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withSampleInterval(@Nonnull final Duration sampleInterval) {
+			Objects.requireNonNull(sampleInterval, "SampleInterval must not be null");
+			if (sampleInterval.isNegative() || sampleInterval.isZero())
+				throw new IllegalArgumentException("SampleInterval must be positive");
+			this.sampleInterval = sampleInterval;
+			return this;
+		}
+
+		/**
+		 * Set the share of the provisioned throughput the consumed capacity is tuned to. Defaults to
+		 * {@value CapacityTuningConfig#DEFAULT_TARGET_UTILIZATION}.
+		 * 
+		 * @param targetUtilization
+		 *            Target utilization, above 0 and at most 1
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withTargetUtilization(final double targetUtilization) {
+			if (!(targetUtilization > 0) || targetUtilization > 1)
+				throw new IllegalArgumentException("TargetUtilization must be above 0 and at most 1");
+			this.targetUtilization = targetUtilization;
+			return this;
+		}
+
+		/**
+		 * Set the bounds of the provisioned write capacity units. Defaults to 1 to
+		 * {@value CapacityTuningConfig#DEFAULT_MAX_CAPACITY_UNITS}.
+		 * 
+		 * @param minWriteCapacityUnits
+		 *            Lower bound, positive
+		 * @param maxWriteCapacityUnits
+		 *            Upper bound, at least the lower bound
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withWriteCapacityBounds(final long minWriteCapacityUnits, final long maxWriteCapacityUnits) {
+			if (minWriteCapacityUnits < 1 || maxWriteCapacityUnits < minWriteCapacityUnits)
+				throw new IllegalArgumentException(
+						"Invalid write capacity bounds: " + minWriteCapacityUnits + ", " + maxWriteCapacityUnits);
+			this.minWriteCapacityUnits = minWriteCapacityUnits;
+			this.maxWriteCapacityUnits = maxWriteCapacityUnits;
+			return this;
+		}
+	}
+}
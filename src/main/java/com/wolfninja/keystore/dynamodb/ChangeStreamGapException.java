@@ -0,0 +1,27 @@
+package com.wolfninja.keystore.dynamodb;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Thrown by {@link ChangeStreamSource#poll()} when changes were lost, so caches fed by the stream can no longer trust
+ * what they hold
+ * 
+ * @since 0.2
+ */
+public class ChangeStreamGapException extends AmazonClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message
+	 *            Detail message
+	 * @param cause
+	 *            Failure that revealed the gap
+	 * @since 0.2
+	 */
+	public ChangeStreamGapException(final String message, final Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,36 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.model.Record;
+
+/**
+ * Source of the item changes of a table, read by a {@link CacheInvalidator}
+ * <p>
+ * {@link DynamoDbChangeStream} reads the DynamoDB Stream of the table. Each node needs its own source, since every
+ * node has to see every change. Calls are made by one thread at a time.
+ * </p>
+ * 
+ * @since 0.2
+ */
+@FunctionalInterface
+public interface ChangeStreamSource {
+
+	/**
+	 * Read the changes made since the previous call, up to the current end of the stream. The first call starts at
+	 * the end of the stream. Records may be returned in any order.
+	 * 
+	 * @return Stream records, with the keys and, if the stream has them, the new image of each changed item; empty if
+	 *         nothing changed
+	 * @throws ChangeStreamGapException
+	 *             if changes were lost, such as records trimmed from the stream before they were read; reading
+	 *             continues after the gap
+	 * @throws RuntimeException
+	 *             if reading failed; the same changes are returned by the next call
+	 * @since 0.2
+	 */
+	@Nonnull
+	List<Record> poll();
+}
@@ -0,0 +1,440 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+
+/**
+ * Stores values too large for a single item as chunk items, referenced by a manifest
+ * <p>
+ * The chunks of a value are written first, under the partition {@code <keyspace partition>#chunks} with sort keys
+ * {@code <key>#<chunk id>#<index>}, where the chunk id is unique per write. The item of the key then becomes the
+ * manifest, naming the chunk id and count instead of holding the value. Replacing the manifest is a single write, so
+ * readers see either the old or the new value. Chunks are never modified; superseded chunks are deleted after the
+ * manifest no longer references them, chunks of failed or interrupted writes are found by
+ * {@link #collectGarbage(String, long)}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class ChunkedValueStore {
+
+	/**
+	 * Manifest attribute holding the number of chunks
+	 */
+	static final String ATTRIBUTE_CHUNKS = "chunks";
+
+	/**
+	 * Manifest attribute holding the chunk id
+	 */
+	static final String ATTRIBUTE_CHUNK_ID = "chunk_id";
+
+	/**
+	 * Manifest attribute, true if the chunks hold {@link ValueCodec} output rather than UTF-8
+	 */
+	static final String ATTRIBUTE_CHUNK_ENCODED = "chunk_encoded";
+
+	/**
+	 * Chunk attribute holding the creation time, in milliseconds since the epoch
+	 */
+	static final String ATTRIBUTE_CHUNK_CREATED = "chunk_created";
+
+	/**
+	 * Largest chunk size, leaving room for the keys and attribute names within the 400 KB item limit
+	 */
+	static final int MAX_CHUNK_BYTES = 380 * 1024;
+
+	/**
+	 * Chunks per BatchGetItem request, keeping responses of full-size chunks within the 16 MB limit
+	 */
+	private static final int CHUNKS_PER_BATCH_GET = 40;
+
+	private final Table table;
+	private final DynamoDB dynamoDB;
+	private final Executor executor;
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final String attributeNameValue;
+	private final LongSupplier clock;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} providing table, attribute names and executor
+	 * @param clock
+	 *            Source of the current time, in milliseconds since the epoch
+	 * @since 0.2
+	 */
+	ChunkedValueStore(final DynamoDbAdapter adapter, final LongSupplier clock) {
+		this.table = adapter.getTable();
+		this.dynamoDB = adapter.getDynamoDB().orElse(null);
+		this.executor = adapter.getExecutor();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.clock = Objects.requireNonNull(clock, "Clock must not be null");
+	}
+
+	/**
+	 * Delete the chunks of values that are not referenced by their manifest, such as chunks of a failed write or
+	 * chunks whose deletion after a replace failed
+	 * 
+	 * @param partition
+	 *            Partition value of the keyspace, or of one of its shards
+	 * @param gracePeriodMillis
+	 *            Only chunks older than this are deleted, so writes in progress are not disturbed
+	 * @return Number of chunk items deleted
+	 * @since 0.2
+	 */
+	int collectGarbage(final String partition, final long gracePeriodMillis) {
+		final long createdBeforeMillis = clock.getAsLong() - gracePeriodMillis;
+		final QuerySpec spec = new QuerySpec() //
+				.withHashKey(attributeNameKeyspace, chunkPartition(partition)) //
+				.withAttributesToGet(attributeNameKey, ATTRIBUTE_CHUNK_CREATED) //
+				.withConsistentRead(true);
+
+		int deleted = 0;
+		String groupPrefix = null;
+		final List<String> group = new ArrayList<>();
+		long groupCreated = Long.MAX_VALUE;
+		final Iterator<Item> chunks = new PrefetchingIterator<>(() -> table.query(spec).firstPage(),
+				Function.identity(), executor);
+		// Sort keys sharing the <key>#<chunk id># prefix are adjacent
+		while (chunks.hasNext()) {
+			final Item chunk = chunks.next();
+			final String chunkKey = chunk.getString(attributeNameKey);
+			final String prefix = chunkKey.substring(0, chunkKey.lastIndexOf('#') + 1);
+			if (!prefix.equals(groupPrefix)) {
+				deleted += collectGroup(partition, groupPrefix, group, groupCreated, createdBeforeMillis);
+				groupPrefix = prefix;
+				group.clear();
+				groupCreated = Long.MAX_VALUE;
+			}
+			group.add(chunkKey);
+			if (chunk.isPresent(ATTRIBUTE_CHUNK_CREATED)) {
+				groupCreated = Math.min(groupCreated, chunk.getLong(ATTRIBUTE_CHUNK_CREATED));
+			}
+		}
+		return deleted + collectGroup(partition, groupPrefix, group, groupCreated, createdBeforeMillis);
+	}
+
+	private int collectGroup(final String partition, final String prefix, final List<String> chunkKeys,
+			final long created, final long createdBeforeMillis) {
+		if (prefix == null || created >= createdBeforeMillis) {
+			return 0;
+		}
+		final int idStart = prefix.lastIndexOf('#', prefix.length() - 2);
+		final String key = prefix.substring(0, idStart);
+		final String chunkId = prefix.substring(idStart + 1, prefix.length() - 1);
+
+		final Item manifest = table.getItem(new GetItemSpec() //
+				.withPrimaryKey(attributeNameKeyspace, partition, attributeNameKey, key) //
+				.withAttributesToGet(ATTRIBUTE_CHUNK_ID) //
+				.withConsistentRead(true));
+		if (manifest != null && chunkId.equals(manifest.getString(ATTRIBUTE_CHUNK_ID))) {
+			return 0;
+		}
+		deleteChunkKeys(partition, new ArrayList<>(chunkKeys));
+		return chunkKeys.size();
+	}
+
+	/**
+	 * Delete the chunks referenced by a manifest
+	 * 
+	 * @param partition
+	 *            Partition value of the key
+	 * @param key
+	 *            Key
+	 * @param manifest
+	 *            {@link Manifest} of the chunks
+	 * @since 0.2
+	 */
+	void delete(final String partition, final String key, final Manifest manifest) {
+		final List<String> chunkKeys = new ArrayList<>(manifest.count);
+		for (int i = 0; i < manifest.count; i++) {
+			chunkKeys.add(chunkKey(key, manifest.id, i));
+		}
+		deleteChunkKeys(partition, chunkKeys);
+	}
+
+	private void deleteChunkKeys(final String partition, final List<String> chunkKeys) {
+		final String chunkPartition = chunkPartition(partition);
+		BatchRequests.executeChunks(executor,
+				BatchRequests.partition(chunkKeys, DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS), batch -> {
+					if (dynamoDB == null) {
+						for (final String chunkKey : batch) {
+							table.deleteItem(attributeNameKeyspace, chunkPartition, attributeNameKey, chunkKey);
+						}
+						return null;
+					}
+					final TableWriteItems writeItems = new TableWriteItems(table.getTableName());
+					for (final String chunkKey : batch) {
+						writeItems.addHashAndRangePrimaryKeyToDelete(attributeNameKeyspace, chunkPartition,
+								attributeNameKey, chunkKey);
+					}
+					return BatchRequests.batchWriteChunk(dynamoDB, writeItems);
+				});
+	}
+
+	/**
+	 * Fetch and join the chunks referenced by a manifest, with concurrent batched reads
+	 * 
+	 * @param partition
+	 *            Partition value of the key
+	 * @param key
+	 *            Key
+	 * @param manifest
+	 *            {@link Manifest} of the chunks
+	 * @param consistentRead
+	 *            Whether to read strongly consistent; missing chunks are read again strongly consistent
+	 * @return Stored bytes
+	 * @throws MissingChunksException
+	 *             if a chunk does not exist, because the value was replaced or deleted meanwhile
+	 * @since 0.2
+	 */
+	byte[] read(final String partition, final String key, final Manifest manifest, final boolean consistentRead) {
+		final Map<String, ByteBuffer> chunks = fetch(partition, key, manifest, consistentRead);
+		if (chunks.size() < manifest.count && !consistentRead) {
+			// Chunks are written just before the manifest, an eventually consistent read may not see them yet
+			chunks.putAll(fetch(partition, key, manifest, true));
+		}
+		if (chunks.size() < manifest.count)
+			throw new MissingChunksException(key);
+
+		int length = 0;
+		for (final ByteBuffer chunk : chunks.values()) {
+			length += chunk.remaining();
+		}
+		final ByteBuffer payload = ByteBuffer.allocate(length);
+		for (int i = 0; i < manifest.count; i++) {
+			payload.put(chunks.get(chunkKey(key, manifest.id, i)));
+		}
+		return payload.array();
+	}
+
+	private Map<String, ByteBuffer> fetch(final String partition, final String key, final Manifest manifest,
+			final boolean consistentRead) {
+		final String chunkPartition = chunkPartition(partition);
+		final List<String> chunkKeys = new ArrayList<>(manifest.count);
+		for (int i = 0; i < manifest.count; i++) {
+			chunkKeys.add(chunkKey(key, manifest.id, i));
+		}
+		final int batchSize = dynamoDB == null ? 1 : CHUNKS_PER_BATCH_GET;
+		final List<List<Item>> batches = BatchRequests.executeChunks(executor,
+				BatchRequests.partition(chunkKeys, batchSize), batch -> {
+					if (dynamoDB == null) {
+						final Item item = table.getItem(new GetItemSpec() //
+								.withPrimaryKey(attributeNameKeyspace, chunkPartition, attributeNameKey,
+										batch.get(0)) //
+								.withConsistentRead(consistentRead));
+						return item == null ? Collections.<Item> emptyList() : Collections.singletonList(item);
+					}
+					final TableKeysAndAttributes keysAndAttributes = new TableKeysAndAttributes(table.getTableName());
+					for (final String chunkKey : batch) {
+						keysAndAttributes.addHashAndRangePrimaryKey(attributeNameKeyspace, chunkPartition,
+								attributeNameKey, chunkKey);
+					}
+					keysAndAttributes.withConsistentRead(consistentRead);
+					return BatchRequests.batchGetItems(dynamoDB, keysAndAttributes);
+				});
+
+		final Map<String, ByteBuffer> chunks = new HashMap<>();
+		for (final List<Item> items : batches) {
+			for (final Item item : items) {
+				chunks.put(item.getString(attributeNameKey), item.getByteBuffer(attributeNameValue));
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Store bytes as chunks, to be referenced by a manifest written afterwards
+	 * 
+	 * @param partition
+	 *            Partition value of the key
+	 * @param key
+	 *            Key
+	 * @param payload
+	 *            Bytes to store
+	 * @param encoded
+	 *            Whether the bytes are {@link ValueCodec} output
+	 * @param chunkBytes
+	 *            Maximum size of a chunk, at most {@link #MAX_CHUNK_BYTES}
+	 * @return {@link Manifest} of the written chunks
+	 * @since 0.2
+	 */
+	Manifest write(final String partition, final String key, final byte[] payload, final boolean encoded,
+			final int chunkBytes) {
+		final String chunkPartition = chunkPartition(partition);
+		final Manifest manifest = new Manifest(UUID.randomUUID().toString(),
+				(payload.length + chunkBytes - 1) / chunkBytes, encoded);
+		final long created = clock.getAsLong();
+		final List<Item> chunks = new ArrayList<>(manifest.count);
+		for (int i = 0; i < manifest.count; i++) {
+			final int offset = i * chunkBytes;
+			chunks.add(new Item() //
+					.withPrimaryKey(attributeNameKeyspace, chunkPartition, attributeNameKey,
+							chunkKey(key, manifest.id, i)) //
+					.withBinary(attributeNameValue,
+							ByteBuffer.wrap(payload, offset, Math.min(chunkBytes, payload.length - offset)).slice()) //
+					.withLong(ATTRIBUTE_CHUNK_CREATED, created));
+		}
+
+		final List<List<Item>> batches = new ArrayList<>();
+		final int batchSize = dynamoDB == null ? 1 : DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS;
+		for (int i = 0; i < chunks.size(); i += batchSize) {
+			batches.add(chunks.subList(i, Math.min(i + batchSize, chunks.size())));
+		}
+		BatchRequests.executeChunks(executor, batches, batch -> {
+			if (dynamoDB == null) {
+				table.putItem(batch.get(0));
+				return null;
+			}
+			final TableWriteItems writeItems = new TableWriteItems(table.getTableName());
+			for (final Item chunk : batch) {
+				writeItems.addItemToPut(chunk);
+			}
+			return BatchRequests.batchWriteChunk(dynamoDB, writeItems);
+		});
+		return manifest;
+	}
+
+	/**
+	 * Get the partition value holding the chunks of a keyspace partition
+	 * 
+	 * @param partition
+	 *            Partition value of the keyspace, or of one of its shards
+	 * @return Chunk partition value
+	 * @since 0.2
+	 */
+	static String chunkPartition(final String partition) {
+		return partition + "#chunks";
+	}
+
+	private static String chunkKey(final String key, final String chunkId, final int index) {
+		return key + '#' + chunkId + '#' + index;
+	}
+
+	/**
+	 * Reference to the chunks of a value, stored in the item of its key
+	 * 
+	 * @since 0.2
+	 */
+	static final class Manifest {
+
+		/**
+		 * Read the manifest of an item
+		 * 
+		 * @param item
+		 *            {@link Item} of a key
+		 * @return {@link Manifest}, null if the item holds its value itself
+		 * @since 0.2
+		 */
+		static Manifest of(final Item item) {
+			if (!item.isPresent(ATTRIBUTE_CHUNK_ID)) {
+				return null;
+			}
+			return new Manifest(item.getString(ATTRIBUTE_CHUNK_ID), item.getInt(ATTRIBUTE_CHUNKS),
+					item.isPresent(ATTRIBUTE_CHUNK_ENCODED) && item.getBoolean(ATTRIBUTE_CHUNK_ENCODED));
+		}
+
+		/**
+		 * Get the updates clearing a manifest, for an update storing the value itself
+		 * 
+		 * @return {@link AttributeUpdate}s removing the manifest attributes
+		 * @since 0.2
+		 */
+		static List<AttributeUpdate> removals() {
+			final List<AttributeUpdate> updates = new ArrayList<>(3);
+			updates.add(new AttributeUpdate(ATTRIBUTE_CHUNKS).delete());
+			updates.add(new AttributeUpdate(ATTRIBUTE_CHUNK_ID).delete());
+			updates.add(new AttributeUpdate(ATTRIBUTE_CHUNK_ENCODED).delete());
+			return updates;
+		}
+
+		private final String id;
+		private final int count;
+		private final boolean encoded;
+
+		private Manifest(final String id, final int count, final boolean encoded) {
+			this.id = id;
+			this.count = count;
+			this.encoded = encoded;
+		}
+
+		/**
+		 * Add the manifest attributes to an item
+		 * 
+		 * @param item
+		 *            {@link Item} of the key, without a value
+		 * @return The item
+		 * @since 0.2
+		 */
+		Item applyTo(final Item item) {
+			return item //
+					.withInt(ATTRIBUTE_CHUNKS, count) //
+					.withString(ATTRIBUTE_CHUNK_ID, id) //
+					.withBoolean(ATTRIBUTE_CHUNK_ENCODED, encoded);
+		}
+
+		/**
+		 * Whether the chunks hold {@link ValueCodec} output
+		 * 
+		 * @return true if encoded, false if UTF-8
+		 * @since 0.2
+		 */
+		boolean isEncoded() {
+			return encoded;
+		}
+
+		/**
+		 * Get the updates making an item this manifest
+		 * 
+		 * @param attributeNameValue
+		 *            Name of the value attribute, removed
+		 * @return {@link AttributeUpdate}s
+		 * @since 0.2
+		 */
+		List<AttributeUpdate> updates(final String attributeNameValue) {
+			final List<AttributeUpdate> updates = new ArrayList<>(4);
+			updates.add(new AttributeUpdate(attributeNameValue).delete());
+			updates.add(new AttributeUpdate(ATTRIBUTE_CHUNKS).put(count));
+			updates.add(new AttributeUpdate(ATTRIBUTE_CHUNK_ID).put(id));
+			updates.add(new AttributeUpdate(ATTRIBUTE_CHUNK_ENCODED).put(encoded));
+			return updates;
+		}
+	}
+
+	/**
+	 * Thrown when a chunk referenced by a manifest does not exist
+	 * 
+	 * @since 0.2
+	 */
+	static final class MissingChunksException extends IllegalStateException {
+
+		private static final long serialVersionUID = 1L;
+
+		MissingChunksException(final String key) {
+			super("Chunks of key " + key + " are missing");
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.Expected;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PutItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.Manifest;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.MissingChunksException;
+
+/**
+ * Writes the values of a keyspace with value chunking enabled, see
+ * {@link DynamoDbAdapter.Builder#withValueChunking(int)}
+ * <p>
+ * Values larger than the chunk size are written to the {@link ChunkedValueStore} before the item referencing them,
+ * and every write returns the previous item, so the chunks it referenced are deleted once it no longer does. Chunks
+ * that could not be deleted are left for {@link DynamoDbKeyspace#collectGarbage(java.time.Duration)}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class ChunkedWrites {
+
+	private final Table table;
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final String attributeNameValue;
+	private final String attributeNameVersion;
+	private final ChunkedValueStore chunkStore;
+	private final int chunkBytes;
+	private final KeyspaceExpressions expressions;
+	private final KeyspaceItems items;
+	private final WriteTracker writes;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace written, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} with value chunking enabled, not null
+	 * @throws IllegalArgumentException
+	 *             if value chunking is not enabled
+	 * @since 0.2
+	 */
+	ChunkedWrites(final String keyspaceName, final DynamoDbAdapter adapter) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		if (adapter.getValueChunkBytes() <= 0) {
+			throw new IllegalArgumentException("Value chunking must be enabled");
+		}
+		this.table = adapter.getTable();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.attributeNameVersion = adapter.getAttributeNameVersion();
+		this.chunkStore = adapter.getChunkStore();
+		this.chunkBytes = adapter.getValueChunkBytes();
+		this.expressions = adapter.getExpressions();
+		this.items = new KeyspaceItems(keyspaceName, adapter);
+		this.writes = new WriteTracker(keyspaceName, adapter);
+	}
+
+	/**
+	 * Check whether a value may be larger than the chunk size, before encoding it
+	 * 
+	 * @param value
+	 *            Value, not null
+	 * @return false if the value surely fits a single item
+	 * @since 0.2
+	 */
+	boolean mayNeedChunks(final String value) {
+		// A char encodes to at most 3 UTF-8 bytes
+		return value.length() * 3L > chunkBytes;
+	}
+
+	/**
+	 * Put the value of a key
+	 * 
+	 * @param key
+	 *            Key
+	 * @param value
+	 *            Value
+	 * @param condition
+	 *            Condition expression on {@value KeyspaceExpressions#NAME_KEYSPACE}, the keyspace attribute, may be
+	 *            null
+	 * @return true if stored, false if the condition failed
+	 * @since 0.2
+	 */
+	boolean put(final String key, final String value, final String condition) {
+		if (expressions.isMonotonic()) {
+			// Only an update can add to the version
+			try {
+				deleteChunks(key, update(key, value,
+						condition == null ? null : new Expected(attributeNameKeyspace).notExist()));
+				return true;
+			} catch (final ConditionalCheckFailedException e) {
+				return false;
+			} finally {
+				writes.written(key);
+			}
+		}
+		final Object stored = items.encodeValue(value);
+		final Manifest manifest = writeChunks(key, stored);
+		final Item item = new Item() //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withLong(attributeNameVersion, value.hashCode());
+		if (manifest == null) {
+			item.with(attributeNameValue, stored);
+		} else {
+			manifest.applyTo(item);
+		}
+		final PutItemSpec spec = new PutItemSpec() //
+				.withItem(item) //
+				.withReturnValues(ReturnValue.ALL_OLD);
+		if (condition != null) {
+			spec.withConditionExpression(condition) //
+					.withNameMap(expressions.getKeyspaceNames());
+		}
+
+		try {
+			final PutItemOutcome outcome = table.putItem(spec);
+			deleteChunks(key, outcome.getItem());
+			return true;
+		} catch (final ConditionalCheckFailedException e) {
+			discardChunks(key, manifest);
+			return false;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Set the value of a key if its version matches
+	 * 
+	 * @param key
+	 *            Key
+	 * @param value
+	 *            Value
+	 * @param version
+	 *            Expected version
+	 * @return true if stored, false if the version did not match
+	 * @since 0.2
+	 */
+	boolean checkAndSet(final String key, final String value, final long version) {
+		try {
+			deleteChunks(key, update(key, value, new Expected(attributeNameVersion).eq(version)));
+			return true;
+		} catch (final ConditionalCheckFailedException e) {
+			return false;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Replace the value of an existing key
+	 * 
+	 * @param key
+	 *            Key
+	 * @param value
+	 *            Value
+	 * @return true if the value changed, false if it did not or the key does not exist
+	 * @since 0.2
+	 */
+	boolean replace(final String key, final String value) {
+		try {
+			final Item old = update(key, value, new Expected(attributeNameKey).exists());
+			if (old == null) {
+				return true;
+			}
+			try {
+				return !Objects.equals(items.decodeValue(old), value);
+			} catch (final MissingChunksException e) {
+				// Deleted by a concurrent write, so the value did change
+				return true;
+			} finally {
+				deleteChunks(key, old);
+			}
+		} catch (final ConditionalCheckFailedException e) {
+			return false;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Delete a key and the chunks of its value
+	 * 
+	 * @param key
+	 *            Key
+	 * @return true if the key existed
+	 * @since 0.2
+	 */
+	boolean delete(final String key) {
+		// The previous item names the chunks to delete
+		final DeleteItemSpec spec = new DeleteItemSpec() //
+				.withReturnValues(ReturnValue.ALL_OLD) //
+				.withPrimaryKey(items.buildPrimaryKey(key));
+		try {
+			final DeleteItemOutcome outcome = table.deleteItem(spec);
+			deleteChunks(key, outcome.getItem());
+			return outcome.getItem() != null;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Delete the chunks an item referenced, once the item no longer does
+	 * 
+	 * @param key
+	 *            Key
+	 * @param old
+	 *            Previous {@link Item} of the key, may be null
+	 * @since 0.2
+	 */
+	void deleteChunks(final String key, final Item old) {
+		if (old != null) {
+			discardChunks(key, Manifest.of(old));
+		}
+	}
+
+	/**
+	 * Write the chunks of a value too large for a single item
+	 * 
+	 * @param key
+	 *            Key
+	 * @param stored
+	 *            Value as returned by {@link KeyspaceItems#encodeValue(String)}
+	 * @return {@link Manifest} of the written chunks, null if the value fits the item of the key
+	 * @since 0.2
+	 */
+	private Manifest writeChunks(final String key, final Object stored) {
+		final byte[] payload;
+		if (stored instanceof byte[]) {
+			payload = (byte[]) stored;
+		} else {
+			final String value = (String) stored;
+			if (!mayNeedChunks(value)) {
+				return null;
+			}
+			payload = value.getBytes(StandardCharsets.UTF_8);
+		}
+		if (payload.length <= chunkBytes) {
+			return null;
+		}
+		return chunkStore.write(items.partitionValue(key), key, payload, stored instanceof byte[], chunkBytes);
+	}
+
+	private void discardChunks(final String key, final Manifest manifest) {
+		if (manifest == null) {
+			return;
+		}
+		try {
+			chunkStore.delete(items.partitionValue(key), key, manifest);
+		} catch (final AmazonClientException e) {
+			// Left for collectGarbage
+		}
+	}
+
+	/**
+	 * Update the value of a key, leaving the chunks of the previous value in place
+	 * 
+	 * @param key
+	 *            Key
+	 * @param value
+	 *            Value
+	 * @param expected
+	 *            {@link Expected} condition of the update, may be null
+	 * @return Previous {@link Item} of the key
+	 * @throws ConditionalCheckFailedException
+	 *             if the condition failed
+	 * @since 0.2
+	 */
+	private Item update(final String key, final String value, final Expected expected) {
+		final Object stored = items.encodeValue(value);
+		final Manifest manifest = writeChunks(key, stored);
+		final List<AttributeUpdate> updates;
+		if (manifest == null) {
+			updates = Manifest.removals();
+			updates.add(new AttributeUpdate(attributeNameValue).put(stored));
+		} else {
+			updates = manifest.updates(attributeNameValue);
+		}
+		final AttributeUpdate version = new AttributeUpdate(attributeNameVersion);
+		updates.add(expressions.isMonotonic() ? version.addNumeric(1) : version.put(value.hashCode()));
+		final UpdateItemSpec spec = new UpdateItemSpec() //
+				.withReturnValues(ReturnValue.ALL_OLD) //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withAttributeUpdate(updates.toArray(new AttributeUpdate[updates.size()]));
+		if (expected != null) {
+			spec.withExpected(expected);
+		}
+
+		try {
+			return table.updateItem(spec).getItem();
+		} catch (final ConditionalCheckFailedException e) {
+			discardChunks(key, manifest);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link ValueCodec} compressing large values with DEFLATE
+ * <p>
+ * Values of at least the threshold size in UTF-8 bytes are compressed, unless compression does not make them smaller.
+ * Stored bytes start with a format marker byte and the uncompressed length, followed by zlib data. Compression ratio
+ * and thread CPU time are counted, to help tune the threshold.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class CompressingValueCodec implements ValueCodec {
+
+	/**
+	 * Default minimum size of a value to compress, in UTF-8 bytes
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_THRESHOLD_BYTES = 4096;
+
+	/**
+	 * Format marker of zlib compressed values
+	 */
+	static final byte FORMAT_ZLIB = 1;
+
+	private static final int HEADER_BYTES = 5;
+
+	/**
+	 * Create codec compressing values of at least {@link #DEFAULT_THRESHOLD_BYTES}
+	 * 
+	 * @return new {@link CompressingValueCodec} instance
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static CompressingValueCodec create() {
+		return create(DEFAULT_THRESHOLD_BYTES);
+	}
+
+	/**
+	 * Create codec compressing values of at least the given size
+	 * 
+	 * @param thresholdBytes
+	 *            Minimum size of a value to compress, in UTF-8 bytes, positive
+	 * @return new {@link CompressingValueCodec} instance
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static CompressingValueCodec create(final int thresholdBytes) {
+		return new CompressingValueCodec(thresholdBytes, Deflater.DEFAULT_COMPRESSION, cpuTicker());
+	}
+
+	private static LongSupplier cpuTicker() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads.isCurrentThreadCpuTimeSupported()) {
+			return threads::getCurrentThreadCpuTime;
+		}
+		return System::nanoTime;
+	}
+
+	private final int thresholdBytes;
+	private final int level;
+	private final LongSupplier ticker;
+	private final LongAdder compressed = new LongAdder();
+	private final LongAdder uncompressedBytes = new LongAdder();
+	private final LongAdder compressedBytes = new LongAdder();
+	private final LongAdder compressNanos = new LongAdder();
+	private final LongAdder decompressed = new LongAdder();
+	private final LongAdder decompressNanos = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param thresholdBytes
+	 *            Minimum size of a value to compress, in UTF-8 bytes, positive
+	 * @param level
+	 *            {@link Deflater} compression level
+	 * @param ticker
+	 *            Source of the CPU time of the current thread, in nanoseconds, not null
+	 * @since 0.2
+	 */
+	CompressingValueCodec(final int thresholdBytes, final int level, final LongSupplier ticker) {
+		if (thresholdBytes < 1)
+			throw new IllegalArgumentException("ThresholdBytes must be positive");
+		this.thresholdBytes = thresholdBytes;
+		this.level = level;
+		this.ticker = Objects.requireNonNull(ticker, "Ticker must not be null");
+	}
+
+	@Override
+	public String decode(final byte[] encoded) {
+		Objects.requireNonNull(encoded, "Encoded must not be null");
+		if (encoded.length < HEADER_BYTES || encoded[0] != FORMAT_ZLIB)
+			throw new IllegalStateException("Unknown value format");
+		final long start = ticker.getAsLong();
+		final int length = ByteBuffer.wrap(encoded, 1, 4).getInt();
+		if (length < 0)
+			throw new IllegalStateException("Corrupt compressed value");
+
+		final byte[] bytes = new byte[length];
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(encoded, HEADER_BYTES, encoded.length - HEADER_BYTES);
+			int offset = 0;
+			while (offset < length) {
+				final int read = inflater.inflate(bytes, offset, length - offset);
+				if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					throw new IllegalStateException("Corrupt compressed value");
+				offset += read;
+			}
+		} catch (final DataFormatException e) {
+			throw new IllegalStateException("Corrupt compressed value", e);
+		} finally {
+			inflater.end();
+		}
+		final String value = new String(bytes, StandardCharsets.UTF_8);
+		decompressNanos.add(ticker.getAsLong() - start);
+		decompressed.increment();
+		return value;
+	}
+
+	@Override
+	public byte[] encode(final String value) {
+		Objects.requireNonNull(value, "Value must not be null");
+		// A char encodes to at most 3 UTF-8 bytes, skip encoding values that are certainly small
+		if (value.length() * 3L < thresholdBytes) {
+			skipped.increment();
+			return null;
+		}
+		final long start = ticker.getAsLong();
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length < thresholdBytes) {
+			skipped.increment();
+			return null;
+		}
+
+		final byte[] buffer = new byte[HEADER_BYTES + bytes.length];
+		final Deflater deflater = new Deflater(level);
+		int length = HEADER_BYTES;
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			while (!deflater.finished() && length < buffer.length) {
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+			if (!deflater.finished()) {
+				// Not smaller than the value itself
+				compressNanos.add(ticker.getAsLong() - start);
+				skipped.increment();
+				return null;
+			}
+		} finally {
+			deflater.end();
+		}
+		buffer[0] = FORMAT_ZLIB;
+		ByteBuffer.wrap(buffer, 1, 4).putInt(bytes.length);
+
+		compressNanos.add(ticker.getAsLong() - start);
+		compressed.increment();
+		uncompressedBytes.add(bytes.length);
+		compressedBytes.add(length);
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * Get the average CPU time spent compressing a value, including values that did not compress well enough
+	 * 
+	 * @return Average nanoseconds per compressed value, 0 if none were compressed
+	 * @since 0.2
+	 */
+	public long getAverageCompressNanos() {
+		final long count = compressed.sum();
+		return count == 0 ? 0 : compressNanos.sum() / count;
+	}
+
+	/**
+	 * Get the average CPU time spent decompressing a value
+	 * 
+	 * @return Average nanoseconds per decompressed value, 0 if none were decompressed
+	 * @since 0.2
+	 */
+	public long getAverageDecompressNanos() {
+		final long count = decompressed.sum();
+		return count == 0 ? 0 : decompressNanos.sum() / count;
+	}
+
+	/**
+	 * Get the number of values stored compressed
+	 * 
+	 * @return Compressed value count
+	 * @since 0.2
+	 */
+	public long getCompressedCount() {
+		return compressed.sum();
+	}
+
+	/**
+	 * Get the size of compressed values relative to their uncompressed size
+	 * 
+	 * @return Compressed bytes divided by uncompressed bytes, 1 if no value was compressed
+	 * @since 0.2
+	 */
+	public double getCompressionRatio() {
+		final long uncompressed = uncompressedBytes.sum();
+		return uncompressed == 0 ? 1d : (double) compressedBytes.sum() / uncompressed;
+	}
+
+	/**
+	 * Get the number of values decompressed
+	 * 
+	 * @return Decompressed value count
+	 * @since 0.2
+	 */
+	public long getDecompressedCount() {
+		return decompressed.sum();
+	}
+
+	/**
+	 * Get the number of values stored uncompressed, because they were below the threshold or did not get smaller
+	 * 
+	 * @return Uncompressed value count
+	 * @since 0.2
+	 */
+	public long getSkippedCount() {
+		return skipped.sum();
+	}
+
+	/**
+	 * Get the minimum size of a value to compress
+	 * 
+	 * @return Threshold in UTF-8 bytes
+	 * @since 0.2
+	 */
+	public int getThresholdBytes() {
+		return thresholdBytes;
+	}
+}
@@ -0,0 +1,191 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the retries of {@link DynamoDbKeyspace#compute(String, java.util.function.Function, ComputeConfig)}
+ * 
+ * @since 0.2
+ */
+public final class ComputeConfig {
+
+	/**
+	 * Default maximum number of attempts, including the first
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+	/**
+	 * Default delay ceiling of the first retry
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(10);
+
+	/**
+	 * Default upper bound of any retry delay
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(1);
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final int maxAttempts;
+
+	private final Duration baseDelay;
+
+	private final Duration maxDelay;
+
+	private final Duration timeout;
+
+	private ComputeConfig(final Builder builder) {
+		this.maxAttempts = builder.maxAttempts;
+		this.baseDelay = builder.baseDelay;
+		this.maxDelay = builder.maxDelay;
+		this.timeout = builder.timeout;
+	}
+
+	/**
+	 * Get the delay ceiling of the first retry, doubling with each further retry
+	 * 
+	 * @return Base delay
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getBaseDelay() {
+		return baseDelay;
+	}
+
+	/**
+	 * Get the maximum number of attempts
+	 * 
+	 * @return Maximum number of attempts, including the first
+	 * @since 0.2
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Get the upper bound of any retry delay
+	 * 
+	 * @return Maximum delay
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Get the time after which no further attempt is started
+	 * 
+	 * @return Optional timeout, {@link Optional#empty()} if only the number of attempts is limited
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<Duration> getTimeout() {
+		return Optional.ofNullable(timeout);
+	}
+
+	/**
+	 * Builder for {@link ComputeConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+		private Duration baseDelay = DEFAULT_BASE_DELAY;
+
+		private Duration maxDelay = DEFAULT_MAX_DELAY;
+
+		private Duration timeout;
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link ComputeConfig}
+		 * 
+		 * @return new {@link ComputeConfig} instance, not null
+		 * @since 0.2
+		 */
+		@Nonnull
+		public ComputeConfig build() {
+			return new ComputeConfig(this);
+		}
+
+		/**
+		 * Set the bounds of the jittered exponential delay between attempts. Each delay is random, between 0 and the
+		 * base delay doubled for each retry before, at most the maximum delay.
+		 * 
+		 * @param baseDelay
+		 *            Delay ceiling of the first retry, not negative
+		 * @param maxDelay
+		 *            Upper bound of any delay, at least the base delay
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withBackoff(@Nonnull final Duration baseDelay, @Nonnull final Duration maxDelay) {
+			Objects.requireNonNull(baseDelay, "BaseDelay must not be null");
+			Objects.requireNonNull(maxDelay, "MaxDelay must not be null");
+			if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0)
+				throw new IllegalArgumentException("Invalid delay bounds: " + baseDelay + ", " + maxDelay);
+			this.baseDelay = baseDelay;
+			this.maxDelay = maxDelay;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of attempts
+		 * 
+		 * @param maxAttempts
+		 *            Maximum number of attempts, including the first, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxAttempts(final int maxAttempts) {
+			if (maxAttempts < 1)
+				throw new IllegalArgumentException("MaxAttempts must be positive");
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Set the time after which no further attempt is started, in addition to the maximum number of attempts.
+		 * Delays are shortened so they do not exceed it.
+		 * 
+		 * @param timeout
+		 *            Timeout, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withTimeout(@Nonnull final Duration timeout) {
+			Objects.requireNonNull(timeout, "Timeout must not be null");
+			if (timeout.isNegative() || timeout.isZero())
+				throw new IllegalArgumentException("Timeout must be positive");
+			this.timeout = timeout;
+			return this;
+		}
+	}
+}
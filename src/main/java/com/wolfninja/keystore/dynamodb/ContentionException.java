@@ -0,0 +1,40 @@
+package com.wolfninja.keystore.dynamodb;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Thrown by {@link DynamoDbKeyspace#compute(String, java.util.function.Function, ComputeConfig)} once concurrent
+ * writes of the key made every attempt fail, within the limits of its {@link ComputeConfig}
+ * 
+ * @since 0.2
+ */
+public class ContentionException extends AmazonClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int attempts;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param message
+	 *            Detail message
+	 * @param attempts
+	 *            Number of attempts made
+	 * @since 0.2
+	 */
+	public ContentionException(final String message, final int attempts) {
+		super(message);
+		this.attempts = attempts;
+	}
+
+	/**
+	 * Get the number of attempts made before giving up
+	 * 
+	 * @return Attempt count
+	 * @since 0.2
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+}
@@ -0,0 +1,195 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Combines the increments of each key of a {@link DynamoDbKeyspace} made within a flush interval into a single
+ * {@link DynamoDbKeyspace#increment(String, long)} request
+ * <p>
+ * Increments are buffered in memory until the next flush, which sends the sum of the deltas of each key, concurrently
+ * for different keys. The future of each increment completes with the counter value right after its own delta, as if
+ * the deltas of a key had been sent one by one in the order they were buffered; values of other processes' increments
+ * sent meanwhile are not observed in between. Missing keys count from 0. A failed flush completes the futures of its
+ * deltas exceptionally; the deltas are not retried. Futures complete on the executor of the adapter, rather than the
+ * flushing thread. Deltas still buffered when the process exits are lost, unless the adapter was closed with
+ * {@link DynamoDbAdapter#close()} or flushed with {@link DynamoDbAdapter#flush()} before.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public class CounterBatcher {
+
+	private final DynamoDbKeyspace delegate;
+	private final Executor executor;
+	private final ConcurrentMap<String, Deltas> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Create new counter batcher
+	 * 
+	 * @param delegate
+	 *            {@link DynamoDbKeyspace} to increment the counters of
+	 * @param executor
+	 *            {@link Executor} running the requests of different keys, and completing the futures of the deltas
+	 * @since 0.2
+	 */
+	protected CounterBatcher(@Nonnull final DynamoDbKeyspace delegate, @Nonnull final Executor executor) {
+		Objects.requireNonNull(delegate, "Delegate must not be null");
+		Objects.requireNonNull(executor, "Executor must not be null");
+		this.delegate = delegate;
+		this.executor = executor;
+	}
+
+	/**
+	 * Buffer a subtraction from the numeric value of a key
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param delta
+	 *            Amount to subtract
+	 * @return Future completing with the value right after this subtraction, once flushed
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Long> decrement(@Nonnull final String key, final long delta) {
+		return increment(key, Math.negateExact(delta));
+	}
+
+	/**
+	 * Send the buffered deltas of every key, waiting for the requests to complete
+	 * 
+	 * @throws RuntimeException
+	 *             the first failure, once every key was sent
+	 * @since 0.2
+	 */
+	public void flush() {
+		BatchRequests.executeChunks(executor, BatchRequests.partition(pending.keySet(), 1),
+				chunk -> flushKey(chunk.get(0)));
+	}
+
+	/**
+	 * Get the keyspace the counters are stored in
+	 * 
+	 * @return {@link DynamoDbKeyspace}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public DynamoDbKeyspace getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Get the number of keys with buffered deltas
+	 * 
+	 * @return Key count
+	 * @since 0.2
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Buffer an addition to the numeric value of a key
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param delta
+	 *            Amount to add, may be negative
+	 * @return Future completing with the value right after this addition, once flushed
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CompletableFuture<Long> increment(@Nonnull final String key, final long delta) {
+		Objects.requireNonNull(key, "Key must not be null");
+		while (true) {
+			final CompletableFuture<Long> future = pending.computeIfAbsent(key, k -> new Deltas()).add(delta);
+			if (future != null) {
+				return future;
+			}
+			// Taken by a flush meanwhile, which removed it already
+		}
+	}
+
+	private Void flushKey(final String key) {
+		final Deltas deltas = pending.remove(key);
+		if (deltas == null) {
+			return null;
+		}
+		final long total = deltas.close();
+		final long base;
+		try {
+			base = delegate.increment(key, total) - total;
+		} catch (final RuntimeException e) {
+			completeOnExecutor(() -> deltas.fail(e));
+			throw e;
+		}
+		completeOnExecutor(() -> deltas.complete(base));
+		return null;
+	}
+
+	/**
+	 * Complete the futures of deltas on the executor, so that callbacks chained on them do not run on the flushing
+	 * thread, often the scheduler thread of the adapter
+	 * 
+	 * @param completion
+	 *            Completes the futures
+	 * @since 0.2
+	 */
+	private void completeOnExecutor(final Runnable completion) {
+		try {
+			executor.execute(completion);
+		} catch (final RejectedExecutionException e) {
+			// Shut down executor, the futures still need to complete
+			completion.run();
+		}
+	}
+
+	/**
+	 * Deltas of a key buffered until a flush takes them
+	 */
+	private static final class Deltas {
+		private final List<CompletableFuture<Long>> futures = new ArrayList<>();
+		/**
+		 * Sum of the deltas up to and including each future's own
+		 */
+		private final List<Long> sums = new ArrayList<>();
+		private long total;
+		private boolean closed;
+
+		synchronized CompletableFuture<Long> add(final long delta) {
+			if (closed) {
+				return null;
+			}
+			total = Math.addExact(total, delta);
+			final CompletableFuture<Long> future = new CompletableFuture<>();
+			futures.add(future);
+			sums.add(total);
+			return future;
+		}
+
+		synchronized long close() {
+			closed = true;
+			return total;
+		}
+
+		void complete(final long base) {
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).complete(base + sums.get(i));
+			}
+		}
+
+		void fail(final Throwable cause) {
+			for (final CompletableFuture<Long> future : futures) {
+				future.completeExceptionally(cause);
+			}
+		}
+	}
+}
@@ -1,18 +1,41 @@
 package com.wolfninja.keystore.dynamodb;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.amazonaws.util.Throwables;
 import com.wolfninja.keystore.api.KeyValueStoreAdapter;
@@ -20,10 +43,14 @@ import com.wolfninja.keystore.api.Keyspace;
 
 /**
  * DynamoDB implementation of the {@link KeyValueStoreAdapter}
+ * <p>
+ * Adapters built with write-behind keyspaces, counter batching, capacity tuning, cache invalidation or key filters run
+ * background tasks on threads of their own, stopped by {@link #close()}.
+ * </p>
  * 
  * @since 0.1
  */
-public class DynamoDbAdapter implements KeyValueStoreAdapter {
+public class DynamoDbAdapter implements KeyValueStoreAdapter, AutoCloseable {
 
 	/**
 	 * Default keyspace attribute name
@@ -53,6 +80,54 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 	 */
 	public static final String DEFAULT_ATTRIBUTE_VERSION = "version";
 
+	/**
+	 * Number of threads of the executor an adapter creates when none is configured, see
+	 * {@link Builder#withExecutor(Executor)}
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_EXECUTOR_THREADS = 16;
+
+	/**
+	 * Default maximum number of asynchronous requests in flight per adapter
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 256;
+
+	/**
+	 * Default time a written key is read with strong consistency under {@link ReadConsistency#SESSION}
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_SESSION_WINDOW = Duration.ofSeconds(2);
+
+	/**
+	 * Default maximum size of a value stored in a single item when value chunking is enabled, in bytes
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_VALUE_CHUNK_BYTES = 350 * 1024;
+
+	/**
+	 * Maximum number of recently written keys tracked for {@link ReadConsistency#SESSION} reads
+	 */
+	private static final int MAX_SESSION_KEYS = 100_000;
+
+	/**
+	 * Create a new {@link Builder} for configuring a {@link DynamoDbAdapter} backed by the given {@link Table}
+	 * 
+	 * @param table
+	 *            {@link Table} to use, not null
+	 * @return new {@link Builder} instance, using default attribute names, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder(@Nonnull final Table table) {
+		Objects.requireNonNull(table, "Table must not be null");
+		return new Builder(table);
+	}
+
 	/**
 	 * Create a new {@link DynamoDbAdapter} instance using an existing {@link Table} and default attribute name <br>
 	 * <br>
@@ -68,8 +143,7 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 	@Nonnull
 	public static DynamoDbAdapter create(@Nonnull final Table table) {
 		Objects.requireNonNull(table, "Table must not be null");
-		return new DynamoDbAdapter(table, DEFAULT_ATTRIBUTE_KEYSPACE, DEFAULT_ATTRIBUTE_KEY, DEFAULT_ATTRIBUTE_VALUE,
-				DEFAULT_ATTRIBUTE_VERSION);
+		return builder(table).build();
 	}
 
 	/**
@@ -97,8 +171,10 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 		Objects.requireNonNull(attributeNameKey, "AttributeNameKey must not be null");
 		Objects.requireNonNull(attributeNameValue, "AttributeNameValue must not be null");
 		Objects.requireNonNull(attributeNameVersion, "AttributeNameVersion must not be null");
-		return new DynamoDbAdapter(table, attributeNameKeyspace, attributeNameKey, attributeNameValue,
-				attributeNameVersion);
+		return builder(table) //
+				.withAttributeNames(attributeNameKeyspace, attributeNameKey, attributeNameValue,
+						attributeNameVersion) //
+				.build();
 	}
 
 	/**
@@ -148,29 +224,97 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 	@Nonnull
 	public static Table createNewTable(@Nonnull final DynamoDB dynamoDB, @Nonnull final String tableName,
 			@Nonnull final String attributeNameKeyspace, @Nonnull final String attributeNameKey) {
+		return createNewTable(dynamoDB, tableName, attributeNameKeyspace, attributeNameKey,
+				TableProvisioning.builder().build());
+	}
+
+	/**
+	 * Helper method to create a new DynamoDB {@link Table}, using custom attribute names and provisioning
+	 * <p>
+	 * <b>Note, this method blocks until the table is created + active in AWS</b>
+	 * </p>
+	 * 
+	 * @param dynamoDB
+	 *            {@link DynamoDB} instance, configured with credentials and target AWS region, not null
+	 * @param tableName
+	 *            Name of table to create, not null
+	 * @param attributeNameKeyspace
+	 *            Name of keyspace attribute, not null. Part of the primary key. String attribute.
+	 * @param attributeNameKey
+	 *            Name of the key attribute, not null. Part of the primary key. String attribute.
+	 * @param provisioning
+	 *            {@link TableProvisioning} with the throughput, indexes and stream of the table, not null
+	 * @return Created + active {@link Table} instance, not null
+	 * @see #createNewTable(DynamoDB, String, String, String)
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Table createNewTable(@Nonnull final DynamoDB dynamoDB, @Nonnull final String tableName,
+			@Nonnull final String attributeNameKeyspace, @Nonnull final String attributeNameKey,
+			@Nonnull final TableProvisioning provisioning) {
 		Objects.requireNonNull(dynamoDB, "DynamoDB must not be null");
+		final CreateTableRequest request = createTableRequest(tableName, attributeNameKeyspace, attributeNameKey,
+				provisioning);
+
+		final Table table = dynamoDB.createTable(request);
+		try {
+			table.waitForActive();
+		} catch (final InterruptedException e) {
+			throw Throwables.failure(e);
+		}
+		return table;
+	}
+
+	/**
+	 * Build the request creating a table
+	 * 
+	 * @param tableName
+	 *            Name of table to create, not null
+	 * @param attributeNameKeyspace
+	 *            Name of keyspace attribute, not null
+	 * @param attributeNameKey
+	 *            Name of the key attribute, not null
+	 * @param provisioning
+	 *            {@link TableProvisioning} of the table, not null
+	 * @return new {@link CreateTableRequest}
+	 * @since 0.2
+	 */
+	static CreateTableRequest createTableRequest(@Nonnull final String tableName,
+			@Nonnull final String attributeNameKeyspace, @Nonnull final String attributeNameKey,
+			@Nonnull final TableProvisioning provisioning) {
 		Objects.requireNonNull(tableName, "TableName must not be null");
 		Objects.requireNonNull(attributeNameKeyspace, "AttributeNameKeyspace must not be null");
 		Objects.requireNonNull(attributeNameKey, "AttributeNameKey must not be null");
+		Objects.requireNonNull(provisioning, "Provisioning must not be null");
+
+		final ProvisionedThroughput throughput = new ProvisionedThroughput(provisioning.getReadCapacityUnits(),
+				provisioning.getWriteCapacityUnits());
+		// DynamoDB rejects an attribute defined twice
+		final Map<String, AttributeDefinition> attributes = new LinkedHashMap<>();
+		attributes.put(attributeNameKeyspace, new AttributeDefinition(attributeNameKeyspace, ScalarAttributeType.S));
+		attributes.put(attributeNameKey, new AttributeDefinition(attributeNameKey, ScalarAttributeType.S));
+		for (final AttributeDefinition attribute : provisioning.getAttributeDefinitions()) {
+			attributes.putIfAbsent(attribute.getAttributeName(), attribute);
+		}
 
 		final CreateTableRequest request = new CreateTableRequest() //
 				.withTableName(tableName) //
-				.withAttributeDefinitions( //
-						new AttributeDefinition(attributeNameKeyspace, ScalarAttributeType.S), //
-						new AttributeDefinition(attributeNameKey, ScalarAttributeType.S) //
-				) //
+				.withAttributeDefinitions(attributes.values()) //
 				.withKeySchema(//
 						new KeySchemaElement(attributeNameKeyspace, KeyType.HASH), //
 						new KeySchemaElement(attributeNameKey, KeyType.RANGE)) //
-				.withProvisionedThroughput(new ProvisionedThroughput(2L, 1L));
-
-		final Table table = dynamoDB.createTable(request);
-		try {
-			table.waitForActive();
-		} catch (final InterruptedException e) {
-			throw Throwables.failure(e);
+				.withProvisionedThroughput(throughput);
+		if (!provisioning.getGlobalSecondaryIndexes().isEmpty()) {
+			final List<GlobalSecondaryIndex> indexes = new ArrayList<>();
+			for (final GlobalSecondaryIndex index : provisioning.getGlobalSecondaryIndexes()) {
+				indexes.add(index.getProvisionedThroughput() != null ? index
+						: index.clone().withProvisionedThroughput(throughput));
+			}
+			request.withGlobalSecondaryIndexes(indexes);
 		}
-		return table;
+		provisioning.getStreamViewType().ifPresent(viewType -> request.withStreamSpecification(
+				new StreamSpecification().withStreamEnabled(true).withStreamViewType(viewType)));
+		return request;
 	}
 
 	/**
@@ -211,6 +355,64 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 
 	private final String attributeNameVersion;
 
+	private final String attributeNameExpiry;
+
+	private final DynamoDB dynamoDB;
+
+	private final Executor executor;
+
+	private final ExecutorService ownedExecutor;
+
+	private final AmazonDynamoDBAsync asyncClient;
+
+	private final InFlightLimiter inFlightLimiter;
+
+	private final KeyspaceCache cache;
+
+	private final CacheInvalidator cacheInvalidator;
+
+	private final ReadConsistency readConsistency;
+
+	private final Map<String, ReadConsistency> keyspaceReadConsistency;
+
+	private final SessionTracker sessionTracker;
+
+	private final Map<String, WriteBehindConfig> writeBehindConfigs;
+
+	private final ConcurrentMap<String, WriteBehindKeyspace> writeBehindKeyspaces = new ConcurrentHashMap<>();
+
+	private final Map<String, Duration> counterBatchIntervals;
+
+	private final ConcurrentMap<String, CounterBatcher> counterBatchers = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService flushScheduler;
+
+	private final Queue<ScheduledFuture<?>> scheduledTasks = new ConcurrentLinkedQueue<>();
+
+	private final Map<String, KeyFilter> keyFilters;
+
+	private final ExecutorService keyFilterExecutor;
+
+	private final ReadCoalescer readCoalescer;
+
+	private final Map<String, Integer> keyspaceShards;
+
+	private final ValueCodec valueCodec;
+
+	private final int valueChunkBytes;
+
+	private final ChunkedValueStore chunkStore;
+
+	private final KeyspaceExpressions expressions;
+
+	private final KeyspaceMetrics metrics;
+
+	private final CapacityLimiter capacityLimiter;
+
+	private final CapacityTuner capacityTuner;
+
+	private final VersionScheme versionScheme;
+
 	/**
 	 * Constructor
 	 * 
@@ -234,6 +436,218 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 		this.attributeNameKey = attributeNameKey;
 		this.attributeNameValue = attributeNameValue;
 		this.attributeNameVersion = attributeNameVersion;
+		this.attributeNameExpiry = null;
+		this.dynamoDB = null;
+		this.ownedExecutor = newRequestPool();
+		this.executor = new RequestExecutor(ownedExecutor);
+		this.asyncClient = null;
+		this.inFlightLimiter = new InFlightLimiter(DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+		this.cache = null;
+		this.cacheInvalidator = null;
+		this.readConsistency = ReadConsistency.STRONG;
+		this.keyspaceReadConsistency = Collections.emptyMap();
+		this.sessionTracker = null;
+		this.writeBehindConfigs = Collections.emptyMap();
+		this.counterBatchIntervals = Collections.emptyMap();
+		this.flushScheduler = null;
+		this.keyFilters = Collections.emptyMap();
+		this.keyFilterExecutor = null;
+		this.readCoalescer = null;
+		this.keyspaceShards = Collections.emptyMap();
+		this.valueCodec = null;
+		this.valueChunkBytes = 0;
+		this.chunkStore = new ChunkedValueStore(this, System::currentTimeMillis);
+		this.versionScheme = VersionScheme.HASH_CODE;
+		this.expressions = new KeyspaceExpressions(this, false);
+		this.metrics = KeyspaceMetrics.NONE;
+		this.capacityLimiter = null;
+		this.capacityTuner = null;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param builder
+	 *            {@link Builder} holding the adapter configuration
+	 * @since 0.2
+	 */
+	protected DynamoDbAdapter(@Nonnull final Builder builder) {
+		Objects.requireNonNull(builder, "Builder must not be null");
+		this.table = builder.table;
+		this.attributeNameKeyspace = builder.attributeNameKeyspace;
+		this.attributeNameKey = builder.attributeNameKey;
+		this.attributeNameValue = builder.attributeNameValue;
+		this.attributeNameVersion = builder.attributeNameVersion;
+		this.attributeNameExpiry = builder.attributeNameExpiry;
+		this.dynamoDB = builder.dynamoDB;
+		this.ownedExecutor = builder.executor == null ? newRequestPool() : null;
+		this.executor = new RequestExecutor(builder.executor == null ? ownedExecutor : builder.executor);
+		this.asyncClient = builder.asyncClient;
+		this.inFlightLimiter = new InFlightLimiter(builder.maxInFlightRequests);
+		this.cache = builder.cacheConfig == null ? null : new KeyspaceCache(builder.cacheConfig);
+		this.readConsistency = builder.readConsistency;
+		this.keyspaceReadConsistency = Collections.unmodifiableMap(new HashMap<>(builder.keyspaceReadConsistency));
+		// Only session reads consult recent writes, so they are not tracked otherwise
+		this.sessionTracker = readConsistency == ReadConsistency.SESSION
+				|| keyspaceReadConsistency.containsValue(ReadConsistency.SESSION)
+						? new SessionTracker(builder.sessionWindow.toNanos(), MAX_SESSION_KEYS, System::nanoTime)
+						: null;
+		this.writeBehindConfigs = Collections.unmodifiableMap(new HashMap<>(builder.writeBehindConfigs));
+		this.counterBatchIntervals = Collections.unmodifiableMap(new HashMap<>(builder.counterBatchIntervals));
+		this.flushScheduler = writeBehindConfigs.isEmpty() && counterBatchIntervals.isEmpty()
+				&& builder.capacityTuningConfig == null && builder.cacheInvalidationConfig == null
+				&& builder.keyFilterConfigs.isEmpty() ? null
+				: Executors.newSingleThreadScheduledExecutor(runnable -> {
+					final Thread thread = new Thread(runnable, "keystore-dynamodb-flush");
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.readCoalescer = builder.readCoalescing ? new ReadCoalescer() : null;
+		this.keyspaceShards = Collections.unmodifiableMap(new HashMap<>(builder.keyspaceShards));
+		this.valueCodec = builder.valueCodec;
+		this.valueChunkBytes = builder.valueChunkBytes;
+		this.chunkStore = new ChunkedValueStore(this, System::currentTimeMillis);
+		this.versionScheme = builder.versionScheme;
+		this.expressions = new KeyspaceExpressions(this, valueChunkBytes > 0);
+		this.metrics = builder.metrics;
+		this.capacityLimiter = builder.rateLimitConfig == null ? null
+				: CapacityLimiter.create(builder.rateLimitConfig, table);
+		this.capacityTuner = builder.capacityTuningConfig == null ? null
+				: new CapacityTuner(builder.capacityTuningConfig, table, System::currentTimeMillis);
+		if (capacityTuner != null) {
+			final long intervalNanos = builder.capacityTuningConfig.getSampleInterval().toNanos();
+			schedule(() -> {
+				try {
+					capacityTuner.tune();
+				} catch (final RuntimeException e) {
+					// Sampled again at the next interval
+				}
+			}, intervalNanos, intervalNanos);
+		}
+		// Rebuilds read whole keyspaces, so they run on a thread of their own rather than delaying the flushes and
+		// polls of the scheduler thread, or waiting for their Query requests on the executor they run on
+		this.keyFilterExecutor = builder.keyFilterConfigs.isEmpty() ? null
+				: Executors.newSingleThreadExecutor(runnable -> {
+					final Thread thread = new Thread(runnable, "keystore-dynamodb-key-filter");
+					thread.setDaemon(true);
+					return thread;
+				});
+		final Map<String, KeyFilter> filters = new HashMap<>();
+		for (final Map.Entry<String, KeyFilterConfig> entry : builder.keyFilterConfigs.entrySet()) {
+			final String keyspaceName = entry.getKey();
+			filters.put(keyspaceName, new KeyFilter(entry.getValue(),
+					() -> new DynamoDbKeyspace(keyspaceName, this).consistentKeys(), keyFilterExecutor));
+		}
+		this.keyFilters = Collections.unmodifiableMap(filters);
+		for (final Map.Entry<String, KeyFilter> entry : keyFilters.entrySet()) {
+			final long intervalNanos = builder.keyFilterConfigs.get(entry.getKey()).getRebuildInterval().toNanos();
+			// Only hands the rebuild over to the key filter thread. Failures are counted by the filter, which keeps
+			// answering from its previous build
+			schedule(entry.getValue()::rebuildAsync, 0L, intervalNanos);
+		}
+		this.cacheInvalidator = builder.cacheInvalidationConfig == null ? null
+				: new CacheInvalidator(builder.cacheInvalidationConfig, builder.changeStreamSource, cache, this,
+						System::nanoTime);
+		if (cacheInvalidator != null) {
+			final long intervalNanos = builder.cacheInvalidationConfig.getPollInterval().toNanos();
+			// Failures are counted by the invalidator, and retried at the next interval
+			schedule(cacheInvalidator::poll, 0L, intervalNanos);
+		}
+	}
+
+	/**
+	 * Stop the background tasks of this adapter, flushing write-behind keyspaces and counter batchers, polling the
+	 * change stream, tuning capacity and rebuilding key filters, then store what they still buffer with
+	 * {@link #flush()}. Shuts down the executor created by the adapter, if no executor was configured. The keyspaces
+	 * of this adapter must not be used afterwards.
+	 * 
+	 * @throws RuntimeException
+	 *             the first failure of the final flush, once the background threads were shut down
+	 * @since 0.2
+	 */
+	@Override
+	public void close() {
+		for (final ScheduledFuture<?> task : scheduledTasks) {
+			task.cancel(false);
+		}
+		try {
+			flush();
+		} finally {
+			if (flushScheduler != null) {
+				flushScheduler.shutdown();
+			}
+			if (keyFilterExecutor != null) {
+				// Interrupts a rebuild in progress, which keeps the previous filter
+				keyFilterExecutor.shutdownNow();
+			}
+			if (ownedExecutor != null) {
+				ownedExecutor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Create the executor of an adapter without a configured one, bounded to {@value #DEFAULT_EXECUTOR_THREADS}
+	 * daemon threads, which stop once idle
+	 * 
+	 * @return {@link ExecutorService}
+	 * @since 0.2
+	 */
+	private static ExecutorService newRequestPool() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS, 60L,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+					final Thread thread = new Thread(runnable,
+							"keystore-dynamodb-request-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Store the buffered writes of every write-behind keyspace, and the buffered increments of every
+	 * {@link CounterBatcher}, of this adapter
+	 * 
+	 * @throws RuntimeException
+	 *             the first failure, once every keyspace was flushed
+	 * @since 0.2
+	 */
+	public void flush() {
+		RuntimeException failure = null;
+		for (final WriteBehindKeyspace keyspace : writeBehindKeyspaces.values()) {
+			try {
+				keyspace.flush();
+			} catch (final RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		for (final CounterBatcher batcher : counterBatchers.values()) {
+			try {
+				batcher.flush();
+			} catch (final RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Get the configured expiry attribute name, see {@link Builder#withExpiryAttribute(String)}
+	 * 
+	 * @return Optional expiry attribute name, {@link Optional#empty()} if items never expire
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<String> getAttributeNameExpiry() {
+		return Optional.ofNullable(attributeNameExpiry);
 	}
 
 	/**
@@ -280,12 +694,316 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 		return attributeNameVersion;
 	}
 
+	/**
+	 * Get the configured asynchronous client, used by {@link AsyncDynamoDbKeyspace}
+	 * 
+	 * @return Optional {@link AmazonDynamoDBAsync} client, {@link Optional#empty()} if not configured
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<AmazonDynamoDBAsync> getAsyncClient() {
+		return Optional.ofNullable(asyncClient);
+	}
+
+	/**
+	 * Get an asynchronous view of the given keyspace
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return new {@link AsyncDynamoDbKeyspace} instance, not null
+	 * @throws IllegalStateException
+	 *             if no asynchronous client was configured, see {@link Builder#withAsyncClient(AmazonDynamoDBAsync)}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public AsyncDynamoDbKeyspace getAsyncKeyspace(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		return new AsyncDynamoDbKeyspace(keyspaceName, this);
+	}
+
+	/**
+	 * Get a view of the given keyspace storing binary values
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return new {@link BinaryDynamoDbKeyspace} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public BinaryDynamoDbKeyspace getBinaryKeyspace(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		return new BinaryDynamoDbKeyspace(keyspaceName, this);
+	}
+
+	/**
+	 * Get the local cache shared by the keyspaces of this adapter
+	 * 
+	 * @return Optional {@link KeyspaceCache}, {@link Optional#empty()} if caching was not configured
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<KeyspaceCache> getCache() {
+		return Optional.ofNullable(cache);
+	}
+
+	/**
+	 * Get the invalidator keeping the cache of this adapter coherent with the writes of other nodes
+	 * 
+	 * @return Optional {@link CacheInvalidator}, {@link Optional#empty()} if cache invalidation was not configured
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<CacheInvalidator> getCacheInvalidator() {
+		return Optional.ofNullable(cacheInvalidator);
+	}
+
+	/**
+	 * Get the client-side capacity limiter shared by the keyspaces of this adapter
+	 * 
+	 * @return Optional {@link CapacityLimiter}, {@link Optional#empty()} if rate limiting was not enabled
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<CapacityLimiter> getCapacityLimiter() {
+		return Optional.ofNullable(capacityLimiter);
+	}
+
+	/**
+	 * Get the tuner of the provisioned throughput of the table
+	 * 
+	 * @return Optional {@link CapacityTuner}, {@link Optional#empty()} if capacity tuning was not enabled
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<CapacityTuner> getCapacityTuner() {
+		return Optional.ofNullable(capacityTuner);
+	}
+
+	/**
+	 * Get the batcher combining the increments of the counters of the given keyspace, shared by every caller
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return {@link CounterBatcher}, not null
+	 * @throws IllegalStateException
+	 *             if counter batching was not configured for the keyspace, see
+	 *             {@link Builder#withCounterBatching(String, Duration)}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public CounterBatcher getCounterBatcher(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		final Duration flushInterval = counterBatchIntervals.get(keyspaceName);
+		if (flushInterval == null)
+			throw new IllegalStateException("Counter batching is not configured for keyspace " + keyspaceName);
+		return counterBatchers.computeIfAbsent(keyspaceName, name -> {
+			final CounterBatcher batcher = new CounterBatcher(new DynamoDbKeyspace(name, this), executor);
+			final long intervalNanos = flushInterval.toNanos();
+			// Flushed on the scheduler thread, as a flush waits for the requests of its keys running on the executor
+			schedule(() -> {
+				try {
+					batcher.flush();
+				} catch (final RuntimeException e) {
+					// Reported through the futures of the deltas, a throwing task would never run again
+				}
+			}, intervalNanos, intervalNanos);
+			return batcher;
+		});
+	}
+
+	/**
+	 * Get the filter answering reads of keys of the given keyspace that were never written
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return Optional {@link KeyFilter}, {@link Optional#empty()} if no key filter was configured for the keyspace
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<KeyFilter> getKeyFilter(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		return Optional.ofNullable(keyFilters.get(keyspaceName));
+	}
+
+	/**
+	 * Discard and rebuild every {@link KeyFilter} of this adapter, after writes of other nodes may have been missed
+	 * 
+	 * @since 0.2
+	 */
+	void resetKeyFilters() {
+		for (final KeyFilter filter : keyFilters.values()) {
+			filter.reset();
+		}
+	}
+
+	/**
+	 * Get the store of values split into chunks, shared by the keyspaces of this adapter
+	 * 
+	 * @return {@link ChunkedValueStore}
+	 * @since 0.2
+	 */
+	ChunkedValueStore getChunkStore() {
+		return chunkStore;
+	}
+
+	/**
+	 * Get the configured {@link DynamoDB} instance, used for batch operations
+	 * 
+	 * @return Optional {@link DynamoDB} instance, {@link Optional#empty()} if batch operations were not configured
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<DynamoDB> getDynamoDB() {
+		return Optional.ofNullable(dynamoDB);
+	}
+
+	/**
+	 * Get the configured {@link Executor}, used to run independent requests concurrently
+	 * 
+	 * @return {@link Executor} instance
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Get the request expressions, compiled once for the attribute names of this adapter
+	 * 
+	 * @return {@link KeyspaceExpressions}
+	 * @since 0.2
+	 */
+	KeyspaceExpressions getExpressions() {
+		return expressions;
+	}
+
+	/**
+	 * Get the limiter shared by all asynchronous keyspaces of this adapter
+	 * 
+	 * @return {@link InFlightLimiter} instance
+	 * @since 0.2
+	 */
+	InFlightLimiter getInFlightLimiter() {
+		return inFlightLimiter;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns a {@link CachingKeyspace} wrapping the {@link DynamoDbKeyspace} if a cache was configured, see
+	 * {@link Builder#withCache(KeyspaceCacheConfig)}. Keyspaces configured for write-behind share a single
+	 * {@link WriteBehindKeyspace} per name, see {@link Builder#withWriteBehind(String, WriteBehindConfig)}.
+	 * </p>
+	 */
 	@Override
 	@Nonnull
 	public Keyspace getKeyspace(@Nonnull final String keyspaceName) {
 		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
-		return new DynamoDbKeyspace(keyspaceName, table, attributeNameKeyspace, attributeNameKey, attributeNameValue,
-				attributeNameVersion);
+		final Keyspace keyspace;
+		final WriteBehindConfig writeBehindConfig = writeBehindConfigs.get(keyspaceName);
+		if (writeBehindConfig != null) {
+			keyspace = writeBehindKeyspaces.computeIfAbsent(keyspaceName,
+					name -> createWriteBehindKeyspace(name, writeBehindConfig));
+		} else {
+			keyspace = new DynamoDbKeyspace(keyspaceName, this);
+		}
+		if (cache != null) {
+			return new CachingKeyspace(keyspaceName, keyspace, cache);
+		}
+		return keyspace;
+	}
+
+	/**
+	 * Run a task on the scheduler thread every interval, until {@link #close()}
+	 * 
+	 * @param task
+	 *            Task to run, which must not throw as it would never run again
+	 * @param initialDelayNanos
+	 *            Delay before the first run
+	 * @param intervalNanos
+	 *            Delay between the end of a run and the start of the next
+	 * @since 0.2
+	 */
+	private void schedule(final Runnable task, final long initialDelayNanos, final long intervalNanos) {
+		scheduledTasks.add(
+				flushScheduler.scheduleWithFixedDelay(task, initialDelayNanos, intervalNanos, TimeUnit.NANOSECONDS));
+	}
+
+	private WriteBehindKeyspace createWriteBehindKeyspace(final String keyspaceName, final WriteBehindConfig config) {
+		// Flushes run on the scheduler thread, as storing a batch waits for its chunks running on the executor
+		final WriteBehindKeyspace keyspace = new WriteBehindKeyspace(keyspaceName,
+				new DynamoDbKeyspace(keyspaceName, this), config, flushScheduler);
+		final long intervalNanos = config.getFlushInterval().toNanos();
+		schedule(() -> {
+			try {
+				keyspace.flush();
+			} catch (final RuntimeException e) {
+				// Already reported to the failure listener, a throwing task would never run again
+			}
+		}, intervalNanos, intervalNanos);
+		return keyspace;
+	}
+
+	/**
+	 * Get the receiver of the operation measurements of the keyspaces of this adapter
+	 * 
+	 * @return {@link KeyspaceMetrics}, {@link KeyspaceMetrics#NONE} if none was configured
+	 * @since 0.2
+	 */
+	@Nonnull
+	public KeyspaceMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Get the read coalescer shared by the keyspaces of this adapter, holding its metrics
+	 * 
+	 * @return Optional {@link ReadCoalescer}, {@link Optional#empty()} if read coalescing was not enabled
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<ReadCoalescer> getReadCoalescer() {
+		return Optional.ofNullable(readCoalescer);
+	}
+
+	/**
+	 * Get the read consistency used by default for the given keyspace
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return Keyspace specific {@link ReadConsistency} if configured, the adapter default otherwise
+	 * @since 0.2
+	 */
+	@Nonnull
+	public ReadConsistency getReadConsistency(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		return keyspaceReadConsistency.getOrDefault(keyspaceName, readConsistency);
+	}
+
+	/**
+	 * Get the number of partitions the keys of the given keyspace are spread over
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return Number of shards, 1 if the keyspace is not sharded
+	 * @since 0.2
+	 */
+	public int getShards(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		return keyspaceShards.getOrDefault(keyspaceName, 1);
+	}
+
+	/**
+	 * Get the tracker of recent writes shared by all keyspaces of this adapter
+	 * 
+	 * @return {@link SessionTracker} instance, empty unless {@link ReadConsistency#SESSION} is configured for the
+	 *         adapter or any keyspace
+	 * @since 0.2
+	 */
+	@Nonnull
+	Optional<SessionTracker> getSessionTracker() {
+		return Optional.ofNullable(sessionTracker);
 	}
 
 	/**
@@ -298,4 +1016,569 @@ public class DynamoDbAdapter implements KeyValueStoreAdapter {
 	public Table getTable() {
 		return table;
 	}
+
+	/**
+	 * Get the size above which written values are split into chunks
+	 * 
+	 * @return Maximum bytes of a value stored in a single item, 0 if values are never split
+	 * @since 0.2
+	 */
+	public int getValueChunkBytes() {
+		return valueChunkBytes;
+	}
+
+	/**
+	 * Get the codec values are stored with
+	 * 
+	 * @return Optional {@link ValueCodec}, {@link Optional#empty()} if values are stored as plain strings
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<ValueCodec> getValueCodec() {
+		return Optional.ofNullable(valueCodec);
+	}
+
+	/**
+	 * Get how the keyspaces of this adapter assign versions
+	 * 
+	 * @return {@link VersionScheme}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public VersionScheme getVersionScheme() {
+		return versionScheme;
+	}
+
+	/**
+	 * Builder for {@link DynamoDbAdapter} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static class Builder {
+
+		private final Table table;
+
+		private String attributeNameKeyspace = DEFAULT_ATTRIBUTE_KEYSPACE;
+
+		private String attributeNameKey = DEFAULT_ATTRIBUTE_KEY;
+
+		private String attributeNameValue = DEFAULT_ATTRIBUTE_VALUE;
+
+		private String attributeNameVersion = DEFAULT_ATTRIBUTE_VERSION;
+
+		private String attributeNameExpiry;
+
+		private DynamoDB dynamoDB;
+
+		private Executor executor;
+
+		private AmazonDynamoDBAsync asyncClient;
+
+		private int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+		private KeyspaceCacheConfig cacheConfig;
+
+		private ChangeStreamSource changeStreamSource;
+
+		private CacheInvalidationConfig cacheInvalidationConfig;
+
+		private ReadConsistency readConsistency = ReadConsistency.STRONG;
+
+		private final Map<String, ReadConsistency> keyspaceReadConsistency = new HashMap<>();
+
+		private Duration sessionWindow = DEFAULT_SESSION_WINDOW;
+
+		private final Map<String, WriteBehindConfig> writeBehindConfigs = new HashMap<>();
+
+		private final Map<String, Duration> counterBatchIntervals = new HashMap<>();
+
+		private final Map<String, KeyFilterConfig> keyFilterConfigs = new HashMap<>();
+
+		private boolean readCoalescing;
+
+		private final Map<String, Integer> keyspaceShards = new HashMap<>();
+
+		private ValueCodec valueCodec;
+
+		private int valueChunkBytes;
+
+		private KeyspaceMetrics metrics = KeyspaceMetrics.NONE;
+
+		private RateLimitConfig rateLimitConfig;
+
+		private CapacityTuningConfig capacityTuningConfig;
+
+		private VersionScheme versionScheme = VersionScheme.HASH_CODE;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param table
+		 *            {@link Table} to use, not null
+		 * @since 0.2
+		 */
+		protected Builder(@Nonnull final Table table) {
+			Objects.requireNonNull(table, "Table must not be null");
+			this.table = table;
+		}
+
+		/**
+		 * Build the configured {@link DynamoDbAdapter}
+		 * 
+		 * @return new {@link DynamoDbAdapter} instance, not null
+		 * @throws IllegalStateException
+		 *             if an expiry attribute was configured together with value chunking, cache invalidation without
+		 *             a cache, or a key filter of a keyspace without a single writer and without cache invalidation
+		 * @since 0.2
+		 */
+		@Nonnull
+		public DynamoDbAdapter build() {
+			if (attributeNameExpiry != null && valueChunkBytes > 0)
+				throw new IllegalStateException("Expiry attribute cannot be combined with value chunking");
+			if (cacheInvalidationConfig != null && cacheConfig == null)
+				throw new IllegalStateException("Cache invalidation requires a cache");
+			if (cacheInvalidationConfig == null) {
+				for (final Map.Entry<String, KeyFilterConfig> entry : keyFilterConfigs.entrySet()) {
+					if (!entry.getValue().isSingleWriter())
+						throw new IllegalStateException("Key filter of keyspace " + entry.getKey()
+								+ " requires cache invalidation, or a single writer");
+				}
+			}
+			return new DynamoDbAdapter(this);
+		}
+
+		/**
+		 * Use the given asynchronous client for {@link AsyncDynamoDbKeyspace} operations
+		 * 
+		 * @param asyncClient
+		 *            {@link AmazonDynamoDBAsync} client, with access to the configured table, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withAsyncClient(@Nonnull final AmazonDynamoDBAsync asyncClient) {
+			this.asyncClient = Objects.requireNonNull(asyncClient, "AsyncClient must not be null");
+			return this;
+		}
+
+		/**
+		 * Serve reads from a local cache, shared by all keyspaces of the adapter. <br>
+		 * <b>Note</b>, the cache only sees writes made through this adapter; writes from other nodes are visible once
+		 * the cached entry expires, unless {@link #withCacheInvalidation(ChangeStreamSource, CacheInvalidationConfig)}
+		 * is configured as well.
+		 * 
+		 * @param cacheConfig
+		 *            {@link KeyspaceCacheConfig} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCache(@Nonnull final KeyspaceCacheConfig cacheConfig) {
+			this.cacheConfig = Objects.requireNonNull(cacheConfig, "CacheConfig must not be null");
+			return this;
+		}
+
+		/**
+		 * Drop cached values written by any node, as read from the change stream of the table by a
+		 * {@link CacheInvalidator} on a background thread. Requires {@link #withCache(KeyspaceCacheConfig)}. Disabled
+		 * by default. <br>
+		 * <b>Note</b>, every node needs a source of its own, such as a {@link DynamoDbChangeStream}. Streams holding
+		 * new images let the cache keep values that are already up to date.
+		 * 
+		 * @param changeStreamSource
+		 *            {@link ChangeStreamSource} of the table, not shared with other adapters, not null
+		 * @param cacheInvalidationConfig
+		 *            {@link CacheInvalidationConfig} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCacheInvalidation(@Nonnull final ChangeStreamSource changeStreamSource,
+				@Nonnull final CacheInvalidationConfig cacheInvalidationConfig) {
+			this.changeStreamSource = Objects.requireNonNull(changeStreamSource,
+					"ChangeStreamSource must not be null");
+			this.cacheInvalidationConfig = Objects.requireNonNull(cacheInvalidationConfig,
+					"CacheInvalidationConfig must not be null");
+			return this;
+		}
+
+		/**
+		 * Tune the provisioned throughput of the table to the capacity consumed through this adapter, sampled on a
+		 * background thread, see {@link CapacityTuner}. Disabled by default. <br>
+		 * <b>Note</b>, the limits of {@link #withRateLimit(RateLimitConfig)} are not raised along with the throughput.
+		 * 
+		 * @param capacityTuningConfig
+		 *            {@link CapacityTuningConfig} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCapacityTuning(@Nonnull final CapacityTuningConfig capacityTuningConfig) {
+			this.capacityTuningConfig = Objects.requireNonNull(capacityTuningConfig,
+					"CapacityTuningConfig must not be null");
+			return this;
+		}
+
+		/**
+		 * Combine the increments of each counter of the given keyspace into one request per flush interval, through
+		 * {@link DynamoDbAdapter#getCounterBatcher(String)}. <br>
+		 * <b>Note</b>, buffered increments are lost if the process exits before they are flushed, so the adapter
+		 * needs to be closed with {@link DynamoDbAdapter#close()}, or flushed with {@link DynamoDbAdapter#flush()},
+		 * before then.
+		 * 
+		 * @param keyspaceName
+		 *            Keyspace name, not null
+		 * @param flushInterval
+		 *            Time between flushes, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCounterBatching(@Nonnull final String keyspaceName, @Nonnull final Duration flushInterval) {
+			Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+			Objects.requireNonNull(flushInterval, "FlushInterval must not be null");
+			if (flushInterval.isNegative() || flushInterval.isZero())
+				throw new IllegalArgumentException("FlushInterval must be positive");
+			counterBatchIntervals.put(keyspaceName, flushInterval);
+			return this;
+		}
+
+		/**
+		 * Use custom attribute names
+		 * 
+		 * @param attributeNameKeyspace
+		 *            Name of keyspace attribute, not null. Part of the primary key. String attribute.
+		 * @param attributeNameKey
+		 *            Name of the key attribute, not null. Part of the primary key. String attribute.
+		 * @param attributeNameValue
+		 *            Name of the value attribute, not null. String attribute.
+		 * @param attributeNameVersion
+		 *            Name of the version attribute, not null. Long attribute.
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withAttributeNames(@Nonnull final String attributeNameKeyspace,
+				@Nonnull final String attributeNameKey, @Nonnull final String attributeNameValue,
+				@Nonnull final String attributeNameVersion) {
+			this.attributeNameKeyspace = Objects.requireNonNull(attributeNameKeyspace,
+					"AttributeNameKeyspace must not be null");
+			this.attributeNameKey = Objects.requireNonNull(attributeNameKey, "AttributeNameKey must not be null");
+			this.attributeNameValue = Objects.requireNonNull(attributeNameValue,
+					"AttributeNameValue must not be null");
+			this.attributeNameVersion = Objects.requireNonNull(attributeNameVersion,
+					"AttributeNameVersion must not be null");
+			return this;
+		}
+
+		/**
+		 * Store the expiry of values written with a time to live, such as
+		 * {@link DynamoDbKeyspace#set(String, String, Duration)}, in the given attribute, as a Number of epoch seconds.
+		 * Reads of {@link DynamoDbKeyspace} and {@link AsyncDynamoDbKeyspace} skip expired items, and conditional
+		 * writes treat them as missing, until DynamoDB removes them. Disabled by default. <br>
+		 * <b>Note</b>, enable Time To Live on the attribute in the table settings for DynamoDB to remove expired items
+		 * without consuming write capacity. Binary keyspaces do not check expiry. Cannot be combined with
+		 * {@link #withValueChunking(int)}.
+		 * 
+		 * @param attributeNameExpiry
+		 *            Name of the expiry attribute, not null. Number attribute.
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withExpiryAttribute(@Nonnull final String attributeNameExpiry) {
+			this.attributeNameExpiry = Objects.requireNonNull(attributeNameExpiry,
+					"AttributeNameExpiry must not be null");
+			return this;
+		}
+
+		/**
+		 * Use the given {@link DynamoDB} instance for batch operations (BatchGetItem / BatchWriteItem). <br>
+		 * Without it, batch operations fall back to one request per key.
+		 * 
+		 * @param dynamoDB
+		 *            {@link DynamoDB} instance, using the same client as the configured {@link Table}, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withDynamoDB(@Nonnull final DynamoDB dynamoDB) {
+			this.dynamoDB = Objects.requireNonNull(dynamoDB, "DynamoDB must not be null");
+			return this;
+		}
+
+		/**
+		 * Answer reads of keys of the given keyspace that were never written without a request, from a
+		 * {@link KeyFilter} built on a background thread and rebuilt every rebuild interval. Disabled by default. <br>
+		 * <b>Note</b>, keys written by other nodes are only seen through
+		 * {@link #withCacheInvalidation(ChangeStreamSource, CacheInvalidationConfig)}, which is required unless the
+		 * filter is configured with {@link KeyFilterConfig.Builder#withSingleWriter(boolean)}.
+		 * 
+		 * @param keyspaceName
+		 *            Keyspace name, not null
+		 * @param keyFilterConfig
+		 *            {@link KeyFilterConfig} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withKeyFilter(@Nonnull final String keyspaceName,
+				@Nonnull final KeyFilterConfig keyFilterConfig) {
+			Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+			Objects.requireNonNull(keyFilterConfig, "KeyFilterConfig must not be null");
+			keyFilterConfigs.put(keyspaceName, keyFilterConfig);
+			return this;
+		}
+
+		/**
+		 * Spread the keys of the given keyspace over several partitions, {@code keyspaceName#0} to
+		 * {@code keyspaceName#(shards - 1)}, chosen by a hash of the key. Raises the throughput limit of a busy
+		 * keyspace; listing its keys queries every shard. <br>
+		 * <b>Note</b>, changing the number of shards of a keyspace that holds data makes existing keys unreachable
+		 * until migrated. Keyspace names should not contain {@code #}, to avoid colliding with a shard.
+		 * 
+		 * @param keyspaceName
+		 *            Keyspace name, not null
+		 * @param shards
+		 *            Number of shards, positive; 1 keeps the unsharded layout
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withKeyspaceShards(@Nonnull final String keyspaceName, final int shards) {
+			Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+			if (shards < 1)
+				throw new IllegalArgumentException("Shards must be positive");
+			keyspaceShards.put(keyspaceName, shards);
+			return this;
+		}
+
+		/**
+		 * Measure every operation of the keyspaces returned by {@link DynamoDbAdapter#getKeyspace(String)}, by latency,
+		 * outcome and payload size. Defaults to {@link KeyspaceMetrics#NONE}.
+		 * 
+		 * @param metrics
+		 *            {@link KeyspaceMetrics} receiving the measurements, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMetrics(@Nonnull final KeyspaceMetrics metrics) {
+			this.metrics = Objects.requireNonNull(metrics, "Metrics must not be null");
+			return this;
+		}
+
+		/**
+		 * Cap the number of asynchronous requests in flight at once. Further requests are queued without blocking the
+		 * caller. Defaults to {@value DynamoDbAdapter#DEFAULT_MAX_IN_FLIGHT_REQUESTS}.
+		 * 
+		 * @param maxInFlightRequests
+		 *            Maximum number of requests in flight, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxInFlightRequests(final int maxInFlightRequests) {
+			if (maxInFlightRequests < 1)
+				throw new IllegalArgumentException("MaxInFlightRequests must be positive");
+			this.maxInFlightRequests = maxInFlightRequests;
+			return this;
+		}
+
+		/**
+		 * Set the read consistency of a single keyspace, overriding the default
+		 * 
+		 * @param keyspaceName
+		 *            Keyspace name, not null
+		 * @param keyspaceReadConsistency
+		 *            {@link ReadConsistency} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withKeyspaceReadConsistency(@Nonnull final String keyspaceName,
+				@Nonnull final ReadConsistency keyspaceReadConsistency) {
+			Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+			Objects.requireNonNull(keyspaceReadConsistency, "ReadConsistency must not be null");
+			this.keyspaceReadConsistency.put(keyspaceName, keyspaceReadConsistency);
+			return this;
+		}
+
+		/**
+		 * Limit the capacity consumed by the keyspaces returned by {@link DynamoDbAdapter#getKeyspace(String)}, on the
+		 * client, before DynamoDB throttles their requests. Disabled by default. <br>
+		 * <b>Note</b>, unless the config sets the capacity units, building the adapter reads the provisioned throughput
+		 * of the table.
+		 * 
+		 * @param rateLimitConfig
+		 *            {@link RateLimitConfig} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withRateLimit(@Nonnull final RateLimitConfig rateLimitConfig) {
+			this.rateLimitConfig = Objects.requireNonNull(rateLimitConfig, "RateLimitConfig must not be null");
+			return this;
+		}
+
+		/**
+		 * Share a single in-flight GetItem request between concurrent identical reads of {@link DynamoDbKeyspace}s of
+		 * this adapter. Disabled by default. <br>
+		 * <b>Note</b>, a read joining a request sent just before it was called may miss a write made by another node in
+		 * between; writes through this adapter are always seen.
+		 * 
+		 * @param readCoalescing
+		 *            true to enable read coalescing
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withReadCoalescing(final boolean readCoalescing) {
+			this.readCoalescing = readCoalescing;
+			return this;
+		}
+
+		/**
+		 * Set the default read consistency of all keyspaces. Defaults to {@link ReadConsistency#STRONG}.
+		 * 
+		 * @param readConsistency
+		 *            {@link ReadConsistency} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withReadConsistency(@Nonnull final ReadConsistency readConsistency) {
+			this.readConsistency = Objects.requireNonNull(readConsistency, "ReadConsistency must not be null");
+			return this;
+		}
+
+		/**
+		 * Set how long a key written through this adapter is read with strong consistency under
+		 * {@link ReadConsistency#SESSION}. Should comfortably exceed the replication lag of the table. Defaults to 2
+		 * seconds.
+		 * 
+		 * @param sessionWindow
+		 *            Session window, not negative
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withSessionWindow(@Nonnull final Duration sessionWindow) {
+			Objects.requireNonNull(sessionWindow, "SessionWindow must not be null");
+			if (sessionWindow.isNegative())
+				throw new IllegalArgumentException("SessionWindow must not be negative");
+			this.sessionWindow = sessionWindow;
+			return this;
+		}
+
+		/**
+		 * Use the given {@link Executor} to run independent requests (such as batch chunks) concurrently, and to
+		 * complete asynchronous results. Requests fanned out by a task of the executor, such as the chunks of a value
+		 * within a batch, run on the thread of that task. <br>
+		 * Defaults to a pool of {@value DynamoDbAdapter#DEFAULT_EXECUTOR_THREADS} daemon threads created by the
+		 * adapter and shut down by {@link DynamoDbAdapter#close()}. A configured executor is not shut down by the
+		 * adapter.
+		 * 
+		 * @param executor
+		 *            {@link Executor} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withExecutor(@Nonnull final Executor executor) {
+			this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+			return this;
+		}
+
+		/**
+		 * Split values larger than {@link DynamoDbAdapter#DEFAULT_VALUE_CHUNK_BYTES} into chunks
+		 * 
+		 * @return this {@link Builder}
+		 * @see #withValueChunking(int)
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withValueChunking() {
+			return withValueChunking(DEFAULT_VALUE_CHUNK_BYTES);
+		}
+
+		/**
+		 * Store values that do not fit a single item as several chunk items, referenced by the item of the key. Writes
+		 * store the chunks before the item of the key, so readers never see part of a value. Chunks are read with
+		 * concurrent batched requests. <br>
+		 * <b>Note</b>, chunks left behind by failed writes, or by writes of the key without chunking enabled, are
+		 * removed by {@link DynamoDbKeyspace#collectGarbage(Duration)}. Chunked values are read by every adapter, but
+		 * asynchronous and batch writes of values above the chunk size only succeed if they fit a single item.
+		 * 
+		 * @param chunkBytes
+		 *            Maximum size of a value stored in a single item and of each chunk, in bytes of its UTF-8 or
+		 *            {@link ValueCodec} encoding, positive and at most 380 KB
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withValueChunking(final int chunkBytes) {
+			if (chunkBytes < 1 || chunkBytes > ChunkedValueStore.MAX_CHUNK_BYTES)
+				throw new IllegalArgumentException(
+						"ChunkBytes must be between 1 and " + ChunkedValueStore.MAX_CHUNK_BYTES);
+			this.valueChunkBytes = chunkBytes;
+			return this;
+		}
+
+		/**
+		 * Encode values with the given codec, such as {@link CompressingValueCodec}. Encoded values are stored as a
+		 * binary attribute, others as a string attribute. <br>
+		 * <b>Note</b>, every node reading the table needs the codec once encoded values were written.
+		 * 
+		 * @param valueCodec
+		 *            {@link ValueCodec} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withValueCodec(@Nonnull final ValueCodec valueCodec) {
+			this.valueCodec = Objects.requireNonNull(valueCodec, "ValueCodec must not be null");
+			return this;
+		}
+
+		/**
+		 * Set how versions are assigned on writes. Defaults to {@link VersionScheme#HASH_CODE}, as in 0.1.
+		 * {@link VersionScheme#MONOTONIC} stops a stale check-and-set from succeeding once a value is written again,
+		 * at the cost of sending set and add as UpdateItem requests, and the keys of setAll one request per key
+		 * instead of in BatchWriteItem requests.
+		 * 
+		 * @param versionScheme
+		 *            {@link VersionScheme} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withVersionScheme(@Nonnull final VersionScheme versionScheme) {
+			this.versionScheme = Objects.requireNonNull(versionScheme, "VersionScheme must not be null");
+			return this;
+		}
+
+		/**
+		 * Buffer set and delete operations of the given keyspace in memory and write them behind in batches. <br>
+		 * <b>Note</b>, buffered writes are lost if the process exits before they are flushed, so the adapter needs to
+		 * be closed with {@link DynamoDbAdapter#close()}, or flushed with {@link DynamoDbAdapter#flush()}, before
+		 * then. Without {@link #withDynamoDB(DynamoDB)}, buffered writes are stored with one
+		 * request per key.
+		 * 
+		 * @param keyspaceName
+		 *            Keyspace name, not null
+		 * @param writeBehindConfig
+		 *            {@link WriteBehindConfig} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withWriteBehind(@Nonnull final String keyspaceName,
+				@Nonnull final WriteBehindConfig writeBehindConfig) {
+			Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+			Objects.requireNonNull(writeBehindConfig, "WriteBehindConfig must not be null");
+			writeBehindConfigs.put(keyspaceName, writeBehindConfig);
+			return this;
+		}
+	}
 }
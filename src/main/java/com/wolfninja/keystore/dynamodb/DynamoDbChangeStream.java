@@ -0,0 +1,257 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.ExpiredIteratorException;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+
+/**
+ * {@link ChangeStreamSource} reading the DynamoDB Stream of a table
+ * <p>
+ * The shards open when first polled are read from their end, shards created later from their start. Every poll reads
+ * each shard up to its end, and the shards are listed again once one of them was closed, or every minute. Since a
+ * {@link CacheInvalidator} only drops cached values, the shards are read independently, without waiting for parent
+ * shards to be read to their end.
+ * </p>
+ * <p>
+ * The position in each shard only advances once every shard was read, so a failed poll is repeated by the next one.
+ * Records trimmed from the stream before they were read, or expired positions the stream cannot resume from, are
+ * reported as a {@link ChangeStreamGapException}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class DynamoDbChangeStream implements ChangeStreamSource {
+
+	/**
+	 * Maximum number of records read from a shard per request, the limit of DynamoDB Streams
+	 * 
+	 * @since 0.2
+	 */
+	public static final int MAX_RECORDS_PER_READ = 1000;
+
+	private static final long SHARD_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * Create a new source reading the latest stream of the given table
+	 * 
+	 * @param streams
+	 *            {@link AmazonDynamoDBStreams} client, in the region of the table, not null
+	 * @param table
+	 *            {@link Table} with a stream enabled, see {@link TableProvisioning.Builder#withStream}, not null
+	 * @return new {@link DynamoDbChangeStream} instance, not null
+	 * @throws IllegalStateException
+	 *             if the table has no stream
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static DynamoDbChangeStream create(@Nonnull final AmazonDynamoDBStreams streams,
+			@Nonnull final Table table) {
+		Objects.requireNonNull(streams, "Streams must not be null");
+		Objects.requireNonNull(table, "Table must not be null");
+		final String streamArn = table.describe().getLatestStreamArn();
+		if (streamArn == null)
+			throw new IllegalStateException("No stream is enabled on table " + table.getTableName());
+		return new DynamoDbChangeStream(streams, streamArn, System::nanoTime);
+	}
+
+	private final AmazonDynamoDBStreams streams;
+	private final String streamArn;
+	private final LongSupplier ticker;
+	private final Map<String, ShardPosition> shards = new LinkedHashMap<>();
+	private final Set<String> listedShards = new HashSet<>();
+	private boolean started;
+	private boolean refreshDue;
+	private long refreshedAt;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param streams
+	 *            {@link AmazonDynamoDBStreams} client
+	 * @param streamArn
+	 *            ARN of the stream to read
+	 * @param ticker
+	 *            Source of the current time, in nanoseconds
+	 * @since 0.2
+	 */
+	DynamoDbChangeStream(final AmazonDynamoDBStreams streams, final String streamArn, final LongSupplier ticker) {
+		this.streams = streams;
+		this.streamArn = streamArn;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Get the ARN of the stream read
+	 * 
+	 * @return Stream ARN
+	 * @since 0.2
+	 */
+	@Nonnull
+	public String getStreamArn() {
+		return streamArn;
+	}
+
+	@Override
+	public synchronized List<Record> poll() {
+		if (!started || refreshDue || ticker.getAsLong() - refreshedAt >= SHARD_REFRESH_NANOS) {
+			refreshShards();
+		}
+
+		final List<Record> records = new ArrayList<>();
+		final Map<ShardPosition, ShardPosition> advanced = new HashMap<>();
+		for (final ShardPosition shard : shards.values()) {
+			advanced.put(shard, read(shard, records));
+		}
+
+		for (final Map.Entry<ShardPosition, ShardPosition> entry : advanced.entrySet()) {
+			final ShardPosition shard = entry.getKey();
+			shard.iterator = entry.getValue().iterator;
+			shard.lastSequenceNumber = entry.getValue().lastSequenceNumber;
+			if (shard.iterator == null) {
+				// Closed and read to its end, its children are listed next
+				shards.remove(shard.shardId);
+				refreshDue = true;
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Read a shard up to its current end
+	 * 
+	 * @param shard
+	 *            Position in the shard, left unchanged
+	 * @param records
+	 *            Receives the records read
+	 * @return Position after the records read, with a null iterator if the shard was closed and read to its end
+	 */
+	private ShardPosition read(final ShardPosition shard, final List<Record> records) {
+		if (shard.iterator == null) {
+			// Kept at once, a new iterator from the end of the shard would skip the records written since
+			shard.iterator = shardIterator(shard);
+		}
+		final ShardPosition position = new ShardPosition(shard.shardId, shard.startType);
+		position.iterator = shard.iterator;
+		position.lastSequenceNumber = shard.lastSequenceNumber;
+		try {
+			List<Record> page;
+			do {
+				final GetRecordsResult result = streams.getRecords(new GetRecordsRequest() //
+						.withShardIterator(position.iterator) //
+						.withLimit(MAX_RECORDS_PER_READ));
+				page = result.getRecords();
+				if (!page.isEmpty()) {
+					records.addAll(page);
+					position.lastSequenceNumber = page.get(page.size() - 1).getDynamodb().getSequenceNumber();
+				}
+				position.iterator = result.getNextShardIterator();
+			} while (position.iterator != null && page.size() >= MAX_RECORDS_PER_READ);
+		} catch (final ExpiredIteratorException e) {
+			shard.iterator = null;
+			if (shard.lastSequenceNumber == null && shard.startType == ShardIteratorType.LATEST)
+				throw new ChangeStreamGapException("Position in shard " + shard.shardId + " expired", e);
+			throw e;
+		} catch (final TrimmedDataAccessException e) {
+			shard.iterator = null;
+			shard.lastSequenceNumber = null;
+			shard.startType = ShardIteratorType.TRIM_HORIZON;
+			throw new ChangeStreamGapException("Records of shard " + shard.shardId + " were trimmed", e);
+		} catch (final ResourceNotFoundException e) {
+			shards.remove(shard.shardId);
+			refreshDue = true;
+			throw new ChangeStreamGapException("Shard " + shard.shardId + " was removed", e);
+		}
+		return position;
+	}
+
+	private String shardIterator(final ShardPosition shard) {
+		final GetShardIteratorRequest request = new GetShardIteratorRequest() //
+				.withStreamArn(streamArn) //
+				.withShardId(shard.shardId);
+		if (shard.lastSequenceNumber != null) {
+			request.withShardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER)
+					.withSequenceNumber(shard.lastSequenceNumber);
+		} else {
+			request.withShardIteratorType(shard.startType);
+		}
+		return streams.getShardIterator(request).getShardIterator();
+	}
+
+	private void refreshShards() {
+		final Set<String> listed = new HashSet<>();
+		String lastShardId = null;
+		do {
+			final StreamDescription description = streams.describeStream(new DescribeStreamRequest() //
+					.withStreamArn(streamArn) //
+					.withExclusiveStartShardId(lastShardId)).getStreamDescription();
+			for (final Shard shard : description.getShards()) {
+				listed.add(shard.getShardId());
+				if (listedShards.contains(shard.getShardId())) {
+					continue;
+				}
+				final boolean open = shard.getSequenceNumberRange() == null
+						|| shard.getSequenceNumberRange().getEndingSequenceNumber() == null;
+				if (started) {
+					// Created since the last listing, any of its records are new
+					shards.put(shard.getShardId(),
+							new ShardPosition(shard.getShardId(), ShardIteratorType.TRIM_HORIZON));
+				} else if (open) {
+					shards.put(shard.getShardId(), new ShardPosition(shard.getShardId(), ShardIteratorType.LATEST));
+				}
+			}
+			lastShardId = description.getLastEvaluatedShardId();
+		} while (lastShardId != null);
+
+		// Shards no longer listed were trimmed, and never come back
+		listedShards.clear();
+		listedShards.addAll(listed);
+		for (final Iterator<String> shardIds = shards.keySet().iterator(); shardIds.hasNext();) {
+			if (!listed.contains(shardIds.next())) {
+				shardIds.remove();
+			}
+		}
+		started = true;
+		refreshDue = false;
+		refreshedAt = ticker.getAsLong();
+	}
+
+	/**
+	 * Position of the reader in a shard
+	 */
+	private static final class ShardPosition {
+
+		final String shardId;
+		ShardIteratorType startType;
+		String iterator;
+		String lastSequenceNumber;
+
+		ShardPosition(final String shardId, final ShardIteratorType startType) {
+			this.shardId = shardId;
+			this.startType = startType;
+		}
+	}
+}
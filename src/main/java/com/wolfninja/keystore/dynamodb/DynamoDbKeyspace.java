@@ -1,25 +1,31 @@
 package com.wolfninja.keystore.dynamodb;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
-import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
 import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
-import com.amazonaws.services.dynamodbv2.document.Expected;
 import com.amazonaws.services.dynamodbv2.document.Item;
-import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.Table;
-import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Operation;
 import com.wolfninja.keystore.api.Keyspace;
 
 /**
@@ -29,13 +35,56 @@ import com.wolfninja.keystore.api.Keyspace;
  */
 public class DynamoDbKeyspace implements Keyspace {
 
+	/**
+	 * @deprecated reads use the {@link ReadConsistency} configured on the adapter, which defaults to
+	 *             {@link ReadConsistency#STRONG}
+	 */
+	@Deprecated
 	public static final boolean STRONGLY_CONSISTENT_READ = true;
+
+	/**
+	 * Maximum number of keys DynamoDB accepts in a single BatchGetItem request
+	 * 
+	 * @since 0.2
+	 */
+	public static final int MAX_BATCH_GET_KEYS = 100;
+
+	/**
+	 * Maximum number of items DynamoDB accepts in a single BatchWriteItem request
+	 * 
+	 * @since 0.2
+	 */
+	public static final int MAX_BATCH_WRITE_ITEMS = 25;
+
+	/**
+	 * Default number of items fetched per Query request by {@link #keys()} and {@link #entries()}
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	private static final ComputeConfig DEFAULT_COMPUTE_CONFIG = ComputeConfig.builder().build();
+
 	private final String keyspaceName;
 	private final Table table;
 	private final String attributeNameKeyspace;
 	private final String attributeNameKey;
 	private final String attributeNameValue;
 	private final String attributeNameVersion;
+	private final Executor executor;
+	private final ReadConsistency readConsistency;
+	private final ReadCoalescer readCoalescer;
+	private final int shards;
+	private final ValueCodec valueCodec;
+	private final ChunkedValueStore chunkStore;
+	private final KeyspaceExpressions expressions;
+	private final KeyspaceItems items;
+	private final KeyspaceAccounting accounting;
+	private final WriteTracker writes;
+	private final ChunkedWrites chunkedWrites;
+	private final KeyspaceBatches batches;
+	private final KeyspaceQueries queries;
+	private final KeyspaceCounters counters;
 
 	/**
 	 * Create new Keyspace instance
@@ -51,188 +100,928 @@ public class DynamoDbKeyspace implements Keyspace {
 	protected DynamoDbKeyspace(@Nonnull final String keyspaceName, @Nonnull final Table table,
 			@Nonnull final String attributeNameKeyspace, @Nonnull final String attributeNameKey,
 			@Nonnull final String attributeNameValue, @Nonnull final String attributeNameVersion) {
+		this(keyspaceName, DynamoDbAdapter.create(table, attributeNameKeyspace, attributeNameKey, attributeNameValue,
+				attributeNameVersion));
+	}
+
+	/**
+	 * Create new Keyspace instance, using the configuration of the given adapter
+	 * 
+	 * @param keyspaceName
+	 * @param adapter
+	 * @since 0.2
+	 */
+	protected DynamoDbKeyspace(@Nonnull final String keyspaceName, @Nonnull final DynamoDbAdapter adapter) {
 		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
-		Objects.requireNonNull(table, "Table must not be null");
-		Objects.requireNonNull(attributeNameKeyspace, "AttributeNameKeyspace must not be null");
-		Objects.requireNonNull(attributeNameKey, "AttributeNameKey must not be null");
-		Objects.requireNonNull(attributeNameValue, "AttributeNameValue must not be null");
-		Objects.requireNonNull(attributeNameVersion, "AttributeNameVersion must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
 
 		this.keyspaceName = keyspaceName;
-		this.table = table;
-		this.attributeNameKeyspace = attributeNameKeyspace;
-		this.attributeNameKey = attributeNameKey;
-		this.attributeNameValue = attributeNameValue;
-		this.attributeNameVersion = attributeNameVersion;
+		this.table = adapter.getTable();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.attributeNameVersion = adapter.getAttributeNameVersion();
+		this.executor = adapter.getExecutor();
+		this.readConsistency = adapter.getReadConsistency(keyspaceName);
+		this.readCoalescer = adapter.getReadCoalescer().orElse(null);
+		this.shards = adapter.getShards(keyspaceName);
+		this.valueCodec = adapter.getValueCodec().orElse(null);
+		this.chunkStore = adapter.getChunkStore();
+		this.expressions = adapter.getExpressions();
+		this.items = new KeyspaceItems(keyspaceName, adapter);
+		this.accounting = new KeyspaceAccounting(keyspaceName, adapter);
+		this.writes = new WriteTracker(keyspaceName, adapter);
+		this.batches = new KeyspaceBatches(keyspaceName, adapter);
+		this.queries = new KeyspaceQueries(keyspaceName, adapter);
+		this.counters = new KeyspaceCounters(keyspaceName, adapter);
+		this.chunkedWrites = adapter.getValueChunkBytes() > 0 ? new ChunkedWrites(keyspaceName, adapter) : null;
 	}
 
 	@Override
 	public boolean add(final String key, final String value) {
-		Objects.requireNonNull(key, "Key must not be null");
-		Objects.requireNonNull(value, "Value must not be null");
-
-		final Item item = buildItem(key, value);
-		final Map<String, String> nameMap = new HashMap<>();
-		nameMap.put("#b", attributeNameKeyspace);
+		final long start = System.nanoTime();
 		try {
-			table.putItem(item, "attribute_not_exists(#b)", nameMap, null);
-			return true;
-		} catch (ConditionalCheckFailedException ex) {
-			return false;
+			return accounting.recordCondition(Operation.ADD, start, value, addValue(key, value, null));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.ADD, start, e);
 		}
 	}
 
 	/**
-	 * Build new {@link Item} with correct attributes
+	 * Add a key that does not exist, expiring after the given time to live, see
+	 * {@link #set(String, String, Duration)}
 	 * 
 	 * @param key
-	 *            String key Key to assign
+	 *            Key, not null
 	 * @param value
-	 *            String value Value to assign
-	 * @return new {@link Item} instance
-	 * @since 0.1
+	 *            Value, not null
+	 * @param timeToLive
+	 *            Time until the key expires, positive
+	 * @return true if added, false if the key exists and did not expire
+	 * @throws IllegalStateException
+	 *             if no expiry attribute was configured
+	 * @since 0.2
 	 */
-	private Item buildItem(final String key, final String value) {
-		return new Item() //
-				.withPrimaryKey(buildPrimaryKey(key)) //
-				.withString(attributeNameValue, value) //
-				.withLong(attributeNameVersion, value.hashCode());
+	public boolean add(@Nonnull final String key, @Nonnull final String value, @Nonnull final Duration timeToLive) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordCondition(Operation.ADD, start, value,
+					addValue(key, value, items.expiry(timeToLive)));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.ADD, start, e);
+		}
 	}
 
-	/**
-	 * Build {@link PrimaryKey} instance for the given key
-	 * 
-	 * @param key
-	 *            String key
-	 * @return {@link PrimaryKey}
-	 * @since 0.1
-	 */
-	private PrimaryKey buildPrimaryKey(final String key) {
+	private boolean addValue(final String key, final String value, final Long expiry) {
 		Objects.requireNonNull(key, "Key must not be null");
-		return new PrimaryKey(attributeNameKeyspace, keyspaceName, attributeNameKey, key);
+		Objects.requireNonNull(value, "Value must not be null");
+		accounting.acquireWrite(1, value.length());
+		if (chunkedWrites != null) {
+			return chunkedWrites.put(key, value, KeyspaceExpressions.NOT_EXISTS);
+		}
+
+		try {
+			if (expressions.isMonotonic()) {
+				table.updateItem(items.buildUpdate(key, value, expiry, true) //
+						.withConditionExpression(expressions.getNotExists()) //
+						.withNameMap(expressions.getReplaceNames()));
+			} else {
+				table.putItem(items.buildItem(key, value, expiry), expressions.getNotExists(),
+						expressions.getKeyspaceNames(), expressions.withNow(null, System.currentTimeMillis()));
+			}
+			return true;
+		} catch (ConditionalCheckFailedException ex) {
+			return false;
+		} finally {
+			writes.written(key);
+		}
 	}
 
 	@Override
 	public boolean checkAndSet(final String key, final String value, final long version) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordCondition(Operation.CHECK_AND_SET, start, value,
+					checkAndSetValue(key, value, version));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.CHECK_AND_SET, start, e);
+		}
+	}
+
+	private boolean checkAndSetValue(final String key, final String value, final long version) {
 		Objects.requireNonNull(key, "Key must not be null");
 		Objects.requireNonNull(value, "Value must not be null");
+		accounting.acquireWrite(1, value.length());
+		if (chunkedWrites != null) {
+			return chunkedWrites.checkAndSet(key, value, version);
+		}
 
 		final UpdateItemSpec spec = new UpdateItemSpec() //
-				.withPrimaryKey(buildPrimaryKey(key)) //
-				.withExpected(new Expected(attributeNameVersion).eq(version)) //
-				.withAttributeUpdate( //
-						new AttributeUpdate(attributeNameValue).put(value), //
-						new AttributeUpdate(attributeNameVersion).put(value.hashCode()) //
-		);
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withUpdateExpression(expressions.getSetValue()) //
+				.withConditionExpression(expressions.getVersionMatches()) //
+				.withNameMap(expressions.getValueNames()) //
+				.withValueMap(expressions.withNow(
+						KeyspaceExpressions.setValues(items.encodeValue(value), expressions.version(value), version),
+						System.currentTimeMillis()));
 
 		try {
 			table.updateItem(spec);
 			return true;
 		} catch (final ConditionalCheckFailedException e) {
 			return false;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Update the value of a key with a function of its current value, using the default {@link ComputeConfig}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param function
+	 *            Function of the current value, empty if the key does not exist, returning the new value, or null to
+	 *            delete the key; not null
+	 * @return Value stored, {@link Optional#empty()} if the key was deleted or left missing
+	 * @see #compute(String, Function, ComputeConfig)
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<String> compute(@Nonnull final String key,
+			@Nonnull final Function<Optional<String>, String> function) {
+		return compute(key, function, DEFAULT_COMPUTE_CONFIG);
+	}
+
+	/**
+	 * Update the value of a key with a function of its current value, retrying while concurrent writes interfere
+	 * <p>
+	 * Each attempt reads the key strongly consistent, applies the function, and writes the result conditionally: with
+	 * {@link #checkAndSet(String, String, long)} or {@link #deletes(String, long)} against the version read, or with
+	 * {@link #add(String, String)} if the key did not exist. A write failing its condition means another writer came
+	 * first, so the attempt is repeated after a jittered exponential delay. The function may therefore run several
+	 * times and should have no side effects. Each repeated attempt is recorded as a retry of
+	 * {@link KeyspaceMetrics.Operation#COMPUTE}.
+	 * </p>
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param function
+	 *            Function of the current value, empty if the key does not exist, returning the new value, or null to
+	 *            delete the key; not null
+	 * @param config
+	 *            {@link ComputeConfig} limiting the attempts, not null
+	 * @return Value stored, {@link Optional#empty()} if the key was deleted or left missing
+	 * @throws ContentionException
+	 *             if every attempt allowed by the config lost to a concurrent write
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<String> compute(@Nonnull final String key,
+			@Nonnull final Function<Optional<String>, String> function, @Nonnull final ComputeConfig config) {
+		final long start = System.nanoTime();
+		try {
+			final Optional<String> value = computeValue(key, function, config, start);
+			return accounting.recordSuccess(Operation.COMPUTE, start, value.isPresent() ? value.get().length() : 0,
+					value);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.COMPUTE, start, e);
+		}
+	}
+
+	private Optional<String> computeValue(final String key, final Function<Optional<String>, String> function,
+			final ComputeConfig config, final long start) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(function, "Function must not be null");
+		Objects.requireNonNull(config, "Config must not be null");
+		final Backoff backoff = new Backoff(config.getBaseDelay().toMillis(), config.getMaxDelay().toMillis(),
+				config.getMaxAttempts());
+		final long timeoutNanos = config.getTimeout().map(Duration::toNanos).orElse(Long.MAX_VALUE);
+		for (int attempt = 1;; attempt++) {
+			// The conditional write only succeeds against the latest version
+			final Optional<KeyValue> current = getsValue(key, ReadConsistency.STRONG);
+			accounting.chargeRead(current.isPresent() ? 1 : 0,
+					current.isPresent() ? current.get().getValue().length() : 0, ReadConsistency.STRONG);
+			final String value = function.apply(current.map(KeyValue::getValue));
+			final boolean written;
+			if (current.isPresent()) {
+				written = value == null ? deletesKey(key, current.get().getVersion())
+						: checkAndSetValue(key, value, current.get().getVersion());
+			} else {
+				written = value == null || addValue(key, value, null);
+			}
+			if (written) {
+				return Optional.ofNullable(value);
+			}
+
+			final long remainingNanos = timeoutNanos - (System.nanoTime() - start);
+			if (attempt >= backoff.getMaxAttempts() || remainingNanos <= 0)
+				throw new ContentionException("Gave up computing key " + key + " after " + attempt
+						+ " attempts lost to concurrent writes", attempt);
+			accounting.recordContention(Operation.COMPUTE);
+			backoff.pause(attempt, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
 		}
 	}
 
+	/**
+	 * Atomically subtract from the numeric value of a key, counting from 0 if it does not exist
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param delta
+	 *            Amount to subtract
+	 * @return Value after the subtraction
+	 * @see #increment(String, long, long)
+	 * @since 0.2
+	 */
+	public long decrement(@Nonnull final String key, final long delta) {
+		return decrement(key, delta, 0);
+	}
+
+	/**
+	 * Atomically subtract from the numeric value of a key, see {@link #increment(String, long, long)}
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param delta
+	 *            Amount to subtract
+	 * @param initialValue
+	 *            Value to subtract from if the key does not exist
+	 * @return Value after the subtraction
+	 * @since 0.2
+	 */
+	public long decrement(@Nonnull final String key, final long delta, final long initialValue) {
+		return increment(key, Math.negateExact(delta), initialValue);
+	}
+
 	@Override
 	public boolean delete(final String key) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordCondition(Operation.DELETE, start, null, deleteKey(key));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.DELETE, start, e);
+		}
+	}
+
+	private boolean deleteKey(final String key) {
 		Objects.requireNonNull(key, "Key must not be null");
+		accounting.acquireWrite(1, 0);
+		if (chunkedWrites != null) {
+			return chunkedWrites.delete(key);
+		}
+
+		// Only whether the key existed matters, which the condition tells without returning the item
 		final DeleteItemSpec spec = new DeleteItemSpec() //
-				.withReturnValues(ReturnValue.ALL_OLD) //
-				.withPrimaryKey(buildPrimaryKey(key));
-		final DeleteItemOutcome outcome = table.deleteItem(spec);
-		return outcome.getItem() != null;
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withConditionExpression(expressions.getExists()) //
+				.withNameMap(expressions.getKeyspaceNames()) //
+				.withValueMap(expressions.withNow(null, System.currentTimeMillis()));
+		try {
+			table.deleteItem(spec);
+			return true;
+		} catch (final ConditionalCheckFailedException ex) {
+			return false;
+		} finally {
+			writes.written(key);
+		}
 	}
 
 	@Override
 	public boolean deletes(final String key, final long version) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordCondition(Operation.DELETES, start, null, deletesKey(key, version));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.DELETES, start, e);
+		}
+	}
+
+	private boolean deletesKey(final String key, final long version) {
 		Objects.requireNonNull(key, "Key must not be null");
+		accounting.acquireWrite(1, 0);
 		final DeleteItemSpec spec = new DeleteItemSpec() //
-				.withReturnValues(ReturnValue.ALL_OLD) //
-				.withPrimaryKey(buildPrimaryKey(key)) //
-				.withExpected(new Expected(attributeNameVersion).eq(version));
+				.withReturnValues(chunkedWrites != null ? ReturnValue.ALL_OLD : ReturnValue.NONE) //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withConditionExpression(expressions.getVersionMatches()) //
+				.withNameMap(expressions.getVersionNames()) //
+				.withValueMap(expressions.withNow(
+						Collections.<String, Object> singletonMap(KeyspaceExpressions.VALUE_EXPECTED, version),
+						System.currentTimeMillis()));
 
 		try {
 			final DeleteItemOutcome outcome = table.deleteItem(spec);
-			return outcome.getItem() != null;
+			if (chunkedWrites != null) {
+				chunkedWrites.deleteChunks(key, outcome.getItem());
+			}
+			// The condition only holds for an existing item
+			return true;
 		} catch (final ConditionalCheckFailedException ex) {
 			return false;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Delete chunks of large values that are not referenced by their key, left behind by failed writes or by writes
+	 * without value chunking enabled, see {@link DynamoDbAdapter.Builder#withValueChunking(int)}
+	 * 
+	 * @param gracePeriod
+	 *            Minimum age of chunks to delete, longer than any write takes, not null
+	 * @return Number of chunk items deleted
+	 * @since 0.2
+	 */
+	public int collectGarbage(@Nonnull final Duration gracePeriod) {
+		Objects.requireNonNull(gracePeriod, "GracePeriod must not be null");
+		if (shards <= 1) {
+			return chunkStore.collectGarbage(keyspaceName, gracePeriod.toMillis());
+		}
+		int deleted = 0;
+		for (int shard = 0; shard < shards; shard++) {
+			deleted += chunkStore.collectGarbage(KeyspaceItems.shardValue(keyspaceName, shard), gracePeriod.toMillis());
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete multiple keys
+	 * <p>
+	 * Keys are deleted with BatchWriteItem requests of up to {@value #MAX_BATCH_WRITE_ITEMS} keys, sent concurrently.
+	 * Unlike {@link #delete(String)}, this does not report whether the keys existed. With value chunking enabled, keys
+	 * are deleted one by one like {@link #delete(String)}, which deletes the chunks of their values as well.
+	 * </p>
+	 * 
+	 * @param keys
+	 *            Keys to delete, not null
+	 * @since 0.2
+	 */
+	public void deleteAll(@Nonnull final Collection<String> keys) {
+		final long start = System.nanoTime();
+		try {
+			deleteKeys(keys);
+			accounting.recordSuccess(Operation.DELETE_ALL, start, 0, null);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.DELETE_ALL, start, e);
+		}
+	}
+
+	private void deleteKeys(final Collection<String> keys) {
+		Objects.requireNonNull(keys, "Keys must not be null");
+		accounting.acquireWrite(keys.size(), 0);
+		if (chunkedWrites != null) {
+			// BatchWriteItem cannot return the previous items, which name the chunks to delete
+			BatchRequests.executeChunks(executor, BatchRequests.partition(keys, 1),
+					chunk -> chunkedWrites.delete(chunk.get(0)));
+			return;
+		}
+		batches.deleteAll(keys);
+	}
+
+	/**
+	 * Stream all entries of this keyspace, ordered by key
+	 * 
+	 * @return Lazy {@link Stream} of {@link KeyValue}s, fetching {@value #DEFAULT_PAGE_SIZE} items per request
+	 * @see #entries(int)
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Stream<KeyValue> entries() {
+		return entries(DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Stream all entries of this keyspace, ordered by key
+	 * <p>
+	 * Entries are fetched lazily with paginated Query requests on the keyspace partition. The next page is fetched
+	 * while the current one is consumed, so at most two pages are held in memory. The stream is not a snapshot:
+	 * concurrent writes may or may not be reflected.
+	 * </p>
+	 * 
+	 * @param pageSize
+	 *            Maximum number of items per request, positive
+	 * @return Lazy {@link Stream} of {@link KeyValue}s, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Stream<KeyValue> entries(final int pageSize) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.ENTRIES, start, 0,
+					queries.query(pageSize, readConsistency != ReadConsistency.EVENTUAL, false, items::toKeyValue,
+							KeyValue::getKey));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.ENTRIES, start, e);
 		}
 	}
 
 	@Override
 	public boolean exists(final String key) {
+		return exists(key, readConsistency);
+	}
+
+	/**
+	 * Check whether the given key exists, overriding the configured read consistency
+	 * 
+	 * @param key
+	 *            Key to check, not null
+	 * @param consistency
+	 *            {@link ReadConsistency} of this read, not null
+	 * @return true if the key exists
+	 * @since 0.2
+	 */
+	public boolean exists(@Nonnull final String key, @Nonnull final ReadConsistency consistency) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.EXISTS, start, 0, existsKey(key, consistency));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.EXISTS, start, e);
+		}
+	}
+
+	private boolean existsKey(final String key, final ReadConsistency consistency) {
 		Objects.requireNonNull(key, "Key must not be null");
+		if (!writes.mightContain(key)) {
+			return false;
+		}
+		accounting.acquireRead(1, consistency);
 		final GetItemSpec spec = new GetItemSpec() //
-				.withPrimaryKey(buildPrimaryKey(key)) //
-				.withAttributesToGet(attributeNameKey) //
-				.withConsistentRead(STRONGLY_CONSISTENT_READ); //
-		return table.getItem(spec) != null;
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withProjectionExpression(expressions.getKeyProjection()) //
+				.withNameMap(expressions.getKeyNames()) //
+				.withConsistentRead(writes.isConsistentRead(key, consistency)); //
+		final Item item = getItem(key, spec, true);
+		return item != null && !items.isExpired(item);
+	}
+
+	/**
+	 * Get the values of multiple keys
+	 * <p>
+	 * Keys are fetched with BatchGetItem requests of up to {@value #MAX_BATCH_GET_KEYS} keys, sent concurrently. Reads
+	 * use the same consistency as {@link #get(String)}.
+	 * </p>
+	 * 
+	 * @param keys
+	 *            Keys to get, not null
+	 * @return Map of key to value, containing only the keys that exist, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Map<String, String> getAll(@Nonnull final Collection<String> keys) {
+		final long start = System.nanoTime();
+		try {
+			final Map<String, String> values = batches.get(Operation.GET_ALL, keys,
+					item -> items.readValue(item.getString(attributeNameKey), item, items::decodeValue));
+			long payloadSize = 0;
+			for (final String value : values.values()) {
+				payloadSize += value.length();
+			}
+			accounting.chargeRead(values.size(), payloadSize, readConsistency);
+			return accounting.recordSuccess(Operation.GET_ALL, start, payloadSize, values);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.GET_ALL, start, e);
+		}
+	}
+
+	/**
+	 * Get the values of multiple keys, with version information
+	 * <p>
+	 * Keys are fetched with BatchGetItem requests of up to {@value #MAX_BATCH_GET_KEYS} keys, sent concurrently. Reads
+	 * use the same consistency as {@link #gets(String)}.
+	 * </p>
+	 * 
+	 * @param keys
+	 *            Keys to get, not null
+	 * @return Map of key to {@link KeyValue}, containing only the keys that exist, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Map<String, KeyValue> getsAll(@Nonnull final Collection<String> keys) {
+		final long start = System.nanoTime();
+		try {
+			final Map<String, KeyValue> values = batches.get(Operation.GETS_ALL, keys, items::toKeyValue);
+			long payloadSize = 0;
+			for (final KeyValue value : values.values()) {
+				payloadSize += value.getValue().length();
+			}
+			accounting.chargeRead(values.size(), payloadSize, readConsistency);
+			return accounting.recordSuccess(Operation.GETS_ALL, start, payloadSize, values);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.GETS_ALL, start, e);
+		}
 	}
 
 	@Override
 	public Optional<String> get(final String key) {
+		return get(key, readConsistency);
+	}
+
+	/**
+	 * Get the value of the given key, overriding the configured read consistency
+	 * 
+	 * @param key
+	 *            Key to get, not null
+	 * @param consistency
+	 *            {@link ReadConsistency} of this read, not null
+	 * @return Optional value, {@link Optional#empty()} if the key does not exist
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<String> get(@Nonnull final String key, @Nonnull final ReadConsistency consistency) {
+		final long start = System.nanoTime();
+		try {
+			final Optional<String> value = getValue(key, consistency);
+			final int payloadSize = value.isPresent() ? value.get().length() : 0;
+			accounting.chargeRead(value.isPresent() ? 1 : 0, payloadSize, consistency);
+			return accounting.recordSuccess(Operation.GET, start, payloadSize, value);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.GET, start, e);
+		}
+	}
+
+	private Optional<String> getValue(final String key, final ReadConsistency consistency) {
 		Objects.requireNonNull(key, "Key must not be null");
+		if (!writes.mightContain(key)) {
+			return Optional.empty();
+		}
+		accounting.acquireRead(1, consistency);
 		final GetItemSpec spec = new GetItemSpec() //
-				.withPrimaryKey(buildPrimaryKey(key)) //
-				.withConsistentRead(STRONGLY_CONSISTENT_READ); //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withProjectionExpression(expressions.getReadProjection()) //
+				.withNameMap(expressions.getReadNames()) //
+				.withConsistentRead(writes.isConsistentRead(key, consistency)); //
 
-		final Item item = table.getItem(spec);
-		if (item == null) {
+		final Item item = getItem(key, spec, false);
+		if (item == null || items.isExpired(item)) {
 			return Optional.empty();
 		}
-		return Optional.ofNullable(item.getString(attributeNameValue));
+		return Optional.ofNullable(items.readValue(key, item, items::decodeValue));
 	}
 
 	@Override
 	public Optional<KeyValue> gets(final String key) {
+		return gets(key, readConsistency);
+	}
+
+	/**
+	 * Get the value of the given key with version information, overriding the configured read consistency
+	 * 
+	 * @param key
+	 *            Key to get, not null
+	 * @param consistency
+	 *            {@link ReadConsistency} of this read, not null
+	 * @return Optional {@link KeyValue}, {@link Optional#empty()} if the key does not exist
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<KeyValue> gets(@Nonnull final String key, @Nonnull final ReadConsistency consistency) {
+		final long start = System.nanoTime();
+		try {
+			final Optional<KeyValue> value = getsValue(key, consistency);
+			final int payloadSize = value.isPresent() ? value.get().getValue().length() : 0;
+			accounting.chargeRead(value.isPresent() ? 1 : 0, payloadSize, consistency);
+			return accounting.recordSuccess(Operation.GETS, start, payloadSize, value);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.GETS, start, e);
+		}
+	}
+
+	private Optional<KeyValue> getsValue(final String key, final ReadConsistency consistency) {
 		Objects.requireNonNull(key, "Key must not be null");
+		if (!writes.mightContain(key)) {
+			return Optional.empty();
+		}
+		accounting.acquireRead(1, consistency);
 		final GetItemSpec spec = new GetItemSpec() //
-				.withPrimaryKey(buildPrimaryKey(key)) //
-				.withConsistentRead(STRONGLY_CONSISTENT_READ); //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withProjectionExpression(expressions.getReadProjection()) //
+				.withNameMap(expressions.getReadNames()) //
+				.withConsistentRead(writes.isConsistentRead(key, consistency)); //
 
-		final Item item = table.getItem(spec);
-		if (item == null) {
+		final Item item = getItem(key, spec, false);
+		if (item == null || items.isExpired(item)) {
 			return Optional.empty();
 		}
 
-		return Optional
-				.of(KeyValue.create(key, item.getString(attributeNameValue), item.getLong(attributeNameVersion)));
+		return Optional.ofNullable(items.readValue(key, item,
+				found -> KeyValue.create(key, items.decodeValue(found), found.getLong(attributeNameVersion))));
+	}
+
+	/**
+	 * Atomically add to the numeric value of a key, counting from 0 if it does not exist
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param delta
+	 *            Amount to add, may be negative
+	 * @return Value after the addition
+	 * @see #increment(String, long, long)
+	 * @since 0.2
+	 */
+	public long increment(@Nonnull final String key, final long delta) {
+		return increment(key, delta, 0);
+	}
+
+	/**
+	 * Atomically add to the numeric value of a key, with a single UpdateItem request
+	 * <p>
+	 * Counters are stored as a Number attribute, which {@link #get(String)} returns as a decimal string. A key that
+	 * does not exist counts from the initial value, so its first increment returns {@code initialValue + delta}. The
+	 * version is incremented in the same request, whatever the {@link VersionScheme}. Keys holding a value that is not
+	 * a number are rejected by DynamoDB with an {@link com.amazonaws.AmazonServiceException}. Use
+	 * {@link CounterBatcher} to combine frequent small increments of a key. With an expiry attribute, the key keeps
+	 * its expiry, and counts from the initial value again once expired.
+	 * </p>
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param delta
+	 *            Amount to add, may be negative
+	 * @param initialValue
+	 *            Value to add to if the key does not exist
+	 * @return Value after the addition
+	 * @throws ArithmeticException
+	 *             if the stored value does not fit a long
+	 * @since 0.2
+	 */
+	public long increment(@Nonnull final String key, final long delta, final long initialValue) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.INCREMENT, start, 0, incrementValue(key, delta, initialValue));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.INCREMENT, start, e);
+		}
+	}
+
+	private long incrementValue(final String key, final long delta, final long initialValue) {
+		Objects.requireNonNull(key, "Key must not be null");
+		accounting.acquireWrite(1, 0);
+		return counters.increment(key, delta, initialValue);
 	}
 
+	/**
+	 * Get whether versions are counters assigned by DynamoDB, only known once a write was stored
+	 * 
+	 * @return true for {@link VersionScheme#MONOTONIC}
+	 * @since 0.2
+	 */
+	boolean isMonotonic() {
+		return expressions.isMonotonic();
+	}
+
+	/**
+	 * Stream all keys of this keyspace, in order
+	 * 
+	 * @return Lazy {@link Stream} of keys, fetching {@value #DEFAULT_PAGE_SIZE} keys per request
+	 * @see #keys(int)
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Stream<String> keys() {
+		return keys(DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Stream all keys of this keyspace, in order
+	 * <p>
+	 * Like {@link #entries(int)}, but only the key attribute is fetched.
+	 * </p>
+	 * 
+	 * @param pageSize
+	 *            Maximum number of keys per request, positive
+	 * @return Lazy {@link Stream} of keys, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Stream<String> keys(final int pageSize) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.KEYS, start, 0,
+					queries.query(pageSize, readConsistency != ReadConsistency.EVENTUAL, true,
+							item -> item.getString(attributeNameKey), Function.identity()));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.KEYS, start, e);
+		}
+	}
+
+	/**
+	 * Stream all keys of this keyspace with strongly consistent reads, whatever the configured read consistency, for
+	 * building a {@link KeyFilter}
+	 * 
+	 * @return Lazy {@link Stream} of keys, fetching {@value #DEFAULT_PAGE_SIZE} keys per request
+	 * @since 0.2
+	 */
+	Stream<String> consistentKeys() {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.KEYS, start, 0, queries.query(DEFAULT_PAGE_SIZE, true, true,
+					item -> item.getString(attributeNameKey), Function.identity()));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.KEYS, start, e);
+		}
+	}
+
+	/**
+	 * Send a GetItem request, sharing it with concurrent identical reads if coalescing is enabled
+	 * 
+	 * @param key
+	 *            Key to read
+	 * @param spec
+	 *            {@link GetItemSpec} of the read
+	 * @param keyOnly
+	 *            Whether the spec only fetches the key attribute
+	 * @return {@link Item} read, null if there is none
+	 * @since 0.2
+	 */
+	private Item getItem(final String key, final GetItemSpec spec, final boolean keyOnly) {
+		if (readCoalescer == null) {
+			return table.getItem(spec);
+		}
+		return readCoalescer.read(keyspaceName, key, spec.isConsistentRead(), keyOnly, () -> table.getItem(spec));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * An unchanged value is not written, unless a {@link ValueCodec} or value chunking is configured: the stored form
+	 * of the same value may differ then, such as a value written before the codec was configured, so the value is
+	 * written and compared with the decoded previous value, like {@link AsyncDynamoDbKeyspace#replace(String, String)}
+	 * always does. Under {@link VersionScheme#MONOTONIC}, that write increments the version.
+	 * </p>
+	 */
 	@Override
 	public boolean replace(final String key, final String value) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordCondition(Operation.REPLACE, start, value, replaceValue(key, value));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.REPLACE, start, e);
+		}
+	}
+
+	private boolean replaceValue(final String key, final String value) {
 		Objects.requireNonNull(key, "Key must not be null");
 		Objects.requireNonNull(value, "Value must not be null");
+		accounting.acquireWrite(1, value.length());
+		if (chunkedWrites != null) {
+			return chunkedWrites.replace(key, value);
+		}
 
-		final UpdateItemSpec spec = new UpdateItemSpec() //
-				.withReturnValues(ReturnValue.ALL_OLD) //
-				.withPrimaryKey(attributeNameKeyspace, keyspaceName, attributeNameKey, key) //
-				.withAttributeUpdate( //
-						new AttributeUpdate(attributeNameValue).put(value), //
-						new AttributeUpdate(attributeNameVersion).put(value.hashCode()) //
-				) //
-				.withExpected(new Expected(attributeNameKey).exists());
-
-		try {
-			final UpdateItemOutcome outcome = table.updateItem(spec);
-			final Item item = outcome.getItem();
-			if (item == null) {
-				return true;
+		if (valueCodec != null) {
+			// Encoded values are compared decoded, from the previous value and version only
+			final UpdateItemSpec spec = new UpdateItemSpec() //
+					.withReturnValues(ReturnValue.UPDATED_OLD) //
+					.withPrimaryKey(items.buildPrimaryKey(key)) //
+					.withUpdateExpression(expressions.getSetValue()) //
+					.withConditionExpression(expressions.getExists()) //
+					.withNameMap(expressions.getReplaceNames()) //
+					.withValueMap(expressions.withNow(
+							KeyspaceExpressions.setValues(items.encodeValue(value), expressions.version(value), null),
+							System.currentTimeMillis()));
+			try {
+				final Item old = table.updateItem(spec).getItem();
+				return old == null || !Objects.equals(items.decodeValue(old), value);
+			} catch (ConditionalCheckFailedException ex) {
+				return false;
+			} finally {
+				writes.written(key);
 			}
-			return !Objects.equals(item.get(attributeNameValue), value);
+		}
+
+		// An unchanged value fails the condition like a missing key, so the previous value is never returned
+		final UpdateItemSpec spec = new UpdateItemSpec() //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withUpdateExpression(expressions.getSetValue()) //
+				.withConditionExpression(expressions.getExistsAndChanged()) //
+				.withNameMap(expressions.getReplaceNames()) //
+				.withValueMap(expressions.withNow(
+						KeyspaceExpressions.setValues(items.encodeValue(value), expressions.version(value), null),
+						System.currentTimeMillis()));
+
+		try {
+			table.updateItem(spec);
+			return true;
 		} catch (ConditionalCheckFailedException ex) {
 			return false;
+		} finally {
+			writes.written(key);
 		}
 	}
 
 	@Override
 	public boolean set(final String key, final String value) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.SET, start, value == null ? 0 : value.length(),
+					setValue(key, value, null));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.SET, start, e);
+		}
+	}
+
+	/**
+	 * Set the value of a key, expiring after the given time to live
+	 * <p>
+	 * The expiry is stored in epoch seconds in the attribute configured with
+	 * {@link DynamoDbAdapter.Builder#withExpiryAttribute(String)}. Once it passed, reads no longer return the key and
+	 * {@link #add(String, String)} succeeds, while Time To Live of the table removes the item without consuming write
+	 * capacity, typically within a few days. Later writes without a time to live, like {@link #set(String, String)},
+	 * make the key permanent again; {@link #increment(String, long, long)} keeps its expiry.
+	 * </p>
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @param value
+	 *            Value, not null
+	 * @param timeToLive
+	 *            Time until the key expires, positive, rounded up to whole seconds
+	 * @return true
+	 * @throws IllegalStateException
+	 *             if no expiry attribute was configured
+	 * @since 0.2
+	 */
+	public boolean set(@Nonnull final String key, @Nonnull final String value, @Nonnull final Duration timeToLive) {
+		final long start = System.nanoTime();
+		try {
+			return accounting.recordSuccess(Operation.SET, start, value == null ? 0 : value.length(),
+					setValue(key, value, items.expiry(timeToLive)));
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.SET, start, e);
+		}
+	}
+
+	private boolean setValue(final String key, final String value, final Long expiry) {
 		Objects.requireNonNull(key, "Key must not be null");
 		Objects.requireNonNull(value, "Value must not be null");
+		accounting.acquireWrite(1, value.length());
+		if (chunkedWrites != null) {
+			return chunkedWrites.put(key, value, null);
+		}
 
-		final Item item = buildItem(key, value);
-		table.putItem(item);
-		return true;
+		try {
+			if (expressions.isMonotonic()) {
+				table.updateItem(items.buildUpdate(key, value, expiry, false).withNameMap(expressions.getValueNames()));
+			} else {
+				table.putItem(items.buildItem(key, value, expiry));
+			}
+			return true;
+		} finally {
+			writes.written(key);
+		}
+	}
+
+	/**
+	 * Set the values of multiple keys
+	 * <p>
+	 * Items are written with BatchWriteItem requests of up to {@value #MAX_BATCH_WRITE_ITEMS} items, sent
+	 * concurrently. Each item is stored exactly as {@link #set(String, String)} would store it. With value chunking
+	 * enabled, values that may exceed the chunk size are written with {@link #set(String, String)} instead.
+	 * </p>
+	 * 
+	 * @param values
+	 *            Map of key to value, not null, containing no null keys or values
+	 * @since 0.2
+	 */
+	public void setAll(@Nonnull final Map<String, String> values) {
+		final long start = System.nanoTime();
+		try {
+			setValues(values);
+			long payloadSize = 0;
+			for (final String value : values.values()) {
+				payloadSize += value.length();
+			}
+			accounting.recordSuccess(Operation.SET_ALL, start, payloadSize, null);
+		} catch (final RuntimeException e) {
+			throw accounting.recordFailure(Operation.SET_ALL, start, e);
+		}
+	}
+
+	private void setValues(final Map<String, String> values) {
+		Objects.requireNonNull(values, "Values must not be null");
+		final List<String> single = new ArrayList<>();
+		long batchedSize = 0;
+		for (final Map.Entry<String, String> entry : values.entrySet()) {
+			Objects.requireNonNull(entry.getValue(), "Value must not be null");
+			if (expressions.isMonotonic() || chunkedWrites != null && chunkedWrites.mayNeedChunks(entry.getValue())) {
+				single.add(entry.getKey());
+			} else {
+				batchedSize += entry.getValue().length();
+			}
+		}
+		// Single writes acquire their capacity one by one
+		accounting.acquireWrite(values.size() - single.size(), batchedSize);
+		final Collection<String> keys;
+		if (single.isEmpty()) {
+			keys = values.keySet();
+		} else {
+			// Values that may need chunks, or a version counter, which BatchWriteItem cannot add to, are written one by
+			// one
+			BatchRequests.executeChunks(executor, BatchRequests.partition(single, 1),
+					chunk -> setValue(chunk.get(0), values.get(chunk.get(0)), null));
+			keys = new ArrayList<>(values.keySet());
+			keys.removeAll(new HashSet<>(single));
+		}
+		batches.putAll(values, keys);
 	}
 
 }
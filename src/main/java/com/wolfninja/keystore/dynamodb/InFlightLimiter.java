@@ -0,0 +1,97 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrently outstanding asynchronous requests
+ * <p>
+ * Requests over the cap are queued, without blocking the caller, and started as soon as an earlier request completes.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class InFlightLimiter {
+
+	private final Semaphore permits;
+
+	private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxInFlight
+	 *            Maximum number of requests in flight at once, positive
+	 * @since 0.2
+	 */
+	InFlightLimiter(final int maxInFlight) {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("MaxInFlight must be positive");
+		this.permits = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Get the number of requests currently waiting for a free slot
+	 * 
+	 * @return Number of queued requests
+	 * @since 0.2
+	 */
+	int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * Start the given request once a slot is available
+	 * 
+	 * @param request
+	 *            Supplier that starts the request, not null
+	 * @return {@link CompletableFuture} completed with the outcome of the request
+	 * @since 0.2
+	 */
+	<T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> request) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		queue.add(() -> {
+			final CompletableFuture<T> started;
+			try {
+				started = request.get();
+			} catch (final RuntimeException e) {
+				release();
+				result.completeExceptionally(e);
+				return;
+			}
+			started.whenComplete((value, error) -> {
+				release();
+				if (error != null) {
+					result.completeExceptionally(error);
+				} else {
+					result.complete(value);
+				}
+			});
+		});
+		drain();
+		return result;
+	}
+
+	private void release() {
+		permits.release();
+		drain();
+	}
+
+	private void drain() {
+		while (!queue.isEmpty()) {
+			if (!permits.tryAcquire()) {
+				// All slots busy, the next completion drains the queue
+				return;
+			}
+			final Runnable task = queue.poll();
+			if (task == null) {
+				permits.release();
+				continue;
+			}
+			task.run();
+		}
+	}
+}
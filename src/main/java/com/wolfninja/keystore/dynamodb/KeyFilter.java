@@ -0,0 +1,374 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Bloom filter of the keys of a keyspace, answering reads of keys that were never written without a request
+ * <p>
+ * The filter is built from the keys of the keyspace, read with strongly consistent Query requests, and every key
+ * written through the adapter is added to it once the write returns, whatever its outcome. A key the filter does not
+ * hold cannot exist, so {@link DynamoDbKeyspace#exists(String)}, {@link DynamoDbKeyspace#get(String)},
+ * {@link DynamoDbKeyspace#gets(String)}, their multi-key forms and the same reads of {@link AsyncDynamoDbKeyspace}
+ * report it missing at once. Other keys are read as usual, including keys deleted since the last rebuild, and a share
+ * of the keys never written given by the configured false-positive rate.
+ * </p>
+ * <p>
+ * Until the first rebuild completes, every key counts as possibly present. Rebuilds run on a background thread every
+ * rebuild interval, or on demand with {@link #rebuild()}; keys written meanwhile are added to both the current and
+ * the new filter. Keys written by other nodes are added by the {@link CacheInvalidator} reading the change stream of
+ * the table, which discards the filter when changes were lost. An adapter without one only accepts filters of
+ * keyspaces with a single writer, see {@link KeyFilterConfig.Builder#withSingleWriter(boolean)}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class KeyFilter {
+
+	/**
+	 * Largest number of bits of a filter, 1 GiB of memory
+	 * 
+	 * @since 0.2
+	 */
+	public static final long MAX_BITS = 1L << 33;
+
+	private static final double LN_2 = Math.log(2.0);
+
+	private final KeyFilterConfig config;
+	private final Supplier<Stream<String>> keys;
+	private final Executor executor;
+	private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+	private final AtomicLong resets = new AtomicLong();
+	private final LongAdder avoidedLookups = new LongAdder();
+	private final LongAdder rebuilds = new LongAdder();
+	private final LongAdder rebuildFailures = new LongAdder();
+	private volatile Bits current;
+	private volatile Bits next;
+	private volatile long keyCount;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            {@link KeyFilterConfig} to apply
+	 * @param keys
+	 *            Source of a strongly consistent stream of every key of the keyspace
+	 * @param executor
+	 *            {@link Executor} running scheduled rebuilds, which wait for the Query requests of the keyspace shards
+	 *            running on the executor of the adapter, so must not be that executor
+	 * @since 0.2
+	 */
+	KeyFilter(final KeyFilterConfig config, final Supplier<Stream<String>> keys, final Executor executor) {
+		this.config = config;
+		this.keys = keys;
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the number of reads answered by the filter without a request
+	 * 
+	 * @return Avoided lookup count
+	 * @since 0.2
+	 */
+	public long getAvoidedLookupCount() {
+		return avoidedLookups.sum();
+	}
+
+	/**
+	 * Get the estimated share of keys never written that the filter reports as possibly present, from the bits it
+	 * has set so far
+	 * 
+	 * @return False-positive rate, 1 until the first rebuild completes
+	 * @since 0.2
+	 */
+	public double getFalsePositiveRate() {
+		final Bits bits = current;
+		return bits == null ? 1.0 : bits.falsePositiveRate();
+	}
+
+	/**
+	 * Get the number of keys found by the last completed rebuild
+	 * 
+	 * @return Key count
+	 * @since 0.2
+	 */
+	public long getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Get the number of completed rebuilds
+	 * 
+	 * @return Rebuild count
+	 * @since 0.2
+	 */
+	public long getRebuildCount() {
+		return rebuilds.sum();
+	}
+
+	/**
+	 * Get the number of failed background rebuilds
+	 * 
+	 * @return Rebuild failure count
+	 * @since 0.2
+	 */
+	public long getRebuildFailureCount() {
+		return rebuildFailures.sum();
+	}
+
+	/**
+	 * Check whether the filter answers reads, which it does from the first completed rebuild until it is discarded
+	 * 
+	 * @return true if the filter is ready
+	 * @since 0.2
+	 */
+	public boolean isReady() {
+		return current != null;
+	}
+
+	/**
+	 * Check whether the given key may exist
+	 * 
+	 * @param key
+	 *            Key to check, not null
+	 * @return false if the key certainly does not exist, counted as an avoided lookup, true if it may
+	 * @since 0.2
+	 */
+	public boolean mightContain(@Nonnull final String key) {
+		final Bits bits = current;
+		if (bits == null || bits.mightContain(hash(key))) {
+			return true;
+		}
+		avoidedLookups.increment();
+		return false;
+	}
+
+	/**
+	 * Keep the keys that may exist
+	 * 
+	 * @param candidates
+	 *            Keys to check
+	 * @return the given keys if the filter is not ready, otherwise the keys that may exist
+	 * @since 0.2
+	 */
+	Collection<String> mightContainAll(final Collection<String> candidates) {
+		final Bits bits = current;
+		if (bits == null) {
+			return candidates;
+		}
+		final List<String> found = new ArrayList<>(candidates.size());
+		for (final String key : candidates) {
+			if (bits.mightContain(hash(key))) {
+				found.add(key);
+			}
+		}
+		avoidedLookups.add(candidates.size() - found.size());
+		return found;
+	}
+
+	/**
+	 * Add a key that was written, or may have been
+	 * 
+	 * @param key
+	 *            Key written
+	 * @since 0.2
+	 */
+	void put(final String key) {
+		final long hash = hash(key);
+		// The filter being built is read first: once it is gone, it is the current filter
+		final Bits building = next;
+		if (building != null) {
+			building.put(hash);
+		}
+		final Bits bits = current;
+		if (bits != null) {
+			bits.put(hash);
+		}
+	}
+
+	/**
+	 * Rebuild the filter from the keys of the keyspace, dropping the keys deleted since the previous rebuild. The
+	 * current filter keeps answering reads meanwhile.
+	 * 
+	 * @return true if the new filter is in use, false if it was discarded during the rebuild
+	 * @throws RuntimeException
+	 *             if reading the keys failed; the current filter stays in use
+	 * @since 0.2
+	 */
+	public synchronized boolean rebuild() {
+		final long resetsBefore = resets.get();
+		final long size = Math.min(MAX_BITS,
+				bitCount(Math.max(config.getExpectedKeys(), 2 * keyCount), config.getFalsePositiveRate()));
+		final Bits building = new Bits(size, hashCount(config.getFalsePositiveRate()));
+		next = building;
+		long found = 0;
+		try (final Stream<String> stream = keys.get()) {
+			final Iterator<String> iterator = stream.iterator();
+			while (iterator.hasNext()) {
+				building.put(hash(iterator.next()));
+				found++;
+			}
+		} catch (final RuntimeException e) {
+			next = null;
+			throw e;
+		}
+		// Set before the filter being built is dropped, so that keys written meanwhile reach either of both
+		current = building;
+		next = null;
+		if (resets.get() != resetsBefore) {
+			// Writes may have been missed during the scan, the rebuild scheduled by the reset runs next
+			current = null;
+			return false;
+		}
+		keyCount = found;
+		rebuilds.increment();
+		return true;
+	}
+
+	/**
+	 * Rebuild the filter on the executor, unless a rebuild is already waiting to run. Failures, including a rejected
+	 * rebuild, are counted and retried at the next interval.
+	 * 
+	 * @since 0.2
+	 */
+	void rebuildAsync() {
+		if (!rebuildScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				rebuildScheduled.set(false);
+				try {
+					rebuild();
+				} catch (final RuntimeException e) {
+					rebuildFailures.increment();
+				}
+			});
+		} catch (final RuntimeException e) {
+			// Not thrown, as a throwing task is never run again by the scheduler
+			rebuildScheduled.set(false);
+			rebuildFailures.increment();
+		}
+	}
+
+	/**
+	 * Discard the filter, as writes may have been missed, and rebuild it on the executor. Every key counts as
+	 * possibly present until then.
+	 * 
+	 * @since 0.2
+	 */
+	void reset() {
+		resets.incrementAndGet();
+		current = null;
+		rebuildAsync();
+	}
+
+	/**
+	 * Get the number of bits of a filter holding the given number of keys at the given false-positive rate
+	 * 
+	 * @param keys
+	 *            Number of keys
+	 * @param falsePositiveRate
+	 *            False-positive rate
+	 * @return Bit count, a multiple of 64, or {@link Long#MAX_VALUE} if more than {@link #MAX_BITS}
+	 * @since 0.2
+	 */
+	static long bitCount(final long keys, final double falsePositiveRate) {
+		final double bits = Math.ceil(-keys * Math.log(falsePositiveRate) / (LN_2 * LN_2));
+		if (bits > MAX_BITS) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(Long.SIZE, ((long) bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+	}
+
+	private static int hashCount(final double falsePositiveRate) {
+		return Math.max(1, (int) Math.round(-Math.log(falsePositiveRate) / LN_2));
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the characters of the key, with the finalizer of SplitMix64
+	 * 
+	 * @param key
+	 *            Key to hash
+	 * @return Hash
+	 */
+	private static long hash(final String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	private static long mix(final long value) {
+		long mixed = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		mixed = (mixed ^ (mixed >>> 27)) * 0x94d049bb133111ebL;
+		return mixed ^ (mixed >>> 31);
+	}
+
+	/**
+	 * Bit array of a filter, set without locks
+	 * <p>
+	 * The positions of a key are derived from two halves of its hash, {@code h1 + i * h2}, so the key is hashed once
+	 * whatever the number of positions.
+	 * </p>
+	 */
+	private static final class Bits {
+
+		private final AtomicLongArray words;
+		private final long size;
+		private final int hashes;
+		private final AtomicLong setBits = new AtomicLong();
+
+		Bits(final long size, final int hashes) {
+			this.words = new AtomicLongArray((int) (size / Long.SIZE));
+			this.size = size;
+			this.hashes = hashes;
+		}
+
+		double falsePositiveRate() {
+			return Math.pow((double) setBits.get() / size, hashes);
+		}
+
+		boolean mightContain(final long hash) {
+			final long first = hash;
+			final long second = mix(hash) | 1L;
+			for (int i = 0; i < hashes; i++) {
+				final long bit = Long.remainderUnsigned(first + i * second, size);
+				if ((words.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void put(final long hash) {
+			final long first = hash;
+			final long second = mix(hash) | 1L;
+			for (int i = 0; i < hashes; i++) {
+				final long bit = Long.remainderUnsigned(first + i * second, size);
+				final int index = (int) (bit >>> 6);
+				final long mask = 1L << bit;
+				long word = words.get(index);
+				while ((word & mask) == 0) {
+					if (words.compareAndSet(index, word, word | mask)) {
+						setBits.incrementAndGet();
+						break;
+					}
+					word = words.get(index);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the {@link KeyFilter} of a keyspace
+ * 
+ * @since 0.2
+ */
+public final class KeyFilterConfig {
+
+	/**
+	 * Default number of keys the filter is sized for
+	 * 
+	 * @since 0.2
+	 */
+	public static final long DEFAULT_EXPECTED_KEYS = 100_000L;
+
+	/**
+	 * Default rate of keys never written that the filter reports as possibly present, once it holds the expected
+	 * number of keys
+	 * 
+	 * @since 0.2
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * Default time between rebuilds of the filter from the keys of the keyspace
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_REBUILD_INTERVAL = Duration.ofHours(1);
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final long expectedKeys;
+
+	private final double falsePositiveRate;
+
+	private final Duration rebuildInterval;
+
+	private final boolean singleWriter;
+
+	private KeyFilterConfig(final Builder builder) {
+		this.expectedKeys = builder.expectedKeys;
+		this.falsePositiveRate = builder.falsePositiveRate;
+		this.rebuildInterval = builder.rebuildInterval;
+		this.singleWriter = builder.singleWriter;
+	}
+
+	/**
+	 * Get the number of keys the filter is sized for
+	 * 
+	 * @return Expected keys
+	 * @since 0.2
+	 */
+	public long getExpectedKeys() {
+		return expectedKeys;
+	}
+
+	/**
+	 * Get the rate of keys never written that the filter reports as possibly present, once it holds the expected
+	 * number of keys
+	 * 
+	 * @return False-positive rate
+	 * @since 0.2
+	 */
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	/**
+	 * Get the time between rebuilds of the filter from the keys of the keyspace
+	 * 
+	 * @return Rebuild interval
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getRebuildInterval() {
+		return rebuildInterval;
+	}
+
+	/**
+	 * Check whether every writer of the keyspace uses the adapter the filter belongs to
+	 * 
+	 * @return true if the keyspace has a single writer
+	 * @since 0.2
+	 */
+	public boolean isSingleWriter() {
+		return singleWriter;
+	}
+
+	/**
+	 * Builder for {@link KeyFilterConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private long expectedKeys = DEFAULT_EXPECTED_KEYS;
+
+		private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+
+		private Duration rebuildInterval = DEFAULT_REBUILD_INTERVAL;
+
+		private boolean singleWriter;
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link KeyFilterConfig}
+		 * 
+		 * @return new {@link KeyFilterConfig} instance, not null
+		 * @throws IllegalStateException
+		 *             if the filter would need more than {@value KeyFilter#MAX_BITS} bits
+		 * @since 0.2
+		 */
+		@Nonnull
+		public KeyFilterConfig build() {
+			if (KeyFilter.bitCount(expectedKeys, falsePositiveRate) > KeyFilter.MAX_BITS)
+				throw new IllegalStateException("Filter for " + expectedKeys + " keys at a false-positive rate of "
+						+ falsePositiveRate + " exceeds " + KeyFilter.MAX_BITS + " bits");
+			return new KeyFilterConfig(this);
+		}
+
+		/**
+		 * Set the number of keys the filter is sized for. A rebuild sizes the filter for twice the keys found by the
+		 * previous rebuild instead, if that is larger. Defaults to 100,000.
+		 * 
+		 * @param expectedKeys
+		 *            Expected keys, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withExpectedKeys(final long expectedKeys) {
+			if (expectedKeys < 1)
+				throw new IllegalArgumentException("ExpectedKeys must be positive");
+			this.expectedKeys = expectedKeys;
+			return this;
+		}
+
+		/**
+		 * Set the rate of keys never written that the filter reports as possibly present, once it holds the expected
+		 * number of keys. Each key then takes about {@code -ln(rate) / ln(2)^2} bits, 9.6 bits for the default of 1%.
+		 * Keys deleted since the last rebuild count as possibly present as well.
+		 * 
+		 * @param falsePositiveRate
+		 *            False-positive rate, between 0 and 1 exclusive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withFalsePositiveRate(final double falsePositiveRate) {
+			if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0))
+				throw new IllegalArgumentException("FalsePositiveRate must be between 0 and 1");
+			this.falsePositiveRate = falsePositiveRate;
+			return this;
+		}
+
+		/**
+		 * Set the time between rebuilds of the filter, which drop the keys deleted since the previous rebuild. Each
+		 * rebuild reads every key of the keyspace with strongly consistent Query requests. Defaults to 1 hour.
+		 * 
+		 * @param rebuildInterval
+		 *            Rebuild interval, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withRebuildInterval(@Nonnull final Duration rebuildInterval) {
+			Objects.requireNonNull(rebuildInterval, "RebuildInterval must not be null");
+			if (rebuildInterval.isNegative() || rebuildInterval.isZero())
+				throw new IllegalArgumentException("RebuildInterval must be positive");
+			this.rebuildInterval = rebuildInterval;
+			return this;
+		}
+
+		/**
+		 * Declare that every writer of the keyspace uses the adapter the filter belongs to, so that the filter sees
+		 * every key written. Required by {@link DynamoDbAdapter.Builder#build()} unless the adapter reads the change
+		 * stream of the table with a {@link CacheInvalidator}, as keys written by other nodes would otherwise be
+		 * reported missing until the next rebuild. Disabled by default.
+		 * 
+		 * @param singleWriter
+		 *            Whether the keyspace has a single writer
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withSingleWriter(final boolean singleWriter) {
+			this.singleWriter = singleWriter;
+			return this;
+		}
+	}
+}
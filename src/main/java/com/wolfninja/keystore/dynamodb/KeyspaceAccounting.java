@@ -0,0 +1,220 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Operation;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Outcome;
+
+/**
+ * Accounts the operations of a keyspace: acquires their capacity from the {@link CapacityLimiter}, reports it to the
+ * {@link CapacityTuner}, and records their outcome with the {@link KeyspaceMetrics} of the adapter
+ * <p>
+ * Capacity is estimated before the requests are sent, from the number of items and the length of their values, and
+ * items read are charged again once their size is known.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class KeyspaceAccounting {
+
+	/**
+	 * Estimated size of an item beside its value and keyspace name: key, version and attribute names
+	 */
+	private static final int ITEM_OVERHEAD_BYTES = 64;
+
+	/**
+	 * Operations charged write capacity
+	 */
+	private static final Set<Operation> WRITE_OPERATIONS = EnumSet.of(Operation.ADD, Operation.CHECK_AND_SET,
+			Operation.COMPUTE, Operation.DELETE, Operation.DELETE_ALL, Operation.DELETES, Operation.INCREMENT,
+			Operation.REPLACE, Operation.SET, Operation.SET_ALL);
+
+	private final String keyspaceName;
+	private final KeyspaceMetrics metrics;
+	private final CapacityLimiter capacityLimiter;
+	private final CapacityTuner capacityTuner;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace accounted, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} holding the metrics and capacity configuration, not null
+	 * @since 0.2
+	 */
+	KeyspaceAccounting(final String keyspaceName, final DynamoDbAdapter adapter) {
+		this.keyspaceName = Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		this.metrics = adapter.getMetrics();
+		this.capacityLimiter = adapter.getCapacityLimiter().orElse(null);
+		this.capacityTuner = adapter.getCapacityTuner().orElse(null);
+	}
+
+	/**
+	 * Acquire the read capacity of an operation from the capacity limiter, and record it with the capacity tuner, if
+	 * any
+	 * 
+	 * @param items
+	 *            Number of items to read
+	 * @param consistency
+	 *            {@link ReadConsistency} of the read
+	 * @since 0.2
+	 */
+	void acquireRead(final int items, final ReadConsistency consistency) {
+		if ((capacityLimiter != null || capacityTuner != null) && items > 0) {
+			final double units = CapacityLimiter.readUnits(items, 0, consistency != ReadConsistency.EVENTUAL);
+			if (capacityLimiter != null) {
+				capacityLimiter.acquireRead(units);
+			}
+			if (capacityTuner != null) {
+				capacityTuner.recordRead(units);
+			}
+		}
+	}
+
+	/**
+	 * Charge the read capacity of items beyond what {@link #acquireRead(int, ReadConsistency)} acquired for them
+	 * 
+	 * @param items
+	 *            Number of items read
+	 * @param payloadSize
+	 *            Total length of their values
+	 * @param consistency
+	 *            {@link ReadConsistency} of the read
+	 * @since 0.2
+	 */
+	void chargeRead(final int items, final long payloadSize, final ReadConsistency consistency) {
+		if ((capacityLimiter != null || capacityTuner != null) && items > 0) {
+			final boolean consistent = consistency != ReadConsistency.EVENTUAL;
+			final long size = payloadSize + items * (ITEM_OVERHEAD_BYTES + keyspaceName.length());
+			final double units = CapacityLimiter.readUnits(items, size, consistent)
+					- CapacityLimiter.readUnits(items, 0, consistent);
+			if (capacityLimiter != null) {
+				capacityLimiter.chargeRead(units);
+			}
+			if (capacityTuner != null) {
+				capacityTuner.recordRead(units);
+			}
+		}
+	}
+
+	/**
+	 * Acquire the write capacity of an operation from the capacity limiter, and record it with the capacity tuner, if
+	 * any
+	 * 
+	 * @param items
+	 *            Number of items to write
+	 * @param payloadSize
+	 *            Total length of their values
+	 * @since 0.2
+	 */
+	void acquireWrite(final int items, final long payloadSize) {
+		if ((capacityLimiter != null || capacityTuner != null) && items > 0) {
+			final long size = payloadSize + items * (ITEM_OVERHEAD_BYTES + keyspaceName.length());
+			final double units = CapacityLimiter.writeUnits(items, size);
+			if (capacityLimiter != null) {
+				capacityLimiter.acquireWrite(units);
+			}
+			if (capacityTuner != null) {
+				capacityTuner.recordWrite(units);
+			}
+		}
+	}
+
+	/**
+	 * Create the callback of batch retries of an operation, which follow throttling
+	 * 
+	 * @param operation
+	 *            {@link Operation} retrying
+	 * @return Callback recording the retry
+	 * @since 0.2
+	 */
+	Runnable retried(final Operation operation) {
+		return () -> {
+			metrics.recordRetry(keyspaceName, operation);
+			if (capacityLimiter != null) {
+				capacityLimiter.throttled(WRITE_OPERATIONS.contains(operation));
+			}
+		};
+	}
+
+	/**
+	 * Record a retry of an operation that lost to a concurrent write, rather than being throttled
+	 * 
+	 * @param operation
+	 *            {@link Operation} retrying
+	 * @since 0.2
+	 */
+	void recordContention(final Operation operation) {
+		metrics.recordRetry(keyspaceName, operation);
+	}
+
+	/**
+	 * Record a conditional operation, which failed its condition if it returned false
+	 * 
+	 * @param operation
+	 *            {@link Operation} performed
+	 * @param start
+	 *            {@link System#nanoTime()} at the start of the operation
+	 * @param value
+	 *            Value written, null for deletes
+	 * @param result
+	 *            Result of the operation
+	 * @return the result
+	 * @since 0.2
+	 */
+	boolean recordCondition(final Operation operation, final long start, final String value, final boolean result) {
+		metrics.recordOperation(keyspaceName, operation, result ? Outcome.SUCCESS : Outcome.CONDITION_FAILED,
+				System.nanoTime() - start, result && value != null ? value.length() : 0);
+		return result;
+	}
+
+	/**
+	 * Record an operation that completed normally
+	 * 
+	 * @param operation
+	 *            {@link Operation} performed
+	 * @param start
+	 *            {@link System#nanoTime()} at the start of the operation
+	 * @param payloadSize
+	 *            Total length of the values written or returned
+	 * @param result
+	 *            Result of the operation
+	 * @return the result
+	 * @since 0.2
+	 */
+	<T> T recordSuccess(final Operation operation, final long start, final long payloadSize, final T result) {
+		metrics.recordOperation(keyspaceName, operation, Outcome.SUCCESS, System.nanoTime() - start, payloadSize);
+		return result;
+	}
+
+	/**
+	 * Record an operation that failed with an exception, reporting throttling to the capacity limiter
+	 * 
+	 * @param operation
+	 *            {@link Operation} performed
+	 * @param start
+	 *            {@link System#nanoTime()} at the start of the operation
+	 * @param e
+	 *            Exception thrown by the operation
+	 * @return the exception, for rethrowing
+	 * @since 0.2
+	 */
+	RuntimeException recordFailure(final Operation operation, final long start, final RuntimeException e) {
+		final Outcome outcome;
+		if (e instanceof ProvisionedThroughputExceededException) {
+			outcome = Outcome.THROTTLED;
+			if (capacityLimiter != null) {
+				capacityLimiter.throttled(WRITE_OPERATIONS.contains(operation));
+			}
+		} else {
+			outcome = e instanceof CapacityExceededException ? Outcome.THROTTLED : Outcome.FAILED;
+		}
+		metrics.recordOperation(keyspaceName, operation, outcome, System.nanoTime() - start, 0);
+		return e;
+	}
+}
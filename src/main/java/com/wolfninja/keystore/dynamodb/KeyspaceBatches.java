@@ -0,0 +1,188 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Operation;
+
+/**
+ * Reads and writes multiple keys of a keyspace with batched requests, sent concurrently on the executor of the adapter
+ * <p>
+ * Without a {@link DynamoDB} instance configured, each key of a batch is read or written with its own request instead.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class KeyspaceBatches {
+
+	private final Table table;
+	private final String attributeNameKey;
+	private final DynamoDB dynamoDB;
+	private final Executor executor;
+	private final ReadConsistency readConsistency;
+	private final KeyspaceExpressions expressions;
+	private final KeyspaceItems items;
+	private final KeyspaceAccounting accounting;
+	private final WriteTracker writes;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} holding the table, {@link DynamoDB} instance and executor, not null
+	 * @since 0.2
+	 */
+	KeyspaceBatches(final String keyspaceName, final DynamoDbAdapter adapter) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		this.table = adapter.getTable();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.dynamoDB = adapter.getDynamoDB().orElse(null);
+		this.executor = adapter.getExecutor();
+		this.readConsistency = adapter.getReadConsistency(keyspaceName);
+		this.expressions = adapter.getExpressions();
+		this.items = new KeyspaceItems(keyspaceName, adapter);
+		this.accounting = new KeyspaceAccounting(keyspaceName, adapter);
+		this.writes = new WriteTracker(keyspaceName, adapter);
+	}
+
+	/**
+	 * Fetch multiple items, split into concurrently executed chunks
+	 * 
+	 * @param operation
+	 *            {@link Operation} fetching the items, for recording retries
+	 * @param keys
+	 *            Keys to get
+	 * @param mapper
+	 *            Conversion of a fetched {@link Item}
+	 * @return Map of key to converted item
+	 * @since 0.2
+	 */
+	<T> Map<String, T> get(final Operation operation, final Collection<String> keys, final Function<Item, T> mapper) {
+		Objects.requireNonNull(keys, "Keys must not be null");
+		final Collection<String> candidates = writes.mightContainAll(keys);
+		accounting.acquireRead(candidates.size(), readConsistency);
+		final Map<String, T> result = new HashMap<>();
+		final List<List<Item>> chunks = BatchRequests.executeChunks(executor,
+				BatchRequests.partition(candidates, DynamoDbKeyspace.MAX_BATCH_GET_KEYS),
+				chunk -> getChunk(operation, chunk));
+		for (final List<Item> chunkItems : chunks) {
+			for (final Item item : chunkItems) {
+				if (items.isExpired(item)) {
+					continue;
+				}
+				final T value = mapper.apply(item);
+				// Null if a chunked value was deleted while reading it
+				if (value != null) {
+					result.put(item.getString(attributeNameKey), value);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fetch a single chunk of keys, retrying any unprocessed keys with backoff
+	 * 
+	 * @param operation
+	 *            {@link Operation} fetching the keys, for recording retries
+	 * @param chunk
+	 *            Keys to get, at most {@value DynamoDbKeyspace#MAX_BATCH_GET_KEYS}
+	 * @return Fetched items
+	 * @since 0.2
+	 */
+	private List<Item> getChunk(final Operation operation, final List<String> chunk) {
+		if (dynamoDB == null) {
+			final List<Item> found = new ArrayList<>(chunk.size());
+			for (final String key : chunk) {
+				final Item item = table.getItem(new GetItemSpec() //
+						.withPrimaryKey(items.buildPrimaryKey(key)) //
+						.withProjectionExpression(expressions.getEntryProjection()) //
+						.withNameMap(expressions.getEntryNames()) //
+						.withConsistentRead(writes.isConsistentRead(key, readConsistency)));
+				if (item != null) {
+					found.add(item);
+				}
+			}
+			return found;
+		}
+
+		// The consistency applies to the whole request, so one recently written key makes the chunk strongly consistent
+		boolean consistentRead = false;
+		final TableKeysAndAttributes keysAndAttributes = new TableKeysAndAttributes(table.getTableName());
+		for (final String key : chunk) {
+			keysAndAttributes.addPrimaryKey(items.buildPrimaryKey(key));
+			consistentRead = consistentRead || writes.isConsistentRead(key, readConsistency);
+		}
+		keysAndAttributes.withConsistentRead(consistentRead) //
+				.withProjectionExpression(expressions.getEntryProjection()) //
+				.withNameMap(expressions.getEntryNames());
+		return BatchRequests.batchGetItems(dynamoDB, keysAndAttributes, accounting.retried(operation));
+	}
+
+	/**
+	 * Delete multiple keys, without reporting whether they existed
+	 * 
+	 * @param keys
+	 *            Keys to delete, none null
+	 * @since 0.2
+	 */
+	void deleteAll(final Collection<String> keys) {
+		BatchRequests.executeChunks(executor, BatchRequests.partition(keys, DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS),
+				chunk -> writes.writtenAll(chunk, () -> {
+					if (dynamoDB == null) {
+						for (final String key : chunk) {
+							table.deleteItem(items.buildPrimaryKey(key));
+						}
+						return null;
+					}
+					final TableWriteItems writeItems = new TableWriteItems(table.getTableName());
+					for (final String key : chunk) {
+						writeItems.addPrimaryKeyToDelete(items.buildPrimaryKey(key));
+					}
+					return BatchRequests.batchWriteChunk(dynamoDB, writeItems,
+							accounting.retried(Operation.DELETE_ALL));
+				}));
+	}
+
+	/**
+	 * Put the values of multiple keys, stored as {@link DynamoDbKeyspace#set(String, String)} stores a value that fits
+	 * a single item
+	 * 
+	 * @param values
+	 *            Map of key to value, holding a value for each of the keys
+	 * @param keys
+	 *            Keys to put, none null
+	 * @since 0.2
+	 */
+	void putAll(final Map<String, String> values, final Collection<String> keys) {
+		BatchRequests.executeChunks(executor, BatchRequests.partition(keys, DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS),
+				chunk -> writes.writtenAll(chunk, () -> {
+					if (dynamoDB == null) {
+						for (final String key : chunk) {
+							table.putItem(items.buildItem(key, values.get(key), null));
+						}
+						return null;
+					}
+					final TableWriteItems writeItems = new TableWriteItems(table.getTableName());
+					for (final String key : chunk) {
+						writeItems.addItemToPut(items.buildItem(key, values.get(key), null));
+					}
+					return BatchRequests.batchWriteChunk(dynamoDB, writeItems, accounting.retried(Operation.SET_ALL));
+				}));
+	}
+}
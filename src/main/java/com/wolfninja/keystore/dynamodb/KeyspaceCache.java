@@ -0,0 +1,360 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+
+import com.wolfninja.keystore.api.KeyValue;
+
+/**
+ * Bounded local cache of {@link KeyValue}s, shared by the {@link CachingKeyspace}s of an adapter
+ * <p>
+ * Entries are bounded by count and estimated size, evicted in least recently used order, and expire after the time to
+ * live of their keyspace. The cache is split into independently locked segments to limit contention.
+ * </p>
+ * <p>
+ * Every write through this node leaves a tombstone, stamped with a write sequence number. A read result is only
+ * cached if no write to the same key completed after the read was started, so a slow read can never overwrite the
+ * effect of a newer local write with the older value and version it fetched. Writes of other nodes, read from the
+ * change stream of the table by a {@link CacheInvalidator}, leave tombstones the same way.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class KeyspaceCache {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private static final int ENTRIES_PER_SEGMENT = 64;
+
+	/**
+	 * Approximate fixed per-entry overhead (entry, map node, key objects), in bytes
+	 */
+	private static final long ENTRY_OVERHEAD_BYTES = 96L;
+
+	private final KeyspaceCacheConfig config;
+	private final LongSupplier ticker;
+	private final Segment[] segments;
+	private final AtomicLong writeSequence = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            {@link KeyspaceCacheConfig} to use, not null
+	 * @since 0.2
+	 */
+	KeyspaceCache(@Nonnull final KeyspaceCacheConfig config) {
+		this(config, System::nanoTime);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param config
+	 *            {@link KeyspaceCacheConfig} to use, not null
+	 * @param ticker
+	 *            Source of the current time, in nanoseconds
+	 * @since 0.2
+	 */
+	KeyspaceCache(@Nonnull final KeyspaceCacheConfig config, @Nonnull final LongSupplier ticker) {
+		this.config = Objects.requireNonNull(config, "Config must not be null");
+		this.ticker = Objects.requireNonNull(ticker, "Ticker must not be null");
+
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && (long) segmentCount * 2 * ENTRIES_PER_SEGMENT <= config.getMaxEntries()) {
+			segmentCount *= 2;
+		}
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(Math.max(1L, config.getMaxEntries() / segmentCount),
+					Math.max(1L, config.getMaxBytes() / segmentCount));
+		}
+	}
+
+	/**
+	 * Get the number of entries evicted to stay within the configured bounds
+	 * 
+	 * @return Eviction count
+	 * @since 0.2
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Get the number of entries dropped because their time to live passed
+	 * 
+	 * @return Expiration count
+	 * @since 0.2
+	 */
+	public long getExpirationCount() {
+		return expirations.sum();
+	}
+
+	/**
+	 * Get the number of lookups answered from the cache
+	 * 
+	 * @return Hit count
+	 * @since 0.2
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Get the number of lookups that were not answered from the cache
+	 * 
+	 * @return Miss count
+	 * @since 0.2
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Get the number of cached values, excluding tombstones
+	 * 
+	 * @return Number of values
+	 * @since 0.2
+	 */
+	public long size() {
+		long size = 0;
+		for (final Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.values;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Drop every cached value and tombstone
+	 * 
+	 * @since 0.2
+	 */
+	public void invalidateAll() {
+		final long sequence = writeSequence.incrementAndGet();
+		for (final Segment segment : segments) {
+			synchronized (segment) {
+				segment.map.clear();
+				segment.values = 0;
+				segment.bytes = 0;
+				// Reads started before now may not repopulate what was just dropped
+				segment.evictedSequence = sequence;
+			}
+		}
+	}
+
+	/**
+	 * Look up a cached value
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key
+	 * @return Cached {@link KeyValue}, {@link Optional#empty()} on a miss
+	 * @since 0.2
+	 */
+	Optional<KeyValue> get(final String keyspaceName, final String key) {
+		final KeyspaceKey cacheKey = new KeyspaceKey(keyspaceName, key);
+		final Segment segment = segmentFor(cacheKey);
+		synchronized (segment) {
+			final Entry entry = segment.map.get(cacheKey);
+			if (entry != null && entry.value != null) {
+				if (ticker.getAsLong() - entry.expiresAt < 0) {
+					hits.increment();
+					return Optional.of(entry.value);
+				}
+				segment.remove(cacheKey, entry);
+				expirations.increment();
+			}
+		}
+		misses.increment();
+		return Optional.empty();
+	}
+
+	/**
+	 * Record a completed write, dropping any cached value of the key
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key
+	 * @since 0.2
+	 */
+	void invalidate(final String keyspaceName, final String key) {
+		final KeyspaceKey cacheKey = new KeyspaceKey(keyspaceName, key);
+		final Segment segment = segmentFor(cacheKey);
+		synchronized (segment) {
+			final Entry tombstone = new Entry(null, writeSequence.incrementAndGet(), 0L, weigh(cacheKey, null));
+			segment.insert(cacheKey, tombstone);
+		}
+	}
+
+	/**
+	 * Record a write made by any node, as read from the change stream of the table. The cached value of the key is
+	 * dropped unless it already reflects the write, and a tombstone is left for reads still in flight.
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key
+	 * @param version
+	 *            Version written, null if the key was deleted or the version is unknown
+	 * @param monotonic
+	 *            true if versions only grow, so a cached value with a higher version is newer than the write
+	 * @return true if a cached value was dropped
+	 * @since 0.2
+	 */
+	boolean invalidate(final String keyspaceName, final String key, final Long version, final boolean monotonic) {
+		final KeyspaceKey cacheKey = new KeyspaceKey(keyspaceName, key);
+		final Segment segment = segmentFor(cacheKey);
+		synchronized (segment) {
+			final Entry existing = segment.map.get(cacheKey);
+			final boolean cached = existing != null && existing.value != null;
+			if (cached && version != null) {
+				final long cachedVersion = existing.value.getVersion();
+				if (monotonic ? cachedVersion >= version : cachedVersion == version) {
+					return false;
+				}
+			}
+			final Entry tombstone = new Entry(null, writeSequence.incrementAndGet(), 0L, weigh(cacheKey, null));
+			segment.insert(cacheKey, tombstone);
+			return cached;
+		}
+	}
+
+	/**
+	 * Cache the result of a read, unless a write to the same key completed after the read was started
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param value
+	 *            {@link KeyValue} that was read
+	 * @param readSequence
+	 *            Value of {@link #readStarted()} before the read was sent
+	 * @return true if cached
+	 * @since 0.2
+	 */
+	boolean put(final String keyspaceName, final KeyValue value, final long readSequence) {
+		final KeyspaceKey cacheKey = new KeyspaceKey(keyspaceName, value.getKey());
+		final Segment segment = segmentFor(cacheKey);
+		final long expiresAt = ticker.getAsLong() + config.getTtl(keyspaceName).toNanos();
+		synchronized (segment) {
+			if (readSequence < segment.evictedSequence) {
+				// A tombstone this read might have raced with is gone, assume the worst
+				return false;
+			}
+			final Entry existing = segment.map.get(cacheKey);
+			if (existing != null && existing.value == null && existing.sequence > readSequence) {
+				return false;
+			}
+			segment.insert(cacheKey, new Entry(value, readSequence, expiresAt, weigh(cacheKey, value)));
+			return true;
+		}
+	}
+
+	/**
+	 * Get the current write sequence, to be passed to {@link #put(String, KeyValue, long)} once the read completes
+	 * 
+	 * @return Current write sequence
+	 * @since 0.2
+	 */
+	long readStarted() {
+		return writeSequence.get();
+	}
+
+	private Segment segmentFor(final KeyspaceKey cacheKey) {
+		final int hash = cacheKey.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+	}
+
+	private static long weigh(final KeyspaceKey cacheKey, final KeyValue value) {
+		long chars = cacheKey.getKeyspaceName().length() + cacheKey.getKey().length();
+		if (value != null && value.getValue() != null) {
+			chars += value.getValue().length();
+		}
+		return ENTRY_OVERHEAD_BYTES + 2L * chars;
+	}
+
+	/**
+	 * Cached value, or a tombstone when {@link #value} is null
+	 */
+	private static final class Entry {
+
+		private final KeyValue value;
+		private final long sequence;
+		private final long expiresAt;
+		private final long weight;
+
+		Entry(final KeyValue value, final long sequence, final long expiresAt, final long weight) {
+			this.value = value;
+			this.sequence = sequence;
+			this.expiresAt = expiresAt;
+			this.weight = weight;
+		}
+	}
+
+	private final class Segment {
+
+		private final LinkedHashMap<KeyspaceKey, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+		private final long maxEntries;
+		private final long maxBytes;
+		private long values;
+		private long bytes;
+		private long evictedSequence;
+
+		Segment(final long maxEntries, final long maxBytes) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+		}
+
+		void insert(final KeyspaceKey cacheKey, final Entry entry) {
+			final Entry previous = map.put(cacheKey, entry);
+			if (previous != null) {
+				account(previous, -1);
+			}
+			account(entry, 1);
+
+			final Iterator<Map.Entry<KeyspaceKey, Entry>> eldest = map.entrySet().iterator();
+			while ((map.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+				final Map.Entry<KeyspaceKey, Entry> victim = eldest.next();
+				if (victim.getValue() == entry) {
+					break;
+				}
+				eldest.remove();
+				account(victim.getValue(), -1);
+				if (victim.getValue().value == null) {
+					evictedSequence = Math.max(evictedSequence, victim.getValue().sequence);
+				} else {
+					evictions.increment();
+				}
+			}
+		}
+
+		void remove(final KeyspaceKey cacheKey, final Entry entry) {
+			if (map.remove(cacheKey, entry)) {
+				account(entry, -1);
+			}
+		}
+
+		private void account(final Entry entry, final int sign) {
+			bytes += sign * entry.weight;
+			if (entry.value != null) {
+				values += sign;
+			}
+		}
+	}
+}
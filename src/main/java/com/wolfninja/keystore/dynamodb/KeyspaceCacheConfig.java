@@ -0,0 +1,198 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the local read-through cache used by {@link CachingKeyspace}
+ * 
+ * @since 0.2
+ */
+public final class KeyspaceCacheConfig {
+
+	/**
+	 * Default maximum number of cached entries
+	 * 
+	 * @since 0.2
+	 */
+	public static final long DEFAULT_MAX_ENTRIES = 10_000L;
+
+	/**
+	 * Default maximum estimated size of all cached entries, in bytes
+	 * 
+	 * @since 0.2
+	 */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+	/**
+	 * Default time to live of cached entries
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default limits
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final long maxEntries;
+
+	private final long maxBytes;
+
+	private final Duration ttl;
+
+	private final Map<String, Duration> keyspaceTtls;
+
+	private KeyspaceCacheConfig(final Builder builder) {
+		this.maxEntries = builder.maxEntries;
+		this.maxBytes = builder.maxBytes;
+		this.ttl = builder.ttl;
+		this.keyspaceTtls = Collections.unmodifiableMap(new HashMap<>(builder.keyspaceTtls));
+	}
+
+	/**
+	 * Get the maximum estimated size of all cached entries
+	 * 
+	 * @return Maximum size, in bytes
+	 * @since 0.2
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Get the maximum number of cached entries
+	 * 
+	 * @return Maximum number of entries
+	 * @since 0.2
+	 */
+	public long getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Get the time to live of entries in the given keyspace
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name, not null
+	 * @return Keyspace specific time to live if configured, the default time to live otherwise
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getTtl(@Nonnull final String keyspaceName) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		return keyspaceTtls.getOrDefault(keyspaceName, ttl);
+	}
+
+	/**
+	 * Builder for {@link KeyspaceCacheConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private long maxEntries = DEFAULT_MAX_ENTRIES;
+
+		private long maxBytes = DEFAULT_MAX_BYTES;
+
+		private Duration ttl = DEFAULT_TTL;
+
+		private final Map<String, Duration> keyspaceTtls = new HashMap<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link KeyspaceCacheConfig}
+		 * 
+		 * @return new {@link KeyspaceCacheConfig} instance, not null
+		 * @since 0.2
+		 */
+		@Nonnull
+		public KeyspaceCacheConfig build() {
+			return new KeyspaceCacheConfig(this);
+		}
+
+		/**
+		 * Set the time to live of entries in a single keyspace, overriding the default
+		 * 
+		 * @param keyspaceName
+		 *            Keyspace name, not null
+		 * @param keyspaceTtl
+		 *            Time to live, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withKeyspaceTtl(@Nonnull final String keyspaceName, @Nonnull final Duration keyspaceTtl) {
+			Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+			keyspaceTtls.put(keyspaceName, requirePositive(keyspaceTtl));
+			return this;
+		}
+
+		/**
+		 * Set the maximum estimated size of all cached entries
+		 * 
+		 * @param maxBytes
+		 *            Maximum size in bytes, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxBytes(final long maxBytes) {
+			if (maxBytes < 1)
+				throw new IllegalArgumentException("MaxBytes must be positive");
+			this.maxBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of cached entries
+		 * 
+		 * @param maxEntries
+		 *            Maximum number of entries, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxEntries(final long maxEntries) {
+			if (maxEntries < 1)
+				throw new IllegalArgumentException("MaxEntries must be positive");
+			this.maxEntries = maxEntries;
+			return this;
+		}
+
+		/**
+		 * Set the default time to live of cached entries
+		 * 
+		 * @param ttl
+		 *            Time to live, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withTtl(@Nonnull final Duration ttl) {
+			this.ttl = requirePositive(ttl);
+			return this;
+		}
+
+		private static Duration requirePositive(final Duration ttl) {
+			Objects.requireNonNull(ttl, "Ttl must not be null");
+			if (ttl.isNegative() || ttl.isZero())
+				throw new IllegalArgumentException("Ttl must be positive");
+			return ttl;
+		}
+	}
+}
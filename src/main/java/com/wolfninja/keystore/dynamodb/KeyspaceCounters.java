@@ -0,0 +1,96 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Map;
+import java.util.Objects;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+
+/**
+ * Adds to the numeric values of a keyspace atomically, see {@link DynamoDbKeyspace#increment(String, long, long)}
+ * <p>
+ * Each increment is a single UpdateItem request. With an expiry attribute, an expired counter that Time To Live did
+ * not remove yet is reset to the initial value by a second conditional request.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class KeyspaceCounters {
+
+	private final Table table;
+	private final String attributeNameValue;
+	private final KeyspaceExpressions expressions;
+	private final KeyspaceItems items;
+	private final WriteTracker writes;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} holding the table and attribute names, not null
+	 * @since 0.2
+	 */
+	KeyspaceCounters(final String keyspaceName, final DynamoDbAdapter adapter) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		this.table = adapter.getTable();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.expressions = adapter.getExpressions();
+		this.items = new KeyspaceItems(keyspaceName, adapter);
+		this.writes = new WriteTracker(keyspaceName, adapter);
+	}
+
+	/**
+	 * Add to the numeric value of a key
+	 * 
+	 * @param key
+	 *            Key
+	 * @param delta
+	 *            Amount to add, may be negative
+	 * @param initialValue
+	 *            Value to add to if the key does not exist or expired
+	 * @return Value after the addition
+	 * @throws ArithmeticException
+	 *             if the stored value does not fit a long
+	 * @since 0.2
+	 */
+	long increment(final String key, final long delta, final long initialValue) {
+		final UpdateItemSpec spec = new UpdateItemSpec() //
+				.withPrimaryKey(items.buildPrimaryKey(key)) //
+				.withUpdateExpression(KeyspaceExpressions.INCREMENT_VALUE) //
+				.withNameMap(expressions.getValueNames()) //
+				.withReturnValues(ReturnValue.UPDATED_NEW);
+
+		try {
+			if (!expressions.isExpiring()) {
+				spec.withValueMap(KeyspaceExpressions.incrementValues(delta, initialValue));
+				return table.updateItem(spec).getItem().getNumber(attributeNameValue).longValueExact();
+			}
+			while (true) {
+				final Map<String, Object> values = expressions
+						.withNow(KeyspaceExpressions.incrementValues(delta, initialValue), System.currentTimeMillis());
+				try {
+					spec.withConditionExpression(expressions.getIncrementCondition()).withValueMap(values);
+					return table.updateItem(spec).getItem().getNumber(attributeNameValue).longValueExact();
+				} catch (final ConditionalCheckFailedException e) {
+					// Expired but not removed yet, so the key counts from the initial value again
+				}
+				try {
+					spec.withUpdateExpression(KeyspaceExpressions.RESET_VALUE) //
+							.withConditionExpression(KeyspaceExpressions.EXPIRED) //
+							.withValueMap(values);
+					return table.updateItem(spec).getItem().getNumber(attributeNameValue).longValueExact();
+				} catch (final ConditionalCheckFailedException e) {
+					// Written meanwhile
+					spec.withUpdateExpression(KeyspaceExpressions.INCREMENT_VALUE);
+				}
+			}
+		} finally {
+			writes.written(key);
+		}
+	}
+}
@@ -0,0 +1,440 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Condition, update and projection expressions of the keyspace requests, compiled once per adapter
+ * <p>
+ * Each expression comes with the name map of exactly the placeholders it uses, as DynamoDB rejects unused names. The
+ * maps are immutable and shared by all requests; only the value maps differ per request.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class KeyspaceExpressions {
+
+	static final String NAME_KEYSPACE = "#b";
+	static final String NAME_KEY = "#k";
+	static final String NAME_VALUE = "#v";
+	static final String NAME_VERSION = "#ver";
+	static final String NAME_EXPIRY = "#exp";
+
+	static final String VALUE_VALUE = ":v";
+	static final String VALUE_VERSION = ":ver";
+	static final String VALUE_EXPECTED = ":expected";
+	static final String VALUE_DELTA = ":delta";
+	static final String VALUE_INITIAL = ":initial";
+	static final String VALUE_EXPIRY = ":exp";
+	static final String VALUE_NOW = ":now";
+
+	/**
+	 * Condition of adding a key that does not exist
+	 */
+	static final String NOT_EXISTS = "attribute_not_exists(" + NAME_KEYSPACE + ")";
+
+	/**
+	 * Condition of replacing or deleting a key that exists
+	 */
+	static final String EXISTS = "attribute_exists(" + NAME_KEYSPACE + ")";
+
+	/**
+	 * Condition of replacing the value of a key that exists, failing if the value is unchanged
+	 */
+	static final String EXISTS_AND_CHANGED = EXISTS + " AND " + NAME_VALUE + " <> " + VALUE_VALUE;
+
+	/**
+	 * Condition of a versioned write
+	 */
+	static final String VERSION_MATCHES = NAME_VERSION + " = " + VALUE_EXPECTED;
+
+	/**
+	 * Update storing the value and its version
+	 */
+	static final String SET_VALUE = "SET " + NAME_VALUE + " = " + VALUE_VALUE + ", " + NAME_VERSION + " = "
+			+ VALUE_VERSION;
+
+	/**
+	 * Update storing the value and adding to its version, for {@link VersionScheme#MONOTONIC}
+	 */
+	static final String SET_VALUE_ADD_VERSION = "SET " + NAME_VALUE + " = " + VALUE_VALUE + " ADD " + NAME_VERSION
+			+ " " + VALUE_VERSION;
+
+	/**
+	 * Update adding to a numeric value, counting from an initial value if it is missing, and adding to its version
+	 */
+	static final String INCREMENT_VALUE = "SET " + NAME_VALUE + " = if_not_exists(" + NAME_VALUE + ", " + VALUE_INITIAL
+			+ ") + " + VALUE_DELTA + " ADD " + NAME_VERSION + " " + VALUE_VERSION;
+
+	/**
+	 * Condition of an item that has no expiry, or one in the future
+	 */
+	static final String LIVE = "(attribute_not_exists(" + NAME_EXPIRY + ") OR " + NAME_EXPIRY + " > " + VALUE_NOW + ")";
+
+	/**
+	 * Condition of an item past its expiry, which DynamoDB did not remove yet
+	 */
+	static final String EXPIRED = NAME_EXPIRY + " <= " + VALUE_NOW;
+
+	/**
+	 * Update storing a value expiring at a point in time, adding to its version, for {@link VersionScheme#MONOTONIC}
+	 */
+	static final String SET_EXPIRING_VALUE_ADD_VERSION = "SET " + NAME_VALUE + " = " + VALUE_VALUE + ", " + NAME_EXPIRY
+			+ " = " + VALUE_EXPIRY + " ADD " + NAME_VERSION + " " + VALUE_VERSION;
+
+	/**
+	 * Update storing a counter over an expired item, counting from the initial value and clearing its expiry
+	 */
+	static final String RESET_VALUE = "SET " + NAME_VALUE + " = " + VALUE_INITIAL + " + " + VALUE_DELTA + " ADD "
+			+ NAME_VERSION + " " + VALUE_VERSION + " REMOVE " + NAME_EXPIRY;
+
+	/**
+	 * Get the epoch second of a point in time, as compared by DynamoDB Time To Live
+	 * 
+	 * @param millis
+	 *            Epoch millisecond
+	 * @return Epoch second, rounded down
+	 * @since 0.2
+	 */
+	static long epochSecond(final long millis) {
+		return Math.floorDiv(millis, 1000);
+	}
+
+	private final Map<String, String> keyspaceNames;
+	private final Map<String, String> keyNames;
+	private final Map<String, String> valueNames;
+	private final Map<String, String> versionNames;
+	private final Map<String, String> replaceNames;
+	private final Map<String, String> readNames;
+	private final String readProjection;
+	private final Map<String, String> entryNames;
+	private final String entryProjection;
+	private final boolean monotonic;
+	private final boolean expiring;
+	private final String keyProjection;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} providing the attribute names
+	 * @param chunked
+	 *            Whether reads need the attributes of chunk manifests
+	 * @since 0.2
+	 */
+	KeyspaceExpressions(final DynamoDbAdapter adapter, final boolean chunked) {
+		// With an expiry attribute, every condition and projection refers to it
+		final String expiry = adapter.getAttributeNameExpiry().orElse(null);
+		expiring = expiry != null;
+		keyspaceNames = withExpiry(Collections.singletonMap(NAME_KEYSPACE, adapter.getAttributeNameKeyspace()), expiry);
+		keyNames = withExpiry(Collections.singletonMap(NAME_KEY, adapter.getAttributeNameKey()), expiry);
+		keyProjection = expiring ? NAME_KEY + ", " + NAME_EXPIRY : NAME_KEY;
+
+		final Map<String, String> value = new HashMap<>();
+		value.put(NAME_VALUE, adapter.getAttributeNameValue());
+		value.put(NAME_VERSION, adapter.getAttributeNameVersion());
+		if (expiring) {
+			value.put(NAME_EXPIRY, expiry);
+		}
+		valueNames = Collections.unmodifiableMap(new HashMap<>(value));
+		versionNames = withExpiry(Collections.singletonMap(NAME_VERSION, adapter.getAttributeNameVersion()), expiry);
+
+		value.put(NAME_KEYSPACE, adapter.getAttributeNameKeyspace());
+		replaceNames = Collections.unmodifiableMap(new HashMap<>(value));
+		value.remove(NAME_KEYSPACE);
+
+		// Reading a chunked value needs the manifest and the key the chunks are stored under
+		final String manifest = ", " + ChunkedValueStore.ATTRIBUTE_CHUNKS + ", " + ChunkedValueStore.ATTRIBUTE_CHUNK_ID
+				+ ", " + ChunkedValueStore.ATTRIBUTE_CHUNK_ENCODED;
+		value.put(NAME_KEY, adapter.getAttributeNameKey());
+		entryNames = Collections.unmodifiableMap(new HashMap<>(value));
+		final String expiryProjection = expiring ? ", " + NAME_EXPIRY : "";
+		entryProjection = NAME_KEY + ", " + NAME_VALUE + ", " + NAME_VERSION + expiryProjection
+				+ (chunked ? manifest : "");
+		readNames = chunked ? entryNames : valueNames;
+		readProjection = chunked ? entryProjection : NAME_VALUE + ", " + NAME_VERSION + expiryProjection;
+		monotonic = adapter.getVersionScheme() == VersionScheme.MONOTONIC;
+	}
+
+	private static Map<String, String> withExpiry(final Map<String, String> names, final String expiry) {
+		if (expiry == null) {
+			return names;
+		}
+		final Map<String, String> extended = new HashMap<>(names);
+		extended.put(NAME_EXPIRY, expiry);
+		return Collections.unmodifiableMap(extended);
+	}
+
+	/**
+	 * Get the update storing a value, {@link #SET_VALUE} or {@link #SET_VALUE_ADD_VERSION} depending on the
+	 * {@link VersionScheme}, also removing the expiry of the item if there is an expiry attribute
+	 * 
+	 * @return Update expression
+	 * @since 0.2
+	 */
+	String getSetValue() {
+		final String update = monotonic ? SET_VALUE_ADD_VERSION : SET_VALUE;
+		return expiring ? update + " REMOVE " + NAME_EXPIRY : update;
+	}
+
+	/**
+	 * Get the condition of adding a key, {@link #NOT_EXISTS}, or an expired item if there is an expiry attribute
+	 * 
+	 * @return Condition expression
+	 * @since 0.2
+	 */
+	String getNotExists() {
+		return expiring ? "(" + NOT_EXISTS + " OR " + EXPIRED + ")" : NOT_EXISTS;
+	}
+
+	/**
+	 * Get the condition of deleting a key, {@link #EXISTS}, of an item that is not expired
+	 * 
+	 * @return Condition expression
+	 * @since 0.2
+	 */
+	String getExists() {
+		return live(EXISTS);
+	}
+
+	/**
+	 * Get the condition of replacing a key, {@link #EXISTS_AND_CHANGED}, of an item that is not expired
+	 * 
+	 * @return Condition expression
+	 * @since 0.2
+	 */
+	String getExistsAndChanged() {
+		return live(EXISTS_AND_CHANGED);
+	}
+
+	/**
+	 * Get the condition of a versioned write, {@link #VERSION_MATCHES}, of an item that is not expired
+	 * 
+	 * @return Condition expression
+	 * @since 0.2
+	 */
+	String getVersionMatches() {
+		return live(VERSION_MATCHES);
+	}
+
+	/**
+	 * Get the condition of an incremented item, {@link #LIVE} if there is an expiry attribute
+	 * 
+	 * @return Condition expression, null if there is no expiry attribute
+	 * @since 0.2
+	 */
+	String getIncrementCondition() {
+		return expiring ? LIVE : null;
+	}
+
+	/**
+	 * Get the filter of queried items, {@link #LIVE} if there is an expiry attribute
+	 * 
+	 * @return Filter expression, null if there is no expiry attribute
+	 * @since 0.2
+	 */
+	String getQueryFilter() {
+		return expiring ? LIVE : null;
+	}
+
+	private String live(final String condition) {
+		return expiring ? condition + " AND " + LIVE : condition;
+	}
+
+	/**
+	 * Add the current time {@value #VALUE_NOW}, compared by the conditions of an adapter with an expiry attribute, to
+	 * the values of a request
+	 * 
+	 * @param values
+	 *            Value map of the request, may be null
+	 * @param nowMillis
+	 *            Current epoch millisecond
+	 * @return Value map, null if it was null and there is no expiry attribute
+	 * @since 0.2
+	 */
+	Map<String, Object> withNow(final Map<String, Object> values, final long nowMillis) {
+		if (!expiring) {
+			return values;
+		}
+		final Map<String, Object> extended = values == null ? new HashMap<>(2) : new HashMap<>(values);
+		extended.put(VALUE_NOW, epochSecond(nowMillis));
+		return extended;
+	}
+
+	/**
+	 * Get whether items may expire, see {@link DynamoDbAdapter.Builder#withExpiryAttribute(String)}
+	 * 
+	 * @return true if there is an expiry attribute
+	 * @since 0.2
+	 */
+	boolean isExpiring() {
+		return expiring;
+	}
+
+	/**
+	 * Get the version value of {@link #getSetValue()} for the given value
+	 * 
+	 * @param value
+	 *            Value to store
+	 * @return Increment of the version, or the version itself
+	 * @since 0.2
+	 */
+	long version(final Object value) {
+		return monotonic ? 1L : value.hashCode();
+	}
+
+	/**
+	 * Get whether versions are counters, written with update requests only
+	 * 
+	 * @return true for {@link VersionScheme#MONOTONIC}
+	 * @since 0.2
+	 */
+	boolean isMonotonic() {
+		return monotonic;
+	}
+
+	/**
+	 * Get the projection of items listed with their key, for entries and multi-key reads
+	 * 
+	 * @return Projection expression
+	 * @since 0.2
+	 */
+	String getEntryProjection() {
+		return entryProjection;
+	}
+
+	/**
+	 * Get the name map of {@link #getEntryProjection()}
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getEntryNames() {
+		return entryNames;
+	}
+
+	/**
+	 * Get the projection of key-only reads, {@link #NAME_KEY} and the expiry if there is an expiry attribute
+	 * 
+	 * @return Projection expression
+	 * @since 0.2
+	 */
+	String getKeyProjection() {
+		return keyProjection;
+	}
+
+	/**
+	 * Get the name map of {@link #getKeyProjection()}, for key-only projections
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getKeyNames() {
+		return keyNames;
+	}
+
+	/**
+	 * Get the name map of {@link #NAME_KEYSPACE}, for {@link #getExists()} and {@link #getNotExists()}
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getKeyspaceNames() {
+		return keyspaceNames;
+	}
+
+	/**
+	 * Get the projection of items read by key
+	 * 
+	 * @return Projection expression
+	 * @since 0.2
+	 */
+	String getReadProjection() {
+		return readProjection;
+	}
+
+	/**
+	 * Get the name map of {@link #getReadProjection()}
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getReadNames() {
+		return readNames;
+	}
+
+	/**
+	 * Get the name map of {@link #getSetValue()} or {@link #SET_EXPIRING_VALUE_ADD_VERSION}, with the condition
+	 * {@link #getExistsAndChanged()}, {@link #getExists()} or {@link #getNotExists()}
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getReplaceNames() {
+		return replaceNames;
+	}
+
+	/**
+	 * Get the name map of {@link #getSetValue()}, {@link #SET_EXPIRING_VALUE_ADD_VERSION}, {@link #INCREMENT_VALUE} or
+	 * {@link #RESET_VALUE}, optionally with the condition {@link #getVersionMatches()},
+	 * {@link #getIncrementCondition()} or {@link #EXPIRED}
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getValueNames() {
+		return valueNames;
+	}
+
+	/**
+	 * Get the name map of {@link #getVersionMatches()}
+	 * 
+	 * @return Name map
+	 * @since 0.2
+	 */
+	Map<String, String> getVersionNames() {
+		return versionNames;
+	}
+
+	/**
+	 * Build the values of {@link #getSetValue()}
+	 * 
+	 * @param stored
+	 *            Value in its stored form, String or byte[]
+	 * @param version
+	 *            Version of the value, or its increment, see {@link #version(Object)}
+	 * @param expected
+	 *            Expected version of {@link #VERSION_MATCHES}, null without that condition
+	 * @return Value map
+	 * @since 0.2
+	 */
+	static Map<String, Object> setValues(final Object stored, final long version, final Long expected) {
+		// Copied by the request spec, so only sized for its entries
+		final Map<String, Object> values = new HashMap<>(4);
+		values.put(VALUE_VALUE, stored);
+		values.put(VALUE_VERSION, version);
+		if (expected != null) {
+			values.put(VALUE_EXPECTED, expected);
+		}
+		return values;
+	}
+
+	/**
+	 * Build the values of {@link #INCREMENT_VALUE}
+	 * 
+	 * @param delta
+	 *            Amount to add
+	 * @param initialValue
+	 *            Value a missing key counts from
+	 * @return Value map
+	 * @since 0.2
+	 */
+	static Map<String, Object> incrementValues(final long delta, final long initialValue) {
+		final Map<String, Object> values = new HashMap<>(4);
+		values.put(VALUE_DELTA, delta);
+		values.put(VALUE_INITIAL, initialValue);
+		values.put(VALUE_VERSION, 1L);
+		return values;
+	}
+}
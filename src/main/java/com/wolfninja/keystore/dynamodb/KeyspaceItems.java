@@ -0,0 +1,324 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.Manifest;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.MissingChunksException;
+
+/**
+ * Maps the keys and values of a keyspace to the items storing them, and back
+ * <p>
+ * Keys are routed to the partition of their shard. Values are stored as given, encoded by the {@link ValueCodec}, or
+ * as chunks referenced by a manifest, and read back from any of these forms. Items past their expiry are recognized
+ * until Time To Live removes them.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class KeyspaceItems {
+
+	/**
+	 * Attempts at reading a chunked value, each after the previous one found its chunks replaced
+	 */
+	private static final int MAX_CHUNKED_READ_ATTEMPTS = 3;
+
+	private final String keyspaceName;
+	private final Table table;
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final String attributeNameValue;
+	private final String attributeNameVersion;
+	private final String attributeNameExpiry;
+	private final int shards;
+	private final ValueCodec valueCodec;
+	private final ChunkedValueStore chunkStore;
+	private final KeyspaceExpressions expressions;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} holding the table, attribute names, sharding and value configuration, not
+	 *            null
+	 * @since 0.2
+	 */
+	KeyspaceItems(final String keyspaceName, final DynamoDbAdapter adapter) {
+		this.keyspaceName = Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		this.table = adapter.getTable();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = adapter.getAttributeNameKey();
+		this.attributeNameValue = adapter.getAttributeNameValue();
+		this.attributeNameVersion = adapter.getAttributeNameVersion();
+		this.attributeNameExpiry = adapter.getAttributeNameExpiry().orElse(null);
+		this.shards = adapter.getShards(keyspaceName);
+		this.valueCodec = adapter.getValueCodec().orElse(null);
+		this.chunkStore = adapter.getChunkStore();
+		this.expressions = adapter.getExpressions();
+	}
+
+	/**
+	 * Build {@link PrimaryKey} instance for the given key
+	 * 
+	 * @param key
+	 *            String key
+	 * @return {@link PrimaryKey}
+	 * @since 0.1
+	 */
+	PrimaryKey buildPrimaryKey(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		return new PrimaryKey(attributeNameKeyspace, partitionValue(key), attributeNameKey, key);
+	}
+
+	/**
+	 * Get the partition key value storing the given key in this keyspace
+	 * 
+	 * @param key
+	 *            Key
+	 * @return Partition key value, see {@link #partitionValue(String, int, String)}
+	 * @since 0.2
+	 */
+	String partitionValue(final String key) {
+		return partitionValue(keyspaceName, shards, key);
+	}
+
+	/**
+	 * Get the partition key value storing the given key
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param shards
+	 *            Number of shards of the keyspace
+	 * @param key
+	 *            Key
+	 * @return Keyspace name if the keyspace is not sharded, {@code keyspaceName#shard} otherwise
+	 * @since 0.2
+	 */
+	static String partitionValue(final String keyspaceName, final int shards, final String key) {
+		if (shards <= 1) {
+			return keyspaceName;
+		}
+		// String#hashCode is specified, so every node routes a key to the same shard
+		int hash = key.hashCode() * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return shardValue(keyspaceName, Math.floorMod(hash, shards));
+	}
+
+	/**
+	 * Get the partition key value of a shard of a keyspace
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param shard
+	 *            Shard number
+	 * @return {@code keyspaceName#shard}
+	 * @since 0.2
+	 */
+	static String shardValue(final String keyspaceName, final int shard) {
+		return keyspaceName + '#' + shard;
+	}
+
+	/**
+	 * Build new {@link Item} with correct attributes, versioned by {@link VersionScheme#HASH_CODE}
+	 * 
+	 * @param key
+	 *            String key Key to assign
+	 * @param value
+	 *            String value Value to assign
+	 * @param expiry
+	 *            Epoch second the item expires at, null if it does not
+	 * @return new {@link Item} instance
+	 * @since 0.1
+	 */
+	Item buildItem(final String key, final String value, final Long expiry) {
+		final Item item = new Item() //
+				.withPrimaryKey(buildPrimaryKey(key)) //
+				.with(attributeNameValue, encodeValue(value)) //
+				.withLong(attributeNameVersion, value.hashCode());
+		return expiry == null ? item : item.withLong(attributeNameExpiry, expiry);
+	}
+
+	/**
+	 * Build an update storing the value of a key, which writes items versioned by {@link VersionScheme#MONOTONIC}
+	 * 
+	 * @param key
+	 *            Key
+	 * @param value
+	 *            Value
+	 * @param expiry
+	 *            Epoch second the item expires at, null to remove any expiry
+	 * @param conditional
+	 *            Whether the caller adds a condition, which may compare the expiry to the current time
+	 * @return new {@link UpdateItemSpec}, without condition or name map
+	 * @since 0.2
+	 */
+	UpdateItemSpec buildUpdate(final String key, final String value, final Long expiry,
+			final boolean conditional) {
+		final Map<String, Object> values = KeyspaceExpressions.setValues(encodeValue(value),
+				expressions.version(value), null);
+		if (expiry != null) {
+			values.put(KeyspaceExpressions.VALUE_EXPIRY, expiry);
+		}
+		return new UpdateItemSpec() //
+				.withPrimaryKey(buildPrimaryKey(key)) //
+				.withUpdateExpression(expiry == null ? expressions.getSetValue()
+						: KeyspaceExpressions.SET_EXPIRING_VALUE_ADD_VERSION) //
+				.withValueMap(conditional ? expressions.withNow(values, System.currentTimeMillis()) : values);
+	}
+
+	/**
+	 * Convert a value to the form it is stored in
+	 * 
+	 * @param value
+	 *            Value
+	 * @return Value itself, or the bytes encoded by the {@link ValueCodec}
+	 * @since 0.2
+	 */
+	Object encodeValue(final String value) {
+		if (valueCodec == null) {
+			return value;
+		}
+		final byte[] encoded = valueCodec.encode(value);
+		return encoded == null ? value : encoded;
+	}
+
+	/**
+	 * Read the value of an item, decoding it if it was stored encoded
+	 * 
+	 * @param item
+	 *            {@link Item} read
+	 * @return Value, null if the item has none
+	 * @since 0.2
+	 */
+	String decodeValue(final Item item) {
+		if (valueCodec == null) {
+			final String value = item.getString(attributeNameValue);
+			return value != null ? value : readChunks(item);
+		}
+		final Object stored = item.get(attributeNameValue);
+		if (stored == null) {
+			return readChunks(item);
+		}
+		if (stored instanceof String) {
+			return (String) stored;
+		}
+		if (stored instanceof Number) {
+			// Counter
+			return item.getString(attributeNameValue);
+		}
+		return valueCodec.decode(item.getBinary(attributeNameValue));
+	}
+
+	/**
+	 * Read the value of an item holding a chunk manifest
+	 * 
+	 * @param item
+	 *            {@link Item} read
+	 * @return Value, null if the item is not a manifest
+	 * @throws MissingChunksException
+	 *             if the chunks were deleted meanwhile
+	 * @since 0.2
+	 */
+	private String readChunks(final Item item) {
+		final Manifest manifest = Manifest.of(item);
+		if (manifest == null) {
+			return null;
+		}
+		final String key = item.getString(attributeNameKey);
+		final byte[] payload = chunkStore.read(partitionValue(key), key, manifest, false);
+		if (!manifest.isEncoded()) {
+			return new String(payload, StandardCharsets.UTF_8);
+		}
+		if (valueCodec == null)
+			throw new IllegalStateException("Value is stored encoded, but no ValueCodec is configured");
+		return valueCodec.decode(payload);
+	}
+
+	/**
+	 * Convert an item read, reading the item again if its chunks were replaced meanwhile
+	 * 
+	 * @param key
+	 *            Key of the item
+	 * @param item
+	 *            {@link Item} read
+	 * @param mapper
+	 *            Conversion of the item
+	 * @return Converted item, null if the key was deleted meanwhile
+	 * @since 0.2
+	 */
+	<T> T readValue(final String key, final Item item, final Function<Item, T> mapper) {
+		Item current = item;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return current == null ? null : mapper.apply(current);
+			} catch (final MissingChunksException e) {
+				if (attempt >= MAX_CHUNKED_READ_ATTEMPTS) {
+					throw e;
+				}
+				current = table.getItem(new GetItemSpec() //
+						.withPrimaryKey(buildPrimaryKey(key)) //
+						.withConsistentRead(true));
+			}
+		}
+	}
+
+	/**
+	 * Convert an item read to a {@link KeyValue}, see {@link #readValue(String, Item, Function)}
+	 * 
+	 * @param item
+	 *            {@link Item} read, with the key, value and version attributes
+	 * @return {@link KeyValue}, null if the key was deleted meanwhile
+	 * @since 0.2
+	 */
+	KeyValue toKeyValue(final Item item) {
+		final String key = item.getString(attributeNameKey);
+		return readValue(key, item,
+				found -> KeyValue.create(key, decodeValue(found), found.getLong(attributeNameVersion)));
+	}
+
+	/**
+	 * Get the expiry of a value written now with the given time to live
+	 * 
+	 * @param timeToLive
+	 *            Time to live, positive
+	 * @return Epoch second, rounded up so the value never expires early
+	 * @throws IllegalStateException
+	 *             if no expiry attribute was configured
+	 * @since 0.2
+	 */
+	Long expiry(final Duration timeToLive) {
+		Objects.requireNonNull(timeToLive, "TimeToLive must not be null");
+		if (timeToLive.isNegative() || timeToLive.isZero())
+			throw new IllegalArgumentException("TimeToLive must be positive");
+		if (attributeNameExpiry == null)
+			throw new IllegalStateException("No expiry attribute configured for keyspace " + keyspaceName);
+		return KeyspaceExpressions.epochSecond(System.currentTimeMillis() + timeToLive.toMillis() + 999);
+	}
+
+	/**
+	 * Check whether an item is past its expiry, but was not removed by DynamoDB yet
+	 * 
+	 * @param item
+	 *            {@link Item} read, with the expiry attribute if there is one
+	 * @return true if expired
+	 * @since 0.2
+	 */
+	boolean isExpired(final Item item) {
+		if (attributeNameExpiry == null || !item.isPresent(attributeNameExpiry)) {
+			return false;
+		}
+		return item.getLong(attributeNameExpiry) <= KeyspaceExpressions.epochSecond(System.currentTimeMillis());
+	}
+}
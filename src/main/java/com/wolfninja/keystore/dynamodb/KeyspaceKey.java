@@ -0,0 +1,68 @@
+package com.wolfninja.keystore.dynamodb;
+
+/**
+ * (keyspace, key) pair, used to key adapter-wide state shared by keyspace instances
+ * 
+ * @since 0.2
+ */
+final class KeyspaceKey {
+
+	private final String keyspaceName;
+	private final String key;
+	private final int hash;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key
+	 * @since 0.2
+	 */
+	KeyspaceKey(final String keyspaceName, final String key) {
+		this.keyspaceName = keyspaceName;
+		this.key = key;
+		this.hash = 31 * keyspaceName.hashCode() + key.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof KeyspaceKey))
+			return false;
+		final KeyspaceKey other = (KeyspaceKey) obj;
+		return hash == other.hash && key.equals(other.key) && keyspaceName.equals(other.keyspaceName);
+	}
+
+	/**
+	 * Get the key
+	 * 
+	 * @return Key
+	 * @since 0.2
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the keyspace name
+	 * 
+	 * @return Keyspace name
+	 * @since 0.2
+	 */
+	String getKeyspaceName() {
+		return keyspaceName;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return keyspaceName + "/" + key;
+	}
+}
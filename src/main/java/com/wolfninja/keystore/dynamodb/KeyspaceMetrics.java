@@ -0,0 +1,105 @@
+package com.wolfninja.keystore.dynamodb;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receiver of per-operation measurements of {@link DynamoDbKeyspace}, see
+ * {@link DynamoDbAdapter.Builder#withMetrics(KeyspaceMetrics)}
+ * <p>
+ * Methods are called on the thread of the measured operation, once it completed, by any number of threads at once.
+ * Implementations must be thread-safe and return quickly; {@link RecordingKeyspaceMetrics} records into lock-free
+ * counters and histograms.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public interface KeyspaceMetrics {
+
+	/**
+	 * Metrics discarding every measurement, the default
+	 * 
+	 * @since 0.2
+	 */
+	KeyspaceMetrics NONE = new KeyspaceMetrics() {
+
+		@Override
+		public void recordOperation(final String keyspaceName, final Operation operation, final Outcome outcome,
+				final long latencyNanos, final long payloadSize) {
+			// Discarded
+		}
+
+		@Override
+		public void recordRetry(final String keyspaceName, final Operation operation) {
+			// Discarded
+		}
+	};
+
+	/**
+	 * Measured keyspace operations
+	 * 
+	 * @since 0.2
+	 */
+	enum Operation {
+		ADD, CHECK_AND_SET, COMPUTE, DELETE, DELETE_ALL, DELETES, ENTRIES, EXISTS, GET, GET_ALL, GETS, GETS_ALL,
+		INCREMENT, KEYS, REPLACE, SET, SET_ALL
+	}
+
+	/**
+	 * Outcome of a keyspace operation
+	 * 
+	 * @since 0.2
+	 */
+	enum Outcome {
+		/**
+		 * Completed normally
+		 */
+		SUCCESS,
+		/**
+		 * Returned false because its condition did not hold, like adding an existing key
+		 */
+		CONDITION_FAILED,
+		/**
+		 * Failed because DynamoDB kept throttling it beyond the SDK's retries, or the {@link CapacityLimiter} rejected
+		 * it
+		 */
+		THROTTLED,
+		/**
+		 * Failed with any other exception
+		 */
+		FAILED
+	}
+
+	/**
+	 * Record a completed operation
+	 * <p>
+	 * For {@link Operation#KEYS} and {@link Operation#ENTRIES}, the latency is the time to set up the lazy stream; its
+	 * requests are not measured.
+	 * </p>
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace, not null
+	 * @param operation
+	 *            {@link Operation} performed, not null
+	 * @param outcome
+	 *            {@link Outcome} of the operation, not null
+	 * @param latencyNanos
+	 *            Time the operation took, in nanoseconds
+	 * @param payloadSize
+	 *            Total length of the values written or returned, in characters
+	 * @since 0.2
+	 */
+	void recordOperation(@Nonnull String keyspaceName, @Nonnull Operation operation, @Nonnull Outcome outcome,
+			long latencyNanos, long payloadSize);
+
+	/**
+	 * Record a retry within an operation, of items a batch request left unprocessed because of throttling, or of a
+	 * {@link Operation#COMPUTE} whose write lost to a concurrent write of the key
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace, not null
+	 * @param operation
+	 *            {@link Operation} retrying, not null
+	 * @since 0.2
+	 */
+	void recordRetry(@Nonnull String keyspaceName, @Nonnull Operation operation);
+}
@@ -0,0 +1,115 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+
+/**
+ * Streams the items of a keyspace with paginated Query requests on its partition
+ * <p>
+ * Each partition is read by a {@link PrefetchingIterator}, which fetches the next page while the current one is
+ * consumed. The partitions of a sharded keyspace are queried in parallel and merged in key order by a
+ * {@link MergingIterator}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class KeyspaceQueries {
+
+	private final String keyspaceName;
+	private final Table table;
+	private final String attributeNameKeyspace;
+	private final Executor executor;
+	private final int shards;
+	private final KeyspaceExpressions expressions;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace queried, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} holding the table, executor and sharding configuration, not null
+	 * @since 0.2
+	 */
+	KeyspaceQueries(final String keyspaceName, final DynamoDbAdapter adapter) {
+		this.keyspaceName = Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		this.table = adapter.getTable();
+		this.attributeNameKeyspace = adapter.getAttributeNameKeyspace();
+		this.executor = adapter.getExecutor();
+		this.shards = adapter.getShards(keyspaceName);
+		this.expressions = adapter.getExpressions();
+	}
+
+	/**
+	 * Lazily query the keyspace partition, or all shard partitions in parallel
+	 * 
+	 * @param pageSize
+	 *            Maximum number of items per request
+	 * @param consistentRead
+	 *            Whether to use strongly consistent reads
+	 * @param keysOnly
+	 *            Whether to fetch the key attribute only
+	 * @param mapper
+	 *            Conversion of each fetched {@link Item}
+	 * @param key
+	 *            Key of a converted item, for merging shards in key order
+	 * @return Lazy {@link Stream} of converted items
+	 * @since 0.2
+	 */
+	<T> Stream<T> query(final int pageSize, final boolean consistentRead, final boolean keysOnly,
+			final Function<Item, T> mapper, final Function<T, String> key) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("PageSize must be positive");
+
+		final int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		if (shards <= 1) {
+			final Iterator<T> iterator = queryPartition(keyspaceName, pageSize, consistentRead, keysOnly, mapper);
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+		}
+		// Resolved once the stream is consumed, then the first page of every shard is fetched concurrently
+		return StreamSupport.stream(() -> {
+			final List<PrefetchingIterator<QueryOutcome, T>> shardIterators = new ArrayList<>(shards);
+			for (int shard = 0; shard < shards; shard++) {
+				shardIterators.add(queryPartition(KeyspaceItems.shardValue(keyspaceName, shard), pageSize,
+						consistentRead, keysOnly, mapper).prefetch());
+			}
+			return Spliterators.spliteratorUnknownSize(
+					new MergingIterator<>(shardIterators, Comparator.comparing(key, MergingIterator.KEY_ORDER)),
+					characteristics);
+		}, characteristics, false);
+	}
+
+	private <T> PrefetchingIterator<QueryOutcome, T> queryPartition(final String partitionValue, final int pageSize,
+			final boolean consistentRead, final boolean keysOnly, final Function<Item, T> mapper) {
+		final QuerySpec spec = new QuerySpec() //
+				.withHashKey(attributeNameKeyspace, partitionValue) //
+				.withConsistentRead(consistentRead) //
+				.withMaxPageSize(pageSize);
+		if (keysOnly) {
+			spec.withProjectionExpression(expressions.getKeyProjection()).withNameMap(expressions.getKeyNames());
+		} else {
+			spec.withProjectionExpression(expressions.getEntryProjection()).withNameMap(expressions.getEntryNames());
+		}
+		if (expressions.isExpiring()) {
+			// Expired items still consume read capacity, but are not returned
+			spec.withFilterExpression(expressions.getQueryFilter()) //
+					.withValueMap(expressions.withNow(null, System.currentTimeMillis()));
+		}
+		return new PrefetchingIterator<>(() -> table.query(spec).firstPage(), mapper, executor);
+	}
+}
@@ -0,0 +1,91 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges already sorted iterators into a single sorted {@link Iterator}, used to combine the shards of a keyspace
+ * 
+ * @since 0.2
+ */
+final class MergingIterator<T> implements Iterator<T> {
+
+	/**
+	 * Orders strings like DynamoDB orders string sort keys, by the bytes of their UTF-8 encoding
+	 * 
+	 * @since 0.2
+	 */
+	static final Comparator<String> KEY_ORDER = (first, second) -> {
+		// UTF-8 byte order is code point order, which differs from String#compareTo for surrogate pairs
+		int i = 0;
+		int j = 0;
+		while (i < first.length() && j < second.length()) {
+			final int a = first.codePointAt(i);
+			final int b = second.codePointAt(j);
+			if (a != b) {
+				return Integer.compare(a, b);
+			}
+			i += Character.charCount(a);
+			j += Character.charCount(b);
+		}
+		return Integer.compare(first.length() - i, second.length() - j);
+	};
+
+	private final List<? extends Iterator<T>> sources;
+	private final Comparator<? super T> comparator;
+	private PriorityQueue<Head<T>> heads;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param sources
+	 *            Iterators to merge, each sorted by the comparator
+	 * @param comparator
+	 *            Order of the elements
+	 * @since 0.2
+	 */
+	MergingIterator(final List<? extends Iterator<T>> sources, final Comparator<? super T> comparator) {
+		this.sources = sources;
+		this.comparator = comparator;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (heads == null) {
+			heads = new PriorityQueue<>(Math.max(1, sources.size()),
+					(first, second) -> comparator.compare(first.value, second.value));
+			for (final Iterator<T> source : sources) {
+				if (source.hasNext()) {
+					heads.add(new Head<>(source.next(), source));
+				}
+			}
+		}
+		return !heads.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final Head<T> head = heads.poll();
+		if (head.source.hasNext()) {
+			heads.add(new Head<>(head.source.next(), head.source));
+		}
+		return head.value;
+	}
+
+	private static final class Head<T> {
+
+		private final T value;
+		private final Iterator<T> source;
+
+		Head(final T value, final Iterator<T> source) {
+			this.value = value;
+			this.source = source;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+
+/**
+ * Lazy {@link Iterator} over paginated results, fetching the next page while the current one is consumed
+ * <p>
+ * No request is sent before the first call to {@link #hasNext()}. At most two pages are held at a time, so memory use
+ * does not grow with the number of results.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class PrefetchingIterator<R, T> implements Iterator<T> {
+
+	private final Supplier<Page<Item, R>> firstPage;
+	private final Function<Item, T> mapper;
+	private final Executor executor;
+	private Iterator<Item> current;
+	private boolean started;
+	private Supplier<Page<Item, R>> nextPage;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param firstPage
+	 *            Fetches the first page, not null
+	 * @param mapper
+	 *            Conversion of each {@link Item}, not null
+	 * @param executor
+	 *            {@link Executor} fetching the following pages, not null
+	 * @since 0.2
+	 */
+	PrefetchingIterator(final Supplier<Page<Item, R>> firstPage, final Function<Item, T> mapper,
+			final Executor executor) {
+		this.firstPage = Objects.requireNonNull(firstPage, "FirstPage must not be null");
+		this.mapper = Objects.requireNonNull(mapper, "Mapper must not be null");
+		this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (current == null || !current.hasNext()) {
+			final Page<Item, R> page;
+			if (!started) {
+				started = true;
+				page = firstPage.get();
+			} else if (nextPage != null) {
+				page = nextPage.get();
+			} else {
+				return false;
+			}
+			current = page.iterator();
+			nextPage = page.hasNextPage() ? fetch(page::nextPage) : null;
+		}
+		return true;
+	}
+
+	/**
+	 * Start fetching the first page on the executor, if not started yet
+	 * 
+	 * @return this iterator
+	 * @since 0.2
+	 */
+	PrefetchingIterator<R, T> prefetch() {
+		if (!started) {
+			started = true;
+			nextPage = fetch(firstPage);
+		}
+		return this;
+	}
+
+	/**
+	 * Start fetching a page on the executor, unless this thread runs a task of the executor itself
+	 * 
+	 * @param request
+	 *            Fetches the page
+	 * @return Supplier of the page, waiting for it if needed
+	 * @since 0.2
+	 */
+	private Supplier<Page<Item, R>> fetch(final Supplier<Page<Item, R>> request) {
+		if (RequestExecutor.isNested(executor)) {
+			// Fetched once needed on this thread, rather than waited for on the executor this thread belongs to
+			return request;
+		}
+		final CompletableFuture<Page<Item, R>> future = CompletableFuture.supplyAsync(request, executor);
+		return () -> BatchRequests.join(future);
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return mapper.apply(current.next());
+	}
+}
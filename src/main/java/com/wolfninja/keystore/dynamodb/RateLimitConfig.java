@@ -0,0 +1,219 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the client-side capacity limits applied by {@link CapacityLimiter}
+ * 
+ * @since 0.2
+ */
+public final class RateLimitConfig {
+
+	/**
+	 * What a request does when the capacity it needs is not available
+	 * 
+	 * @since 0.2
+	 */
+	public enum Mode {
+		/**
+		 * Wait until the capacity is available
+		 */
+		BLOCKING,
+		/**
+		 * Fail with {@link CapacityExceededException} without sending the request
+		 */
+		FAIL_FAST
+	}
+
+	/**
+	 * Default share of the provisioned throughput of the table to limit requests to
+	 * 
+	 * @since 0.2
+	 */
+	public static final double DEFAULT_CAPACITY_FRACTION = 1d;
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final Mode mode;
+
+	private final boolean adaptive;
+
+	private final double capacityFraction;
+
+	private final Double readCapacityUnits;
+
+	private final Double writeCapacityUnits;
+
+	private RateLimitConfig(final Builder builder) {
+		this.mode = builder.mode;
+		this.adaptive = builder.adaptive;
+		this.capacityFraction = builder.capacityFraction;
+		this.readCapacityUnits = builder.readCapacityUnits;
+		this.writeCapacityUnits = builder.writeCapacityUnits;
+	}
+
+	/**
+	 * Get the share of the provisioned throughput of the table to limit requests to
+	 * 
+	 * @return Capacity fraction, between 0 and 1
+	 * @since 0.2
+	 */
+	public double getCapacityFraction() {
+		return capacityFraction;
+	}
+
+	/**
+	 * Get what a request does when the capacity it needs is not available
+	 * 
+	 * @return {@link Mode}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get the read capacity units per second to limit requests to
+	 * 
+	 * @return Optional read capacity units, {@link Optional#empty()} to use the provisioned throughput of the table
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<Double> getReadCapacityUnits() {
+		return Optional.ofNullable(readCapacityUnits);
+	}
+
+	/**
+	 * Get the write capacity units per second to limit requests to
+	 * 
+	 * @return Optional write capacity units, {@link Optional#empty()} to use the provisioned throughput of the table
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<Double> getWriteCapacityUnits() {
+		return Optional.ofNullable(writeCapacityUnits);
+	}
+
+	/**
+	 * Get whether the limits are lowered while DynamoDB throttles requests
+	 * 
+	 * @return true if the limits adapt to throttling
+	 * @since 0.2
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Builder for {@link RateLimitConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private Mode mode = Mode.BLOCKING;
+
+		private boolean adaptive = true;
+
+		private double capacityFraction = DEFAULT_CAPACITY_FRACTION;
+
+		private Double readCapacityUnits;
+
+		private Double writeCapacityUnits;
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link RateLimitConfig}
+		 * 
+		 * @return new {@link RateLimitConfig} instance, not null
+		 * @since 0.2
+		 */
+		@Nonnull
+		public RateLimitConfig build() {
+			return new RateLimitConfig(this);
+		}
+
+		/**
+		 * Set whether the limits are halved when DynamoDB throttles a request, then raised back gradually. Defaults to
+		 * true.
+		 * 
+		 * @param adaptive
+		 *            true to adapt the limits to throttling
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withAdaptive(final boolean adaptive) {
+			this.adaptive = adaptive;
+			return this;
+		}
+
+		/**
+		 * Limit requests to a share of the provisioned throughput of the table, read when the adapter is built.
+		 * Defaults to {@value RateLimitConfig#DEFAULT_CAPACITY_FRACTION}.
+		 * 
+		 * @param capacityFraction
+		 *            Share of the provisioned throughput, above 0 and at most 1
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCapacityFraction(final double capacityFraction) {
+			if (!(capacityFraction > 0) || capacityFraction > 1)
+				throw new IllegalArgumentException("CapacityFraction must be above 0 and at most 1");
+			this.capacityFraction = capacityFraction;
+			return this;
+		}
+
+		/**
+		 * Limit requests to the given capacity, instead of the provisioned throughput of the table. Required for
+		 * tables without provisioned throughput.
+		 * 
+		 * @param readCapacityUnits
+		 *            Read capacity units per second, positive
+		 * @param writeCapacityUnits
+		 *            Write capacity units per second, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCapacityUnits(final double readCapacityUnits, final double writeCapacityUnits) {
+			if (!(readCapacityUnits > 0))
+				throw new IllegalArgumentException("ReadCapacityUnits must be positive");
+			if (!(writeCapacityUnits > 0))
+				throw new IllegalArgumentException("WriteCapacityUnits must be positive");
+			this.readCapacityUnits = readCapacityUnits;
+			this.writeCapacityUnits = writeCapacityUnits;
+			return this;
+		}
+
+		/**
+		 * Set what a request does when the capacity it needs is not available. Defaults to {@link Mode#BLOCKING}.
+		 * 
+		 * @param mode
+		 *            {@link Mode} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMode(@Nonnull final Mode mode) {
+			this.mode = Objects.requireNonNull(mode, "Mode must not be null");
+			return this;
+		}
+	}
+}
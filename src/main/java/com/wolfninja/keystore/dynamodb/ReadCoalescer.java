@@ -0,0 +1,129 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+
+/**
+ * Shares a single in-flight GetItem request between concurrent reads of the same key
+ * <p>
+ * The first caller sends the request, callers arriving while it is outstanding wait for its result. Strongly and
+ * eventually consistent reads are never shared with each other. A read of the key only can join a read of the whole
+ * item. Once a write of a key through the adapter completes, later reads no longer join a request sent before it.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class ReadCoalescer {
+
+	/**
+	 * In-flight reads, indexed by {@link #index(boolean, boolean)}
+	 */
+	@SuppressWarnings("unchecked")
+	private final ConcurrentMap<KeyspaceKey, CompletableFuture<Item>>[] inFlight = new ConcurrentMap[4];
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Constructor
+	 * 
+	 * @since 0.2
+	 */
+	ReadCoalescer() {
+		for (int i = 0; i < inFlight.length; i++) {
+			inFlight[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * Get the number of reads that waited for a request sent by another caller
+	 * 
+	 * @return Coalesced read count
+	 * @since 0.2
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Get the number of GetItem requests sent
+	 * 
+	 * @return Request count
+	 * @since 0.2
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * Stop sharing any in-flight read of the given key with later callers, after a write of the key completed
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key written
+	 * @since 0.2
+	 */
+	void invalidate(final String keyspaceName, final String key) {
+		final KeyspaceKey readKey = new KeyspaceKey(keyspaceName, key);
+		for (final ConcurrentMap<KeyspaceKey, CompletableFuture<Item>> reads : inFlight) {
+			reads.remove(readKey);
+		}
+	}
+
+	/**
+	 * Read an item, sharing the request with concurrent identical reads
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key to read
+	 * @param consistentRead
+	 *            Whether the read is strongly consistent
+	 * @param keyOnly
+	 *            Whether the read only needs to know if the item exists
+	 * @param read
+	 *            Sends the GetItem request, returning null if there is no item
+	 * @return Item read, null if there is none
+	 * @since 0.2
+	 */
+	Item read(final String keyspaceName, final String key, final boolean consistentRead, final boolean keyOnly,
+			final Supplier<Item> read) {
+		final KeyspaceKey readKey = new KeyspaceKey(keyspaceName, key);
+		if (keyOnly) {
+			final CompletableFuture<Item> itemRead = inFlight[index(consistentRead, false)].get(readKey);
+			if (itemRead != null) {
+				coalesced.increment();
+				return BatchRequests.join(itemRead);
+			}
+		}
+
+		final ConcurrentMap<KeyspaceKey, CompletableFuture<Item>> reads = inFlight[index(consistentRead, keyOnly)];
+		final CompletableFuture<Item> future = new CompletableFuture<>();
+		final CompletableFuture<Item> existing = reads.putIfAbsent(readKey, future);
+		if (existing != null) {
+			coalesced.increment();
+			return BatchRequests.join(existing);
+		}
+
+		requests.increment();
+		try {
+			final Item item = read.get();
+			future.complete(item);
+			return item;
+		} catch (final RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			reads.remove(readKey, future);
+		}
+	}
+
+	private static int index(final boolean consistentRead, final boolean keyOnly) {
+		return (consistentRead ? 2 : 0) + (keyOnly ? 1 : 0);
+	}
+}
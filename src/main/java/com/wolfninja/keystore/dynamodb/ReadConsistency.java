@@ -0,0 +1,33 @@
+package com.wolfninja.keystore.dynamodb;
+
+/**
+ * Consistency of DynamoDB reads made by a keyspace
+ * 
+ * @since 0.2
+ */
+public enum ReadConsistency {
+
+	/**
+	 * Always use strongly consistent reads. Costs twice the read capacity of an eventually consistent read.
+	 * 
+	 * @since 0.2
+	 */
+	STRONG,
+
+	/**
+	 * Always use eventually consistent reads, which may not reflect recently completed writes
+	 * 
+	 * @since 0.2
+	 */
+	EVENTUAL,
+
+	/**
+	 * Read-your-writes: use strongly consistent reads for keys written through this adapter within the session
+	 * window, and eventually consistent reads for everything else. Writes are only tracked by adapters configured with
+	 * this consistency, for all keyspaces or a single one; requesting it for a single read of any other adapter reads
+	 * with strong consistency.
+	 * 
+	 * @since 0.2
+	 */
+	SESSION;
+}
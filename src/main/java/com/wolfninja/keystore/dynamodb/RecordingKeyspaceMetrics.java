@@ -0,0 +1,255 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link KeyspaceMetrics} keeping call counts, retry counts, payload sizes and a latency histogram per keyspace and
+ * operation, in memory
+ * <p>
+ * Recording only updates striped counters and atomic histogram buckets, so it takes no locks once a keyspace was seen.
+ * Latencies are bucketed on a log-linear scale of microseconds, four buckets per power of two, so percentiles are
+ * accurate to within 25%. {@link #getSnapshot(String, Operation)} reads the values recorded so far.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public final class RecordingKeyspaceMetrics implements KeyspaceMetrics {
+
+	private static final Operation[] OPERATIONS = Operation.values();
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	/**
+	 * Number of histogram buckets, the last one holding every latency beyond about two hours
+	 */
+	static final int BUCKETS = 128;
+
+	/**
+	 * Histogram bucket of a latency
+	 * 
+	 * @param micros
+	 *            Latency, in microseconds
+	 * @return Bucket index
+	 */
+	static int bucket(final long micros) {
+		if (micros < 4) {
+			return (int) Math.max(micros, 0);
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int index = (exponent - 1) * 4 + (int) (micros >>> (exponent - 2) & 3);
+		return Math.min(index, BUCKETS - 1);
+	}
+
+	/**
+	 * Largest latency of a histogram bucket
+	 * 
+	 * @param bucket
+	 *            Bucket index
+	 * @return Latency, in microseconds
+	 */
+	static long bucketLimit(final int bucket) {
+		if (bucket < 4) {
+			return bucket;
+		}
+		final int exponent = bucket / 4 + 1;
+		return ((5L + bucket % 4) << (exponent - 2)) - 1;
+	}
+
+	private final ConcurrentMap<String, OperationStats[]> keyspaces = new ConcurrentHashMap<>();
+
+	@Override
+	public void recordOperation(final String keyspaceName, final Operation operation, final Outcome outcome,
+			final long latencyNanos, final long payloadSize) {
+		final OperationStats stats = stats(keyspaceName, operation);
+		stats.outcomes[outcome.ordinal()].increment();
+		stats.latencyNanos.add(latencyNanos);
+		stats.payloadSize.add(payloadSize);
+		stats.histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+	}
+
+	@Override
+	public void recordRetry(final String keyspaceName, final Operation operation) {
+		stats(keyspaceName, operation).retries.increment();
+	}
+
+	/**
+	 * Get the measurements recorded so far for an operation of a keyspace
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace, not null
+	 * @param operation
+	 *            {@link Operation}, not null
+	 * @return {@link Snapshot} of the measurements, empty if none were recorded, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Snapshot getSnapshot(@Nonnull final String keyspaceName, @Nonnull final Operation operation) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(operation, "Operation must not be null");
+		final OperationStats[] stats = keyspaces.get(keyspaceName);
+		return new Snapshot(stats == null ? new OperationStats() : stats[operation.ordinal()]);
+	}
+
+	private OperationStats stats(final String keyspaceName, final Operation operation) {
+		OperationStats[] stats = keyspaces.get(keyspaceName);
+		if (stats == null) {
+			// Only the first operation of a keyspace may contend on the map
+			stats = keyspaces.computeIfAbsent(keyspaceName, name -> {
+				final OperationStats[] created = new OperationStats[OPERATIONS.length];
+				for (int i = 0; i < created.length; i++) {
+					created[i] = new OperationStats();
+				}
+				return created;
+			});
+		}
+		return stats[operation.ordinal()];
+	}
+
+	/**
+	 * Counters of a single operation of a keyspace
+	 */
+	private static final class OperationStats {
+		final LongAdder[] outcomes = new LongAdder[OUTCOMES.length];
+		final LongAdder retries = new LongAdder();
+		final LongAdder latencyNanos = new LongAdder();
+		final LongAdder payloadSize = new LongAdder();
+		final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		OperationStats() {
+			for (int i = 0; i < outcomes.length; i++) {
+				outcomes[i] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * Measurements of an operation of a keyspace, read at one point in time
+	 * <p>
+	 * Counters are read one after another while recording goes on, so they may disagree by the operations completing
+	 * meanwhile.
+	 * </p>
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Snapshot {
+
+		private final long[] outcomes = new long[OUTCOMES.length];
+		private final long retries;
+		private final long latencyNanos;
+		private final long payloadSize;
+		private final long[] histogram = new long[BUCKETS];
+		private final long histogramCount;
+
+		private Snapshot(final OperationStats stats) {
+			for (int i = 0; i < outcomes.length; i++) {
+				outcomes[i] = stats.outcomes[i].sum();
+			}
+			retries = stats.retries.sum();
+			latencyNanos = stats.latencyNanos.sum();
+			payloadSize = stats.payloadSize.sum();
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = stats.histogram.get(i);
+				count += histogram[i];
+			}
+			histogramCount = count;
+		}
+
+		/**
+		 * Get the number of completed operations
+		 * 
+		 * @return Count of all outcomes
+		 * @since 0.2
+		 */
+		public long getCount() {
+			long count = 0;
+			for (final long outcome : outcomes) {
+				count += outcome;
+			}
+			return count;
+		}
+
+		/**
+		 * Get the number of operations with the given outcome
+		 * 
+		 * @param outcome
+		 *            {@link Outcome}, not null
+		 * @return Count
+		 * @since 0.2
+		 */
+		public long getCount(@Nonnull final Outcome outcome) {
+			Objects.requireNonNull(outcome, "Outcome must not be null");
+			return outcomes[outcome.ordinal()];
+		}
+
+		/**
+		 * Get the latency below which the given share of operations completed
+		 * 
+		 * @param quantile
+		 *            Share of operations, between 0 and 1
+		 * @return Latency, in microseconds, rounded up to its histogram bucket, 0 if no operation was recorded
+		 * @since 0.2
+		 */
+		public long getLatencyMicros(final double quantile) {
+			if (!(quantile >= 0) || quantile > 1)
+				throw new IllegalArgumentException("Quantile must be between 0 and 1");
+			final long rank = (long) Math.ceil(quantile * histogramCount);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += histogram[i];
+				if (seen >= rank && seen > 0) {
+					return bucketLimit(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Get the mean latency
+		 * 
+		 * @return Latency, in nanoseconds, 0 if no operation was recorded
+		 * @since 0.2
+		 */
+		public long getMeanLatencyNanos() {
+			final long count = getCount();
+			return count == 0 ? 0 : latencyNanos / count;
+		}
+
+		/**
+		 * Get the total length of the values written or returned
+		 * 
+		 * @return Payload size, in characters
+		 * @since 0.2
+		 */
+		public long getPayloadSize() {
+			return payloadSize;
+		}
+
+		/**
+		 * Get the mean number of attempts per operation, the first attempt of each operation and its retries
+		 * 
+		 * @return Mean attempts, 0 if no operation was recorded
+		 * @since 0.2
+		 */
+		public double getMeanAttempts() {
+			final long count = getCount();
+			return count == 0 ? 0 : (double) (count + retries) / count;
+		}
+
+		/**
+		 * Get the number of retries, of throttled batch items or of conflicting compute attempts
+		 * 
+		 * @return Retry count
+		 * @since 0.2
+		 */
+		public long getRetries() {
+			return retries;
+		}
+	}
+}
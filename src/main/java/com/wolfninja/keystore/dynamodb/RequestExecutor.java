@@ -0,0 +1,61 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} of the requests of an adapter, telling whether the current thread runs one of its tasks
+ * <p>
+ * A task waiting for further tasks of the same executor, such as the chunk reads of a value within a batch read, can
+ * starve a bounded executor once all of its threads wait. Operations fanning out requests from within a task of this
+ * executor run them on the calling thread instead, see {@link #isNested(Executor)}.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class RequestExecutor implements Executor {
+
+	private final Executor delegate;
+	private final ThreadLocal<Boolean> runningTask = new ThreadLocal<>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param delegate
+	 *            {@link Executor} running the tasks, not null
+	 * @since 0.2
+	 */
+	RequestExecutor(final Executor delegate) {
+		this.delegate = Objects.requireNonNull(delegate, "Delegate must not be null");
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		Objects.requireNonNull(task, "Task must not be null");
+		delegate.execute(() -> {
+			// Already set if the delegate runs tasks on the calling thread
+			final boolean outer = runningTask.get() != null;
+			runningTask.set(Boolean.TRUE);
+			try {
+				task.run();
+			} finally {
+				if (!outer) {
+					runningTask.remove();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Check whether the current thread runs a task of the given executor, so that requests it fans out must run on the
+	 * current thread rather than wait for further tasks of that executor
+	 * 
+	 * @param executor
+	 *            {@link Executor} requests would be run on
+	 * @return true if the executor is a {@link RequestExecutor} running a task on the current thread
+	 * @since 0.2
+	 */
+	static boolean isNested(final Executor executor) {
+		return executor instanceof RequestExecutor && ((RequestExecutor) executor).runningTask.get() != null;
+	}
+}
@@ -0,0 +1,131 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks keys recently written through an adapter, for {@link ReadConsistency#SESSION} reads
+ * <p>
+ * The number of tracked keys is bounded. If a key has to be dropped before its window has passed, every key is
+ * treated as recently written for one window instead, so a session read never falls back to an eventually consistent
+ * read too early.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class SessionTracker {
+
+	/**
+	 * Writes between sweeps of expired keys
+	 */
+	private static final int SWEEP_INTERVAL = 1024;
+
+	private final long windowNanos;
+	private final int maxKeys;
+	private final LongSupplier ticker;
+	private final Map<KeyspaceKey, Long> writes = new ConcurrentHashMap<>();
+	private final AtomicInteger sinceSweep = new AtomicInteger();
+	private volatile long overflowUntil;
+	private volatile boolean overflowed;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param windowNanos
+	 *            How long a write is considered recent, in nanoseconds
+	 * @param maxKeys
+	 *            Maximum number of tracked keys
+	 * @param ticker
+	 *            Source of the current time, in nanoseconds
+	 * @since 0.2
+	 */
+	SessionTracker(final long windowNanos, final int maxKeys, final LongSupplier ticker) {
+		if (windowNanos < 0)
+			throw new IllegalArgumentException("Window must not be negative");
+		if (maxKeys < 1)
+			throw new IllegalArgumentException("MaxKeys must be positive");
+		this.windowNanos = windowNanos;
+		this.maxKeys = maxKeys;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Resolve whether a read of the given key must be strongly consistent
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key to read
+	 * @param consistency
+	 *            Requested {@link ReadConsistency}, not null
+	 * @return true for a strongly consistent read
+	 * @since 0.2
+	 */
+	boolean isConsistentRead(final String keyspaceName, final String key, final ReadConsistency consistency) {
+		Objects.requireNonNull(consistency, "Consistency must not be null");
+		switch (consistency) {
+		case EVENTUAL:
+			return false;
+		case SESSION:
+			return isRecent(keyspaceName, key);
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Check whether the given key was written within the session window
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key
+	 * @return true if a read of the key should be strongly consistent
+	 * @since 0.2
+	 */
+	boolean isRecent(final String keyspaceName, final String key) {
+		final long now = ticker.getAsLong();
+		if (overflowed && now - overflowUntil < 0) {
+			return true;
+		}
+		final Long writtenAt = writes.get(new KeyspaceKey(keyspaceName, key));
+		return writtenAt != null && now - writtenAt < windowNanos;
+	}
+
+	/**
+	 * Record a completed write of the given key
+	 * 
+	 * @param keyspaceName
+	 *            Keyspace name
+	 * @param key
+	 *            Key
+	 * @since 0.2
+	 */
+	void record(final String keyspaceName, final String key) {
+		final long now = ticker.getAsLong();
+		writes.put(new KeyspaceKey(keyspaceName, key), now);
+		if (sinceSweep.incrementAndGet() >= SWEEP_INTERVAL || writes.size() > maxKeys) {
+			sweep(now);
+		}
+	}
+
+	private void sweep(final long now) {
+		sinceSweep.set(0);
+		final Iterator<Long> iterator = writes.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next() >= windowNanos) {
+				iterator.remove();
+			}
+		}
+		if (writes.size() > maxKeys) {
+			// Too many recent writes to track individually, treat every key as recent for one window
+			overflowUntil = now + windowNanos;
+			overflowed = true;
+			writes.clear();
+		}
+	}
+}
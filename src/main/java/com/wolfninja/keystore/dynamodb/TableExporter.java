@@ -0,0 +1,393 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Exports every item of an adapter's table, across all keyspaces, to local newline-delimited JSON files
+ * <p>
+ * The table is scanned in parallel segments, each written to its own {@code segment-NNNN.ndjson} file as pages
+ * arrive, so memory use does not depend on the table size. Reads are paced to a share of the table's read capacity.
+ * After each page, a {@code segment-NNNN.checkpoint} file records how far the segment got; running the export again
+ * on the same directory resumes each segment from its checkpoint and skips completed segments.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public class TableExporter {
+
+	/**
+	 * Default number of parallel scan segments
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_SEGMENTS = 4;
+
+	/**
+	 * Default share of the provisioned read capacity used by an export
+	 * 
+	 * @since 0.2
+	 */
+	public static final double DEFAULT_READ_CAPACITY_FRACTION = 0.5d;
+
+	private static final String CHECKPOINT_TOTAL_SEGMENTS = "totalSegments";
+	private static final String CHECKPOINT_OFFSET = "offset";
+	private static final String CHECKPOINT_ITEMS = "items";
+	private static final String CHECKPOINT_LAST_KEYSPACE = "lastKeyspace";
+	private static final String CHECKPOINT_LAST_KEY = "lastKey";
+	private static final String CHECKPOINT_COMPLETE = "complete";
+
+	/**
+	 * Create a new {@link Builder} for exporting the table of the given adapter
+	 * 
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} whose table to export, not null
+	 * @param directory
+	 *            Directory to write segment and checkpoint files to, not null
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder(@Nonnull final DynamoDbAdapter adapter, @Nonnull final Path directory) {
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		Objects.requireNonNull(directory, "Directory must not be null");
+		return new Builder(adapter, directory);
+	}
+
+	private final Table table;
+	private final String attributeNameKeyspace;
+	private final String attributeNameKey;
+	private final Path directory;
+	private final int segments;
+	private final double readCapacityFraction;
+	private final Double readCapacityUnits;
+	private final Integer pageSize;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param builder
+	 *            {@link Builder} holding the export configuration
+	 * @since 0.2
+	 */
+	protected TableExporter(@Nonnull final Builder builder) {
+		Objects.requireNonNull(builder, "Builder must not be null");
+		this.table = builder.adapter.getTable();
+		this.attributeNameKeyspace = builder.adapter.getAttributeNameKeyspace();
+		this.attributeNameKey = builder.adapter.getAttributeNameKey();
+		this.directory = builder.directory;
+		this.segments = builder.segments;
+		this.readCapacityFraction = builder.readCapacityFraction;
+		this.readCapacityUnits = builder.readCapacityUnits;
+		this.pageSize = builder.pageSize;
+	}
+
+	/**
+	 * Run the export, blocking until every segment completed or failed
+	 * 
+	 * @return Number of items written by this run, excluding items written by an earlier, interrupted run
+	 * @throws UncheckedIOException
+	 *             if writing a file failed
+	 * @throws IllegalStateException
+	 *             if the directory holds checkpoints of an export with a different number of segments
+	 * @since 0.2
+	 */
+	public long export() {
+		try {
+			Files.createDirectories(directory);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		final CapacityThrottle throttle = new CapacityThrottle(resolveReadCapacityUnits(), System::nanoTime);
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(segments, runnable -> {
+			final Thread thread = new Thread(runnable, "keystore-dynamodb-export-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final List<CompletableFuture<Long>> pending = new ArrayList<>(segments);
+			for (int segment = 0; segment < segments; segment++) {
+				final int current = segment;
+				pending.add(CompletableFuture.supplyAsync(() -> exportSegment(current, throttle), pool));
+			}
+
+			long exported = 0;
+			RuntimeException failure = null;
+			for (final CompletableFuture<Long> future : pending) {
+				try {
+					exported += BatchRequests.join(future);
+				} catch (final RuntimeException e) {
+					// Wait for every segment, so each one records its progress
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return exported;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Scan a single segment into its file, resuming from its checkpoint
+	 * 
+	 * @param segment
+	 *            Segment number
+	 * @param throttle
+	 *            {@link CapacityThrottle} shared by all segments
+	 * @return Number of items written
+	 * @since 0.2
+	 */
+	private long exportSegment(final int segment, final CapacityThrottle throttle) {
+		final Path dataFile = directory.resolve(String.format("segment-%04d.ndjson", segment));
+		final Path checkpointFile = directory.resolve(String.format("segment-%04d.checkpoint", segment));
+		try {
+			final Properties checkpoint = loadCheckpoint(checkpointFile);
+			if (Boolean.parseBoolean(checkpoint.getProperty(CHECKPOINT_COMPLETE))) {
+				return 0;
+			}
+
+			long offset = Long.parseLong(checkpoint.getProperty(CHECKPOINT_OFFSET, "0"));
+			long items = Long.parseLong(checkpoint.getProperty(CHECKPOINT_ITEMS, "0"));
+			final ScanSpec spec = new ScanSpec() //
+					.withSegment(segment) //
+					.withTotalSegments(segments) //
+					.withConsistentRead(false) //
+					.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL) //
+					.withMaxPageSize(pageSize);
+			final String lastKeyspace = checkpoint.getProperty(CHECKPOINT_LAST_KEYSPACE);
+			if (lastKeyspace != null) {
+				spec.withExclusiveStartKey(attributeNameKeyspace, lastKeyspace, attributeNameKey,
+						checkpoint.getProperty(CHECKPOINT_LAST_KEY));
+			}
+
+			long written = 0;
+			try (final FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE)) {
+				// Drop anything written after the last checkpoint, it is scanned again
+				channel.truncate(offset);
+				channel.position(offset);
+				final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+
+				Page<Item, ScanOutcome> page = table.scan(spec).firstPage();
+				while (true) {
+					for (final Item item : page) {
+						final byte[] line = (item.toJSON() + "\n").getBytes(StandardCharsets.UTF_8);
+						out.write(line);
+						offset += line.length;
+						items++;
+						written++;
+					}
+					out.flush();
+					channel.force(false);
+
+					final ScanResult result = page.getLowLevelResult().getScanResult();
+					final ConsumedCapacity consumed = result.getConsumedCapacity();
+					if (consumed != null && consumed.getCapacityUnits() != null) {
+						throttle.consume(consumed.getCapacityUnits());
+					}
+
+					final Map<String, AttributeValue> lastKey = result.getLastEvaluatedKey();
+					checkpoint.setProperty(CHECKPOINT_OFFSET, Long.toString(offset));
+					checkpoint.setProperty(CHECKPOINT_ITEMS, Long.toString(items));
+					if (lastKey == null || lastKey.isEmpty() || !page.hasNextPage()) {
+						checkpoint.setProperty(CHECKPOINT_COMPLETE, Boolean.TRUE.toString());
+						saveCheckpoint(checkpointFile, checkpoint);
+						return written;
+					}
+					checkpoint.setProperty(CHECKPOINT_LAST_KEYSPACE, lastKey.get(attributeNameKeyspace).getS());
+					checkpoint.setProperty(CHECKPOINT_LAST_KEY, lastKey.get(attributeNameKey).getS());
+					saveCheckpoint(checkpointFile, checkpoint);
+					page = page.nextPage();
+				}
+			}
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Properties loadCheckpoint(final Path checkpointFile) throws IOException {
+		final Properties checkpoint = new Properties();
+		if (Files.exists(checkpointFile)) {
+			try (final InputStream in = Files.newInputStream(checkpointFile)) {
+				checkpoint.load(in);
+			}
+			final int checkpointSegments = Integer.parseInt(checkpoint.getProperty(CHECKPOINT_TOTAL_SEGMENTS));
+			if (checkpointSegments != segments)
+				throw new IllegalStateException("Checkpoint " + checkpointFile + " was written by an export with "
+						+ checkpointSegments + " segments, not " + segments);
+		}
+		checkpoint.setProperty(CHECKPOINT_TOTAL_SEGMENTS, Integer.toString(segments));
+		return checkpoint;
+	}
+
+	private static void saveCheckpoint(final Path checkpointFile, final Properties checkpoint) throws IOException {
+		// Replace atomically, so an interruption never leaves a partial checkpoint
+		final Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try (final OutputStream out = Files.newOutputStream(temp)) {
+			checkpoint.store(out, null);
+		}
+		Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private double resolveReadCapacityUnits() {
+		if (readCapacityUnits != null) {
+			return readCapacityUnits;
+		}
+		final ProvisionedThroughputDescription throughput = table.describe().getProvisionedThroughput();
+		if (throughput == null || throughput.getReadCapacityUnits() == null || throughput.getReadCapacityUnits() < 1)
+			throw new IllegalStateException("Table has no provisioned read capacity, use withReadCapacityUnits");
+		return throughput.getReadCapacityUnits() * readCapacityFraction;
+	}
+
+	/**
+	 * Builder for {@link TableExporter} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static class Builder {
+
+		private final DynamoDbAdapter adapter;
+
+		private final Path directory;
+
+		private int segments = DEFAULT_SEGMENTS;
+
+		private double readCapacityFraction = DEFAULT_READ_CAPACITY_FRACTION;
+
+		private Double readCapacityUnits;
+
+		private Integer pageSize;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param adapter
+		 *            {@link DynamoDbAdapter} whose table to export, not null
+		 * @param directory
+		 *            Directory to write files to, not null
+		 * @since 0.2
+		 */
+		protected Builder(@Nonnull final DynamoDbAdapter adapter, @Nonnull final Path directory) {
+			this.adapter = Objects.requireNonNull(adapter, "Adapter must not be null");
+			this.directory = Objects.requireNonNull(directory, "Directory must not be null");
+		}
+
+		/**
+		 * Build the configured {@link TableExporter}
+		 * 
+		 * @return new {@link TableExporter} instance, not null
+		 * @since 0.2
+		 */
+		@Nonnull
+		public TableExporter build() {
+			return new TableExporter(this);
+		}
+
+		/**
+		 * Limit the number of items per Scan request. By default each request returns up to 1MB of items.
+		 * 
+		 * @param pageSize
+		 *            Maximum number of items per request, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withPageSize(final int pageSize) {
+			if (pageSize < 1)
+				throw new IllegalArgumentException("PageSize must be positive");
+			this.pageSize = pageSize;
+			return this;
+		}
+
+		/**
+		 * Set the share of the table's provisioned read capacity the export may consume. Defaults to
+		 * {@value TableExporter#DEFAULT_READ_CAPACITY_FRACTION}.
+		 * 
+		 * @param readCapacityFraction
+		 *            Share of the read capacity, greater than 0 and at most 1
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withReadCapacityFraction(final double readCapacityFraction) {
+			if (!(readCapacityFraction > 0) || readCapacityFraction > 1)
+				throw new IllegalArgumentException("ReadCapacityFraction must be greater than 0 and at most 1");
+			this.readCapacityFraction = readCapacityFraction;
+			return this;
+		}
+
+		/**
+		 * Set the read capacity units per second the export may consume, instead of a share of the provisioned
+		 * capacity
+		 * 
+		 * @param readCapacityUnits
+		 *            Read capacity units per second, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withReadCapacityUnits(final double readCapacityUnits) {
+			if (!(readCapacityUnits > 0))
+				throw new IllegalArgumentException("ReadCapacityUnits must be positive");
+			this.readCapacityUnits = readCapacityUnits;
+			return this;
+		}
+
+		/**
+		 * Set the number of parallel scan segments, each exported by its own thread. Defaults to
+		 * {@value TableExporter#DEFAULT_SEGMENTS}. <br>
+		 * <b>Note</b>, resuming an export requires the same number of segments.
+		 * 
+		 * @param segments
+		 *            Number of segments, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withSegments(final int segments) {
+			if (segments < 1)
+				throw new IllegalArgumentException("Segments must be positive");
+			this.segments = segments;
+			return this;
+		}
+	}
+}
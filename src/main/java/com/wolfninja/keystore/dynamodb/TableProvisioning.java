@@ -0,0 +1,210 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+
+/**
+ * Settings of the tables created by {@code DynamoDbAdapter.createNewTable}: their provisioned throughput, global
+ * secondary indexes and stream
+ * 
+ * @since 0.2
+ */
+public final class TableProvisioning {
+
+	/**
+	 * Default provisioned read capacity units of the table
+	 * 
+	 * @since 0.2
+	 */
+	public static final long DEFAULT_READ_CAPACITY_UNITS = 2L;
+
+	/**
+	 * Default provisioned write capacity units of the table
+	 * 
+	 * @since 0.2
+	 */
+	public static final long DEFAULT_WRITE_CAPACITY_UNITS = 1L;
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final long readCapacityUnits;
+
+	private final long writeCapacityUnits;
+
+	private final List<GlobalSecondaryIndex> globalSecondaryIndexes;
+
+	private final List<AttributeDefinition> attributeDefinitions;
+
+	private final StreamViewType streamViewType;
+
+	private TableProvisioning(final Builder builder) {
+		this.readCapacityUnits = builder.readCapacityUnits;
+		this.writeCapacityUnits = builder.writeCapacityUnits;
+		this.globalSecondaryIndexes = Collections.unmodifiableList(new ArrayList<>(builder.globalSecondaryIndexes));
+		this.attributeDefinitions = Collections.unmodifiableList(new ArrayList<>(builder.attributeDefinitions));
+		this.streamViewType = builder.streamViewType;
+	}
+
+	/**
+	 * Get the definitions of the attributes used by the global secondary indexes
+	 * 
+	 * @return Attribute definitions, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public List<AttributeDefinition> getAttributeDefinitions() {
+		return attributeDefinitions;
+	}
+
+	/**
+	 * Get the global secondary indexes created with the table
+	 * 
+	 * @return Indexes, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public List<GlobalSecondaryIndex> getGlobalSecondaryIndexes() {
+		return globalSecondaryIndexes;
+	}
+
+	/**
+	 * Get the provisioned read capacity units of the table
+	 * 
+	 * @return Read capacity units
+	 * @since 0.2
+	 */
+	public long getReadCapacityUnits() {
+		return readCapacityUnits;
+	}
+
+	/**
+	 * Get what the stream of the table records of each modified item
+	 * 
+	 * @return Optional {@link StreamViewType}, {@link Optional#empty()} if the stream is disabled
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Optional<StreamViewType> getStreamViewType() {
+		return Optional.ofNullable(streamViewType);
+	}
+
+	/**
+	 * Get the provisioned write capacity units of the table
+	 * 
+	 * @return Write capacity units
+	 * @since 0.2
+	 */
+	public long getWriteCapacityUnits() {
+		return writeCapacityUnits;
+	}
+
+	/**
+	 * Builder for {@link TableProvisioning} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private long readCapacityUnits = DEFAULT_READ_CAPACITY_UNITS;
+
+		private long writeCapacityUnits = DEFAULT_WRITE_CAPACITY_UNITS;
+
+		private final List<GlobalSecondaryIndex> globalSecondaryIndexes = new ArrayList<>();
+
+		private final List<AttributeDefinition> attributeDefinitions = new ArrayList<>();
+
+		private StreamViewType streamViewType;
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link TableProvisioning}
+		 * 
+		 * @return new {@link TableProvisioning} instance, not null
+		 * @since 0.2
+		 */
+		@Nonnull
+		public TableProvisioning build() {
+			return new TableProvisioning(this);
+		}
+
+		/**
+		 * Set the provisioned throughput of the table. Defaults to
+		 * {@value TableProvisioning#DEFAULT_READ_CAPACITY_UNITS} read and
+		 * {@value TableProvisioning#DEFAULT_WRITE_CAPACITY_UNITS} write capacity units.
+		 * 
+		 * @param readCapacityUnits
+		 *            Read capacity units, positive
+		 * @param writeCapacityUnits
+		 *            Write capacity units, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withCapacityUnits(final long readCapacityUnits, final long writeCapacityUnits) {
+			if (readCapacityUnits < 1)
+				throw new IllegalArgumentException("ReadCapacityUnits must be positive");
+			if (writeCapacityUnits < 1)
+				throw new IllegalArgumentException("WriteCapacityUnits must be positive");
+			this.readCapacityUnits = readCapacityUnits;
+			this.writeCapacityUnits = writeCapacityUnits;
+			return this;
+		}
+
+		/**
+		 * Create a global secondary index with the table. An index without provisioned throughput gets the throughput
+		 * of the table.
+		 * 
+		 * @param index
+		 *            {@link GlobalSecondaryIndex} to create, with its name, key schema and projection, not null
+		 * @param attributeDefinitions
+		 *            Definitions of the key attributes of the index, other than the keyspace and key attributes
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withGlobalSecondaryIndex(@Nonnull final GlobalSecondaryIndex index,
+				@Nonnull final AttributeDefinition... attributeDefinitions) {
+			Objects.requireNonNull(index, "Index must not be null");
+			Objects.requireNonNull(attributeDefinitions, "AttributeDefinitions must not be null");
+			if (index.getIndexName() == null || index.getKeySchema() == null || index.getProjection() == null)
+				throw new IllegalArgumentException("Index must have a name, key schema and projection");
+			this.globalSecondaryIndexes.add(index);
+			Collections.addAll(this.attributeDefinitions, attributeDefinitions);
+			return this;
+		}
+
+		/**
+		 * Enable the stream of the table. Disabled by default.
+		 * 
+		 * @param streamViewType
+		 *            {@link StreamViewType}, what the stream records of each modified item, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withStream(@Nonnull final StreamViewType streamViewType) {
+			this.streamViewType = Objects.requireNonNull(streamViewType, "StreamViewType must not be null");
+			return this;
+		}
+	}
+}
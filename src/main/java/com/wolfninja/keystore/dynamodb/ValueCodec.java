@@ -0,0 +1,40 @@
+package com.wolfninja.keystore.dynamodb;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Encoding of values into a binary attribute, see {@link DynamoDbAdapter.Builder#withValueCodec(ValueCodec)}
+ * <p>
+ * Values the codec does not encode are stored as a plain string attribute, like without a codec. Binary values are
+ * always read through the codec, so items written before a codec was configured stay readable.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public interface ValueCodec {
+
+	/**
+	 * Decode a value stored by {@link #encode(String)}
+	 * 
+	 * @param encoded
+	 *            Stored bytes, not null
+	 * @return Value, not null
+	 * @throws IllegalStateException
+	 *             if the bytes are not in a format this codec knows
+	 * @since 0.2
+	 */
+	@Nonnull
+	String decode(@Nonnull byte[] encoded);
+
+	/**
+	 * Encode a value before it is stored
+	 * 
+	 * @param value
+	 *            Value, not null
+	 * @return Bytes to store in a binary attribute, or null to store the value as a string
+	 * @since 0.2
+	 */
+	@CheckForNull
+	byte[] encode(@Nonnull String value);
+}
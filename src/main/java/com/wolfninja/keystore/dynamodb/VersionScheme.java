@@ -0,0 +1,27 @@
+package com.wolfninja.keystore.dynamodb;
+
+/**
+ * How the version attribute of an item is assigned on each write
+ * 
+ * @since 0.2
+ */
+public enum VersionScheme {
+
+	/**
+	 * Increment a counter in the same write, with an ADD update, so every write of a key produces a higher version.
+	 * Items written with {@link #HASH_CODE} continue counting from their hash-based version. Set and add become
+	 * UpdateItem requests, and multi-key writes are sent one key per request.
+	 * 
+	 * @since 0.2
+	 */
+	MONOTONIC,
+
+	/**
+	 * Use the {@code hashCode()} of the value, as in 0.1. Writing a value again restores its previous version, so a
+	 * stale check-and-set may succeed. Only for callers that derive expected versions from values, until they read
+	 * versions with gets instead.
+	 * 
+	 * @since 0.2
+	 */
+	HASH_CODE;
+}
@@ -0,0 +1,201 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Configuration of the write buffer used by {@link WriteBehindKeyspace}
+ * 
+ * @since 0.2
+ */
+public final class WriteBehindConfig {
+
+	/**
+	 * Default number of buffered keys that triggers a flush
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 4 * DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS;
+
+	/**
+	 * Default maximum time a write stays buffered
+	 * 
+	 * @since 0.2
+	 */
+	public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+	/**
+	 * Default maximum number of buffered keys, before writers block
+	 * 
+	 * @since 0.2
+	 */
+	public static final int DEFAULT_MAX_PENDING_KEYS = 10_000;
+
+	/**
+	 * Create a new {@link Builder}, initialized with the default settings
+	 * 
+	 * @return new {@link Builder} instance, not null
+	 * @since 0.2
+	 */
+	@Nonnull
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final int flushThreshold;
+
+	private final Duration flushInterval;
+
+	private final int maxPendingKeys;
+
+	private final WriteFailureListener failureListener;
+
+	private WriteBehindConfig(final Builder builder) {
+		this.flushThreshold = builder.flushThreshold;
+		this.flushInterval = builder.flushInterval;
+		this.maxPendingKeys = builder.maxPendingKeys;
+		this.failureListener = builder.failureListener;
+	}
+
+	/**
+	 * Get the listener notified of failed flushes
+	 * 
+	 * @return {@link WriteFailureListener} instance
+	 * @since 0.2
+	 */
+	@Nonnull
+	public WriteFailureListener getFailureListener() {
+		return failureListener;
+	}
+
+	/**
+	 * Get the maximum time a write stays buffered
+	 * 
+	 * @return Flush interval
+	 * @since 0.2
+	 */
+	@Nonnull
+	public Duration getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Get the number of buffered keys that triggers a flush
+	 * 
+	 * @return Flush threshold
+	 * @since 0.2
+	 */
+	public int getFlushThreshold() {
+		return flushThreshold;
+	}
+
+	/**
+	 * Get the maximum number of buffered keys
+	 * 
+	 * @return Maximum number of keys
+	 * @since 0.2
+	 */
+	public int getMaxPendingKeys() {
+		return maxPendingKeys;
+	}
+
+	/**
+	 * Builder for {@link WriteBehindConfig} instances
+	 * 
+	 * @since 0.2
+	 */
+	public static final class Builder {
+
+		private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+
+		private Duration flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+		private int maxPendingKeys = DEFAULT_MAX_PENDING_KEYS;
+
+		private WriteFailureListener failureListener = (keyspaceName, keys, cause) -> {
+		};
+
+		private Builder() {
+		}
+
+		/**
+		 * Build the configured {@link WriteBehindConfig}
+		 * 
+		 * @return new {@link WriteBehindConfig} instance, not null
+		 * @throws IllegalArgumentException
+		 *             if the flush threshold exceeds the maximum number of buffered keys
+		 * @since 0.2
+		 */
+		@Nonnull
+		public WriteBehindConfig build() {
+			if (flushThreshold > maxPendingKeys)
+				throw new IllegalArgumentException("FlushThreshold must not exceed MaxPendingKeys");
+			return new WriteBehindConfig(this);
+		}
+
+		/**
+		 * Set the listener notified of failed flushes. By default failures of background flushes are dropped.
+		 * 
+		 * @param failureListener
+		 *            {@link WriteFailureListener} to use, not null
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withFailureListener(@Nonnull final WriteFailureListener failureListener) {
+			this.failureListener = Objects.requireNonNull(failureListener, "FailureListener must not be null");
+			return this;
+		}
+
+		/**
+		 * Set the maximum time a write stays buffered
+		 * 
+		 * @param flushInterval
+		 *            Flush interval, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withFlushInterval(@Nonnull final Duration flushInterval) {
+			Objects.requireNonNull(flushInterval, "FlushInterval must not be null");
+			if (flushInterval.isNegative() || flushInterval.isZero())
+				throw new IllegalArgumentException("FlushInterval must be positive");
+			this.flushInterval = flushInterval;
+			return this;
+		}
+
+		/**
+		 * Set the number of buffered keys that triggers a flush
+		 * 
+		 * @param flushThreshold
+		 *            Flush threshold, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withFlushThreshold(final int flushThreshold) {
+			if (flushThreshold < 1)
+				throw new IllegalArgumentException("FlushThreshold must be positive");
+			this.flushThreshold = flushThreshold;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of buffered keys. Writes of further keys block until a flush makes room.
+		 * 
+		 * @param maxPendingKeys
+		 *            Maximum number of keys, positive
+		 * @return this {@link Builder}
+		 * @since 0.2
+		 */
+		@Nonnull
+		public Builder withMaxPendingKeys(final int maxPendingKeys) {
+			if (maxPendingKeys < 1)
+				throw new IllegalArgumentException("MaxPendingKeys must be positive");
+			this.maxPendingKeys = maxPendingKeys;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+import com.amazonaws.util.Throwables;
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+
+/**
+ * {@link Keyspace} that buffers {@link #set(String, String)} and {@link #delete(String)} in memory and writes them
+ * behind, using {@link DynamoDbKeyspace#setAll(Map)} and {@link DynamoDbKeyspace#deleteAll(java.util.Collection)}
+ * <p>
+ * Only the last buffered write of each key is sent. A flush starts once {@link WriteBehindConfig#getFlushThreshold()}
+ * keys are buffered, when the flush interval passes, or on {@link #flush()}. Writers block while
+ * {@link WriteBehindConfig#getMaxPendingKeys()} keys are buffered. Reads through this keyspace see buffered writes.
+ * </p>
+ * <p>
+ * Conditional operations ({@link #add(String, String)}, {@link #checkAndSet(String, String, long)},
+ * {@link #deletes(String, long)}, {@link #replace(String, String)}) are not buffered; any buffered write of the same
+ * key is stored first, so they see it. Failed flushes are reported to the configured {@link WriteFailureListener}.
+ * Writes still buffered when the process exits are lost, unless the adapter was closed with
+ * {@link DynamoDbAdapter#close()} or flushed with {@link DynamoDbAdapter#flush()} before.
+ * </p>
+ * 
+ * @since 0.2
+ */
+public class WriteBehindKeyspace implements Keyspace {
+
+	private final String keyspaceName;
+	private final DynamoDbKeyspace delegate;
+	private final WriteBehindConfig config;
+	private final Executor executor;
+
+	/**
+	 * Guards {@link #pending} and {@link #inFlight}
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Held while buffered writes are being stored, so writes of the same key are never sent concurrently
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	/**
+	 * Buffered writes by key, {@link Optional#empty()} for a delete
+	 */
+	private Map<String, Optional<String>> pending = new LinkedHashMap<>();
+	private Map<String, Optional<String>> inFlight = Collections.emptyMap();
+
+	/**
+	 * Create new write-behind Keyspace instance
+	 * 
+	 * @param keyspaceName
+	 *            Name of the delegate keyspace
+	 * @param delegate
+	 *            {@link DynamoDbKeyspace} to write to
+	 * @param config
+	 *            {@link WriteBehindConfig} to use
+	 * @param executor
+	 *            {@link Executor} running flushes triggered by the buffer size
+	 * @since 0.2
+	 */
+	protected WriteBehindKeyspace(@Nonnull final String keyspaceName, @Nonnull final DynamoDbKeyspace delegate,
+			@Nonnull final WriteBehindConfig config, @Nonnull final Executor executor) {
+		Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(delegate, "Delegate must not be null");
+		Objects.requireNonNull(config, "Config must not be null");
+		Objects.requireNonNull(executor, "Executor must not be null");
+		this.keyspaceName = keyspaceName;
+		this.delegate = delegate;
+		this.config = config;
+		this.executor = executor;
+	}
+
+	@Override
+	public boolean add(final String key, final String value) {
+		flushKey(key);
+		return delegate.add(key, value);
+	}
+
+	@Override
+	public boolean checkAndSet(final String key, final String value, final long version) {
+		flushKey(key);
+		return delegate.checkAndSet(key, value, version);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The delete is buffered. Whether the key exists is answered from the buffer if possible, otherwise with a read.
+	 * </p>
+	 */
+	@Override
+	public boolean delete(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		final Optional<Optional<String>> buffered = lookup(key);
+		final boolean existed = buffered.isPresent() ? buffered.get().isPresent() : delegate.exists(key);
+		buffer(key, Optional.empty());
+		return existed;
+	}
+
+	@Override
+	public boolean deletes(final String key, final long version) {
+		flushKey(key);
+		return delegate.deletes(key, version);
+	}
+
+	@Override
+	public boolean exists(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		final Optional<Optional<String>> buffered = lookup(key);
+		if (buffered.isPresent()) {
+			return buffered.get().isPresent();
+		}
+		return delegate.exists(key);
+	}
+
+	/**
+	 * Store every write buffered when called, waiting for any flush already in progress
+	 * 
+	 * @throws RuntimeException
+	 *             if storing failed, after notifying the {@link WriteFailureListener}
+	 * @since 0.2
+	 */
+	public void flush() {
+		flushLock.lock();
+		try {
+			final Map<String, Optional<String>> batch;
+			lock.lock();
+			try {
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				inFlight = batch;
+				pending = new LinkedHashMap<>();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+
+			try {
+				store(batch);
+			} catch (final RuntimeException e) {
+				config.getFailureListener().onWriteFailure(keyspaceName, Collections.unmodifiableSet(batch.keySet()),
+						e);
+				throw e;
+			} finally {
+				lock.lock();
+				try {
+					inFlight = Collections.emptyMap();
+				} finally {
+					lock.unlock();
+				}
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Start a flush on the executor, unless one is already scheduled
+	 * 
+	 * @since 0.2
+	 */
+	void flushAsync() {
+		if (!flushScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				flushScheduled.set(false);
+				try {
+					flush();
+				} catch (final RuntimeException e) {
+					// Already reported to the failure listener
+				}
+			});
+		} catch (final RuntimeException e) {
+			flushScheduled.set(false);
+			throw e;
+		}
+	}
+
+	@Override
+	public Optional<String> get(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		final Optional<Optional<String>> buffered = lookup(key);
+		if (buffered.isPresent()) {
+			return buffered.get();
+		}
+		return delegate.get(key);
+	}
+
+	/**
+	 * Get the keyspace buffered writes are stored in
+	 * 
+	 * @return Delegate {@link DynamoDbKeyspace}
+	 * @since 0.2
+	 */
+	@Nonnull
+	public DynamoDbKeyspace getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Get the number of keys with a buffered write, excluding a flush in progress
+	 * 
+	 * @return Number of buffered keys
+	 * @since 0.2
+	 */
+	public int getPendingCount() {
+		lock.lock();
+		try {
+			return pending.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Optional<KeyValue> gets(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		final Optional<Optional<String>> buffered = lookup(key);
+		if (buffered.isPresent()) {
+			if (buffered.get().isPresent() && delegate.isMonotonic()) {
+				// The version is assigned by DynamoDB, so the buffered write has to be stored first
+				flushKey(key);
+				return delegate.gets(key);
+			}
+			// Same version the delegate will store
+			return buffered.get().map(value -> KeyValue.create(key, value, value.hashCode()));
+		}
+		return delegate.gets(key);
+	}
+
+	@Override
+	public boolean replace(final String key, final String value) {
+		flushKey(key);
+		return delegate.replace(key, value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The write is buffered, blocking while the buffer is full.
+	 * </p>
+	 */
+	@Override
+	public boolean set(final String key, final String value) {
+		Objects.requireNonNull(key, "Key must not be null");
+		Objects.requireNonNull(value, "Value must not be null");
+		buffer(key, Optional.of(value));
+		return true;
+	}
+
+	private void buffer(final String key, final Optional<String> write) {
+		final int size;
+		lock.lock();
+		try {
+			while (isFull(key)) {
+				// Released while starting the flush, which may run on this thread and needs the lock after storing
+				lock.unlock();
+				try {
+					flushAsync();
+				} finally {
+					lock.lock();
+				}
+				if (isFull(key)) {
+					notFull.await();
+				}
+			}
+			pending.put(key, write);
+			size = pending.size();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Throwables.failure(e);
+		} finally {
+			lock.unlock();
+		}
+		if (size >= config.getFlushThreshold()) {
+			flushAsync();
+		}
+	}
+
+	/**
+	 * Store the buffered write of a single key, if any, before an unbuffered operation on it
+	 * 
+	 * @param key
+	 *            Key, not null
+	 * @since 0.2
+	 */
+	private void flushKey(final String key) {
+		Objects.requireNonNull(key, "Key must not be null");
+		flushLock.lock();
+		try {
+			final Optional<String> write;
+			lock.lock();
+			try {
+				write = pending.remove(key);
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if (write != null) {
+				store(Collections.singletonMap(key, write));
+			}
+		} catch (final RuntimeException e) {
+			config.getFailureListener().onWriteFailure(keyspaceName, Collections.singleton(key), e);
+			throw e;
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private boolean isFull(final String key) {
+		return pending.size() >= config.getMaxPendingKeys() && !pending.containsKey(key);
+	}
+
+	/**
+	 * Look up the buffered write of a key
+	 * 
+	 * @param key
+	 *            Key
+	 * @return Buffered write, {@link Optional#empty()} if none
+	 */
+	private Optional<Optional<String>> lookup(final String key) {
+		lock.lock();
+		try {
+			final Optional<String> write = pending.get(key);
+			return Optional.ofNullable(write != null ? write : inFlight.get(key));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void store(final Map<String, Optional<String>> batch) {
+		final Map<String, String> puts = new HashMap<>();
+		final List<String> deletes = new ArrayList<>();
+		for (final Map.Entry<String, Optional<String>> entry : batch.entrySet()) {
+			if (entry.getValue().isPresent()) {
+				puts.put(entry.getKey(), entry.getValue().get());
+			} else {
+				deletes.add(entry.getKey());
+			}
+		}
+		if (!puts.isEmpty()) {
+			delegate.setAll(puts);
+		}
+		if (!deletes.isEmpty()) {
+			delegate.deleteAll(deletes);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Callback notified when buffered writes of a {@link WriteBehindKeyspace} could not be stored
+ * 
+ * @since 0.2
+ */
+@FunctionalInterface
+public interface WriteFailureListener {
+
+	/**
+	 * Called once per failed flush, on the thread that ran the flush. The pending writes of the given keys are
+	 * dropped; their stored values are unknown.
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace the writes belong to
+	 * @param keys
+	 *            Keys whose writes may not have been stored
+	 * @param cause
+	 *            Error the flush failed with
+	 * @since 0.2
+	 */
+	void onWriteFailure(@Nonnull String keyspaceName, @Nonnull Set<String> keys, @Nonnull RuntimeException cause);
+}
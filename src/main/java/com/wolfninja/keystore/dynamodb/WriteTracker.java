@@ -0,0 +1,129 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Tracks the writes of a keyspace for the features of its adapter that depend on them
+ * <p>
+ * A write is recorded for {@link ReadConsistency#SESSION} reads, ends any coalesced read and drops the cached value of
+ * the key, and adds the key to the {@link KeyFilter}. Writes are recorded whatever their outcome, since a failed
+ * request may still have been applied. The state is held by the adapter, so a write through the string, binary or
+ * asynchronous keyspace of a name is seen by the others.
+ * </p>
+ * 
+ * @since 0.2
+ */
+final class WriteTracker {
+
+	private final String keyspaceName;
+	private final SessionTracker sessionTracker;
+	private final ReadCoalescer readCoalescer;
+	private final KeyspaceCache cache;
+	private final KeyFilter keyFilter;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keyspaceName
+	 *            Name of the keyspace tracked, not null
+	 * @param adapter
+	 *            {@link DynamoDbAdapter} holding the session tracker, read coalescer, cache and key filters, not null
+	 * @since 0.2
+	 */
+	WriteTracker(final String keyspaceName, final DynamoDbAdapter adapter) {
+		this.keyspaceName = Objects.requireNonNull(keyspaceName, "KeyspaceName must not be null");
+		Objects.requireNonNull(adapter, "Adapter must not be null");
+		this.sessionTracker = adapter.getSessionTracker().orElse(null);
+		this.readCoalescer = adapter.getReadCoalescer().orElse(null);
+		this.cache = adapter.getCache().orElse(null);
+		this.keyFilter = adapter.getKeyFilter(keyspaceName).orElse(null);
+	}
+
+	/**
+	 * Resolve whether a read of the given key must be strongly consistent
+	 * <p>
+	 * Without {@link ReadConsistency#SESSION} configured, writes are not tracked and session reads are strongly
+	 * consistent.
+	 * </p>
+	 * 
+	 * @param key
+	 *            Key to read
+	 * @param consistency
+	 *            Requested {@link ReadConsistency}, not null
+	 * @return true for a strongly consistent read
+	 * @since 0.2
+	 */
+	boolean isConsistentRead(final String key, final ReadConsistency consistency) {
+		return sessionTracker == null ? consistency != ReadConsistency.EVENTUAL
+				: sessionTracker.isConsistentRead(keyspaceName, key, consistency);
+	}
+
+	/**
+	 * Check whether the given key may exist, according to the {@link KeyFilter} of the keyspace
+	 * 
+	 * @param key
+	 *            Key to check
+	 * @return false if the key definitely does not exist, true if it may, or if there is no key filter
+	 * @since 0.2
+	 */
+	boolean mightContain(final String key) {
+		return keyFilter == null || keyFilter.mightContain(key);
+	}
+
+	/**
+	 * Select the keys that may exist, according to the {@link KeyFilter} of the keyspace
+	 * 
+	 * @param keys
+	 *            Keys to check
+	 * @return Keys that may exist, the given keys if there is no key filter
+	 * @since 0.2
+	 */
+	Collection<String> mightContainAll(final Collection<String> keys) {
+		return keyFilter == null ? keys : keyFilter.mightContainAll(keys);
+	}
+
+	/**
+	 * Record a write of the given key, whatever its outcome
+	 * 
+	 * @param key
+	 *            Key written
+	 * @since 0.2
+	 */
+	void written(final String key) {
+		if (sessionTracker != null) {
+			sessionTracker.record(keyspaceName, key);
+		}
+		if (readCoalescer != null) {
+			readCoalescer.invalidate(keyspaceName, key);
+		}
+		if (cache != null) {
+			cache.invalidate(keyspaceName, key);
+		}
+		if (keyFilter != null) {
+			keyFilter.put(key);
+		}
+	}
+
+	/**
+	 * Run a write of several keys, recording each key once the write returns
+	 * 
+	 * @param keys
+	 *            Keys written
+	 * @param write
+	 *            Write to run
+	 * @return Result of the write
+	 * @since 0.2
+	 */
+	<R> R writtenAll(final List<String> keys, final Supplier<R> write) {
+		try {
+			return write.get();
+		} finally {
+			for (final String key : keys) {
+				written(key);
+			}
+		}
+	}
+}
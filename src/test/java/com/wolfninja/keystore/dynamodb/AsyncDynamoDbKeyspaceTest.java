@@ -0,0 +1,348 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.wolfninja.keystore.api.KeyValue;
+
+public class AsyncDynamoDbKeyspaceTest {
+
+	/**
+	 * Capture the handler passed to an async call, so the test can complete it
+	 */
+	private static <Q extends AmazonWebServiceRequest, R> AsyncHandler<Q, R> anyHandler(
+			final Capture<AsyncHandler<Q, R>> capture) {
+		return EasyMock.capture(capture);
+	}
+
+	private static Map<String, AttributeValue> item(final String key, final String value) {
+		final Map<String, AttributeValue> item = new HashMap<>();
+		item.put("ut_attr_keyspace", new AttributeValue("ut_keyspace"));
+		item.put("ut_attr_key", new AttributeValue(key));
+		item.put("ut_attr_val", new AttributeValue(value));
+		item.put("ut_attr_version", new AttributeValue().withN(String.valueOf(value.hashCode())));
+		return item;
+	}
+
+	private AmazonDynamoDBAsync mockClient;
+
+	private AsyncDynamoDbKeyspace keyspace;
+
+	@Test
+	public void addConditionFailedTest() {
+		final Capture<UpdateItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<UpdateItemRequest, UpdateItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.updateItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null);
+		EasyMock.replay(mockClient);
+
+		final CompletableFuture<Boolean> actual = keyspace.add("add_first", "abed");
+		handler.getValue().onError(new ConditionalCheckFailedException("Already exists yo"));
+
+		EasyMock.verify(mockClient);
+		Assert.assertFalse(actual.join());
+		Assert.assertEquals(request.getValue().getAttributeUpdates().get("ut_attr_val").getValue().getS(), "abed");
+		Assert.assertEquals(request.getValue().getAttributeUpdates().get("ut_attr_version").getAction(), "ADD");
+		Assert.assertFalse(request.getValue().getExpected().get("ut_attr_keyspace").getExists());
+	}
+
+	@Test
+	public void addHashCodeVersionTest() {
+		final Table table = EasyMock.createMock(Table.class);
+		EasyMock.expect(table.getTableName()).andReturn("ut_table").anyTimes();
+		final Capture<PutItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<PutItemRequest, PutItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.putItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null);
+		EasyMock.replay(table, mockClient);
+		final AsyncDynamoDbKeyspace hashKeyspace = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withAsyncClient(mockClient) //
+				.withExecutor(Runnable::run) //
+				.withVersionScheme(VersionScheme.HASH_CODE) //
+				.build().getAsyncKeyspace("ut_keyspace");
+
+		final CompletableFuture<Boolean> actual = hashKeyspace.add("add_first", "abed");
+		handler.getValue().onError(new ConditionalCheckFailedException("Already exists yo"));
+
+		EasyMock.verify(mockClient);
+		Assert.assertFalse(actual.join());
+		Assert.assertEquals(request.getValue().getItem(), item("add_first", "abed"));
+		Assert.assertEquals(request.getValue().getConditionExpression(), "attribute_not_exists(#b)");
+		Assert.assertEquals(request.getValue().getExpressionAttributeNames().get("#b"), "ut_attr_keyspace");
+	}
+
+	@Test(expectedExceptions = NullPointerException.class)
+	public void addDoesntAllowNullsTest() {
+		keyspace.add(null, "someValue");
+		Assert.fail("Expected exception!");
+	}
+
+	@BeforeMethod
+	public void AsyncDynamoDbKeyspace() {
+		final Table table = EasyMock.createMock(Table.class);
+		EasyMock.expect(table.getTableName()).andReturn("ut_table").anyTimes();
+		EasyMock.replay(table);
+		mockClient = EasyMock.createMock(AmazonDynamoDBAsync.class);
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withAsyncClient(mockClient) //
+				.withExecutor(Runnable::run) //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build();
+		keyspace = adapter.getAsyncKeyspace("ut_keyspace");
+	}
+
+	@Test
+	public void checkAndSetTest() {
+		final Capture<UpdateItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<UpdateItemRequest, UpdateItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.updateItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null);
+		EasyMock.replay(mockClient);
+
+		final CompletableFuture<Boolean> actual = keyspace.checkAndSet("cas_first", "chang",
+				"troy".hashCode());
+		handler.getValue().onSuccess(request.getValue(), new UpdateItemResult());
+
+		EasyMock.verify(mockClient);
+		Assert.assertTrue(actual.join());
+		Assert.assertEquals(request.getValue().getExpected().get("ut_attr_version").getValue().getN(),
+				String.valueOf("troy".hashCode()));
+		Assert.assertEquals(request.getValue().getAttributeUpdates().get("ut_attr_version").getValue().getN(), "1");
+		Assert.assertEquals(request.getValue().getAttributeUpdates().get("ut_attr_version").getAction(), "ADD");
+	}
+
+	@Test
+	public void deleteTest() {
+		final Capture<DeleteItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<DeleteItemRequest, DeleteItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.deleteItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null)
+				.times(2);
+		EasyMock.replay(mockClient);
+
+		final CompletableFuture<Boolean> actual = keyspace.delete("delete_first");
+		handler.getValue().onSuccess(request.getValue(),
+				new DeleteItemResult().withAttributes(item("delete_first", "annie")));
+		final CompletableFuture<Boolean> actual2 = keyspace.delete("delete_first");
+		handler.getValue().onSuccess(request.getValue(), new DeleteItemResult());
+
+		EasyMock.verify(mockClient);
+		Assert.assertTrue(actual.join());
+		Assert.assertFalse(actual2.join());
+	}
+
+	@Test
+	public void expiryTest() {
+		for (final VersionScheme versionScheme : VersionScheme.values()) {
+			final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+			final Table table = dynamo.createTable("ut_table", "ut_keyspace", "ut_key");
+			final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+					.withAsyncClient(dynamo.getAsyncClient()) //
+					.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+					.withExecutor(Runnable::run) //
+					.withExpiryAttribute("ut_expiry") //
+					.withVersionScheme(versionScheme) //
+					.build();
+			final DynamoDbKeyspace sessions = new DynamoDbKeyspace("ut", adapter);
+			final AsyncDynamoDbKeyspace asyncSessions = adapter.getAsyncKeyspace("ut");
+			final long now = System.currentTimeMillis() / 1000;
+
+			// Writes without a time to live make the key permanent
+			Assert.assertTrue(sessions.set("expiry_live", "a", Duration.ofMinutes(5)));
+			Assert.assertTrue(asyncSessions.set("expiry_live", "b").join());
+			Assert.assertFalse(table.getItem("ut_keyspace", "ut", "ut_key", "expiry_live").isPresent("ut_expiry"));
+			Assert.assertTrue(sessions.set("expiry_live", "c", Duration.ofMinutes(5)));
+			Assert.assertTrue(asyncSessions.replace("expiry_live", "d").join());
+			Assert.assertFalse(table.getItem("ut_keyspace", "ut", "ut_key", "expiry_live").isPresent("ut_expiry"));
+			Assert.assertTrue(sessions.set("expiry_live", "e", Duration.ofMinutes(5)));
+			final long version = asyncSessions.gets("expiry_live").join().get().getVersion();
+			Assert.assertTrue(asyncSessions.checkAndSet("expiry_live", "f", version).join());
+			Assert.assertFalse(table.getItem("ut_keyspace", "ut", "ut_key", "expiry_live").isPresent("ut_expiry"));
+			Assert.assertFalse(asyncSessions.add("expiry_live", "g").join());
+
+			// Expired, but not removed by DynamoDB yet
+			table.putItem(new Item() //
+					.withPrimaryKey("ut_keyspace", "ut", "ut_key", "expiry_past") //
+					.withString("ut_value", "old") //
+					.withLong("ut_version", 7L) //
+					.withLong("ut_expiry", now - 10));
+			Assert.assertEquals(asyncSessions.get("expiry_past").join(), Optional.empty());
+			Assert.assertEquals(asyncSessions.gets("expiry_past").join(), Optional.empty());
+			Assert.assertFalse(asyncSessions.exists("expiry_past").join());
+			Assert.assertFalse(asyncSessions.replace("expiry_past", "new").join());
+			Assert.assertFalse(asyncSessions.checkAndSet("expiry_past", "new", 7L).join());
+			Assert.assertFalse(asyncSessions.deletes("expiry_past", 7L).join());
+			Assert.assertFalse(asyncSessions.delete("expiry_past").join());
+			Assert.assertTrue(asyncSessions.add("expiry_past", "new").join());
+			Assert.assertEquals(asyncSessions.get("expiry_past").join(), Optional.of("new"));
+			Assert.assertTrue(asyncSessions.exists("expiry_past").join());
+			Assert.assertTrue(asyncSessions.delete("expiry_past").join());
+		}
+	}
+
+	@Test
+	public void getsTest() {
+		final Capture<GetItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<GetItemRequest, GetItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.getItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null);
+		EasyMock.replay(mockClient);
+
+		final CompletableFuture<Optional<KeyValue>> actual = keyspace.gets("gets_first");
+		handler.getValue().onSuccess(request.getValue(), new GetItemResult().withItem(item("gets_first", "shirley")));
+
+		EasyMock.verify(mockClient);
+		Assert.assertTrue(request.getValue().getConsistentRead());
+		Assert.assertEquals(actual.join().get().getValue(), "shirley");
+		Assert.assertEquals(actual.join().get().getVersion(), "shirley".hashCode());
+	}
+
+	@Test(expectedExceptions = AmazonServiceException.class)
+	public void otherErrorsArePropagatedTest() throws Throwable {
+		final Capture<UpdateItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<UpdateItemRequest, UpdateItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.updateItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null);
+		EasyMock.replay(mockClient);
+
+		final CompletableFuture<Boolean> actual = keyspace.add("add_first", "abed");
+		handler.getValue().onError(new AmazonServiceException("Throttled"));
+
+		try {
+			actual.join();
+		} catch (final CompletionException e) {
+			throw e.getCause();
+		}
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void replaceTest() {
+		final Capture<UpdateItemRequest> request = EasyMock.newCapture();
+		final Capture<AsyncHandler<UpdateItemRequest, UpdateItemResult>> handler = EasyMock.newCapture();
+		EasyMock.expect(mockClient.updateItemAsync(EasyMock.capture(request), anyHandler(handler))).andReturn(null)
+				.times(3);
+		EasyMock.replay(mockClient);
+
+		final CompletableFuture<Boolean> actual = keyspace.replace("replace_first", "jeff");
+		handler.getValue().onSuccess(request.getValue(),
+				new UpdateItemResult().withAttributes(item("replace_first", "dean")));
+		final CompletableFuture<Boolean> actual2 = keyspace.replace("replace_first", "jeff");
+		handler.getValue().onSuccess(request.getValue(),
+				new UpdateItemResult().withAttributes(item("replace_first", "jeff")));
+		final CompletableFuture<Boolean> actual3 = keyspace.replace("replace_first", "jeff");
+		handler.getValue().onError(new ConditionalCheckFailedException("Doesn't exist"));
+
+		EasyMock.verify(mockClient);
+		Assert.assertTrue(actual.join());
+		Assert.assertFalse(actual2.join());
+		Assert.assertFalse(actual3.join());
+		Assert.assertTrue(request.getValue().getExpected().get("ut_attr_key").getExists());
+	}
+
+	@Test
+	public void setReplacesChunkedValueTest() {
+		for (final VersionScheme versionScheme : VersionScheme.values()) {
+			final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+			final DynamoDbAdapter adapter = DynamoDbAdapter
+					.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+					.withAsyncClient(dynamo.getAsyncClient()) //
+					.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+					.withDynamoDB(dynamo.getDynamoDB()) //
+					.withExecutor(Runnable::run) //
+					.withValueChunking(10) //
+					.withVersionScheme(versionScheme) //
+					.build();
+			final DynamoDbKeyspace chunkedKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+			final AsyncDynamoDbKeyspace asyncKeyspace = adapter.getAsyncKeyspace("ut_keyspace");
+			Assert.assertTrue(chunkedKeyspace.set("set_chunked", "a value spanning several chunks"));
+
+			Assert.assertTrue(asyncKeyspace.set("set_chunked", "small").join());
+
+			Assert.assertEquals(asyncKeyspace.get("set_chunked").join(), Optional.of("small"));
+			Assert.assertEquals(chunkedKeyspace.get("set_chunked"), Optional.of("small"));
+			Assert.assertEquals(asyncKeyspace.gets("set_chunked").join().get().getVersion(),
+					versionScheme == VersionScheme.MONOTONIC ? 2L : "small".hashCode());
+			// The chunks of the previous value are deleted, leaving the item of the key
+			Assert.assertEquals(dynamo.getClient().scan(new ScanRequest("ut_table")).getCount(), Integer.valueOf(1));
+		}
+	}
+
+	@Test
+	public void setStopsCoalescedReadsTest() throws Exception {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		dynamo.createTable("ut_table", "ut_keyspace", "ut_key");
+		final AmazonDynamoDB client = dynamo.getClient();
+		final AtomicBoolean blocking = new AtomicBoolean(true);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		// The first GetItem reads the item, then waits before returning it
+		final AmazonDynamoDB blockingClient = (AmazonDynamoDB) Proxy.newProxyInstance(
+				AmazonDynamoDB.class.getClassLoader(), new Class<?>[] { AmazonDynamoDB.class },
+				(proxy, method, args) -> {
+					final Object result;
+					try {
+						result = method.invoke(client, args);
+					} catch (final InvocationTargetException e) {
+						throw e.getCause();
+					}
+					if (method.getName().equals("getItem") && blocking.getAndSet(false)) {
+						started.countDown();
+						release.await();
+					}
+					return result;
+				});
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(new DynamoDB(blockingClient).getTable("ut_table")) //
+				.withAsyncClient(dynamo.getAsyncClient()) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withExecutor(Runnable::run) //
+				.withReadCoalescing(true) //
+				.build();
+		final DynamoDbKeyspace syncKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+		final AsyncDynamoDbKeyspace asyncKeyspace = adapter.getAsyncKeyspace("ut_keyspace");
+		Assert.assertTrue(syncKeyspace.set("set_coalesced", "old"));
+		final CompletableFuture<Optional<String>> before = CompletableFuture
+				.supplyAsync(() -> syncKeyspace.get("set_coalesced"));
+		started.await();
+
+		Assert.assertTrue(asyncKeyspace.set("set_coalesced", "new").join());
+
+		// Not joining the read sent before the write
+		final CompletableFuture<Optional<String>> after = CompletableFuture
+				.supplyAsync(() -> syncKeyspace.get("set_coalesced"));
+		Assert.assertEquals(after.get(5, TimeUnit.SECONDS), Optional.of("new"));
+		release.countDown();
+		Assert.assertEquals(before.join(), Optional.of("old"));
+		Assert.assertEquals(adapter.getReadCoalescer().get().getCoalescedCount(), 0L);
+	}
+}
@@ -0,0 +1,47 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BackoffTest {
+
+	@Test
+	public void delayIsBoundedByCeiling() {
+		final Backoff backoff = new Backoff(10L, 100L, 5);
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(backoff.delayMillis(1) <= 10L);
+			Assert.assertTrue(backoff.delayMillis(3) <= 40L);
+			Assert.assertTrue(backoff.delayMillis(30) <= 100L);
+			Assert.assertTrue(backoff.delayMillis(3) >= 0L);
+		}
+	}
+
+	@Test
+	public void pauseIsBoundedByLimit() {
+		final Backoff backoff = new Backoff(60_000L, 60_000L, 3);
+		final long start = System.nanoTime();
+		backoff.pause(2, 0L);
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidAttempts() {
+		new Backoff(10L, 100L, 0);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidBounds() {
+		new Backoff(100L, 10L, 3);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void zeroDelay() {
+		final Backoff backoff = new Backoff(0L, 0L, 3);
+		Assert.assertEquals(backoff.delayMillis(2), 0L);
+		Assert.assertEquals(backoff.getMaxAttempts(), 3);
+	}
+}
@@ -0,0 +1,34 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BatchRequestsTest {
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void joinUnwrapsCauseTest() {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		future.completeExceptionally(new IllegalStateException("Failed"));
+		BatchRequests.join(future);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void partitionTest() {
+		final List<List<String>> chunks = BatchRequests.partition(Arrays.asList("a", "b", "a", "c", "d"), 2);
+
+		Assert.assertEquals(chunks, Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d")));
+		Assert.assertEquals(BatchRequests.partition(Collections.<String> emptyList(), 2), Collections.emptyList());
+	}
+
+	@Test(expectedExceptions = NullPointerException.class)
+	public void partitionNullKeyTest() {
+		BatchRequests.partition(Arrays.asList("a", null), 2);
+		Assert.fail("Expected exception!");
+	}
+}
@@ -0,0 +1,142 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PutItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+
+public class BinaryDynamoDbKeyspaceTest {
+
+	private BinaryDynamoDbKeyspace keyspace;
+
+	private Table mockTable;
+
+	@BeforeMethod
+	public void BinaryDynamoDbKeyspace() {
+		mockTable = EasyMock.createMock(Table.class);
+		keyspace = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build() //
+				.getBinaryKeyspace("ut_keyspace");
+	}
+
+	@Test
+	public void checkAndSetTest() {
+		final ByteBuffer value = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+		final Capture<UpdateItemSpec> spec = Capture.newInstance();
+		EasyMock.expect(mockTable.updateItem(EasyMock.capture(spec)))
+				.andReturn(EasyMock.createMock(UpdateItemOutcome.class));
+		EasyMock.replay(mockTable);
+
+		Assert.assertTrue(keyspace.checkAndSet("cas_first", value, 42L));
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(spec.getValue().getExpected().iterator().next().getValues()[0], 42L);
+		Assert.assertEquals(spec.getValue().getAttributeUpdate().get(0).getValue(), value);
+		Assert.assertEquals(spec.getValue().getAttributeUpdate().get(1).getAction(), AttributeAction.ADD);
+		Assert.assertEquals(spec.getValue().getAttributeUpdate().get(1).getValue(), 1);
+	}
+
+	@Test
+	public void checkAndSetVersionMismatchTest() {
+		EasyMock.expect(mockTable.updateItem(EasyMock.anyObject(UpdateItemSpec.class)))
+				.andThrow(new ConditionalCheckFailedException("Mismatch!"));
+		EasyMock.replay(mockTable);
+
+		Assert.assertFalse(keyspace.checkAndSet("cas_first", new byte[] { 1 }, 42L));
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test
+	public void getNoKeyTest() {
+		EasyMock.expect(mockTable.getItem(EasyMock.anyObject(GetItemSpec.class))).andReturn(null);
+		EasyMock.replay(mockTable);
+
+		Assert.assertEquals(keyspace.get("get_none"), Optional.empty());
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void getStringValueTest() {
+		EasyMock.expect(mockTable.getItem(EasyMock.anyObject(GetItemSpec.class)))
+				.andReturn(new Item().withString("ut_attr_val", "abed").withLong("ut_attr_version", 1L));
+		EasyMock.replay(mockTable);
+
+		keyspace.get("get_string");
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void getsTest() {
+		final Capture<GetItemSpec> spec = Capture.newInstance();
+		EasyMock.expect(mockTable.getItem(EasyMock.capture(spec))).andReturn(
+				new Item().withBinary("ut_attr_val", new byte[] { 4, 5, 6 }).withLong("ut_attr_version", 7L));
+		EasyMock.replay(mockTable);
+
+		final BinaryKeyValue actual = keyspace.gets("gets_first").get();
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(spec.getValue().getKeyComponents().iterator().next().getValue(), "ut_keyspace");
+		Assert.assertEquals(actual.getKey(), "gets_first");
+		Assert.assertEquals(actual.getValue(), ByteBuffer.wrap(new byte[] { 4, 5, 6 }));
+		Assert.assertTrue(actual.getValue().isReadOnly());
+		Assert.assertEquals(actual.getVersion(), 7L);
+	}
+
+	@Test
+	public void setHashCodeVersionTest() {
+		final BinaryDynamoDbKeyspace hashKeyspace = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withVersionScheme(VersionScheme.HASH_CODE) //
+				.build() //
+				.getBinaryKeyspace("ut_keyspace");
+		final ByteBuffer value = ByteBuffer.wrap(new byte[] { 0, 1, 2, 3, 4 });
+		value.position(2);
+		final Capture<Item> item = Capture.newInstance();
+		EasyMock.expect(mockTable.putItem(EasyMock.capture(item))).andReturn(EasyMock.createMock(PutItemOutcome.class));
+		EasyMock.replay(mockTable);
+
+		Assert.assertTrue(hashKeyspace.set("set_first", value));
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(value.position(), 2);
+		Assert.assertEquals(item.getValue().getByteBuffer("ut_attr_val"), ByteBuffer.wrap(new byte[] { 2, 3, 4 }));
+		Assert.assertEquals(item.getValue().getLong("ut_attr_version"), value.hashCode());
+		Assert.assertEquals(item.getValue().getString("ut_attr_key"), "set_first");
+	}
+
+	@Test
+	public void setTest() {
+		final ByteBuffer value = ByteBuffer.wrap(new byte[] { 0, 1, 2, 3, 4 });
+		value.position(2);
+		final Capture<UpdateItemSpec> spec = Capture.newInstance();
+		EasyMock.expect(mockTable.updateItem(EasyMock.capture(spec)))
+				.andReturn(EasyMock.createMock(UpdateItemOutcome.class));
+		EasyMock.replay(mockTable);
+
+		Assert.assertTrue(keyspace.set("set_first", value));
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(value.position(), 2);
+		Assert.assertEquals(spec.getValue().getAttributeUpdate().get(0).getValue(),
+				ByteBuffer.wrap(new byte[] { 2, 3, 4 }));
+		Assert.assertEquals(spec.getValue().getAttributeUpdate().get(1).getAction(), AttributeAction.ADD);
+		Assert.assertEquals(spec.getValue().getKeyComponents().size(), 2);
+	}
+}
@@ -0,0 +1,251 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+
+public class CacheInvalidatorTest {
+
+	private AtomicLong now;
+
+	private KeyspaceCache cache;
+
+	private List<Record> changes;
+
+	private RuntimeException failure;
+
+	private DynamoDbAdapter adapter;
+
+	private CacheInvalidator invalidator;
+
+	@BeforeMethod
+	public void CacheInvalidator() {
+		now = new AtomicLong();
+		cache = new KeyspaceCache(KeyspaceCacheConfig.builder().build());
+		changes = new ArrayList<>();
+		failure = null;
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		adapter = DynamoDbAdapter.builder(dynamo.createTable("ut_table", "keyspace", "key")) //
+				.withKeyspaceShards("sharded", 4) //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build();
+		invalidator = new CacheInvalidator(CacheInvalidationConfig.builder() //
+				.withPollInterval(Duration.ofSeconds(1)) //
+				.withMaxLag(Duration.ofSeconds(10)) //
+				.build(), this::pollChanges, cache, adapter, now::get);
+		// The first poll drops what was cached before the stream was read
+		invalidator.poll();
+	}
+
+	@Test
+	public void changeDropsOlderValueTest() {
+		cache.put("ks", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		cache.put("ks", KeyValue.create("b", "britta", 1L), cache.readStarted());
+		changes.add(change(OperationType.MODIFY, "ks", "a", 2L));
+
+		Assert.assertEquals(invalidator.poll(), 1);
+
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+		Assert.assertTrue(cache.get("ks", "b").isPresent());
+		Assert.assertEquals(invalidator.getInvalidationCount(), 1L);
+		Assert.assertEquals(invalidator.getRecordCount(), 1L);
+	}
+
+	@Test
+	public void changeKeepsUpToDateValueTest() {
+		cache.put("ks", KeyValue.create("a", "abed", 3L), cache.readStarted());
+		changes.add(change(OperationType.MODIFY, "ks", "a", 2L));
+		changes.add(change(OperationType.MODIFY, "ks", "a", 3L));
+
+		invalidator.poll();
+
+		Assert.assertEquals(cache.get("ks", "a").get().getVersion(), 3L);
+		Assert.assertEquals(invalidator.getInvalidationCount(), 0L);
+	}
+
+	@Test
+	public void changeRejectsReadInFlightTest() {
+		final long readSequence = cache.readStarted();
+		changes.add(change(OperationType.INSERT, "ks", "a", 1L));
+
+		invalidator.poll();
+
+		Assert.assertFalse(cache.put("ks", KeyValue.create("a", "abed", 0L), readSequence));
+	}
+
+	@Test
+	public void chunkChangeIsSkippedTest() {
+		cache.put("ks#chunks", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		changes.add(change(OperationType.INSERT, "ks#chunks", "a", 2L));
+
+		invalidator.poll();
+
+		Assert.assertTrue(cache.get("ks#chunks", "a").isPresent());
+	}
+
+	@Test
+	public void failuresBeyondMaxLagDropCacheTest() {
+		cache.put("ks", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		failure = new AmazonServiceException("Rate exceeded");
+
+		now.addAndGet(Duration.ofSeconds(5).toNanos());
+		Assert.assertEquals(invalidator.poll(), 0);
+		Assert.assertTrue(cache.get("ks", "a").isPresent());
+
+		now.addAndGet(Duration.ofSeconds(6).toNanos());
+		invalidator.poll();
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+		Assert.assertEquals(invalidator.getFailureCount(), 2L);
+		Assert.assertEquals(invalidator.getLag(), Duration.ZERO);
+
+		failure = null;
+		now.addAndGet(Duration.ofSeconds(1).toNanos());
+		invalidator.poll();
+		Assert.assertEquals(invalidator.getLag(), Duration.ZERO);
+	}
+
+	@Test
+	public void gapDropsCacheTest() {
+		cache.put("ks", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		failure = new ChangeStreamGapException("Trimmed", null);
+
+		invalidator.poll();
+
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+		Assert.assertEquals(invalidator.getGapCount(), 1L);
+		Assert.assertEquals(invalidator.getFailureCount(), 0L);
+	}
+
+	@Test
+	public void keyFilterTest() {
+		final Queue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+		// Polled by the test rather than by an invalidator of the adapter
+		final DynamoDbAdapter filtered = DynamoDbAdapter
+				.builder(new InMemoryDynamoDB().createTable("ut_table", "keyspace", "key")) //
+				.withKeyFilter("ks", KeyFilterConfig.builder().withSingleWriter(true).build()) //
+				.withExecutor(deferred::add) //
+				.build();
+		final KeyFilter keyFilter = filtered.getKeyFilter("ks").get();
+		final CacheInvalidator filteredInvalidator = new CacheInvalidator(CacheInvalidationConfig.builder().build(),
+				this::pollChanges, cache, filtered, now::get);
+		keyFilter.rebuild();
+
+		// Keys added before the stream was read may be missing
+		filteredInvalidator.poll();
+		Assert.assertFalse(keyFilter.isReady());
+		keyFilter.rebuild();
+		changes.add(change(OperationType.INSERT, "ks", "a", 1L));
+		filteredInvalidator.poll();
+		Assert.assertTrue(keyFilter.mightContain("a"));
+		Assert.assertFalse(keyFilter.mightContain("b"));
+
+		failure = new ChangeStreamGapException("Trimmed", null);
+		filteredInvalidator.poll();
+		Assert.assertFalse(keyFilter.isReady());
+	}
+
+	@Test
+	public void removeDropsValueTest() {
+		cache.put("ks", KeyValue.create("a", "abed", 5L), cache.readStarted());
+		changes.add(change(OperationType.REMOVE, "ks", "a", 5L));
+
+		invalidator.poll();
+
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+	}
+
+	@Test
+	public void shardChangeDropsKeyspaceValueTest() {
+		cache.put("sharded", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		cache.put("other", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		changes.add(change(OperationType.MODIFY, "sharded#3", "a", 2L));
+		changes.add(change(OperationType.MODIFY, "other#3", "a", 2L));
+
+		invalidator.poll();
+
+		Assert.assertFalse(cache.get("sharded", "a").isPresent());
+		Assert.assertTrue(cache.get("other", "a").isPresent());
+	}
+
+	@Test
+	public void writesOfOtherNodeTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final Table table = dynamo.getDynamoDB().createTable(DynamoDbAdapter.createTableRequest("ut_table",
+				DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE, DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY,
+				TableProvisioning.builder().withStream(StreamViewType.NEW_AND_OLD_IMAGES).build()));
+		final Keyspace writer = DynamoDbAdapter.create(table).getKeyspace("ks");
+		final DynamoDbAdapter readerAdapter = DynamoDbAdapter.builder(table) //
+				.withCache(KeyspaceCacheConfig.builder().withTtl(Duration.ofHours(1)).build()) //
+				.build();
+		final Keyspace reader = readerAdapter.getKeyspace("ks");
+		final KeyspaceCache readerCache = readerAdapter.getCache().get();
+		final CacheInvalidator readerInvalidator = new CacheInvalidator(CacheInvalidationConfig.builder().build(),
+				dynamo.changeStream("ut_table"), readerCache, readerAdapter, now::get);
+		readerInvalidator.poll();
+
+		writer.set("a", "abed");
+		writer.set("b", "britta");
+		Assert.assertEquals(reader.get("a").get(), "abed");
+		Assert.assertEquals(reader.get("b").get(), "britta");
+		writer.set("a", "annie");
+		writer.delete("b");
+		Assert.assertEquals(reader.get("a").get(), "abed");
+
+		Assert.assertEquals(readerInvalidator.poll(), 4);
+		Assert.assertEquals(reader.get("a").get(), "annie");
+		Assert.assertFalse(reader.get("b").isPresent());
+		Assert.assertEquals(readerInvalidator.getInvalidationCount(), 2L);
+
+		// Writes of the reader itself leave the values it cached since
+		reader.set("c", "chang");
+		Assert.assertEquals(reader.get("c").get(), "chang");
+		readerInvalidator.poll();
+		final long hits = readerCache.getHitCount();
+		reader.get("c");
+		Assert.assertEquals(readerCache.getHitCount(), hits + 1);
+	}
+
+	private List<Record> pollChanges() {
+		if (failure != null) {
+			throw failure;
+		}
+		final List<Record> polled = new ArrayList<>(changes);
+		changes.clear();
+		return polled;
+	}
+
+	private static Record change(final OperationType type, final String partition, final String key,
+			final long version) {
+		final Map<String, AttributeValue> keys = new HashMap<>();
+		keys.put(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE, new AttributeValue(partition));
+		keys.put(DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEY, new AttributeValue(key));
+		final Map<String, AttributeValue> image = new HashMap<>(keys);
+		image.put(DynamoDbAdapter.DEFAULT_ATTRIBUTE_VERSION, new AttributeValue().withN(Long.toString(version)));
+		final StreamRecord streamRecord = new StreamRecord().withKeys(keys);
+		if (type == OperationType.REMOVE) {
+			streamRecord.withOldImage(image);
+		} else {
+			streamRecord.withNewImage(image);
+		}
+		return new Record().withEventName(type.toString()).withDynamodb(streamRecord);
+	}
+}
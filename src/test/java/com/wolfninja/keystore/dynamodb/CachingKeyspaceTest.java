@@ -0,0 +1,132 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+
+public class CachingKeyspaceTest {
+
+	private KeyspaceCache cache;
+
+	private Keyspace mockDelegate;
+
+	private CachingKeyspace keyspace;
+
+	@BeforeMethod
+	public void CachingKeyspace() {
+		cache = new KeyspaceCache(KeyspaceCacheConfig.builder().build());
+		mockDelegate = EasyMock.createMock(Keyspace.class);
+		keyspace = new CachingKeyspace("ut_keyspace", mockDelegate, cache);
+	}
+
+	@Test
+	public void existsUsesCachedValueTest() {
+		EasyMock.expect(mockDelegate.gets("exists_first"))
+				.andReturn(Optional.of(KeyValue.create("exists_first", "troy", 1L)));
+		EasyMock.expect(mockDelegate.exists("exists_second")).andReturn(false);
+		EasyMock.replay(mockDelegate);
+
+		keyspace.get("exists_first");
+		final boolean actual = keyspace.exists("exists_first");
+		final boolean actual2 = keyspace.exists("exists_second");
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertTrue(actual);
+		Assert.assertFalse(actual2);
+	}
+
+	@Test
+	public void failedWriteStillInvalidatesTest() {
+		EasyMock.expect(mockDelegate.gets("set_first")).andReturn(Optional.of(KeyValue.create("set_first", "a", 1L)))
+				.times(2);
+		EasyMock.expect(mockDelegate.set("set_first", "b")).andThrow(new AmazonServiceException("Timeout"));
+		EasyMock.replay(mockDelegate);
+
+		keyspace.gets("set_first");
+		try {
+			keyspace.set("set_first", "b");
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			// expected
+		}
+		keyspace.gets("set_first");
+
+		EasyMock.verify(mockDelegate);
+	}
+
+	@Test
+	public void missesAreNotCachedTest() {
+		EasyMock.expect(mockDelegate.gets("get_none")).andReturn(Optional.empty()).times(2);
+		EasyMock.replay(mockDelegate);
+
+		Assert.assertFalse(keyspace.get("get_none").isPresent());
+		Assert.assertFalse(keyspace.get("get_none").isPresent());
+
+		EasyMock.verify(mockDelegate);
+	}
+
+	@Test
+	public void readThroughTest() {
+		EasyMock.expect(mockDelegate.gets("get_first"))
+				.andReturn(Optional.of(KeyValue.create("get_first", "pierce", 7L)));
+		EasyMock.replay(mockDelegate);
+
+		final Optional<String> actual = keyspace.get("get_first");
+		final Optional<KeyValue> actual2 = keyspace.gets("get_first");
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertEquals(actual, Optional.of("pierce"));
+		Assert.assertEquals(actual2.get().getVersion(), 7L);
+		Assert.assertEquals(cache.getHitCount(), 1L);
+		Assert.assertEquals(cache.getMissCount(), 1L);
+	}
+
+	@Test
+	public void writesBypassingCachingKeyspaceInvalidateTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(dynamo.createTable("ut_table", "keyspace", "key")) //
+				.withCache(KeyspaceCacheConfig.builder().build()) //
+				.withCounterBatching("ks", Duration.ofHours(1)) //
+				.build();
+		final Keyspace caching = adapter.getKeyspace("ks");
+		final DynamoDbKeyspace direct = (DynamoDbKeyspace) ((CachingKeyspace) caching).getDelegate();
+		direct.set("count", "1");
+		direct.set("text", "abed");
+		Assert.assertEquals(caching.get("count").get(), "1");
+		Assert.assertEquals(caching.get("text").get(), "abed");
+
+		direct.increment("count", 1);
+		Assert.assertEquals(caching.get("count").get(), "2");
+		adapter.getCounterBatcher("ks").increment("count", 3);
+		adapter.flush();
+		Assert.assertEquals(caching.get("count").get(), "5");
+		direct.setAll(Collections.singletonMap("text", "annie"));
+		Assert.assertEquals(caching.get("text").get(), "annie");
+		direct.compute("text", value -> value.get().toUpperCase());
+		Assert.assertEquals(caching.get("text").get(), "ANNIE");
+	}
+
+	@Test
+	public void writesInvalidateTest() {
+		EasyMock.expect(mockDelegate.gets("cas_first")).andReturn(Optional.of(KeyValue.create("cas_first", "a", 1L)));
+		EasyMock.expect(mockDelegate.checkAndSet("cas_first", "b", 1L)).andReturn(true);
+		EasyMock.expect(mockDelegate.gets("cas_first")).andReturn(Optional.of(KeyValue.create("cas_first", "b", 2L)));
+		EasyMock.replay(mockDelegate);
+
+		keyspace.gets("cas_first");
+		Assert.assertTrue(keyspace.checkAndSet("cas_first", "b", 1L));
+		final Optional<KeyValue> actual = keyspace.gets("cas_first");
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertEquals(actual.get().getValue(), "b");
+	}
+}
@@ -0,0 +1,135 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+public class CapacityLimiterTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void acquireBlockingTest() {
+		final CapacityLimiter limiter = new CapacityLimiter(RateLimitConfig.builder().build(), 1000d, 1000d,
+				System::nanoTime);
+
+		final long start = System.nanoTime();
+		limiter.acquireRead(1000d);
+		limiter.acquireWrite(1000d);
+		// Waits for the capacity borrowed from the next 20 milliseconds
+		limiter.acquireRead(20d);
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	@Test
+	public void acquireFailFastTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityLimiter limiter = new CapacityLimiter(RateLimitConfig.builder() //
+				.withMode(RateLimitConfig.Mode.FAIL_FAST) //
+				.build(), 10d, 5d, now::get);
+
+		limiter.acquireWrite(5d);
+		try {
+			limiter.acquireWrite(1d);
+			Assert.fail("Expected exception!");
+		} catch (final CapacityExceededException e) {
+			Assert.assertEquals(e.getRetryAfter(), Duration.ofMillis(200));
+		}
+		// Reads are limited separately
+		limiter.acquireRead(10d);
+		now.addAndGet(SECOND / 5);
+		limiter.acquireWrite(1d);
+	}
+
+	@Test
+	public void chargeReadTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityLimiter limiter = new CapacityLimiter(RateLimitConfig.builder() //
+				.withMode(RateLimitConfig.Mode.FAIL_FAST) //
+				.build(), 10d, 10d, now::get);
+
+		limiter.acquireRead(1d);
+		limiter.chargeRead(19d);
+		try {
+			limiter.acquireRead(1d);
+			Assert.fail("Expected exception!");
+		} catch (final CapacityExceededException e) {
+			Assert.assertEquals(e.getRetryAfter(), Duration.ofMillis(1100));
+		}
+	}
+
+	@Test
+	public void createFromProvisionedThroughputTest() {
+		final Table table = EasyMock.createMock(Table.class);
+		EasyMock.expect(table.describe()).andReturn(new TableDescription().withProvisionedThroughput(
+				new ProvisionedThroughputDescription().withReadCapacityUnits(100L).withWriteCapacityUnits(20L)));
+		EasyMock.replay(table);
+
+		final CapacityLimiter limiter = CapacityLimiter.create(RateLimitConfig.builder() //
+				.withCapacityFraction(0.5d) //
+				.build(), table);
+
+		EasyMock.verify(table);
+		Assert.assertEquals(limiter.getReadUnitsPerSecond(), 50d);
+		Assert.assertEquals(limiter.getWriteUnitsPerSecond(), 10d);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void createRequiresProvisionedThroughputTest() {
+		final Table table = EasyMock.createMock(Table.class);
+		EasyMock.expect(table.describe()).andReturn(new TableDescription().withProvisionedThroughput(
+				new ProvisionedThroughputDescription().withReadCapacityUnits(0L).withWriteCapacityUnits(0L)));
+		EasyMock.replay(table);
+
+		CapacityLimiter.create(RateLimitConfig.builder().build(), table);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void createWithCapacityUnitsTest() {
+		final Table table = EasyMock.createMock(Table.class);
+		EasyMock.replay(table);
+
+		final CapacityLimiter limiter = CapacityLimiter.create(RateLimitConfig.builder() //
+				.withCapacityUnits(40d, 8d) //
+				.build(), table);
+
+		Assert.assertEquals(limiter.getReadUnitsPerSecond(), 40d);
+		Assert.assertEquals(limiter.getWriteUnitsPerSecond(), 8d);
+	}
+
+	@Test
+	public void estimateUnitsTest() {
+		Assert.assertEquals(CapacityLimiter.readUnits(1, 100, true), 1d);
+		Assert.assertEquals(CapacityLimiter.readUnits(1, 100, false), 0.5d);
+		Assert.assertEquals(CapacityLimiter.readUnits(1, 10_000, true), 3d);
+		Assert.assertEquals(CapacityLimiter.readUnits(10, 10_000, false), 5d);
+		Assert.assertEquals(CapacityLimiter.writeUnits(1, 100), 1d);
+		Assert.assertEquals(CapacityLimiter.writeUnits(1, 2_500), 3d);
+		Assert.assertEquals(CapacityLimiter.writeUnits(25, 2_500), 25d);
+	}
+
+	@Test
+	public void throttledTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityLimiter adaptive = new CapacityLimiter(RateLimitConfig.builder().build(), 100d, 100d,
+				now::get);
+		final CapacityLimiter fixed = new CapacityLimiter(RateLimitConfig.builder().withAdaptive(false).build(),
+				100d, 100d, now::get);
+
+		adaptive.throttled(true);
+		fixed.throttled(true);
+
+		Assert.assertEquals(adaptive.getWriteUnitsPerSecond(), 50d);
+		Assert.assertEquals(adaptive.getReadUnitsPerSecond(), 100d);
+		Assert.assertEquals(fixed.getWriteUnitsPerSecond(), 100d);
+	}
+}
@@ -0,0 +1,81 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CapacityThrottleTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void adaptsToThrottlingTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityThrottle throttle = new CapacityThrottle(100d, now::get);
+
+		throttle.decrease();
+		Assert.assertEquals(throttle.getUnitsPerSecond(), 50d);
+		// Decreased at most once per second
+		throttle.decrease();
+		Assert.assertEquals(throttle.getUnitsPerSecond(), 50d);
+		now.addAndGet(SECOND);
+		// Regained 5 units per second, then halved
+		throttle.decrease();
+		Assert.assertEquals(throttle.getUnitsPerSecond(), 27.5d, 0.01d);
+
+		now.addAndGet(5 * SECOND);
+		Assert.assertEquals(throttle.getUnitsPerSecond(), 52.5d, 0.01d);
+		now.addAndGet(60 * SECOND);
+		Assert.assertEquals(throttle.getUnitsPerSecond(), 100d);
+
+		for (int i = 0; i < 20; i++) {
+			now.addAndGet(SECOND);
+			throttle.decrease();
+		}
+		Assert.assertEquals(throttle.getUnitsPerSecond(), 100d * CapacityThrottle.MIN_RATE_FRACTION, 0.01d);
+	}
+
+	@Test
+	public void burstIsBoundedTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityThrottle throttle = new CapacityThrottle(10d, now::get);
+
+		now.addAndGet(60 * SECOND);
+		// Only one second of idle capacity is kept
+		Assert.assertTrue(throttle.reserve(10d) <= 0L);
+		Assert.assertEquals(throttle.reserve(10d), SECOND);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidRateTest() {
+		new CapacityThrottle(0d, System::nanoTime);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void paysForConsumedCapacityTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityThrottle throttle = new CapacityThrottle(10d, now::get);
+
+		Assert.assertTrue(throttle.reserve(10d) <= 0L);
+		Assert.assertEquals(throttle.reserve(5d), SECOND / 2);
+		now.addAndGet(SECOND / 2);
+		Assert.assertEquals(throttle.reserve(20d), 2 * SECOND);
+	}
+
+	@Test
+	public void tryReserveTest() {
+		final AtomicLong now = new AtomicLong(0L);
+		final CapacityThrottle throttle = new CapacityThrottle(10d, now::get);
+
+		Assert.assertEquals(throttle.tryReserve(8d), 0L);
+		Assert.assertEquals(throttle.tryReserve(4d), SECOND / 5);
+		Assert.assertEquals(throttle.tryReserve(2d), 0L);
+		now.addAndGet(SECOND);
+		// More than a second of capacity is granted from a full bucket only
+		Assert.assertEquals(throttle.tryReserve(30d), 0L);
+		Assert.assertEquals(throttle.tryReserve(1d), 2 * SECOND + SECOND / 10);
+	}
+}
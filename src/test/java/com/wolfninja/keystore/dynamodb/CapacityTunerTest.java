@@ -0,0 +1,120 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+
+public class CapacityTunerTest {
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	private AtomicLong now;
+
+	private Table mockTable;
+
+	private CapacityTuner tuner;
+
+	@BeforeMethod
+	public void CapacityTuner() {
+		now = new AtomicLong(0L);
+		mockTable = EasyMock.createMock(Table.class);
+		tuner = new CapacityTuner(CapacityTuningConfig.builder() //
+				.withReadCapacityBounds(2L, 50L) //
+				.withWriteCapacityBounds(1L, 20L) //
+				.withDecreaseDelay(Duration.ofMinutes(30)) //
+				.build(), mockTable, now::get);
+	}
+
+	@Test
+	public void decreaseFitsPeakSinceLastChangeTest() {
+		EasyMock.expect(mockTable.describe()).andReturn(description(TableStatus.ACTIVE, 40L, 10L, 0L)).times(2);
+		EasyMock.expect(mockTable.updateTable(new ProvisionedThroughput(15L, 1L))).andReturn(new TableDescription());
+		EasyMock.replay(mockTable);
+
+		// 10 units per second, within 40 units, but not decreased before the delay
+		tuner.recordRead(600d);
+		now.addAndGet(MINUTE);
+		Assert.assertFalse(tuner.tune());
+		Assert.assertEquals(tuner.getReadUnitsPerSecond(), 10d);
+
+		// Decreased to fit the earlier peak of 10 units per second, at 70% utilization
+		tuner.recordRead(60d);
+		now.addAndGet(30 * MINUTE);
+		Assert.assertTrue(tuner.tune());
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test
+	public void decreaseWithinDailyLimitTest() {
+		EasyMock.expect(mockTable.describe()).andReturn(description(TableStatus.ACTIVE, 40L, 10L, 4L));
+		EasyMock.replay(mockTable);
+
+		now.addAndGet(60 * MINUTE);
+		Assert.assertFalse(tuner.tune());
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test
+	public void increaseTest() {
+		EasyMock.expect(mockTable.describe()).andReturn(description(TableStatus.ACTIVE, 10L, 5L, 0L));
+		EasyMock.expect(mockTable.updateTable(new ProvisionedThroughput(15L, 5L))).andReturn(new TableDescription());
+		EasyMock.replay(mockTable);
+
+		tuner.recordRead(600d);
+		tuner.recordWrite(60d);
+		now.addAndGet(MINUTE);
+		Assert.assertTrue(tuner.tune());
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(tuner.getWriteUnitsPerSecond(), 1d);
+	}
+
+	@Test
+	public void increaseWithinBoundsTest() {
+		EasyMock.expect(mockTable.describe()).andReturn(description(TableStatus.ACTIVE, 10L, 5L, 0L));
+		EasyMock.expect(mockTable.updateTable(new ProvisionedThroughput(50L, 20L))).andReturn(new TableDescription());
+		EasyMock.replay(mockTable);
+
+		tuner.recordRead(60_000d);
+		tuner.recordWrite(60_000d);
+		now.addAndGet(MINUTE);
+		Assert.assertTrue(tuner.tune());
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test
+	public void skipsTableNotActiveTest() {
+		EasyMock.expect(mockTable.describe()).andReturn(description(TableStatus.UPDATING, 10L, 5L, 0L));
+		EasyMock.replay(mockTable);
+
+		tuner.recordRead(6000d);
+		now.addAndGet(MINUTE);
+		Assert.assertFalse(tuner.tune());
+
+		EasyMock.verify(mockTable);
+	}
+
+	private static TableDescription description(final TableStatus status, final long read, final long write,
+			final long decreasesToday) {
+		return new TableDescription() //
+				.withTableStatus(status) //
+				.withProvisionedThroughput(new ProvisionedThroughputDescription() //
+						.withReadCapacityUnits(read) //
+						.withWriteCapacityUnits(write) //
+						.withNumberOfDecreasesToday(decreasesToday));
+	}
+}
@@ -0,0 +1,169 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.Manifest;
+import com.wolfninja.keystore.dynamodb.ChunkedValueStore.MissingChunksException;
+
+public class ChunkedValueStoreTest {
+
+	/**
+	 * Backs the mocked table's single item operations with a map, ordered like a query of one partition
+	 * 
+	 * @param mockTable
+	 *            Table mock, not replayed yet
+	 * @return Stored items by partition and sort key
+	 */
+	static Map<String, Item> backWithMap(final Table mockTable) {
+		final Map<String, Item> items = new TreeMap<>();
+		EasyMock.expect(mockTable.getTableName()).andReturn("ut_table").anyTimes();
+		EasyMock.expect(mockTable.putItem(EasyMock.anyObject(Item.class))).andAnswer(() -> {
+			final Item item = (Item) EasyMock.getCurrentArguments()[0];
+			items.put(item.getString("ks") + '|' + item.getString("k"), item);
+			return null;
+		}).anyTimes();
+		EasyMock.expect(mockTable.getItem(EasyMock.anyObject(GetItemSpec.class))).andAnswer(() -> {
+			final GetItemSpec spec = (GetItemSpec) EasyMock.getCurrentArguments()[0];
+			String partition = null;
+			String key = null;
+			for (final KeyAttribute component : spec.getKeyComponents()) {
+				if (component.getName().equals("ks")) {
+					partition = (String) component.getValue();
+				} else {
+					key = (String) component.getValue();
+				}
+			}
+			return items.get(partition + '|' + key);
+		}).anyTimes();
+		EasyMock.expect(mockTable.deleteItem(EasyMock.eq("ks"), EasyMock.anyObject(), EasyMock.eq("k"),
+				EasyMock.anyObject())).andAnswer(() -> {
+			final Object[] arguments = EasyMock.getCurrentArguments();
+			items.remove(arguments[1] + "|" + arguments[3]);
+			return null;
+		}).anyTimes();
+		return items;
+	}
+
+	private Map<String, Item> items;
+
+	private Table mockTable;
+
+	private AtomicLong now;
+
+	private ChunkedValueStore store;
+
+	@BeforeMethod
+	public void ChunkedValueStore() {
+		mockTable = EasyMock.createMock(Table.class);
+		items = backWithMap(mockTable);
+		now = new AtomicLong(1_000_000L);
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ks", "k", "v", "ver") //
+				.withExecutor(Runnable::run) //
+				.build();
+		store = new ChunkedValueStore(adapter, now::get);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void collectGarbageTest() {
+		final ItemCollection<QueryOutcome> mockCollection = EasyMock.createMock(ItemCollection.class);
+		EasyMock.expect(mockTable.query(EasyMock.anyObject(QuerySpec.class))).andAnswer(() -> {
+			final ArrayList<Item> chunks = new ArrayList<>();
+			for (final Map.Entry<String, Item> entry : items.entrySet()) {
+				if (entry.getKey().startsWith("ut_keyspace#chunks|")) {
+					chunks.add(entry.getValue());
+				}
+			}
+			EasyMock.expect(mockCollection.firstPage())
+					.andReturn(new PrefetchingIteratorTest.ListPage(Arrays.asList(chunks), new AtomicInteger()));
+			EasyMock.replay(mockCollection);
+			return mockCollection;
+		});
+		EasyMock.replay(mockTable);
+
+		final Manifest current = store.write("ut_keyspace", "a#b", bytes("current value"), false, 4);
+		store.write("ut_keyspace", "a#b", bytes("superseded"), false, 4);
+		now.addAndGet(60_000L);
+		store.write("ut_keyspace", "a#b", bytes("in progress"), false, 4);
+		items.put("ut_keyspace|a#b", current.applyTo(new Item().withPrimaryKey("ks", "ut_keyspace", "k", "a#b")));
+
+		final int deleted = store.collectGarbage("ut_keyspace", 30_000L);
+
+		// Only the superseded write is old enough and unreferenced
+		Assert.assertEquals(deleted, 3);
+		Assert.assertEquals(items.size(), 1 + 4 + 3);
+		Assert.assertEquals(new String(store.read("ut_keyspace", "a#b", current, true), StandardCharsets.UTF_8),
+				"current value");
+	}
+
+	@Test
+	public void deleteTest() {
+		EasyMock.replay(mockTable);
+		final Manifest manifest = store.write("ut_keyspace", "k1", new byte[10], false, 4);
+
+		store.delete("ut_keyspace", "k1", manifest);
+
+		Assert.assertTrue(items.isEmpty());
+	}
+
+	@Test
+	public void manifestTest() {
+		EasyMock.replay(mockTable);
+		final Manifest manifest = store.write("ut_keyspace", "k1", new byte[10], true, 4);
+		final Item item = manifest.applyTo(new Item());
+
+		Assert.assertEquals(item.getInt(ChunkedValueStore.ATTRIBUTE_CHUNKS), 3);
+		Assert.assertTrue(Manifest.of(item).isEncoded());
+		Assert.assertNull(Manifest.of(new Item().withString("v", "plain")));
+	}
+
+	@Test(expectedExceptions = MissingChunksException.class)
+	public void readMissingChunkTest() {
+		EasyMock.replay(mockTable);
+		final Manifest manifest = store.write("ut_keyspace", "k1", new byte[10], false, 4);
+		items.remove("ut_keyspace#chunks|k1#"
+				+ manifest.applyTo(new Item()).getString(ChunkedValueStore.ATTRIBUTE_CHUNK_ID) + "#1");
+
+		store.read("ut_keyspace", "k1", manifest, false);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void writeAndReadTest() {
+		EasyMock.replay(mockTable);
+		final byte[] payload = bytes("0123456789");
+
+		final Manifest manifest = store.write("ut_keyspace", "k1", payload, false, 4);
+
+		Assert.assertEquals(items.size(), 3);
+		for (final Item chunk : items.values()) {
+			Assert.assertEquals(chunk.getString("ks"), "ut_keyspace#chunks");
+			Assert.assertTrue(chunk.getString("k").startsWith("k1#"));
+			Assert.assertEquals(chunk.getLong(ChunkedValueStore.ATTRIBUTE_CHUNK_CREATED), now.get());
+		}
+		Assert.assertEquals(store.read("ut_keyspace", "k1", manifest, false), payload);
+	}
+
+	private static byte[] bytes(final String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,28 @@
+package com.wolfninja.keystore.dynamodb;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+
+public class ChunkedWritesTest {
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void constructorRequiresValueChunkingTest() {
+		new ChunkedWrites("ks", DynamoDbAdapter.create(EasyMock.createMock(Table.class)));
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void mayNeedChunksTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withValueChunking(30) //
+				.build();
+		final ChunkedWrites writes = new ChunkedWrites("ks", adapter);
+
+		Assert.assertFalse(writes.mayNeedChunks("0123456789"));
+		// Up to 3 UTF-8 bytes per char
+		Assert.assertTrue(writes.mayNeedChunks("0123456789a"));
+	}
+}
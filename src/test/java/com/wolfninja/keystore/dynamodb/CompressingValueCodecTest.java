@@ -0,0 +1,81 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CompressingValueCodecTest {
+
+	private static String repeat(final String part, final int times) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			builder.append(part);
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void compressesLargeValuesTest() {
+		final AtomicLong now = new AtomicLong();
+		final CompressingValueCodec codec = new CompressingValueCodec(100, Deflater.DEFAULT_COMPRESSION,
+				() -> now.getAndAdd(10L));
+		final String value = repeat("{\"name\":\"jeff\",\"city\":\"Z\u00fcrich\"}", 100);
+
+		final byte[] encoded = codec.encode(value);
+
+		Assert.assertNotNull(encoded);
+		Assert.assertEquals(encoded[0], CompressingValueCodec.FORMAT_ZLIB);
+		Assert.assertTrue(encoded.length < value.length() / 10);
+		Assert.assertEquals(codec.decode(encoded), value);
+		Assert.assertEquals(codec.getCompressedCount(), 1L);
+		Assert.assertEquals(codec.getDecompressedCount(), 1L);
+		Assert.assertTrue(codec.getCompressionRatio() < 0.1d);
+		Assert.assertEquals(codec.getAverageCompressNanos(), 10L);
+		Assert.assertEquals(codec.getAverageDecompressNanos(), 10L);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void decodeCorruptValueTest() {
+		final CompressingValueCodec codec = CompressingValueCodec.create(10);
+		final byte[] encoded = codec.encode(repeat("abc", 100));
+		encoded[encoded.length / 2] ^= 0x55;
+
+		codec.decode(encoded);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void decodeUnknownFormatTest() {
+		CompressingValueCodec.create().decode(new byte[] { 42, 0, 0, 0, 0 });
+		Assert.fail("Expected exception!");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidThresholdTest() {
+		CompressingValueCodec.create(0);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void skipsIncompressibleValuesTest() {
+		final CompressingValueCodec codec = CompressingValueCodec.create(10);
+
+		// Header and zlib framing outweigh the savings on a short value
+		Assert.assertNull(codec.encode("q7#Zp!x2Lw9@"));
+		Assert.assertEquals(codec.getSkippedCount(), 1L);
+		Assert.assertEquals(codec.getCompressionRatio(), 1d);
+	}
+
+	@Test
+	public void skipsSmallValuesTest() {
+		final CompressingValueCodec codec = CompressingValueCodec.create();
+
+		Assert.assertNull(codec.encode("small"));
+		Assert.assertNull(codec.encode(repeat("a", CompressingValueCodec.DEFAULT_THRESHOLD_BYTES - 1)));
+		Assert.assertNotNull(codec.encode(repeat("a", CompressingValueCodec.DEFAULT_THRESHOLD_BYTES)));
+		Assert.assertEquals(codec.getSkippedCount(), 2L);
+		Assert.assertEquals(codec.getThresholdBytes(), CompressingValueCodec.DEFAULT_THRESHOLD_BYTES);
+	}
+}
@@ -0,0 +1,164 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+
+public class CounterBatcherTest {
+
+	private CounterBatcher batcher;
+
+	private DynamoDbKeyspace mockDelegate;
+
+	@BeforeMethod
+	public void CounterBatcher() {
+		mockDelegate = EasyMock.createMock(DynamoDbKeyspace.class);
+		batcher = new CounterBatcher(mockDelegate, Runnable::run);
+	}
+
+	@Test
+	public void combinesDeltasOfAKeyTest() {
+		EasyMock.expect(mockDelegate.increment("hits", 4L)).andReturn(14L);
+		EasyMock.expect(mockDelegate.increment("misses", 1L)).andReturn(1L);
+		EasyMock.replay(mockDelegate);
+
+		final CompletableFuture<Long> first = batcher.increment("hits", 1);
+		final CompletableFuture<Long> second = batcher.increment("hits", 5);
+		final CompletableFuture<Long> third = batcher.decrement("hits", 2);
+		final CompletableFuture<Long> miss = batcher.increment("misses", 1);
+		Assert.assertFalse(first.isDone());
+		Assert.assertEquals(batcher.getPendingCount(), 2);
+
+		batcher.flush();
+
+		EasyMock.verify(mockDelegate);
+		// As if sent one by one onto the value of 10 found
+		Assert.assertEquals(first.join(), Long.valueOf(11));
+		Assert.assertEquals(second.join(), Long.valueOf(16));
+		Assert.assertEquals(third.join(), Long.valueOf(14));
+		Assert.assertEquals(miss.join(), Long.valueOf(1));
+		Assert.assertEquals(batcher.getPendingCount(), 0);
+	}
+
+	@Test
+	public void concurrentIncrementsTest() throws Exception {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbKeyspace counters = new DynamoDbKeyspace("counters", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.build());
+		final CounterBatcher inMemoryBatcher = new CounterBatcher(counters, Runnable::run);
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final Thread thread = new Thread(() -> {
+				for (int i = 0; i < 500; i++) {
+					inMemoryBatcher.increment("hits", 1);
+					if (i % 100 == 0) {
+						inMemoryBatcher.flush();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		inMemoryBatcher.flush();
+
+		Assert.assertEquals(counters.increment("hits", 0), 2000L);
+		// Far fewer requests than increments
+		Assert.assertTrue(dynamo.getRequestCount() < 100, "Requests: " + dynamo.getRequestCount());
+	}
+
+	@Test
+	public void failedFlushFailsDeltasTest() {
+		final AmazonServiceException failure = new AmazonServiceException("Throttled");
+		EasyMock.expect(mockDelegate.increment("hits", 3L)).andThrow(failure);
+		EasyMock.replay(mockDelegate);
+
+		final CompletableFuture<Long> first = batcher.increment("hits", 1);
+		final CompletableFuture<Long> second = batcher.increment("hits", 2);
+		try {
+			batcher.flush();
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			Assert.assertSame(e, failure);
+		}
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertTrue(first.isCompletedExceptionally());
+		try {
+			second.join();
+			Assert.fail("Expected exception!");
+		} catch (final CompletionException e) {
+			Assert.assertSame(e.getCause(), failure);
+		}
+		Assert.assertEquals(batcher.getPendingCount(), 0);
+	}
+
+	@Test
+	public void flushWithoutDeltasTest() {
+		EasyMock.replay(mockDelegate);
+
+		batcher.flush();
+
+		EasyMock.verify(mockDelegate);
+	}
+
+	@Test
+	public void futuresCompleteOnExecutorTest() throws Exception {
+		EasyMock.expect(mockDelegate.increment("hits", 1L)).andReturn(1L);
+		EasyMock.replay(mockDelegate);
+		final ExecutorService executor = Executors
+				.newSingleThreadExecutor(runnable -> new Thread(runnable, "ut-executor"));
+		try {
+			final CounterBatcher executorBatcher = new CounterBatcher(mockDelegate, executor);
+			final CompletableFuture<String> callbackThread = executorBatcher.increment("hits", 1)
+					.thenApply(value -> Thread.currentThread().getName());
+
+			executorBatcher.flush();
+
+			EasyMock.verify(mockDelegate);
+			Assert.assertEquals(callbackThread.get(30, TimeUnit.SECONDS), "ut-executor");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void scheduledFlushWithSingleThreadExecutorTest() throws Exception {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final DynamoDbAdapter adapter = DynamoDbAdapter
+					.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+					.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+					.withCounterBatching("counters", Duration.ofMillis(10)) //
+					.withExecutor(executor) //
+					.build();
+			final CounterBatcher scheduled = adapter.getCounterBatcher("counters");
+
+			final CompletableFuture<Long> hits = scheduled.increment("hits", 2);
+			final CompletableFuture<Long> misses = scheduled.increment("misses", 1);
+
+			// Both keys are sent concurrently, which must not wait for the only executor thread
+			Assert.assertEquals(hits.get(30, TimeUnit.SECONDS), Long.valueOf(2));
+			Assert.assertEquals(misses.get(30, TimeUnit.SECONDS), Long.valueOf(1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
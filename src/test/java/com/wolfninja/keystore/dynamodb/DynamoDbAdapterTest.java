@@ -1,14 +1,384 @@
 package com.wolfninja.keystore.dynamodb;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.easymock.EasyMock;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
 import com.wolfninja.keystore.api.Keyspace;
 
 public class DynamoDbAdapterTest {
 
+	@Test
+	public void builder() {
+		final Table table = EasyMock.createMock(Table.class);
+		final DynamoDB dynamoDB = EasyMock.createMock(DynamoDB.class);
+
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ks", "k", "v", "ver") //
+				.withDynamoDB(dynamoDB) //
+				.build();
+
+		Assert.assertSame(adapter.getTable(), table);
+		Assert.assertSame(adapter.getDynamoDB().get(), dynamoDB);
+		Assert.assertEquals(adapter.getAttributeNameKeyspace(), "ks");
+		Assert.assertEquals(adapter.getAttributeNameKey(), "k");
+		Assert.assertEquals(adapter.getAttributeNameValue(), "v");
+		Assert.assertEquals(adapter.getAttributeNameVersion(), "ver");
+	}
+
+	@Test
+	public void builderWithCapacityTuning() {
+		final Table table = EasyMock.createMock(Table.class);
+		EasyMock.replay(table);
+
+		Assert.assertFalse(DynamoDbAdapter.create(table).getCapacityTuner().isPresent());
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withCapacityTuning(CapacityTuningConfig.builder().withSampleInterval(Duration.ofHours(1)).build()) //
+				.build();
+
+		// The table is not described before the first sample
+		EasyMock.verify(table);
+		Assert.assertEquals(adapter.getCapacityTuner().get().getReadUnitsPerSecond(), 0d);
+	}
+
+	@Test
+	public void builderWithCacheInvalidation() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		Assert.assertFalse(DynamoDbAdapter.create(table).getCacheInvalidator().isPresent());
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withCache(KeyspaceCacheConfig.builder().build()) //
+				.withCacheInvalidation(Collections::emptyList, CacheInvalidationConfig.builder().build()) //
+				.build();
+
+		Assert.assertEquals(adapter.getCacheInvalidator().get().getGapCount(), 0L);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void builderWithCacheInvalidationRequiresCache() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		DynamoDbAdapter.builder(table) //
+				.withCacheInvalidation(Collections::emptyList, CacheInvalidationConfig.builder().build()) //
+				.build();
+	}
+
+	@Test
+	public void builderWithExpiryAttribute() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		Assert.assertEquals(DynamoDbAdapter.builder(table).withExpiryAttribute("expires").build()
+				.getAttributeNameExpiry(), Optional.of("expires"));
+		Assert.assertFalse(DynamoDbAdapter.create(table).getAttributeNameExpiry().isPresent());
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void builderWithExpiryAttributeRejectsValueChunking() {
+		DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withExpiryAttribute("expires") //
+				.withValueChunking() //
+				.build();
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void builderWithRateLimit() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withRateLimit(RateLimitConfig.builder().withCapacityUnits(10d, 5d).build()) //
+				.build();
+
+		Assert.assertEquals(adapter.getCapacityLimiter().get().getReadUnitsPerSecond(), 10d);
+		Assert.assertEquals(adapter.getCapacityLimiter().get().getWriteUnitsPerSecond(), 5d);
+		Assert.assertFalse(DynamoDbAdapter.create(table).getCapacityLimiter().isPresent());
+	}
+
+	@Test
+	public void builderWithReadCoalescing() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		Assert.assertTrue(DynamoDbAdapter.builder(table).withReadCoalescing(true).build().getReadCoalescer()
+				.isPresent());
+		Assert.assertFalse(DynamoDbAdapter.create(table).getReadCoalescer().isPresent());
+	}
+
+	@Test
+	public void builderWithReadConsistencyTracksSessionsOnlyWhenUsed() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		Assert.assertTrue(DynamoDbAdapter.builder(table).withReadConsistency(ReadConsistency.SESSION).build()
+				.getSessionTracker().isPresent());
+		Assert.assertTrue(DynamoDbAdapter.builder(table).withKeyspaceReadConsistency("ks", ReadConsistency.SESSION)
+				.build().getSessionTracker().isPresent());
+		Assert.assertFalse(DynamoDbAdapter.builder(table).withReadConsistency(ReadConsistency.EVENTUAL).build()
+				.getSessionTracker().isPresent());
+		Assert.assertFalse(DynamoDbAdapter.create(table).getSessionTracker().isPresent());
+	}
+
+	@Test
+	public void builderWithKeyFilter() {
+		final Table table = new InMemoryDynamoDB().createTable("ut_table", "keyspace", "key");
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withKeyFilter("ks", KeyFilterConfig.builder() //
+						.withRebuildInterval(Duration.ofMinutes(5)) //
+						.withSingleWriter(true) //
+						.build()) //
+				.build();
+
+		Assert.assertTrue(adapter.getKeyFilter("ks").isPresent());
+		Assert.assertFalse(adapter.getKeyFilter("other").isPresent());
+		Assert.assertFalse(DynamoDbAdapter.create(table).getKeyFilter("ks").isPresent());
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void builderWithKeyFilterRequiresSingleWriterOrCacheInvalidation() {
+		DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withKeyFilter("ks", KeyFilterConfig.builder().build()) //
+				.build();
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void builderWithKeyFilterRebuildsOnOwnThread() throws Exception {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		dynamo.createTable("ut_table", "keyspace", "key");
+		final AmazonDynamoDB client = dynamo.getClient();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AmazonDynamoDB blockingClient = (AmazonDynamoDB) Proxy.newProxyInstance(
+				AmazonDynamoDB.class.getClassLoader(), new Class<?>[] { AmazonDynamoDB.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("query")) {
+						started.countDown();
+						release.await();
+					}
+					try {
+						return method.invoke(client, args);
+					} catch (final InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(new DynamoDB(blockingClient).getTable("ut_table")) //
+				.withCounterBatching("counters", Duration.ofMillis(10)) //
+				.withExecutor(Runnable::run) //
+				.withKeyFilter("ks", KeyFilterConfig.builder().withSingleWriter(true).build()) //
+				.build();
+		started.await();
+
+		// Flushed on the scheduler thread while the rebuild waits for its Query
+		Assert.assertEquals(adapter.getCounterBatcher("counters").increment("hits", 2).get(5, TimeUnit.SECONDS),
+				Long.valueOf(2));
+		release.countDown();
+		final KeyFilter keyFilter = adapter.getKeyFilter("ks").get();
+		for (int wait = 0; keyFilter.getRebuildCount() == 0 && wait < 500; wait++) {
+			Thread.sleep(10L);
+		}
+		Assert.assertTrue(keyFilter.isReady());
+	}
+
+	@Test
+	public void builderWithKeyspaceShards() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withKeyspaceShards("hot", 8) //
+				.build();
+
+		Assert.assertEquals(adapter.getShards("hot"), 8);
+		Assert.assertEquals(adapter.getShards("cold"), 1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void builderWithKeyspaceShardsRequiresPositive() {
+		DynamoDbAdapter.builder(EasyMock.createMock(Table.class)).withKeyspaceShards("hot", 0);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void builderWithMetrics() {
+		final Table table = EasyMock.createMock(Table.class);
+		final KeyspaceMetrics metrics = new RecordingKeyspaceMetrics();
+
+		Assert.assertSame(DynamoDbAdapter.builder(table).withMetrics(metrics).build().getMetrics(), metrics);
+		Assert.assertSame(DynamoDbAdapter.create(table).getMetrics(), KeyspaceMetrics.NONE);
+	}
+
+	@Test
+	public void builderWithCounterBatching() {
+		final Table table = EasyMock.createMock(Table.class);
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withCounterBatching("counters", Duration.ofSeconds(1)) //
+				.build();
+
+		Assert.assertSame(adapter.getCounterBatcher("counters"), adapter.getCounterBatcher("counters"));
+		try {
+			adapter.getCounterBatcher("other");
+			Assert.fail("Expected exception!");
+		} catch (final IllegalStateException e) {
+			// Not configured for batching
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void builderWithCounterBatchingRequiresPositiveInterval() {
+		DynamoDbAdapter.builder(EasyMock.createMock(Table.class)).withCounterBatching("counters", Duration.ZERO);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void builderWithVersionScheme() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		Assert.assertEquals(DynamoDbAdapter.builder(table).withVersionScheme(VersionScheme.MONOTONIC).build()
+				.getVersionScheme(), VersionScheme.MONOTONIC);
+		Assert.assertEquals(DynamoDbAdapter.builder(table).build().getVersionScheme(), VersionScheme.HASH_CODE);
+		Assert.assertEquals(DynamoDbAdapter.create(table).getVersionScheme(), VersionScheme.HASH_CODE);
+	}
+
+	@Test
+	public void builderWithValueChunking() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		Assert.assertEquals(DynamoDbAdapter.builder(table).withValueChunking().build().getValueChunkBytes(),
+				DynamoDbAdapter.DEFAULT_VALUE_CHUNK_BYTES);
+		Assert.assertEquals(DynamoDbAdapter.create(table).getValueChunkBytes(), 0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void builderWithValueChunkingRequiresLimit() {
+		DynamoDbAdapter.builder(EasyMock.createMock(Table.class)).withValueChunking(400 * 1024);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void closeFlushesBufferedWritesTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(dynamo.createTable("ut_table", "keyspace", "key")) //
+				.withCounterBatching("counters", Duration.ofHours(1)) //
+				.withDynamoDB(dynamo.getDynamoDB()) //
+				.withWriteBehind("buffered",
+						WriteBehindConfig.builder().withFlushInterval(Duration.ofHours(1)).build()) //
+				.build();
+		Assert.assertTrue(adapter.getKeyspace("buffered").set("abed", "nadir"));
+		final CompletableFuture<Long> increment = adapter.getCounterBatcher("counters").increment("hits", 3);
+
+		adapter.close();
+
+		Assert.assertEquals(increment.join(), Long.valueOf(3));
+		Assert.assertEquals(new DynamoDbKeyspace("buffered", adapter).get("abed"), Optional.of("nadir"));
+		Assert.assertEquals(new DynamoDbKeyspace("counters", adapter).get("hits"), Optional.of("3"));
+	}
+
+	@Test
+	public void createTableRequest() {
+		final GlobalSecondaryIndex index = new GlobalSecondaryIndex() //
+				.withIndexName("byVersion") //
+				.withKeySchema(new KeySchemaElement("ks", KeyType.HASH), new KeySchemaElement("ver", KeyType.RANGE)) //
+				.withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY));
+
+		final CreateTableRequest request = DynamoDbAdapter.createTableRequest("table", "ks", "k",
+				TableProvisioning.builder() //
+						.withCapacityUnits(20L, 10L) //
+						.withGlobalSecondaryIndex(index, new AttributeDefinition("ks", ScalarAttributeType.S),
+								new AttributeDefinition("ver", ScalarAttributeType.N)) //
+						.withStream(StreamViewType.KEYS_ONLY) //
+						.build());
+
+		Assert.assertEquals(request.getProvisionedThroughput(), new ProvisionedThroughput(20L, 10L));
+		Assert.assertEquals(request.getAttributeDefinitions(),
+				Arrays.asList(new AttributeDefinition("ks", ScalarAttributeType.S),
+						new AttributeDefinition("k", ScalarAttributeType.S),
+						new AttributeDefinition("ver", ScalarAttributeType.N)));
+		// The index gets the throughput of the table
+		Assert.assertEquals(request.getGlobalSecondaryIndexes().get(0).getProvisionedThroughput(),
+				new ProvisionedThroughput(20L, 10L));
+		Assert.assertNull(index.getProvisionedThroughput());
+		Assert.assertEquals(request.getStreamSpecification(),
+				new StreamSpecification().withStreamEnabled(true).withStreamViewType(StreamViewType.KEYS_ONLY));
+	}
+
+	@Test
+	public void createTableRequestUsesDefaults() {
+		final CreateTableRequest request = DynamoDbAdapter.createTableRequest("table", "ks", "k",
+				TableProvisioning.builder().build());
+
+		Assert.assertEquals(request.getProvisionedThroughput(), new ProvisionedThroughput(2L, 1L));
+		Assert.assertEquals(request.getAttributeDefinitions().size(), 2);
+		Assert.assertNull(request.getGlobalSecondaryIndexes());
+		Assert.assertNull(request.getStreamSpecification());
+	}
+
+	@Test
+	public void createUsesDefaults() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		final DynamoDbAdapter adapter = DynamoDbAdapter.create(table);
+
+		Assert.assertFalse(adapter.getDynamoDB().isPresent());
+		Assert.assertEquals(adapter.getAttributeNameKeyspace(), DynamoDbAdapter.DEFAULT_ATTRIBUTE_KEYSPACE);
+		Assert.assertEquals(adapter.getAttributeNameVersion(), DynamoDbAdapter.DEFAULT_ATTRIBUTE_VERSION);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void getAsyncKeyspaceRequiresClient() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		DynamoDbAdapter.create(table).getAsyncKeyspace("myKeyspace");
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void getKeyspaceWithCache() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withCache(KeyspaceCacheConfig.builder().build()) //
+				.build();
+		final Keyspace actual = adapter.getKeyspace("myKeyspace");
+
+		Assert.assertEquals(actual.getClass(), CachingKeyspace.class);
+		Assert.assertSame(((CachingKeyspace) actual).getCache(), adapter.getCache().get());
+		Assert.assertEquals(((CachingKeyspace) actual).getDelegate().getClass(), DynamoDbKeyspace.class);
+	}
+
+	@Test
+	public void getKeyspaceWithWriteBehind() {
+		final Table table = EasyMock.createMock(Table.class);
+
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withWriteBehind("myKeyspace", WriteBehindConfig.builder().build()) //
+				.build();
+		final Keyspace actual = adapter.getKeyspace("myKeyspace");
+
+		Assert.assertEquals(actual.getClass(), WriteBehindKeyspace.class);
+		Assert.assertSame(adapter.getKeyspace("myKeyspace"), actual);
+		Assert.assertEquals(adapter.getKeyspace("otherKeyspace").getClass(), DynamoDbKeyspace.class);
+		adapter.flush();
+	}
+
 	@Test
 	public void getKeyspace() {
 		final Table table = EasyMock.createMock(Table.class);
@@ -0,0 +1,159 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.easymock.EasyMock;
+import org.easymock.IExpectationSetters;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBStreams;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeStreamResult;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsRequest;
+import com.amazonaws.services.dynamodbv2.model.GetRecordsResult;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorRequest;
+import com.amazonaws.services.dynamodbv2.model.GetShardIteratorResult;
+import com.amazonaws.services.dynamodbv2.model.LimitExceededException;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.SequenceNumberRange;
+import com.amazonaws.services.dynamodbv2.model.Shard;
+import com.amazonaws.services.dynamodbv2.model.ShardIteratorType;
+import com.amazonaws.services.dynamodbv2.model.StreamDescription;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.TrimmedDataAccessException;
+
+public class DynamoDbChangeStreamTest {
+
+	private static final String STREAM_ARN = "arn:aws:dynamodb:us-east-1:0:table/ut_table/stream/1";
+
+	private AmazonDynamoDBStreams mockStreams;
+
+	private DynamoDbChangeStream stream;
+
+	@BeforeMethod
+	public void DynamoDbChangeStream() {
+		mockStreams = EasyMock.createMock(AmazonDynamoDBStreams.class);
+		stream = new DynamoDbChangeStream(mockStreams, STREAM_ARN, new AtomicLong()::get);
+	}
+
+	@Test
+	public void closedShardListsChildrenTest() {
+		expectShards(new Shard().withShardId("parent"));
+		expectIterator("parent", ShardIteratorType.LATEST, null, "it-parent");
+		expectRecords("it-parent", null, record("1"));
+		expectShards(new Shard().withShardId("parent").withSequenceNumberRange(closed()),
+				new Shard().withShardId("child").withParentShardId("parent"));
+		expectIterator("child", ShardIteratorType.TRIM_HORIZON, null, "it-child");
+		expectRecords("it-child", "it-child2", record("2"));
+		EasyMock.replay(mockStreams);
+
+		Assert.assertEquals(stream.poll().size(), 1);
+		final List<Record> actual = stream.poll();
+
+		EasyMock.verify(mockStreams);
+		Assert.assertEquals(actual.get(0).getDynamodb().getSequenceNumber(), "2");
+	}
+
+	@Test
+	public void failedPollIsRepeatedTest() {
+		expectShards(new Shard().withShardId("a"), new Shard().withShardId("b"));
+		expectIterator("a", ShardIteratorType.LATEST, null, "it-a");
+		expectIterator("b", ShardIteratorType.LATEST, null, "it-b");
+		expectRecords("it-a", "it-a2", record("1")).times(2);
+		EasyMock.expect(mockStreams.getRecords(request("it-b"))).andThrow(new LimitExceededException("Rate exceeded"));
+		expectRecords("it-b", "it-b2", record("2"));
+		EasyMock.replay(mockStreams);
+
+		try {
+			stream.poll();
+			Assert.fail("Expected exception!");
+		} catch (final LimitExceededException e) {
+			// expected
+		}
+		final List<Record> actual = stream.poll();
+
+		EasyMock.verify(mockStreams);
+		Assert.assertEquals(actual.size(), 2);
+	}
+
+	@Test
+	public void firstPollReadsOpenShardsFromEndTest() {
+		expectShards(new Shard().withShardId("old").withSequenceNumberRange(closed()),
+				new Shard().withShardId("open"));
+		expectIterator("open", ShardIteratorType.LATEST, null, "it-1");
+		expectRecords("it-1", "it-2", record("1"), record("2"));
+		expectRecords("it-2", "it-3");
+		EasyMock.replay(mockStreams);
+
+		final List<Record> first = stream.poll();
+		final List<Record> second = stream.poll();
+
+		EasyMock.verify(mockStreams);
+		Assert.assertEquals(first.size(), 2);
+		Assert.assertTrue(second.isEmpty());
+	}
+
+	@Test
+	public void trimmedRecordsAreReportedTest() {
+		expectShards(new Shard().withShardId("open"));
+		expectIterator("open", ShardIteratorType.LATEST, null, "it-1");
+		expectRecords("it-1", "it-2", record("1"));
+		EasyMock.expect(mockStreams.getRecords(request("it-2")))
+				.andThrow(new TrimmedDataAccessException("Trimmed"));
+		expectIterator("open", ShardIteratorType.TRIM_HORIZON, null, "it-3");
+		expectRecords("it-3", "it-4", record("9"));
+		EasyMock.replay(mockStreams);
+
+		stream.poll();
+		try {
+			stream.poll();
+			Assert.fail("Expected exception!");
+		} catch (final ChangeStreamGapException e) {
+			// expected
+		}
+		final List<Record> actual = stream.poll();
+
+		EasyMock.verify(mockStreams);
+		Assert.assertEquals(actual.size(), 1);
+	}
+
+	private void expectShards(final Shard... shards) {
+		EasyMock.expect(mockStreams.describeStream(new DescribeStreamRequest().withStreamArn(STREAM_ARN)))
+				.andReturn(new DescribeStreamResult().withStreamDescription(new StreamDescription() //
+						.withStreamArn(STREAM_ARN) //
+						.withShards(shards)));
+	}
+
+	private void expectIterator(final String shardId, final ShardIteratorType type, final String sequenceNumber,
+			final String iterator) {
+		EasyMock.expect(mockStreams.getShardIterator(new GetShardIteratorRequest() //
+				.withStreamArn(STREAM_ARN) //
+				.withShardId(shardId) //
+				.withShardIteratorType(type) //
+				.withSequenceNumber(sequenceNumber))) //
+				.andReturn(new GetShardIteratorResult().withShardIterator(iterator));
+	}
+
+	private IExpectationSetters<GetRecordsResult> expectRecords(final String iterator,
+			final String nextIterator, final Record... records) {
+		return EasyMock.expect(mockStreams.getRecords(request(iterator))).andReturn(new GetRecordsResult() //
+				.withRecords(records) //
+				.withNextShardIterator(nextIterator));
+	}
+
+	private static GetRecordsRequest request(final String iterator) {
+		return new GetRecordsRequest().withShardIterator(iterator).withLimit(DynamoDbChangeStream.MAX_RECORDS_PER_READ);
+	}
+
+	private static SequenceNumberRange closed() {
+		return new SequenceNumberRange().withStartingSequenceNumber("0").withEndingSequenceNumber("100");
+	}
+
+	private static Record record(final String sequenceNumber) {
+		return new Record().withEventName("MODIFY")
+				.withDynamodb(new StreamRecord().withSequenceNumber(sequenceNumber));
+	}
+}
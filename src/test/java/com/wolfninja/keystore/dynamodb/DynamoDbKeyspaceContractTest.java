@@ -0,0 +1,139 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.wolfninja.keystore.api.BaseKeyspaceTest;
+import com.wolfninja.keystore.api.KeyValue;
+
+/**
+ * Verifies we are conforming to the Keyspace API, against {@link InMemoryDynamoDB}
+ */
+@Test
+public class DynamoDbKeyspaceContractTest extends BaseKeyspaceTest {
+
+	@DataProvider
+	static Object[][] dp() {
+		final InMemoryDynamoDB plain = new InMemoryDynamoDB();
+		final Table plainTable = plain.createTable("ut_table", "ut_keyspace", "ut_key");
+		final InMemoryDynamoDB chunked = new InMemoryDynamoDB();
+		final Table chunkedTable = chunked.createTable("ut_table", "ut_keyspace", "ut_key");
+		return new Object[][] { //
+				{ DynamoDbAdapter.builder(plainTable) //
+						.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+						.withDynamoDB(plain.getDynamoDB()) //
+						.build().getKeyspace("coolKeyspace") }, //
+				{ DynamoDbAdapter.builder(chunkedTable) //
+						.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+						.withDynamoDB(chunked.getDynamoDB()) //
+						.withValueChunking(16) //
+						.build().getKeyspace("coolKeyspace") } };
+	}
+
+	private final DynamoDbKeyspace keyspace;
+
+	@Factory(dataProvider = "dp")
+	public DynamoDbKeyspaceContractTest(final DynamoDbKeyspace keyspace) {
+		super(keyspace);
+		this.keyspace = keyspace;
+	}
+
+	@Test
+	public void batchAndEnumerationTest() {
+		final List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 130; i++) {
+			final String key = String.format("batch-%03d", i);
+			keys.add(key);
+			Assert.assertTrue(keyspace.set(key, "value of " + key));
+		}
+
+		Assert.assertEquals(keyspace.getAll(keys).size(), 130);
+		Assert.assertEquals(keyspace.getAll(keys).get("batch-042"), "value of batch-042");
+		Assert.assertEquals(keyspace.keys(7).filter(key -> key.startsWith("batch-")).count(), 130);
+
+		keyspace.deleteAll(keys.subList(0, 100));
+		Assert.assertEquals(keyspace.getAll(keys).size(), 30);
+		Assert.assertFalse(keyspace.exists("batch-000"));
+		Assert.assertTrue(keyspace.exists("batch-100"));
+	}
+
+	@Test
+	public void concurrentCheckAndSetTest() throws Exception {
+		final String key = "counter-" + System.nanoTime();
+		Assert.assertTrue(keyspace.add(key, "0"));
+
+		final int threads = 8;
+		final int increments = 50;
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<CompletableFuture<Void>> workers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(CompletableFuture.runAsync(() -> {
+					for (int i = 0; i < increments; i++) {
+						while (true) {
+							final KeyValue current = keyspace.gets(key).get();
+							final String next = Integer.toString(Integer.parseInt(current.getValue()) + 1);
+							if (keyspace.checkAndSet(key, next, current.getVersion())) {
+								break;
+							}
+						}
+					}
+				}, pool));
+			}
+			CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[workers.size()])).get();
+		} finally {
+			pool.shutdown();
+		}
+
+		Assert.assertEquals(keyspace.get(key), Optional.of(Integer.toString(threads * increments)));
+	}
+
+	@Test
+	public void concurrentComputeTest() throws Exception {
+		final String key = "computed-" + System.nanoTime();
+		final ComputeConfig config = ComputeConfig.builder().withMaxAttempts(1000).build();
+
+		final int threads = 8;
+		final int increments = 25;
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<CompletableFuture<Void>> workers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(CompletableFuture.runAsync(() -> {
+					for (int i = 0; i < increments; i++) {
+						keyspace.compute(key, current -> Integer.toString(Integer.parseInt(current.orElse("0")) + 1),
+								config);
+					}
+				}, pool));
+			}
+			CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[workers.size()])).get();
+		} finally {
+			pool.shutdown();
+		}
+
+		Assert.assertEquals(keyspace.get(key), Optional.of(Integer.toString(threads * increments)));
+	}
+
+	@Test
+	public void entriesTest() {
+		final List<String> keys = Arrays.asList("entries-a", "entries-b", "entries-c");
+		for (final String key : keys) {
+			keyspace.set(key, key.toUpperCase());
+		}
+		Assert.assertEquals(keyspace.entries(2) //
+				.filter(entry -> entry.getKey().startsWith("entries-")) //
+				.map(KeyValue::getValue) //
+				.toArray(), new Object[] { "ENTRIES-A", "ENTRIES-B", "ENTRIES-C" });
+	}
+}
@@ -1,15 +1,23 @@
 package com.wolfninja.keystore.dynamodb;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.easymock.LogicalOperator;
 import org.testng.Assert;
@@ -17,20 +25,46 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Expected;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemCollection;
 import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.PutItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
 import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.internal.InternalUtils;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.wolfninja.keystore.api.KeyValue;
+import com.wolfninja.keystore.api.Keyspace;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Operation;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Outcome;
 
 public class DynamoDbKeyspaceTest {
 
@@ -104,7 +138,7 @@ public class DynamoDbKeyspaceTest {
 
 			@Override
 			public int compare(DeleteItemSpec o1, DeleteItemSpec o2) {
-				int i = o1.getReturnValues().compareTo(o2.getReturnValues());
+				int i = defaultComparator(String.class).compare(o1.getReturnValues(), o2.getReturnValues());
 				if (i != 0)
 					return i;
 
@@ -112,11 +146,28 @@ public class DynamoDbKeyspaceTest {
 				if (i != 0)
 					return i;
 
+				i = expressionComparator().compare(
+						Arrays.asList(o1.getConditionExpression(), o1.getNameMap(), o1.getValueMap()),
+						Arrays.asList(o2.getConditionExpression(), o2.getNameMap(), o2.getValueMap()));
+				if (i != 0)
+					return i;
+
 				return collectionComparator(expectedComparator()).compare(o1.getExpected(), o2.getExpected());
 			}
 		};
 	}
 
+	public static Comparator<List<Object>> expressionComparator() {
+		return new Comparator<List<Object>>() {
+
+			@Override
+			public int compare(List<Object> o1, List<Object> o2) {
+				// Expressions, name and value maps only need to be equal
+				return o1.equals(o2) ? 0 : -1;
+			}
+		};
+	}
+
 	public static Comparator<Expected> expectedComparator() {
 		return new Comparator<Expected>() {
 
@@ -142,6 +193,9 @@ public class DynamoDbKeyspaceTest {
 			public int compare(final GetItemSpec o1, final GetItemSpec o2) {
 				if (!Objects.equals(o1.getAttributesToGet(), o2.getAttributesToGet()))
 					return -1;
+				if (!Objects.equals(o1.getProjectionExpression(), o2.getProjectionExpression())
+						|| !Objects.equals(o1.getNameMap(), o2.getNameMap()))
+					return -1;
 				if (!o1.isConsistentRead() != o2.isConsistentRead())
 					return o1.isConsistentRead().compareTo(o2.isConsistentRead());
 				return keyAttributeCollectionComparator().compare(o1.getKeyComponents(), o2.getKeyComponents());
@@ -220,12 +274,66 @@ public class DynamoDbKeyspaceTest {
 				if (i != 0)
 					return i;
 
+				i = expressionComparator().compare(
+						Arrays.asList(o1.getUpdateExpression(), o1.getConditionExpression(), o1.getNameMap(),
+								o1.getValueMap()),
+						Arrays.asList(o2.getUpdateExpression(), o2.getConditionExpression(), o2.getNameMap(),
+								o2.getValueMap()));
+				if (i != 0)
+					return i;
+
 				return collectionComparator(attributeUpdateComparator()).compare(o1.getAttributeUpdate(),
 						o2.getAttributeUpdate());
 			}
 		};
 	}
 
+	private static Map<String, AttributeValue> attributes(final String key, final String value) {
+		final Map<String, AttributeValue> attributes = new HashMap<>();
+		attributes.put("ut_attr_keyspace", new AttributeValue("ut_keyspace"));
+		attributes.put("ut_attr_key", new AttributeValue(key));
+		attributes.put("ut_attr_val", new AttributeValue(value));
+		attributes.put("ut_attr_version", new AttributeValue().withN(String.valueOf(value.hashCode())));
+		return attributes;
+	}
+
+	private static BatchGetItemOutcome batchGetOutcome(final Map<String, KeysAndAttributes> unprocessed,
+			final List<Map<String, AttributeValue>> responses) {
+		return new BatchGetItemOutcome(new BatchGetItemResult() //
+				.withResponses(Collections.singletonMap("ut_table", responses)) //
+				.withUnprocessedKeys(unprocessed));
+	}
+
+	private static BatchWriteItemOutcome batchWriteOutcome(final Map<String, List<WriteRequest>> unprocessed) {
+		return new BatchWriteItemOutcome(new BatchWriteItemResult().withUnprocessedItems(unprocessed));
+	}
+
+	private DynamoDbKeyspace batchKeyspace(final DynamoDB dynamoDB) {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withDynamoDB(dynamoDB) //
+				.withExecutor(Runnable::run) //
+				.withVersionScheme(VersionScheme.HASH_CODE) //
+				.build();
+		return new DynamoDbKeyspace("ut_keyspace", adapter);
+	}
+
+	private DynamoDbKeyspace compressingKeyspace(final ValueCodec codec) {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withValueCodec(codec) //
+				.build();
+		return new DynamoDbKeyspace("ut_keyspace", adapter);
+	}
+
+	private DynamoDbKeyspace monotonicKeyspace() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build();
+		return new DynamoDbKeyspace("ut_keyspace", adapter);
+	}
+
 	private DynamoDbKeyspace keyspace;
 
 	private Table mockTable;
@@ -245,6 +353,32 @@ public class DynamoDbKeyspaceTest {
 		Assert.fail("Expected exception!");
 	}
 
+	@Test
+	public void addMonotonicVersionTest() {
+		final DynamoDbKeyspace monotonicKeyspace = monotonicKeyspace();
+		final UpdateItemSpec inputSpec = new UpdateItemSpec() //
+				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "add_first") //
+				.withUpdateExpression("SET #v = :v ADD #ver :ver") //
+				.withConditionExpression("attribute_not_exists(#b)") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version").with("#b",
+						"ut_attr_keyspace")) //
+				.withValueMap(new ValueMap().with(":v", "abed").with(":ver", 1L));
+
+		EasyMock.expect(
+				mockTable.updateItem(EasyMock.cmp(inputSpec, updateItemSpecComparator(), LogicalOperator.EQUAL))) //
+				.andReturn(EasyMock.createMock(UpdateItemOutcome.class)) //
+				.andThrow(new ConditionalCheckFailedException("Already exists yo"));
+
+		EasyMock.replay(mockTable);
+
+		final boolean actual = monotonicKeyspace.add("add_first", "abed");
+		final boolean actual2 = monotonicKeyspace.add("add_first", "abed");
+
+		EasyMock.verify(mockTable);
+		Assert.assertTrue(actual);
+		Assert.assertFalse(actual2);
+	}
+
 	@Test
 	public void addTest() {
 		final Item inputItem = new Item() //
@@ -290,11 +424,11 @@ public class DynamoDbKeyspaceTest {
 		final long newVersion = "chang".hashCode();
 		final UpdateItemSpec inputSpec = new UpdateItemSpec() //
 				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "cas_first") //
-				.withExpected(new Expected("ut_attr_version").eq(oldVersion)) //
-				.withAttributeUpdate( //
-						new AttributeUpdate("ut_attr_val").put("chang"), //
-						new AttributeUpdate("ut_attr_version").put(newVersion) //
-		);
+				.withUpdateExpression("SET #v = :v, #ver = :ver") //
+				.withConditionExpression("#ver = :expected") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withValueMap(
+						new ValueMap().with(":v", "chang").with(":ver", newVersion).with(":expected", oldVersion));
 
 		final UpdateItemOutcome mockOutcome = EasyMock.createMock(UpdateItemOutcome.class);
 
@@ -315,11 +449,11 @@ public class DynamoDbKeyspaceTest {
 		final long newVersion = "chang".hashCode();
 		final UpdateItemSpec inputSpec = new UpdateItemSpec() //
 				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "cas_first") //
-				.withExpected(new Expected("ut_attr_version").eq(oldVersion)) //
-				.withAttributeUpdate( //
-						new AttributeUpdate("ut_attr_val").put("chang"), //
-						new AttributeUpdate("ut_attr_version").put(newVersion) //
-		);
+				.withUpdateExpression("SET #v = :v, #ver = :ver") //
+				.withConditionExpression("#ver = :expected") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withValueMap(
+						new ValueMap().with(":v", "chang").with(":ver", newVersion).with(":expected", oldVersion));
 
 		final UpdateItemOutcome mockOutcome = EasyMock.createMock(UpdateItemOutcome.class);
 		mockOutcome.getItem();
@@ -336,6 +470,144 @@ public class DynamoDbKeyspaceTest {
 		Assert.assertFalse(actual);
 	}
 
+	@Test
+	public void computeTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbKeyspace computing = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key")) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.build());
+
+		Assert.assertEquals(computing.compute("compute_first", current -> current.orElse("") + "a"), Optional.of("a"));
+		Assert.assertEquals(computing.compute("compute_first", current -> current.orElse("") + "b"),
+				Optional.of("ab"));
+		Assert.assertEquals(computing.get("compute_first"), Optional.of("ab"));
+		Assert.assertEquals(computing.compute("compute_first", current -> null), Optional.empty());
+		Assert.assertFalse(computing.exists("compute_first"));
+		Assert.assertEquals(computing.compute("compute_first", current -> null), Optional.empty());
+
+		// A read and a conditional write per attempt
+		final long requests = dynamo.getRequestCount();
+		computing.compute("compute_first", current -> "c");
+		Assert.assertEquals(dynamo.getRequestCount() - requests, 2);
+	}
+
+	@Test
+	public void computeContentionTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final RecordingKeyspaceMetrics metrics = new RecordingKeyspaceMetrics();
+		final DynamoDbKeyspace computing = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key")) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withMetrics(metrics) //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build());
+		computing.set("compute_contended", "0");
+		final ComputeConfig config = ComputeConfig.builder() //
+				.withMaxAttempts(3) //
+				.withBackoff(Duration.ZERO, Duration.ZERO) //
+				.build();
+		final AtomicInteger calls = new AtomicInteger();
+
+		// Another writer comes first on the first two attempts
+		final Optional<String> actual = computing.compute("compute_contended", current -> {
+			if (calls.incrementAndGet() < 3) {
+				computing.set("compute_contended", "other" + calls.get());
+			}
+			return current.get() + "+1";
+		}, config);
+
+		Assert.assertEquals(actual, Optional.of("other2+1"));
+		Assert.assertEquals(calls.get(), 3);
+		final RecordingKeyspaceMetrics.Snapshot compute = metrics.getSnapshot("ut_keyspace", Operation.COMPUTE);
+		Assert.assertEquals(compute.getRetries(), 2);
+		Assert.assertEquals(compute.getMeanAttempts(), 3.0);
+
+		try {
+			computing.compute("compute_contended", current -> {
+				computing.set("compute_contended", "always other");
+				return "mine";
+			}, config);
+			Assert.fail("Expected exception!");
+		} catch (final ContentionException e) {
+			Assert.assertEquals(e.getAttempts(), 3);
+		}
+		Assert.assertEquals(computing.get("compute_contended"), Optional.of("always other"));
+		Assert.assertEquals(compute.getCount(), 1);
+		Assert.assertEquals(metrics.getSnapshot("ut_keyspace", Operation.COMPUTE).getCount(Outcome.FAILED), 1);
+	}
+
+	@Test
+	public void computeTimeoutTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbKeyspace computing = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key")) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build());
+		final ComputeConfig config = ComputeConfig.builder() //
+				.withMaxAttempts(Integer.MAX_VALUE) //
+				.withBackoff(Duration.ofMillis(1), Duration.ofMillis(5)) //
+				.withTimeout(Duration.ofMillis(50)) //
+				.build();
+
+		try {
+			computing.compute("compute_timeout", current -> {
+				computing.set("compute_timeout", "other");
+				return "mine";
+			}, config);
+			Assert.fail("Expected exception!");
+		} catch (final ContentionException e) {
+			Assert.assertTrue(e.getAttempts() > 1);
+		}
+	}
+
+	@Test
+	public void deleteAllDeduplicatesKeysTest() {
+		final DynamoDB mockDynamoDB = EasyMock.createMock(DynamoDB.class);
+		final Capture<TableWriteItems> captured = EasyMock.newCapture();
+
+		EasyMock.expect(mockTable.getTableName()).andReturn("ut_table").anyTimes();
+		EasyMock.expect(mockDynamoDB.batchWriteItem(EasyMock.capture(captured))).andReturn(batchWriteOutcome(null));
+
+		EasyMock.replay(mockTable, mockDynamoDB);
+
+		batchKeyspace(mockDynamoDB).deleteAll(Arrays.asList("a", "b", "a"));
+
+		EasyMock.verify(mockTable, mockDynamoDB);
+		Assert.assertEquals(captured.getValue().getPrimaryKeysToDelete(), Arrays.asList( //
+				new PrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "a"), //
+				new PrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "b")));
+	}
+
+	@Test
+	public void deleteAllChunkedTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbKeyspace chunkedKeyspace = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withDynamoDB(dynamo.getDynamoDB()) //
+				.withExecutor(Runnable::run) //
+				.withValueChunking(10) //
+				.build());
+		Assert.assertTrue(chunkedKeyspace.set("delete_chunked", "a value spanning several chunks"));
+		Assert.assertTrue(chunkedKeyspace.set("delete_small", "small"));
+		Assert.assertTrue(chunkedKeyspace.set("delete_kept", "kept"));
+
+		chunkedKeyspace.deleteAll(Arrays.asList("delete_chunked", "delete_small", "delete_missing"));
+
+		Assert.assertEquals(chunkedKeyspace.get("delete_chunked"), Optional.empty());
+		Assert.assertEquals(chunkedKeyspace.get("delete_small"), Optional.empty());
+		// The chunks of the deleted value are deleted as well
+		Assert.assertEquals(dynamo.getClient().scan(new ScanRequest("ut_table")).getCount(), Integer.valueOf(1));
+	}
+
+	@Test(expectedExceptions = NullPointerException.class)
+	public void deleteAllDoesntAllowNullKeysTest() {
+		keyspace.deleteAll(null);
+		Assert.fail("Expected exception!");
+	}
+
 	@Test(expectedExceptions = NullPointerException.class)
 	public void deleteDoesntAllowNullKeyTest() {
 		keyspace.delete(null);
@@ -351,16 +623,15 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void deletesKeyDoesntExistTest() {
 		final long version = "annie".hashCode();
-		final DeleteItemSpec inputSpec = new DeleteItemSpec().withReturnValues(ReturnValue.ALL_OLD) //
+		final DeleteItemSpec inputSpec = new DeleteItemSpec().withReturnValues(ReturnValue.NONE) //
 				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "deletes_second") //
-				.withExpected(new Expected("ut_attr_version").eq(version));
-
-		final DeleteItemOutcome deletedOutcome = EasyMock.createMock(DeleteItemOutcome.class);
-		deletedOutcome.getItem();
-		EasyMock.expectLastCall().andReturn(null);
+				.withConditionExpression("#ver = :expected") //
+				.withNameMap(new NameMap().with("#ver", "ut_attr_version")) //
+				.withValueMap(Collections.<String, Object> singletonMap(":expected", version));
 
+		// The version condition fails for a key that does not exist
 		mockTable.deleteItem(EasyMock.cmp(inputSpec, deleteItemSpecComparator(), LogicalOperator.EQUAL));
-		EasyMock.expectLastCall().andReturn(deletedOutcome);
+		EasyMock.expectLastCall().andThrow(new ConditionalCheckFailedException("missing"));
 
 		EasyMock.replay(mockTable);
 
@@ -373,13 +644,13 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void deletesTest() {
 		final long version = "annie".hashCode();
-		final DeleteItemSpec inputSpec = new DeleteItemSpec().withReturnValues(ReturnValue.ALL_OLD) //
+		final DeleteItemSpec inputSpec = new DeleteItemSpec().withReturnValues(ReturnValue.NONE) //
 				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "deletes_first") //
-				.withExpected(new Expected("ut_attr_version").eq(version));
+				.withConditionExpression("#ver = :expected") //
+				.withNameMap(new NameMap().with("#ver", "ut_attr_version")) //
+				.withValueMap(Collections.<String, Object> singletonMap(":expected", version));
 
 		final DeleteItemOutcome deletedOutcome = EasyMock.createMock(DeleteItemOutcome.class);
-		final Item item = EasyMock.createMock(Item.class);
-		EasyMock.expect(deletedOutcome.getItem()).andReturn(item);
 
 		mockTable.deleteItem(EasyMock.cmp(inputSpec, deleteItemSpecComparator(), LogicalOperator.EQUAL));
 		EasyMock.expectLastCall().andReturn(deletedOutcome);
@@ -395,9 +666,11 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void deletesVersionDoesntMatchTest() {
 		final long version = "annie".hashCode();
-		final DeleteItemSpec inputSpec = new DeleteItemSpec().withReturnValues(ReturnValue.ALL_OLD) //
+		final DeleteItemSpec inputSpec = new DeleteItemSpec().withReturnValues(ReturnValue.NONE) //
 				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "deletes_first") //
-				.withExpected(new Expected("ut_attr_version").eq(version));
+				.withConditionExpression("#ver = :expected") //
+				.withNameMap(new NameMap().with("#ver", "ut_attr_version")) //
+				.withValueMap(Collections.<String, Object> singletonMap(":expected", version));
 
 		final DeleteItemOutcome deletedOutcome = EasyMock.createMock(DeleteItemOutcome.class);
 
@@ -415,29 +688,25 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void deleteTest() {
 		final DeleteItemSpec inputSpec = new DeleteItemSpec() //
-				.withReturnValues(ReturnValue.ALL_OLD) //
 				.withPrimaryKey( //
 						"ut_attr_keyspace", "ut_keyspace", //
-						"ut_attr_key", "delete_first");
+						"ut_attr_key", "delete_first") //
+				.withConditionExpression("attribute_exists(#b)") //
+				.withNameMap(new NameMap().with("#b", "ut_attr_keyspace"));
 
 		final DeleteItemOutcome deletedOutcome = EasyMock.createMock(DeleteItemOutcome.class);
-		final Item item = EasyMock.createMock(Item.class);
-		EasyMock.expect(deletedOutcome.getItem()).andReturn(item);
-
-		final DeleteItemOutcome emptyOutcome = EasyMock.createMock(DeleteItemOutcome.class);
-		EasyMock.expect(emptyOutcome.getItem()).andReturn(null);
 
 		mockTable.deleteItem(EasyMock.cmp(inputSpec, deleteItemSpecComparator(), LogicalOperator.EQUAL));
 		EasyMock.expectLastCall() //
 				.andReturn(deletedOutcome) //
-				.andReturn(emptyOutcome); //
+				.andThrow(new ConditionalCheckFailedException("Doesn't exist")); //
 
-		EasyMock.replay(mockTable, emptyOutcome, deletedOutcome);
+		EasyMock.replay(mockTable, deletedOutcome);
 
 		final boolean actual = keyspace.delete("delete_first");
 		final boolean actual2 = keyspace.delete("delete_first");
 
-		EasyMock.verify(mockTable, emptyOutcome, deletedOutcome);
+		EasyMock.verify(mockTable, deletedOutcome);
 		Assert.assertTrue(actual);
 		Assert.assertFalse(actual2);
 	}
@@ -455,10 +724,39 @@ public class DynamoDbKeyspaceTest {
 		Assert.fail("Expected exception!");
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void entriesTest() {
+		final Capture<QuerySpec> query = Capture.newInstance();
+		final ItemCollection<QueryOutcome> mockCollection = EasyMock.createMock(ItemCollection.class);
+		final List<Item> items = Arrays.asList( //
+				new Item().withString("ut_attr_key", "a").withString("ut_attr_val", "jeff").withLong("ut_attr_version",
+						7L), //
+				new Item().withString("ut_attr_key", "b").withString("ut_attr_val", "annie").withLong("ut_attr_version",
+						8L));
+		EasyMock.expect(mockTable.query(EasyMock.capture(query))).andReturn(mockCollection);
+		EasyMock.expect(mockCollection.firstPage())
+				.andReturn(new PrefetchingIteratorTest.ListPage(Arrays.asList(items), new AtomicInteger()));
+		EasyMock.replay(mockTable, mockCollection);
+
+		final List<KeyValue> actual = keyspace.entries(10).collect(Collectors.toList());
+
+		EasyMock.verify(mockTable, mockCollection);
+		Assert.assertEquals(actual.size(), 2);
+		Assert.assertEquals(actual.get(1).getKey(), "b");
+		Assert.assertEquals(actual.get(1).getValue(), "annie");
+		Assert.assertEquals(actual.get(1).getVersion(), 8L);
+		Assert.assertEquals(query.getValue().getHashKey(), new KeyAttribute("ut_attr_keyspace", "ut_keyspace"));
+		Assert.assertEquals(query.getValue().getMaxPageSize(), Integer.valueOf(10));
+		Assert.assertNull(query.getValue().getAttributesToGet());
+		Assert.assertTrue(query.getValue().isConsistentRead());
+	}
+
 	@Test
 	public void existsTest() {
 		final GetItemSpec getSpec = new GetItemSpec() //
-				.withAttributesToGet("ut_attr_key") //
+				.withProjectionExpression("#k") //
+				.withNameMap(new NameMap().with("#k", "ut_attr_key")) //
 				.withPrimaryKey( //
 						"ut_attr_keyspace", "ut_keyspace", //
 						"ut_attr_key", "exists_first") //
@@ -479,12 +777,266 @@ public class DynamoDbKeyspaceTest {
 		Assert.assertFalse(actual2);
 	}
 
+	@Test
+	public void expiryTest() {
+		for (final VersionScheme versionScheme : VersionScheme.values()) {
+			final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+			final Table table = dynamo.createTable("ut_table", "ut_keyspace", "ut_key");
+			final DynamoDbKeyspace sessions = new DynamoDbKeyspace("ut", DynamoDbAdapter.builder(table) //
+					.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+					.withExpiryAttribute("ut_expiry") //
+					.withVersionScheme(versionScheme) //
+					.withDynamoDB(dynamo.getDynamoDB()) //
+					.build());
+			final long now = System.currentTimeMillis() / 1000;
+
+			Assert.assertTrue(sessions.set("expiry_live", "a", Duration.ofMinutes(5)));
+			Assert.assertEquals(sessions.get("expiry_live"), Optional.of("a"));
+			final long expiry = table.getItem("ut_keyspace", "ut", "ut_key", "expiry_live").getLong("ut_expiry");
+			Assert.assertTrue(expiry >= now + 300 && expiry <= now + 302, "Expiry: " + expiry);
+			Assert.assertFalse(sessions.add("expiry_live", "b", Duration.ofMinutes(5)));
+			// Writes without a time to live make the key permanent
+			Assert.assertTrue(sessions.replace("expiry_live", "b"));
+			Assert.assertFalse(table.getItem("ut_keyspace", "ut", "ut_key", "expiry_live").isPresent("ut_expiry"));
+			Assert.assertTrue(sessions.add("expiry_added", "c", Duration.ofSeconds(1)));
+			sessions.set("expiry_added", "d");
+			Assert.assertFalse(table.getItem("ut_keyspace", "ut", "ut_key", "expiry_added").isPresent("ut_expiry"));
+
+			// Expired, but not removed by DynamoDB yet
+			for (final String key : Arrays.asList("expiry_past", "expiry_counter")) {
+				table.putItem(new Item() //
+						.withPrimaryKey("ut_keyspace", "ut", "ut_key", key) //
+						.withString("ut_value", "old") //
+						.withLong("ut_version", 7L) //
+						.withLong("ut_expiry", now - 10));
+			}
+			Assert.assertEquals(sessions.get("expiry_past"), Optional.empty());
+			Assert.assertEquals(sessions.gets("expiry_past"), Optional.empty());
+			Assert.assertFalse(sessions.exists("expiry_past"));
+			Assert.assertEquals(sessions.getAll(Arrays.asList("expiry_past", "expiry_live")).keySet(),
+					Collections.singleton("expiry_live"));
+			Assert.assertEquals(sessions.keys().collect(Collectors.toList()),
+					Arrays.asList("expiry_added", "expiry_live"));
+			Assert.assertEquals(sessions.entries().count(), 2);
+			Assert.assertFalse(sessions.replace("expiry_past", "new"));
+			Assert.assertFalse(sessions.checkAndSet("expiry_past", "new", 7L));
+			Assert.assertFalse(sessions.deletes("expiry_past", 7L));
+			Assert.assertFalse(sessions.delete("expiry_past"));
+			Assert.assertTrue(sessions.add("expiry_past", "new"));
+			Assert.assertEquals(sessions.get("expiry_past"), Optional.of("new"));
+
+			// Counters keep their expiry, and count from the initial value once expired
+			Assert.assertEquals(sessions.increment("expiry_counter", 1, 10), 11L);
+			Assert.assertFalse(table.getItem("ut_keyspace", "ut", "ut_key", "expiry_counter").isPresent("ut_expiry"));
+			table.updateItem("ut_keyspace", "ut", "ut_key", "expiry_counter",
+					new AttributeUpdate("ut_expiry").put(now + 60));
+			Assert.assertEquals(sessions.increment("expiry_counter", 1, 10), 12L);
+			Assert.assertEquals(
+					table.getItem("ut_keyspace", "ut", "ut_key", "expiry_counter").getLong("ut_expiry"), now + 60);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void expiryRequiresAttributeTest() {
+		keyspace.set("expiry_first", "a", Duration.ofMinutes(5));
+		Assert.fail("Expected exception!");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void expiryRequiresPositiveTimeToLiveTest() {
+		keyspace.add("expiry_first", "a", Duration.ZERO);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test(expectedExceptions = NullPointerException.class)
+	public void getAllDoesntAllowNullKeysTest() {
+		keyspace.getAll(Arrays.asList("a", null));
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void getAllEmptyTest() {
+		EasyMock.replay(mockTable);
+
+		final Map<String, String> actual = keyspace.getAll(Collections.emptyList());
+
+		EasyMock.verify(mockTable);
+		Assert.assertTrue(actual.isEmpty());
+	}
+
+	@Test
+	public void getAllRetriesUnprocessedKeysTest() {
+		final DynamoDB mockDynamoDB = EasyMock.createMock(DynamoDB.class);
+		final Map<String, KeysAndAttributes> unprocessed = Collections.singletonMap("ut_table",
+				new KeysAndAttributes().withKeys(attributes("b", "britta")));
+
+		EasyMock.expect(mockTable.getTableName()).andReturn("ut_table").anyTimes();
+		EasyMock.expect(mockDynamoDB.batchGetItem(EasyMock.anyObject(TableKeysAndAttributes.class)))
+				.andReturn(batchGetOutcome(unprocessed, Arrays.asList(attributes("a", "abed"))));
+		EasyMock.expect(mockDynamoDB.batchGetItemUnprocessed(unprocessed))
+				.andReturn(batchGetOutcome(null, Arrays.asList(attributes("b", "britta"))));
+
+		EasyMock.replay(mockTable, mockDynamoDB);
+
+		final Map<String, KeyValue> actual = batchKeyspace(mockDynamoDB).getsAll(Arrays.asList("a", "b", "c"));
+
+		EasyMock.verify(mockTable, mockDynamoDB);
+		Assert.assertEquals(actual.size(), 2);
+		Assert.assertEquals(actual.get("a").getValue(), "abed");
+		Assert.assertEquals(actual.get("b").getVersion(), "britta".hashCode());
+	}
+
+	@Test
+	public void getAllSplitsIntoChunksTest() {
+		final DynamoDB mockDynamoDB = EasyMock.createMock(DynamoDB.class);
+		final Capture<TableKeysAndAttributes> captured = EasyMock.newCapture(CaptureType.ALL);
+		final List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 150; i++) {
+			keys.add("key" + i);
+		}
+
+		EasyMock.expect(mockTable.getTableName()).andReturn("ut_table").anyTimes();
+		EasyMock.expect(mockDynamoDB.batchGetItem(EasyMock.capture(captured)))
+				.andReturn(batchGetOutcome(null, Arrays.asList(attributes("key0", "troy"))))
+				.andReturn(batchGetOutcome(null, Arrays.asList(attributes("key149", "annie"))));
+
+		EasyMock.replay(mockTable, mockDynamoDB);
+
+		final Map<String, String> actual = batchKeyspace(mockDynamoDB).getAll(keys);
+
+		EasyMock.verify(mockTable, mockDynamoDB);
+		Assert.assertEquals(captured.getValues().size(), 2);
+		// Later chunks are handed to the executor before the first one runs on the calling thread
+		final TableKeysAndAttributes first = captured.getValues().get(1);
+		Assert.assertEquals(first.getPrimaryKeys().size(), 100);
+		Assert.assertTrue(first.isConsistentRead());
+		Assert.assertEquals(first.getPrimaryKeys().get(0),
+				new PrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "key0"));
+		Assert.assertEquals(captured.getValues().get(0).getPrimaryKeys().size(), 50);
+		Assert.assertEquals(actual.get("key0"), "troy");
+		Assert.assertEquals(actual.get("key149"), "annie");
+		Assert.assertEquals(actual.size(), 2);
+	}
+
+	@Test
+	public void getAllWithoutDynamoDbFallsBackToGetItemTest() {
+		final Item item = new Item() //
+				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "get_all_first") //
+				.withString("ut_attr_val", "pierce");
+		EasyMock.expect(mockTable.getItem(EasyMock.anyObject(GetItemSpec.class))) //
+				.andReturn(item) //
+				.andReturn(null);
+
+		EasyMock.replay(mockTable);
+
+		final Map<String, String> actual = keyspace.getAll(Arrays.asList("get_all_first", "get_all_second"));
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(actual, Collections.singletonMap("get_all_first", "pierce"));
+	}
+
+	@Test
+	public void getCompressedTest() {
+		final CompressingValueCodec codec = CompressingValueCodec.create(10);
+		final DynamoDbKeyspace compressingKeyspace = compressingKeyspace(codec);
+		final String value = "compressed compressed compressed compressed";
+		EasyMock.expect(mockTable.getItem(EasyMock.anyObject(GetItemSpec.class))) //
+				.andReturn(new Item().withBinary("ut_attr_val", codec.encode(value))) //
+				.andReturn(new Item().withString("ut_attr_val", "legacy"));
+		EasyMock.replay(mockTable);
+
+		Assert.assertEquals(compressingKeyspace.get("get_compressed"), Optional.of(value));
+		Assert.assertEquals(compressingKeyspace.get("get_legacy"), Optional.of("legacy"));
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(codec.getDecompressedCount(), 1L);
+	}
+
 	@Test(expectedExceptions = NullPointerException.class)
 	public void getDoesntAllowNullKeyTest() {
 		keyspace.get(null);
 		Assert.fail("Expected exception!");
 	}
 
+	@Test
+	public void getEventualConsistencyTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withKeyspaceReadConsistency("ut_keyspace", ReadConsistency.EVENTUAL) //
+				.build();
+		final DynamoDbKeyspace eventualKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+
+		final GetItemSpec eventualSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withPrimaryKey( //
+						"ut_attr_keyspace", "ut_keyspace", //
+						"ut_attr_key", "get_eventual") //
+				.withConsistentRead(false);
+		final GetItemSpec strongSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withPrimaryKey( //
+						"ut_attr_keyspace", "ut_keyspace", //
+						"ut_attr_key", "get_eventual") //
+				.withConsistentRead(true);
+
+		mockTable.getItem(EasyMock.cmp(eventualSpec, getItemSpecComparator(), LogicalOperator.EQUAL));
+		EasyMock.expectLastCall().andReturn(null);
+		mockTable.getItem(EasyMock.cmp(strongSpec, getItemSpecComparator(), LogicalOperator.EQUAL));
+		EasyMock.expectLastCall().andReturn(null);
+
+		EasyMock.replay(mockTable);
+
+		Assert.assertFalse(eventualKeyspace.get("get_eventual").isPresent());
+		Assert.assertFalse(eventualKeyspace.get("get_eventual", ReadConsistency.STRONG).isPresent());
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test
+	public void getSessionConsistencyTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withReadConsistency(ReadConsistency.SESSION) //
+				.build();
+		final DynamoDbKeyspace sessionKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+
+		final GetItemSpec eventualSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withPrimaryKey( //
+						"ut_attr_keyspace", "ut_keyspace", //
+						"ut_attr_key", "get_session") //
+				.withConsistentRead(false);
+		final GetItemSpec strongSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withPrimaryKey( //
+						"ut_attr_keyspace", "ut_keyspace", //
+						"ut_attr_key", "get_session") //
+				.withConsistentRead(true);
+		final Item inputItem = new Item() //
+				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "get_session") //
+				.withString("ut_attr_val", "abed") //
+				.withLong("ut_attr_version", "abed".hashCode());
+
+		mockTable.getItem(EasyMock.cmp(eventualSpec, getItemSpecComparator(), LogicalOperator.EQUAL));
+		EasyMock.expectLastCall().andReturn(null);
+		EasyMock.expect(mockTable.putItem(inputItem)).andReturn(EasyMock.createMock(PutItemOutcome.class));
+		mockTable.getItem(EasyMock.cmp(strongSpec, getItemSpecComparator(), LogicalOperator.EQUAL));
+		EasyMock.expectLastCall().andReturn(null);
+
+		EasyMock.replay(mockTable);
+
+		sessionKeyspace.get("get_session");
+		sessionKeyspace.set("get_session", "abed");
+		// A keyspace instance obtained later from the same adapter shares the session
+		new DynamoDbKeyspace("ut_keyspace", adapter).get("get_session");
+
+		EasyMock.verify(mockTable);
+	}
+
 	@Test(expectedExceptions = NullPointerException.class)
 	public void getsDoesntAllowNullKeyTest() {
 		keyspace.gets(null);
@@ -494,6 +1046,8 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void getsNoKeyTest() {
 		final GetItemSpec getSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
 				.withPrimaryKey( //
 						"ut_attr_keyspace", "ut_keyspace", //
 						"ut_attr_key", "gets_NONE") //
@@ -513,6 +1067,8 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void getsTest() {
 		final GetItemSpec getSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
 				.withPrimaryKey( //
 						"ut_attr_keyspace", "ut_keyspace", //
 						"ut_attr_key", "gets_first") //
@@ -540,6 +1096,8 @@ public class DynamoDbKeyspaceTest {
 	@Test
 	public void getTest() {
 		final GetItemSpec getSpec = new GetItemSpec() //
+				.withProjectionExpression("#v, #ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
 				.withPrimaryKey( //
 						"ut_attr_keyspace", "ut_keyspace", //
 						"ut_attr_key", "get_first") //
@@ -564,6 +1122,204 @@ public class DynamoDbKeyspaceTest {
 		Assert.assertFalse(actual2.isPresent());
 	}
 
+	@Test
+	public void incrementTest() {
+		final UpdateItemSpec inputSpec = new UpdateItemSpec() //
+				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "increment_first") //
+				.withUpdateExpression("SET #v = if_not_exists(#v, :initial) + :delta ADD #ver :ver") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version")) //
+				.withValueMap(new ValueMap().with(":delta", 5L).with(":initial", 10L).with(":ver", 1L)) //
+				.withReturnValues(ReturnValue.UPDATED_NEW);
+		final UpdateItemOutcome mockOutcome = EasyMock.createMock(UpdateItemOutcome.class);
+		EasyMock.expect(mockOutcome.getItem())
+				.andReturn(new Item().withNumber("ut_attr_val", 15).withNumber("ut_attr_version", 1));
+
+		EasyMock.expect(
+				mockTable.updateItem(EasyMock.cmp(inputSpec, updateItemSpecComparator(), LogicalOperator.EQUAL)))
+				.andReturn(mockOutcome);
+
+		EasyMock.replay(mockTable, mockOutcome);
+
+		final long actual = keyspace.increment("increment_first", 5, 10);
+
+		EasyMock.verify(mockTable, mockOutcome);
+		Assert.assertEquals(actual, 15L);
+	}
+
+	@Test
+	public void incrementInMemoryTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbKeyspace counters = new DynamoDbKeyspace("counters", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.build());
+
+		Assert.assertEquals(counters.increment("increment_hits", 1), 1L);
+		Assert.assertEquals(counters.increment("increment_hits", 41), 42L);
+		Assert.assertEquals(counters.decrement("increment_hits", 2), 40L);
+		Assert.assertEquals(counters.decrement("increment_stock", 3, 100), 97L);
+		Assert.assertEquals(counters.get("increment_hits"), Optional.of("40"));
+		Assert.assertEquals(counters.gets("increment_hits").get().getVersion(), 3L);
+
+		final long requests = dynamo.getRequestCount();
+		counters.increment("increment_hits", 1);
+		Assert.assertEquals(dynamo.getRequestCount() - requests, 1);
+
+		counters.set("increment_text", "abed");
+		try {
+			counters.increment("increment_text", 1);
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			Assert.assertEquals(e.getErrorCode(), "ValidationException");
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void keysInvalidPageSizeTest() {
+		keyspace.keys(0);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void keysIsLazyTest() {
+		EasyMock.replay(mockTable);
+
+		keyspace.keys();
+
+		EasyMock.verify(mockTable);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void keysTest() {
+		final Capture<QuerySpec> query = Capture.newInstance();
+		final ItemCollection<QueryOutcome> mockCollection = EasyMock.createMock(ItemCollection.class);
+		EasyMock.expect(mockTable.query(EasyMock.capture(query))).andReturn(mockCollection);
+		EasyMock.expect(mockCollection.firstPage()).andReturn(new PrefetchingIteratorTest.ListPage(
+				Arrays.asList(Arrays.asList(new Item().withString("ut_attr_key", "a"))), new AtomicInteger()));
+		EasyMock.replay(mockTable, mockCollection);
+
+		final List<String> actual = keyspace.keys().collect(Collectors.toList());
+
+		EasyMock.verify(mockTable, mockCollection);
+		Assert.assertEquals(actual, Arrays.asList("a"));
+		Assert.assertEquals(query.getValue().getProjectionExpression(), "#k");
+		Assert.assertEquals(query.getValue().getNameMap(), Collections.singletonMap("#k", "ut_attr_key"));
+		Assert.assertEquals(query.getValue().getMaxPageSize(), Integer.valueOf(DynamoDbKeyspace.DEFAULT_PAGE_SIZE));
+	}
+
+	@Test
+	public void keysShardedTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withKeyspaceShards("ut_keyspace", 2) //
+				.withExecutor(Runnable::run) //
+				.build();
+		final DynamoDbKeyspace shardedKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+		final Map<String, List<String>> shardKeys = new HashMap<>();
+		shardKeys.put("ut_keyspace#0", Arrays.asList("a", "c", "d"));
+		shardKeys.put("ut_keyspace#1", Arrays.asList("b", "e"));
+		EasyMock.expect(mockTable.query(EasyMock.anyObject(QuerySpec.class))).andAnswer(() -> {
+			final QuerySpec spec = (QuerySpec) EasyMock.getCurrentArguments()[0];
+			final List<Item> items = new ArrayList<>();
+			for (final String key : shardKeys.get(spec.getHashKey().getValue())) {
+				items.add(new Item().withString("ut_attr_key", key));
+			}
+			final ItemCollection<QueryOutcome> collection = EasyMock.createMock(ItemCollection.class);
+			EasyMock.expect(collection.firstPage())
+					.andReturn(new PrefetchingIteratorTest.ListPage(Arrays.asList(items), new AtomicInteger()));
+			EasyMock.replay(collection);
+			return collection;
+		}).times(2);
+		EasyMock.replay(mockTable);
+
+		final List<String> actual = shardedKeyspace.keys().collect(Collectors.toList());
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(actual, Arrays.asList("a", "b", "c", "d", "e"));
+	}
+
+	@Test
+	public void metricsTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final RecordingKeyspaceMetrics metrics = new RecordingKeyspaceMetrics();
+		final DynamoDbKeyspace measured = new DynamoDbKeyspace("ut_keyspace",
+				DynamoDbAdapter.builder(dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key")) //
+						.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+						.withDynamoDB(dynamo.getDynamoDB()) //
+						.withExecutor(Runnable::run) //
+						.withMetrics(metrics) //
+						.build());
+
+		Assert.assertTrue(measured.add("key", "value"));
+		Assert.assertFalse(measured.add("key", "other"));
+		Assert.assertEquals(measured.get("key"), Optional.of("value"));
+		dynamo.throttle(1);
+		try {
+			measured.get("key");
+			Assert.fail("Expected exception!");
+		} catch (final ProvisionedThroughputExceededException e) {
+			// Throttled
+		}
+		dynamo.throttle(1);
+		Assert.assertEquals(measured.getAll(Arrays.asList("key", "missing")), Collections.singletonMap("key", "value"));
+
+		final RecordingKeyspaceMetrics.Snapshot add = metrics.getSnapshot("ut_keyspace", Operation.ADD);
+		Assert.assertEquals(add.getCount(), 2);
+		Assert.assertEquals(add.getCount(Outcome.SUCCESS), 1);
+		Assert.assertEquals(add.getCount(Outcome.CONDITION_FAILED), 1);
+		Assert.assertEquals(add.getPayloadSize(), 5);
+		final RecordingKeyspaceMetrics.Snapshot get = metrics.getSnapshot("ut_keyspace", Operation.GET);
+		Assert.assertEquals(get.getCount(Outcome.SUCCESS), 1);
+		Assert.assertEquals(get.getCount(Outcome.THROTTLED), 1);
+		Assert.assertEquals(get.getPayloadSize(), 5);
+		final RecordingKeyspaceMetrics.Snapshot getAll = metrics.getSnapshot("ut_keyspace", Operation.GET_ALL);
+		Assert.assertEquals(getAll.getCount(Outcome.SUCCESS), 1);
+		Assert.assertEquals(getAll.getRetries(), 1);
+		Assert.assertEquals(metrics.getSnapshot("ut_keyspace", Operation.SET).getCount(), 0);
+	}
+
+	@Test
+	public void rateLimitTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final RecordingKeyspaceMetrics metrics = new RecordingKeyspaceMetrics();
+		final DynamoDbAdapter adapter = DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key")) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withMetrics(metrics) //
+				.withRateLimit(RateLimitConfig.builder() //
+						.withCapacityUnits(100d, 2d) //
+						.withMode(RateLimitConfig.Mode.FAIL_FAST) //
+						.build()) //
+				.build();
+		final DynamoDbKeyspace limited = new DynamoDbKeyspace("ut_keyspace", adapter);
+		final long requests = dynamo.getRequestCount();
+
+		Assert.assertTrue(limited.set("a", "value"));
+		Assert.assertTrue(limited.set("b", "value"));
+		try {
+			limited.set("c", "value");
+			Assert.fail("Expected exception!");
+		} catch (final CapacityExceededException e) {
+			Assert.assertTrue(e.getRetryAfter().toMillis() > 0);
+		}
+		Assert.assertEquals(limited.get("a"), Optional.of("value"));
+		Assert.assertEquals(metrics.getSnapshot("ut_keyspace", Operation.SET).getCount(Outcome.THROTTLED), 1);
+		// The rejected write was not sent
+		Assert.assertEquals(dynamo.getRequestCount() - requests, 3);
+
+		dynamo.throttle(1);
+		try {
+			limited.get("a");
+			Assert.fail("Expected exception!");
+		} catch (final ProvisionedThroughputExceededException e) {
+			// Throttled by DynamoDB
+		}
+		final CapacityLimiter limiter = adapter.getCapacityLimiter().get();
+		Assert.assertTrue(limiter.getReadUnitsPerSecond() < 100d);
+		Assert.assertEquals(limiter.getWriteUnitsPerSecond(), 2d);
+	}
+
 	@DataProvider
 	Object[][] replaceDoesntAllowNullsData() {
 		return new Object[][] { //
@@ -579,43 +1335,180 @@ public class DynamoDbKeyspaceTest {
 		Assert.fail("Expected exception!");
 	}
 
+	@Test
+	public void replaceEncodedValueTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final Table table = dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key");
+		final DynamoDbKeyspace plain = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.build());
+		final DynamoDbKeyspace encoding = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withValueCodec(CompressingValueCodec.create(10)) //
+				.build());
+		final String value = String.join("", Collections.nCopies(100, "troy and abed "));
+		plain.set("replace_first", value);
+
+		// Stored as a string before the codec was configured, the same value encoded differs
+		final boolean unchanged = encoding.replace("replace_first", value);
+		final boolean changed = encoding.replace("replace_first", value + "in the morning");
+		final boolean missing = encoding.replace("replace_other", value);
+
+		Assert.assertFalse(unchanged);
+		Assert.assertTrue(changed);
+		Assert.assertFalse(missing);
+		Assert.assertEquals(encoding.get("replace_first"), Optional.of(value + "in the morning"));
+	}
+
 	@Test
 	public void replaceTest() {
 		final long newVersion = "jeff".hashCode();
 
 		final UpdateItemSpec inputSpec = new UpdateItemSpec() //
-				.withReturnValues(ReturnValue.ALL_OLD) //
 				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "replace_first") //
-				.withAttributeUpdate( //
-						new AttributeUpdate("ut_attr_val").put("jeff"), //
-						new AttributeUpdate("ut_attr_version").put(newVersion) //
-				) //
-				.withExpected(new Expected("ut_attr_key").exists());
+				.withUpdateExpression("SET #v = :v, #ver = :ver") //
+				.withConditionExpression("attribute_exists(#b) AND #v <> :v") //
+				.withNameMap(new NameMap().with("#v", "ut_attr_val").with("#ver", "ut_attr_version").with("#b",
+						"ut_attr_keyspace")) //
+				.withValueMap(new ValueMap().with(":v", "jeff").with(":ver", newVersion));
 
 		final UpdateItemOutcome mockOutcome = EasyMock.createMock(UpdateItemOutcome.class);
-		final Item mockItem = EasyMock.createMock(Item.class);
-		EasyMock.expect(mockOutcome.getItem()).andReturn(mockItem).times(2);
-		EasyMock.expect(mockItem.get("ut_attr_val")) //
-				.andReturn("dean") //
-				.andReturn("jeff");
 
+		// The condition fails both for an unchanged value and for a missing key
 		EasyMock.expect(
 				mockTable.updateItem(EasyMock.cmp(inputSpec, updateItemSpecComparator(), LogicalOperator.EQUAL))) //
-				.andReturn(mockOutcome).times(2) //
+				.andReturn(mockOutcome) //
+				.andThrow(new ConditionalCheckFailedException("Unchanged")) //
 				.andThrow(new ConditionalCheckFailedException("Doesn't exist"));
 
-		EasyMock.replay(mockTable, mockOutcome, mockItem);
+		EasyMock.replay(mockTable, mockOutcome);
 
 		final boolean actual = keyspace.replace("replace_first", "jeff");
 		final boolean actual2 = keyspace.replace("replace_first", "jeff");
 		final boolean actual3 = keyspace.replace("replace_first", "jeff");
 
-		EasyMock.verify(mockTable, mockOutcome, mockItem);
+		EasyMock.verify(mockTable, mockOutcome);
 		Assert.assertTrue(actual);
 		Assert.assertFalse(actual2);
 		Assert.assertFalse(actual3);
 	}
 
+	@Test(expectedExceptions = NullPointerException.class)
+	public void setAllDoesntAllowNullValuesTest() {
+		keyspace.setAll(Collections.singletonMap("someKey", null));
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void setAllRetriesUnprocessedItemsTest() {
+		final DynamoDB mockDynamoDB = EasyMock.createMock(DynamoDB.class);
+		final Capture<TableWriteItems> captured = EasyMock.newCapture(CaptureType.ALL);
+		final Map<String, String> values = new HashMap<>();
+		for (int i = 0; i < 30; i++) {
+			values.put("key" + i, "value" + i);
+		}
+		final Map<String, List<WriteRequest>> unprocessed = Collections.singletonMap("ut_table",
+				Arrays.asList(new WriteRequest(new PutRequest(attributes("key3", "value3")))));
+
+		EasyMock.expect(mockTable.getTableName()).andReturn("ut_table").anyTimes();
+		EasyMock.expect(mockDynamoDB.batchWriteItem(EasyMock.capture(captured))) //
+				.andReturn(batchWriteOutcome(unprocessed)) //
+				.andReturn(batchWriteOutcome(Collections.emptyMap()));
+		EasyMock.expect(mockDynamoDB.batchWriteItemUnprocessed(unprocessed)).andReturn(batchWriteOutcome(null));
+
+		EasyMock.replay(mockTable, mockDynamoDB);
+
+		batchKeyspace(mockDynamoDB).setAll(values);
+
+		EasyMock.verify(mockTable, mockDynamoDB);
+		Assert.assertEquals(captured.getValues().size(), 2);
+		final List<Item> written = new ArrayList<>();
+		for (final TableWriteItems writeItems : captured.getValues()) {
+			Assert.assertTrue(writeItems.getItemsToPut().size() <= DynamoDbKeyspace.MAX_BATCH_WRITE_ITEMS);
+			written.addAll(writeItems.getItemsToPut());
+		}
+		Assert.assertEquals(written.size(), 30);
+		Assert.assertTrue(written.contains(new Item() //
+				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "key0") //
+				.withString("ut_attr_val", "value0") //
+				.withLong("ut_attr_version", "value0".hashCode())));
+	}
+
+	@Test
+	public void setAllWithoutDynamoDbFallsBackToPutItemTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withVersionScheme(VersionScheme.HASH_CODE) //
+				.build();
+		final Item inputItem = new Item() //
+				.withPrimaryKey("ut_attr_keyspace", "ut_keyspace", "ut_attr_key", "set_all_first") //
+				.withString("ut_attr_val", "britta") //
+				.withLong("ut_attr_version", "britta".hashCode());
+
+		EasyMock.expect(mockTable.putItem(inputItem)).andReturn(EasyMock.createMock(PutItemOutcome.class));
+
+		EasyMock.replay(mockTable);
+
+		new DynamoDbKeyspace("ut_keyspace", adapter).setAll(Collections.singletonMap("set_all_first", "britta"));
+
+		EasyMock.verify(mockTable);
+	}
+
+	@Test(timeOut = 30_000)
+	public void setAllChunkedWithSingleThreadExecutorTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final DynamoDbKeyspace chunkedKeyspace = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter
+					.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+					.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+					.withDynamoDB(dynamo.getDynamoDB()) //
+					.withExecutor(executor) //
+					.withValueChunking(10) //
+					.build());
+			final Map<String, String> values = new HashMap<>();
+			for (int i = 0; i < 60; i++) {
+				values.put("chunked_" + i, "a value spanning several chunks " + i);
+			}
+
+			// The chunks of each value run on the thread of its batch, not waiting for the only executor thread
+			chunkedKeyspace.setAll(values);
+
+			Assert.assertEquals(chunkedKeyspace.getAll(values.keySet()), values);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void setAllUpdatesVersionsOneByOneTest() {
+		final DynamoDB mockDynamoDB = EasyMock.createMock(DynamoDB.class);
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withDynamoDB(mockDynamoDB) //
+				.withExecutor(Runnable::run) //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build();
+		final Capture<UpdateItemSpec> captured = EasyMock.newCapture(CaptureType.ALL);
+
+		EasyMock.expect(mockTable.updateItem(EasyMock.capture(captured)))
+				.andReturn(EasyMock.createMock(UpdateItemOutcome.class)).times(2);
+
+		EasyMock.replay(mockTable, mockDynamoDB);
+
+		final Map<String, String> values = new HashMap<>();
+		values.put("set_all_first", "britta");
+		values.put("set_all_second", "annie");
+		new DynamoDbKeyspace("ut_keyspace", adapter).setAll(values);
+
+		// BatchWriteItem cannot add to the version counter
+		EasyMock.verify(mockTable, mockDynamoDB);
+		for (final UpdateItemSpec spec : captured.getValues()) {
+			Assert.assertEquals(spec.getUpdateExpression(), "SET #v = :v ADD #ver :ver");
+			Assert.assertEquals(spec.getValueMap().get(":ver"), 1L);
+		}
+	}
+
 	@DataProvider
 	Object[][] setDoesntAllowNullsData() {
 		return new Object[][] { //
@@ -631,6 +1524,76 @@ public class DynamoDbKeyspaceTest {
 		Assert.fail("Expected exception!");
 	}
 
+	@Test
+	public void setChunkedTest() {
+		final Map<String, Item> items = ChunkedValueStoreTest.backWithMap(mockTable);
+		EasyMock.expect(mockTable.putItem(EasyMock.anyObject(PutItemSpec.class))).andAnswer(() -> {
+			final Item item = ((PutItemSpec) EasyMock.getCurrentArguments()[0]).getItem();
+			final Item old = items.put(item.getString("ks") + '|' + item.getString("k"), item);
+			return new PutItemOutcome(
+					new PutItemResult().withAttributes(old == null ? null : InternalUtils.toAttributeValues(old)));
+		}).times(2);
+		EasyMock.replay(mockTable);
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ks", "k", "v", "ver") //
+				.withValueChunking(10) //
+				.withExecutor(Runnable::run) //
+				.withVersionScheme(VersionScheme.HASH_CODE) //
+				.build();
+		final DynamoDbKeyspace chunkedKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+		final String value = "a value spanning several chunks";
+
+		Assert.assertTrue(chunkedKeyspace.set("set_chunked", "first"));
+		Assert.assertTrue(chunkedKeyspace.set("set_chunked", value));
+
+		final Item manifest = items.get("ut_keyspace|set_chunked");
+		Assert.assertFalse(manifest.isPresent("v"));
+		Assert.assertEquals(manifest.getInt(ChunkedValueStore.ATTRIBUTE_CHUNKS), 4);
+		Assert.assertEquals(items.size(), 1 + 4);
+		Assert.assertEquals(chunkedKeyspace.get("set_chunked"), Optional.of(value));
+		Assert.assertEquals(chunkedKeyspace.gets("set_chunked").get().getVersion(), value.hashCode());
+	}
+
+	@Test
+	public void setCompressedTest() {
+		final CompressingValueCodec codec = CompressingValueCodec.create(10);
+		final DynamoDbKeyspace compressingKeyspace = compressingKeyspace(codec);
+		final String value = "compressed compressed compressed compressed";
+		final Capture<Item> items = Capture.newInstance(CaptureType.ALL);
+		EasyMock.expect(mockTable.putItem(EasyMock.capture(items))).andReturn(EasyMock.createMock(PutItemOutcome.class))
+				.times(2);
+		EasyMock.replay(mockTable);
+
+		compressingKeyspace.set("set_compressed", value);
+		compressingKeyspace.set("set_small", "small");
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(codec.decode(items.getValues().get(0).getBinary("ut_attr_val")), value);
+		Assert.assertEquals(items.getValues().get(0).getLong("ut_attr_version"), value.hashCode());
+		Assert.assertEquals(items.getValues().get(1).get("ut_attr_val"), "small");
+	}
+
+	@Test
+	public void setShardedTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(mockTable) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.withKeyspaceShards("ut_keyspace", 4) //
+				.build();
+		final DynamoDbKeyspace shardedKeyspace = new DynamoDbKeyspace("ut_keyspace", adapter);
+		final String partition = KeyspaceItems.partitionValue("ut_keyspace", 4, "set_first");
+		final Item inputItem = new Item() //
+				.withPrimaryKey("ut_attr_keyspace", partition, "ut_attr_key", "set_first") //
+				.withString("ut_attr_val", "britta") //
+				.withLong("ut_attr_version", "britta".hashCode());
+		EasyMock.expect(mockTable.putItem(inputItem)).andReturn(EasyMock.createMock(PutItemOutcome.class));
+		EasyMock.replay(mockTable);
+
+		Assert.assertTrue(shardedKeyspace.set("set_first", "britta"));
+
+		EasyMock.verify(mockTable);
+		Assert.assertTrue(partition.matches("ut_keyspace#[0-3]"));
+	}
+
 	@Test
 	public void setTest() {
 		final Item inputItem = new Item() //
@@ -647,4 +1610,48 @@ public class DynamoDbKeyspaceTest {
 		EasyMock.verify(mockTable);
 		Assert.assertTrue(actual);
 	}
+
+	@Test
+	public void setVersionsMonotonicallyTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final Keyspace monotonicKeyspace = DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build().getKeyspace("monotonic");
+
+		// Writing A, then B, then A again never reuses a version, unlike hash codes
+		Assert.assertTrue(monotonicKeyspace.set("set_monotonic", "A"));
+		final long first = monotonicKeyspace.gets("set_monotonic").get().getVersion();
+		Assert.assertTrue(monotonicKeyspace.set("set_monotonic", "B"));
+		Assert.assertTrue(monotonicKeyspace.set("set_monotonic", "A"));
+		final long third = monotonicKeyspace.gets("set_monotonic").get().getVersion();
+
+		Assert.assertEquals(first, 1L);
+		Assert.assertEquals(third, 3L);
+		Assert.assertFalse(monotonicKeyspace.checkAndSet("set_monotonic", "C", first));
+		Assert.assertTrue(monotonicKeyspace.checkAndSet("set_monotonic", "C", third));
+		Assert.assertEquals(monotonicKeyspace.gets("set_monotonic").get().getVersion(), 4L);
+	}
+
+	@Test
+	public void setContinuesHashCodeVersionsTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final Table table = dynamo.createTable("ut_table", "ut_keyspace", "ut_key");
+		final Keyspace hashKeyspace = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withVersionScheme(VersionScheme.HASH_CODE) //
+				.build().getKeyspace("migrating");
+		final Keyspace monotonicKeyspace = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build().getKeyspace("migrating");
+
+		Assert.assertTrue(hashKeyspace.set("set_migrating", "A"));
+		Assert.assertEquals(hashKeyspace.gets("set_migrating").get().getVersion(), "A".hashCode());
+
+		// Items written with hash code versions count on from them once the monotonic scheme takes over
+		Assert.assertTrue(monotonicKeyspace.checkAndSet("set_migrating", "B", "A".hashCode()));
+		Assert.assertEquals(monotonicKeyspace.gets("set_migrating").get().getVersion(), "A".hashCode() + 1L);
+	}
 }
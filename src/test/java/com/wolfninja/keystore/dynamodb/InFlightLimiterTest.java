@@ -0,0 +1,62 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class InFlightLimiterTest {
+
+	@Test
+	public void failedStartReleasesSlot() {
+		final InFlightLimiter limiter = new InFlightLimiter(1);
+
+		final CompletableFuture<String> failed = limiter.submit(() -> {
+			throw new IllegalStateException("boom");
+		});
+		final CompletableFuture<String> next = limiter.submit(() -> CompletableFuture.completedFuture("ok"));
+
+		Assert.assertTrue(failed.isCompletedExceptionally());
+		Assert.assertEquals(next.join(), "ok");
+	}
+
+	@Test
+	public void queuesRequestsOverCap() {
+		final InFlightLimiter limiter = new InFlightLimiter(2);
+		final AtomicInteger started = new AtomicInteger();
+		final List<CompletableFuture<Integer>> requests = new ArrayList<>();
+		final List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+		for (int i = 0; i < 5; i++) {
+			final CompletableFuture<Integer> request = new CompletableFuture<>();
+			requests.add(request);
+			results.add(limiter.submit(() -> {
+				started.incrementAndGet();
+				return request;
+			}));
+		}
+
+		Assert.assertEquals(started.get(), 2);
+		Assert.assertEquals(limiter.getQueued(), 3);
+
+		requests.get(0).complete(0);
+		Assert.assertEquals(started.get(), 3);
+		Assert.assertEquals(results.get(0).join(), Integer.valueOf(0));
+
+		for (int i = 1; i < 5; i++) {
+			requests.get(i).complete(i);
+		}
+		Assert.assertEquals(started.get(), 5);
+		Assert.assertEquals(limiter.getQueued(), 0);
+		Assert.assertEquals(results.get(4).join(), Integer.valueOf(4));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void requiresPositiveCap() {
+		new InFlightLimiter(0);
+		Assert.fail("Expected exception!");
+	}
+}
@@ -0,0 +1,245 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.Expected;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+
+public class InMemoryDynamoDBTest {
+
+	private InMemoryDynamoDB dynamo;
+	private Table table;
+
+	@BeforeMethod
+	public void inMemoryDynamoDBTest() {
+		dynamo = new InMemoryDynamoDB();
+		table = dynamo.createTable("ut_table", "ks", "k");
+	}
+
+	private static Item item(final String key, final String value) {
+		return new Item().withPrimaryKey("ks", "space", "k", key).withString("v", value).withLong("ver", 1);
+	}
+
+	@Test
+	public void batchTest() {
+		final TableWriteItems writes = new TableWriteItems("ut_table");
+		for (int i = 0; i < 25; i++) {
+			writes.addItemToPut(item("key" + i, "value" + i));
+		}
+		Assert.assertTrue(dynamo.getDynamoDB().batchWriteItem(writes).getUnprocessedItems().isEmpty());
+
+		final TableKeysAndAttributes keys = new TableKeysAndAttributes("ut_table") //
+				.withProjectionExpression("k, v");
+		keys.addHashAndRangePrimaryKeys("ks", "k", "space", "key3", "space", "key7", "space", "missing");
+		final List<Item> items = dynamo.getDynamoDB().batchGetItem(keys).getTableItems().get("ut_table");
+		Assert.assertEquals(items.size(), 2);
+		Assert.assertNull(items.get(0).get("ver"));
+		Assert.assertEquals(items.get(0).getString("v"), "value" + items.get(0).getString("k").substring(3));
+
+		writes.addItemToPut(item("key25", "value25"));
+		try {
+			dynamo.getDynamoDB().batchWriteItem(writes);
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			Assert.assertEquals(e.getErrorCode(), "ValidationException");
+		}
+	}
+
+	@Test
+	public void conditionExpressionTest() {
+		final PutItemSpec add = new PutItemSpec() //
+				.withItem(item("key", "a")) //
+				.withConditionExpression("attribute_not_exists(#b)") //
+				.withNameMap(Collections.singletonMap("#b", "ks"));
+		table.putItem(add);
+		try {
+			table.putItem(add);
+			Assert.fail("Expected exception!");
+		} catch (final ConditionalCheckFailedException e) {
+			Assert.assertEquals(e.getErrorCode(), "ConditionalCheckFailedException");
+		}
+
+		final Map<String, String> names = new HashMap<>();
+		names.put("#b", "ks");
+		names.put("#v", "v");
+		final UpdateItemSpec replace = new UpdateItemSpec() //
+				.withPrimaryKey("ks", "space", "k", "key") //
+				.withUpdateExpression("SET #v = :v") //
+				.withConditionExpression("attribute_exists(#b) AND #v <> :v") //
+				.withNameMap(names) //
+				.withValueMap(Collections.singletonMap(":v", "a"));
+		try {
+			table.updateItem(replace);
+			Assert.fail("Expected exception!");
+		} catch (final ConditionalCheckFailedException e) {
+			// Unchanged value
+		}
+		table.updateItem(replace.withValueMap(Collections.singletonMap(":v", "b")));
+		Assert.assertEquals(table.getItem("ks", "space", "k", "key").getString("v"), "b");
+	}
+
+	@Test
+	public void expectedTest() {
+		table.putItem(item("key", "a"));
+		final UpdateItemSpec spec = new UpdateItemSpec() //
+				.withPrimaryKey("ks", "space", "k", "key") //
+				.withAttributeUpdate(new AttributeUpdate("v").put("b")) //
+				.withExpected(new Expected("ver").eq(2));
+		try {
+			table.updateItem(spec);
+			Assert.fail("Expected exception!");
+		} catch (final ConditionalCheckFailedException e) {
+			// Version mismatch
+		}
+
+		table.updateItem(spec.withExpected(new Expected("ver").eq(1)));
+		Assert.assertEquals(table.getItem("ks", "space", "k", "key").getString("v"), "b");
+
+		try {
+			table.deleteItem(new DeleteItemSpec() //
+					.withPrimaryKey("ks", "space", "k", "missing") //
+					.withExpected(new Expected("k").exists()));
+			Assert.fail("Expected exception!");
+		} catch (final ConditionalCheckFailedException e) {
+			// Key does not exist
+		}
+	}
+
+	@Test
+	public void itemSizeLimitTest() {
+		final char[] value = new char[InMemoryDynamoDB.MAX_ITEM_BYTES];
+		Arrays.fill(value, 'v');
+		try {
+			table.putItem(item("key", new String(value)));
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			Assert.assertEquals(e.getErrorCode(), "ValidationException");
+		}
+		Assert.assertNull(table.getItem("ks", "space", "k", "key"));
+	}
+
+	@Test
+	public void latencyTest() {
+		dynamo.setLatency(Duration.ofMillis(20));
+		final long start = System.nanoTime();
+		table.getItem("ks", "space", "k", "key");
+		Assert.assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+	}
+
+	@Test
+	public void queryPaginationTest() {
+		for (int i = 0; i < 7; i++) {
+			table.putItem(item("key" + i, "value" + i));
+		}
+		table.putItem(new Item().withPrimaryKey("ks", "other", "k", "key0"));
+
+		Page<Item, QueryOutcome> page = table.query(new QuerySpec() //
+				.withHashKey("ks", "space") //
+				.withProjectionExpression("k") //
+				.withMaxPageSize(3)).firstPage();
+		final StringBuilder keys = new StringBuilder();
+		int pages = 1;
+		while (true) {
+			for (final Item item : page) {
+				keys.append(item.getString("k")).append(',');
+				Assert.assertNull(item.get("v"));
+			}
+			if (!page.hasNextPage()) {
+				break;
+			}
+			page = page.nextPage();
+			pages++;
+		}
+		Assert.assertEquals(keys.toString(), "key0,key1,key2,key3,key4,key5,key6,");
+		Assert.assertEquals(pages, 3);
+	}
+
+	@Test
+	public void returnValuesTest() {
+		Assert.assertNull(table.putItem(new PutItemSpec() //
+				.withItem(item("key", "a")) //
+				.withReturnValues(ReturnValue.ALL_OLD)).getItem());
+		Assert.assertEquals(table.putItem(new PutItemSpec() //
+				.withItem(item("key", "b")) //
+				.withReturnValues(ReturnValue.ALL_OLD)).getItem().getString("v"), "a");
+
+		final Map<String, Object> values = new HashMap<>();
+		values.put(":v", "c");
+		values.put(":one", 1);
+		final Item updatedOld = table.updateItem(new UpdateItemSpec() //
+				.withPrimaryKey("ks", "space", "k", "key") //
+				.withUpdateExpression("SET v = :v ADD ver :one") //
+				.withValueMap(values) //
+				.withReturnValues(ReturnValue.UPDATED_OLD)).getItem();
+		Assert.assertEquals(updatedOld.asMap().keySet(), new HashSet<>(Arrays.asList("v", "ver")));
+		Assert.assertEquals(updatedOld.getLong("ver"), 1);
+
+		final Item deleted = table.deleteItem(new DeleteItemSpec() //
+				.withPrimaryKey("ks", "space", "k", "key") //
+				.withReturnValues(ReturnValue.ALL_OLD)).getItem();
+		Assert.assertEquals(deleted.getString("v"), "c");
+		Assert.assertEquals(deleted.getLong("ver"), 2);
+	}
+
+	@Test
+	public void throttleTest() {
+		table.putItem(item("key", "a"));
+		dynamo.throttle(1);
+		try {
+			table.getItem(new GetItemSpec().withPrimaryKey("ks", "space", "k", "key"));
+			Assert.fail("Expected exception!");
+		} catch (final ProvisionedThroughputExceededException e) {
+			Assert.assertEquals(e.getStatusCode(), 400);
+		}
+		Assert.assertNotNull(table.getItem("ks", "space", "k", "key"));
+
+		// Throttled batch requests return their items as unprocessed, which batchGetItems retries
+		dynamo.throttle(2);
+		final TableKeysAndAttributes keys = new TableKeysAndAttributes("ut_table");
+		keys.addHashAndRangePrimaryKey("ks", "space", "k", "key");
+		final long before = dynamo.getRequestCount();
+		Assert.assertEquals(BatchRequests.batchGetItems(dynamo.getDynamoDB(), keys).size(), 1);
+		Assert.assertEquals(dynamo.getRequestCount() - before, 3);
+	}
+
+	@Test
+	public void updateExpressionTest() {
+		final Map<String, Object> values = new HashMap<>();
+		values.put(":zero", 0);
+		values.put(":one", 1);
+		final UpdateItemSpec increment = new UpdateItemSpec() //
+				.withPrimaryKey("ks", "space", "k", "counter") //
+				.withUpdateExpression("SET #c = if_not_exists(#c, :zero) + :one REMOVE gone") //
+				.withNameMap(Collections.singletonMap("#c", "count")) //
+				.withValueMap(values) //
+				.withReturnValues(ReturnValue.ALL_NEW);
+		Assert.assertEquals(table.updateItem(increment).getItem().getInt("count"), 1);
+		Assert.assertEquals(table.updateItem(increment).getItem().getInt("count"), 2);
+		Assert.assertEquals(table.getItem("ks", "space", "k", "counter").getInt("count"), 2);
+	}
+}
@@ -0,0 +1,223 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+
+public class KeyFilterTest {
+
+	private List<String> keys;
+
+	private RuntimeException failure;
+
+	private Runnable duringScan;
+
+	private List<Runnable> scheduled;
+
+	private KeyFilter filter;
+
+	@BeforeMethod
+	public void KeyFilter() {
+		keys = new ArrayList<>(Arrays.asList("abed", "annie", "britta"));
+		failure = null;
+		duringScan = () -> {
+		};
+		scheduled = new ArrayList<>();
+		filter = new KeyFilter(KeyFilterConfig.builder().withExpectedKeys(1000).build(), () -> {
+			if (failure != null) {
+				throw failure;
+			}
+			return new ArrayList<>(keys).stream().peek(key -> duringScan.run());
+		}, scheduled::add);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void configRejectsOversizedFilterTest() {
+		KeyFilterConfig.builder().withExpectedKeys(Long.MAX_VALUE / 2).build();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void configRequiresFalsePositiveRateBelowOneTest() {
+		KeyFilterConfig.builder().withFalsePositiveRate(1.0);
+	}
+
+	@Test
+	public void failedRebuildKeepsFilterTest() {
+		filter.rebuild();
+		failure = new AmazonServiceException("Throttled");
+
+		filter.rebuildAsync();
+		scheduled.get(0).run();
+
+		Assert.assertTrue(filter.isReady());
+		Assert.assertTrue(filter.mightContain("abed"));
+		Assert.assertEquals(filter.getRebuildFailureCount(), 1L);
+		Assert.assertEquals(filter.getRebuildCount(), 1L);
+	}
+
+	@Test
+	public void falsePositiveRateTest() {
+		final KeyFilter large = new KeyFilter(KeyFilterConfig.builder() //
+				.withExpectedKeys(10_000) //
+				.withFalsePositiveRate(0.01) //
+				.build(), () -> IntStream.range(0, 10_000).mapToObj(i -> "key" + i), Runnable::run);
+		large.rebuild();
+
+		for (int i = 0; i < 10_000; i++) {
+			Assert.assertTrue(large.mightContain("key" + i));
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 10_000; i++) {
+			if (large.mightContain("missing" + i)) {
+				falsePositives++;
+			}
+		}
+
+		Assert.assertTrue(falsePositives < 200, "False positives: " + falsePositives);
+		Assert.assertEquals(large.getAvoidedLookupCount(), 10_000L - falsePositives);
+		Assert.assertEquals(large.getFalsePositiveRate(), 0.01, 0.005);
+		Assert.assertEquals(large.getKeyCount(), 10_000L);
+	}
+
+	@Test
+	public void keyspaceReadsTest() throws InterruptedException {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final AmazonDynamoDBAsync unusedAsyncClient = EasyMock.createMock(AmazonDynamoDBAsync.class);
+		EasyMock.replay(unusedAsyncClient);
+		final DynamoDbAdapter adapter = DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAsyncClient(unusedAsyncClient) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withDynamoDB(dynamo.getDynamoDB()) //
+				.withKeyFilter("ks", KeyFilterConfig.builder().withSingleWriter(true).build()) //
+				.withKeyspaceShards("ks", 2) //
+				.build();
+		final DynamoDbKeyspace keyspace = new DynamoDbKeyspace("ks", adapter);
+		final KeyFilter keyFilter = adapter.getKeyFilter("ks").get();
+		Assert.assertFalse(adapter.getKeyFilter("other").isPresent());
+		// Built once on a background thread at first
+		for (int wait = 0; keyFilter.getRebuildCount() == 0 && wait < 500; wait++) {
+			Thread.sleep(10L);
+		}
+		Assert.assertTrue(keyFilter.isReady());
+		keyspace.set("abed", "nadir");
+		keyFilter.rebuild();
+		keyspace.set("annie", "edison");
+		keyspace.delete("abed");
+
+		final long requests = dynamo.getRequestCount();
+		Assert.assertFalse(keyspace.exists("britta"));
+		Assert.assertEquals(keyspace.get("britta"), Optional.empty());
+		Assert.assertEquals(keyspace.gets("britta"), Optional.empty());
+		Assert.assertEquals(keyspace.getAll(Collections.singleton("britta")), Collections.emptyMap());
+		Assert.assertEquals(dynamo.getRequestCount() - requests, 0);
+		Assert.assertEquals(keyFilter.getAvoidedLookupCount(), 4L);
+		final AsyncDynamoDbKeyspace asyncKeyspace = adapter.getAsyncKeyspace("ks");
+		Assert.assertFalse(asyncKeyspace.exists("britta").join());
+		Assert.assertEquals(asyncKeyspace.get("britta").join(), Optional.empty());
+		Assert.assertEquals(asyncKeyspace.gets("britta").join(), Optional.empty());
+		EasyMock.verify(unusedAsyncClient);
+		Assert.assertEquals(keyFilter.getAvoidedLookupCount(), 7L);
+
+		Assert.assertEquals(keyspace.get("annie"), Optional.of("edison"));
+		// Deleted keys are read until the next rebuild
+		Assert.assertFalse(keyspace.exists("abed"));
+		Assert.assertEquals(dynamo.getRequestCount() - requests, 2);
+		Assert.assertEquals(keyspace.getAll(Arrays.asList("abed", "annie", "britta")).keySet(),
+				Collections.singleton("annie"));
+		keyFilter.rebuild();
+		Assert.assertFalse(keyFilter.mightContain("abed"));
+		Assert.assertEquals(keyFilter.getKeyCount(), 1L);
+	}
+
+	@Test
+	public void notReadyUntilRebuiltTest() {
+		Assert.assertFalse(filter.isReady());
+		Assert.assertTrue(filter.mightContain("chang"));
+		Assert.assertEquals(filter.getFalsePositiveRate(), 1.0);
+
+		Assert.assertTrue(filter.rebuild());
+
+		Assert.assertTrue(filter.isReady());
+		Assert.assertTrue(filter.mightContain("abed"));
+		Assert.assertFalse(filter.mightContain("chang"));
+		Assert.assertEquals(filter.mightContainAll(Arrays.asList("annie", "chang", "pierce")),
+				Collections.singletonList("annie"));
+		Assert.assertEquals(filter.getAvoidedLookupCount(), 3L);
+		Assert.assertEquals(filter.getKeyCount(), 3L);
+	}
+
+	@Test
+	public void putAddsKeyTest() {
+		filter.rebuild();
+
+		filter.put("chang");
+
+		Assert.assertTrue(filter.mightContain("chang"));
+	}
+
+	@Test
+	public void rejectedRebuildIsCountedTest() {
+		final KeyFilter rejecting = new KeyFilter(KeyFilterConfig.builder().build(), () -> keys.stream(), task -> {
+			throw new RejectedExecutionException("Shut down");
+		});
+
+		rejecting.rebuildAsync();
+		rejecting.rebuildAsync();
+
+		Assert.assertFalse(rejecting.isReady());
+		Assert.assertEquals(rejecting.getRebuildFailureCount(), 2L);
+	}
+
+	@Test
+	public void resetDuringRebuildDiscardsFilterTest() {
+		filter.rebuild();
+		duringScan = filter::reset;
+
+		Assert.assertFalse(filter.rebuild());
+
+		Assert.assertFalse(filter.isReady());
+		Assert.assertEquals(scheduled.size(), 1);
+		duringScan = () -> {
+		};
+		scheduled.get(0).run();
+		Assert.assertTrue(filter.isReady());
+		Assert.assertEquals(filter.getRebuildCount(), 2L);
+	}
+
+	@Test
+	public void streamIsClosedTest() {
+		final List<String> closed = new ArrayList<>();
+		final KeyFilter closing = new KeyFilter(KeyFilterConfig.builder().build(),
+				() -> Stream.of("abed").onClose(() -> closed.add("closed")), Runnable::run);
+
+		closing.rebuild();
+
+		Assert.assertEquals(closed, Collections.singletonList("closed"));
+	}
+
+	@Test
+	public void writesDuringRebuildTest() {
+		filter.rebuild();
+		duringScan = () -> filter.put("chang");
+		keys.remove("britta");
+
+		filter.rebuild();
+
+		Assert.assertTrue(filter.mightContain("chang"));
+		Assert.assertFalse(filter.mightContain("britta"));
+	}
+}
@@ -0,0 +1,91 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Operation;
+
+public class KeyspaceBatchesTest {
+
+	@Test
+	public void deleteAllTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbAdapter adapter = DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withDynamoDB(dynamo.getDynamoDB()) //
+				.withExecutor(Runnable::run) //
+				.build();
+		final DynamoDbKeyspace keyspace = new DynamoDbKeyspace("ks", adapter);
+		Assert.assertTrue(keyspace.set("a", "1"));
+		Assert.assertTrue(keyspace.set("b", "2"));
+
+		new KeyspaceBatches("ks", adapter).deleteAll(Arrays.asList("a", "missing"));
+
+		Assert.assertFalse(keyspace.exists("a"));
+		Assert.assertTrue(keyspace.exists("b"));
+	}
+
+	@Test
+	public void getTest() {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final Table table = dynamo.createTable("ut_table", "ut_keyspace", "ut_key");
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withExecutor(Runnable::run) //
+				.build();
+		final DynamoDbAdapter batchAdapter = DynamoDbAdapter.builder(table) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withDynamoDB(dynamo.getDynamoDB()) //
+				.withExecutor(Runnable::run) //
+				.build();
+		Assert.assertTrue(new DynamoDbKeyspace("ks", adapter).set("a", "1"));
+		Assert.assertTrue(new DynamoDbKeyspace("ks", adapter).set("b", "2"));
+
+		// Without a DynamoDB instance, keys are read one by one
+		for (final DynamoDbAdapter each : Arrays.asList(adapter, batchAdapter)) {
+			final Map<String, String> values = new KeyspaceBatches("ks", each).get(Operation.GET_ALL,
+					Arrays.asList("a", "b", "missing"), item -> item.getString("ut_value"));
+
+			Assert.assertEquals(values.size(), 2);
+			Assert.assertEquals(values.get("a"), "1");
+			Assert.assertEquals(values.get("b"), "2");
+		}
+		Assert.assertEquals(new KeyspaceBatches("other", batchAdapter).get(Operation.GET_ALL,
+				Collections.singletonList("a"), item -> item.getString("ut_value")), Collections.emptyMap());
+	}
+
+	@Test
+	public void putAllTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter
+				.builder(new InMemoryDynamoDB().createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withExecutor(Runnable::run) //
+				.build();
+		final Map<String, String> values = new HashMap<>();
+		values.put("a", "1");
+		values.put("b", "2");
+
+		// Only the given keys are put
+		new KeyspaceBatches("ks", adapter).putAll(values, Collections.singletonList("a"));
+
+		final DynamoDbKeyspace keyspace = new DynamoDbKeyspace("ks", adapter);
+		Assert.assertEquals(keyspace.get("a"), Optional.of("1"));
+		Assert.assertEquals(keyspace.gets("a").get().getVersion(), "1".hashCode());
+		Assert.assertFalse(keyspace.exists("b"));
+	}
+
+	@Test(expectedExceptions = NullPointerException.class)
+	public void getDoesntAllowNullKeysTest() {
+		new KeyspaceBatches("ks", DynamoDbAdapter.create(new InMemoryDynamoDB().createTable("ut_table", "ut_keyspace",
+				"ut_key"))).get(Operation.GET_ALL, null, item -> item);
+		Assert.fail("Expected exception!");
+	}
+}
@@ -0,0 +1,114 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.wolfninja.keystore.api.KeyValue;
+
+public class KeyspaceCacheTest {
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder().withMaxEntries(2).build());
+
+		cache.put("ks", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		cache.put("ks", KeyValue.create("b", "britta", 2L), cache.readStarted());
+		Assert.assertTrue(cache.get("ks", "a").isPresent());
+		cache.put("ks", KeyValue.create("c", "chang", 3L), cache.readStarted());
+
+		Assert.assertTrue(cache.get("ks", "a").isPresent());
+		Assert.assertFalse(cache.get("ks", "b").isPresent());
+		Assert.assertTrue(cache.get("ks", "c").isPresent());
+		Assert.assertEquals(cache.getEvictionCount(), 1L);
+		Assert.assertEquals(cache.size(), 2L);
+	}
+
+	@Test
+	public void evictsToStayWithinByteBound() {
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder() //
+				.withMaxEntries(100) //
+				.withMaxBytes(1024) //
+				.build());
+		final StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			large.append('x');
+		}
+
+		cache.put("ks", KeyValue.create("a", large.toString(), 1L), cache.readStarted());
+		cache.put("ks", KeyValue.create("b", large.toString(), 2L), cache.readStarted());
+
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+		Assert.assertTrue(cache.get("ks", "b").isPresent());
+		Assert.assertEquals(cache.getEvictionCount(), 1L);
+	}
+
+	@Test
+	public void expiresAfterKeyspaceTtl() {
+		final AtomicLong now = new AtomicLong();
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder() //
+				.withTtl(Duration.ofSeconds(10)) //
+				.withKeyspaceTtl("short", Duration.ofSeconds(1)) //
+				.build(), now::get);
+
+		cache.put("short", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		cache.put("long", KeyValue.create("a", "abed", 1L), cache.readStarted());
+		now.set(Duration.ofSeconds(2).toNanos());
+
+		Assert.assertFalse(cache.get("short", "a").isPresent());
+		Assert.assertTrue(cache.get("long", "a").isPresent());
+		Assert.assertEquals(cache.getExpirationCount(), 1L);
+		Assert.assertEquals(cache.getHitCount(), 1L);
+		Assert.assertEquals(cache.getMissCount(), 1L);
+	}
+
+	@Test
+	public void invalidateAllRejectsInFlightReads() {
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder().build());
+		final long readSequence = cache.readStarted();
+
+		cache.invalidateAll();
+
+		Assert.assertFalse(cache.put("ks", KeyValue.create("a", "abed", 1L), readSequence));
+		Assert.assertTrue(cache.put("ks", KeyValue.create("a", "abed", 1L), cache.readStarted()));
+	}
+
+	@Test
+	public void readStartedBeforeWriteIsNotCached() {
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder().build());
+		cache.put("ks", KeyValue.create("a", "abed", 1L), cache.readStarted());
+
+		final long staleRead = cache.readStarted();
+		cache.invalidate("ks", "a");
+
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+		Assert.assertFalse(cache.put("ks", KeyValue.create("a", "abed", 1L), staleRead));
+		Assert.assertFalse(cache.get("ks", "a").isPresent());
+
+		Assert.assertTrue(cache.put("ks", KeyValue.create("a", "annie", 2L), cache.readStarted()));
+		Assert.assertEquals(cache.get("ks", "a").get().getVersion(), 2L);
+	}
+
+	@Test
+	public void readRacingEvictedTombstoneIsNotCached() {
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder().withMaxEntries(1).build());
+
+		final long staleRead = cache.readStarted();
+		cache.invalidate("ks", "a");
+		cache.invalidate("ks", "b");
+
+		Assert.assertFalse(cache.put("ks", KeyValue.create("a", "abed", 1L), staleRead));
+	}
+
+	@Test
+	public void separatesKeyspaces() {
+		final KeyspaceCache cache = new KeyspaceCache(KeyspaceCacheConfig.builder().build());
+
+		cache.put("ks1", KeyValue.create("a", "abed", 1L), cache.readStarted());
+
+		Assert.assertTrue(cache.get("ks1", "a").isPresent());
+		Assert.assertFalse(cache.get("ks2", "a").isPresent());
+	}
+}
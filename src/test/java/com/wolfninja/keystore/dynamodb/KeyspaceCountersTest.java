@@ -0,0 +1,21 @@
+package com.wolfninja.keystore.dynamodb;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class KeyspaceCountersTest {
+
+	@Test
+	public void incrementTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter
+				.builder(new InMemoryDynamoDB().createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.build();
+		final KeyspaceCounters counters = new KeyspaceCounters("ks", adapter);
+
+		// A missing key counts from the initial value
+		Assert.assertEquals(counters.increment("hits", 2, 10), 12L);
+		Assert.assertEquals(counters.increment("hits", -5, 10), 7L);
+		Assert.assertEquals(new DynamoDbKeyspace("ks", adapter).get("hits").get(), "7");
+	}
+}
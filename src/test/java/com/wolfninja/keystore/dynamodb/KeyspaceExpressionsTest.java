@@ -0,0 +1,122 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+
+public class KeyspaceExpressionsTest {
+
+	private static final Pattern NAME = Pattern.compile("#\\w+");
+
+	private DynamoDbAdapter adapter;
+
+	@BeforeMethod
+	public void KeyspaceExpressions() {
+		adapter = DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withAttributeNames("ks", "k", "v", "ver") //
+				.build();
+	}
+
+	@Test
+	public void chunkedReadProjectionTest() {
+		final KeyspaceExpressions expressions = new KeyspaceExpressions(adapter, true);
+
+		Assert.assertEquals(expressions.getReadProjection(), "#k, #v, #ver, chunks, chunk_id, chunk_encoded");
+		Assert.assertEquals(names(expressions.getReadProjection()), expressions.getReadNames().keySet());
+	}
+
+	@Test
+	public void expiringNameMapsMatchExpressionsTest() {
+		final KeyspaceExpressions expressions = new KeyspaceExpressions(DynamoDbAdapter
+				.builder(EasyMock.createMock(Table.class)) //
+				.withAttributeNames("ks", "k", "v", "ver") //
+				.withExpiryAttribute("exp") //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build(), false);
+
+		Assert.assertTrue(expressions.isExpiring());
+		Assert.assertEquals(expressions.getSetValue(), "SET #v = :v ADD #ver :ver REMOVE #exp");
+		Assert.assertEquals(names(expressions.getNotExists()), expressions.getKeyspaceNames().keySet());
+		Assert.assertEquals(names(expressions.getExists()), expressions.getKeyspaceNames().keySet());
+		Assert.assertEquals(names(expressions.getVersionMatches()), expressions.getVersionNames().keySet());
+		Assert.assertEquals(names(expressions.getSetValue() + " " + expressions.getVersionMatches()),
+				expressions.getValueNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.SET_EXPIRING_VALUE_ADD_VERSION),
+				expressions.getValueNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.INCREMENT_VALUE + " " + expressions.getIncrementCondition()),
+				expressions.getValueNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.RESET_VALUE + " " + KeyspaceExpressions.EXPIRED),
+				expressions.getValueNames().keySet());
+		Assert.assertEquals(names(expressions.getSetValue() + " " + expressions.getExistsAndChanged()),
+				expressions.getReplaceNames().keySet());
+		Assert.assertEquals(
+				names(KeyspaceExpressions.SET_EXPIRING_VALUE_ADD_VERSION + " " + expressions.getNotExists()),
+				expressions.getReplaceNames().keySet());
+		Assert.assertEquals(names(expressions.getKeyProjection()), expressions.getKeyNames().keySet());
+		Assert.assertEquals(names(expressions.getKeyProjection() + " " + expressions.getQueryFilter()),
+				expressions.getKeyNames().keySet());
+		Assert.assertEquals(names(expressions.getReadProjection()), expressions.getReadNames().keySet());
+		Assert.assertEquals(names(expressions.getEntryProjection() + " " + expressions.getQueryFilter()),
+				expressions.getEntryNames().keySet());
+		Assert.assertEquals(expressions.getReadNames().get(KeyspaceExpressions.NAME_EXPIRY), "exp");
+		Assert.assertEquals(expressions.withNow(null, 12_345L),
+				Collections.singletonMap(KeyspaceExpressions.VALUE_NOW, 12L));
+	}
+
+	@Test
+	public void nameMapsMatchExpressionsTest() {
+		final KeyspaceExpressions expressions = new KeyspaceExpressions(adapter, false);
+
+		Assert.assertEquals(names(KeyspaceExpressions.NOT_EXISTS), expressions.getKeyspaceNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.EXISTS), expressions.getKeyspaceNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.VERSION_MATCHES), expressions.getVersionNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.SET_VALUE + KeyspaceExpressions.VERSION_MATCHES),
+				expressions.getValueNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.SET_VALUE + KeyspaceExpressions.EXISTS),
+				expressions.getReplaceNames().keySet());
+		Assert.assertEquals(names(expressions.getReadProjection()), expressions.getReadNames().keySet());
+		Assert.assertEquals(names(expressions.getEntryProjection()), expressions.getEntryNames().keySet());
+		Assert.assertEquals(expressions.getKeyNames().get(KeyspaceExpressions.NAME_KEY), "k");
+		Assert.assertEquals(expressions.getReadNames().get(KeyspaceExpressions.NAME_VALUE), "v");
+		Assert.assertEquals(names(KeyspaceExpressions.SET_VALUE_ADD_VERSION + KeyspaceExpressions.NOT_EXISTS),
+				expressions.getReplaceNames().keySet());
+		Assert.assertEquals(names(KeyspaceExpressions.SET_VALUE_ADD_VERSION), names(KeyspaceExpressions.SET_VALUE));
+		Assert.assertEquals(names(KeyspaceExpressions.INCREMENT_VALUE), names(KeyspaceExpressions.SET_VALUE));
+		Assert.assertEquals(names(expressions.getKeyProjection()), expressions.getKeyNames().keySet());
+		Assert.assertFalse(expressions.isExpiring());
+		Assert.assertNull(expressions.getIncrementCondition());
+		Assert.assertNull(expressions.withNow(null, 12_345L));
+	}
+
+	@Test
+	public void versionSchemeTest() {
+		final KeyspaceExpressions hashCode = new KeyspaceExpressions(adapter, false);
+		final KeyspaceExpressions monotonic = new KeyspaceExpressions(DynamoDbAdapter
+				.builder(EasyMock.createMock(Table.class)) //
+				.withVersionScheme(VersionScheme.MONOTONIC) //
+				.build(), false);
+
+		Assert.assertEquals(monotonic.getSetValue(), "SET #v = :v ADD #ver :ver");
+		Assert.assertEquals(monotonic.version("abed"), 1L);
+		Assert.assertEquals(hashCode.getSetValue(), "SET #v = :v, #ver = :ver");
+		Assert.assertEquals(hashCode.version("abed"), "abed".hashCode());
+	}
+
+	private static Set<String> names(final String expression) {
+		final Set<String> names = new HashSet<>();
+		final Matcher matcher = NAME.matcher(expression);
+		while (matcher.find()) {
+			names.add(matcher.group());
+		}
+		return names;
+	}
+}
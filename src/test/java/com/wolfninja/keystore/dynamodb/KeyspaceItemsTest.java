@@ -0,0 +1,54 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
+import com.amazonaws.services.dynamodbv2.document.Table;
+
+public class KeyspaceItemsTest {
+
+	@Test
+	public void buildPrimaryKeyShardedTest() {
+		final KeyspaceItems items = new KeyspaceItems("ks", DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withKeyspaceShards("ks", 4) //
+				.build());
+
+		final PrimaryKey primaryKey = items.buildPrimaryKey("key");
+
+		Assert.assertEquals(primaryKey.getComponents().iterator().next().getValue(),
+				KeyspaceItems.partitionValue("ks", 4, "key"));
+		Assert.assertEquals(items.partitionValue("key"), KeyspaceItems.partitionValue("ks", 4, "key"));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void expiryRequiresExpiryAttributeTest() {
+		new KeyspaceItems("ks", DynamoDbAdapter.create(EasyMock.createMock(Table.class))).expiry(Duration.ofSeconds(1));
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void isExpiredTest() {
+		final KeyspaceItems items = new KeyspaceItems("ks", DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withExpiryAttribute("expiry") //
+				.build());
+		final long now = KeyspaceExpressions.epochSecond(System.currentTimeMillis());
+
+		Assert.assertFalse(items.isExpired(new Item().withString("value", "permanent")));
+		Assert.assertFalse(items.isExpired(new Item().withLong("expiry", now + 60)));
+		Assert.assertTrue(items.isExpired(new Item().withLong("expiry", now - 1)));
+		Assert.assertTrue(items.expiry(Duration.ofSeconds(10)) >= now + 10);
+	}
+
+	@Test
+	public void partitionValueTest() {
+		Assert.assertEquals(KeyspaceItems.partitionValue("ks", 1, "key"), "ks");
+		Assert.assertEquals(KeyspaceItems.partitionValue("ks", 4, "key"), KeyspaceItems.partitionValue("ks", 4, "key"));
+		Assert.assertTrue(KeyspaceItems.partitionValue("ks", 4, "key").matches("ks#[0-3]"));
+		Assert.assertEquals(KeyspaceItems.shardValue("ks", 2), "ks#2");
+	}
+}
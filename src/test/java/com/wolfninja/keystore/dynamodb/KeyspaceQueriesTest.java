@@ -0,0 +1,39 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+
+public class KeyspaceQueriesTest {
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void queryRequiresPositivePageSizeTest() {
+		new KeyspaceQueries("ks", DynamoDbAdapter.create(EasyMock.createMock(Table.class))).query(0, true, true,
+				item -> item, item -> "");
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void queryMergesShardsInKeyOrderTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter
+				.builder(new InMemoryDynamoDB().createTable("ut_table", "ut_keyspace", "ut_key")) //
+				.withAttributeNames("ut_keyspace", "ut_key", "ut_value", "ut_version") //
+				.withKeyspaceShards("ks", 4) //
+				.withExecutor(Runnable::run) //
+				.build();
+		final DynamoDbKeyspace keyspace = new DynamoDbKeyspace("ks", adapter);
+		for (final String key : Arrays.asList("d", "b", "e", "a", "c")) {
+			Assert.assertTrue(keyspace.set(key, key));
+		}
+
+		Assert.assertEquals(new KeyspaceQueries("ks", adapter) //
+				.query(2, true, true, item -> item.getString("ut_key"), Function.identity()) //
+				.collect(Collectors.toList()), Arrays.asList("a", "b", "c", "d", "e"));
+	}
+}
@@ -0,0 +1,50 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MergingIteratorTest {
+
+	@Test
+	public void keyOrderComparesCodePoints() {
+		// U+1F600 is encoded as a surrogate pair, which String#compareTo sorts before U+FF61
+		final String emoji = new String(Character.toChars(0x1F600));
+		final String halfwidth = "\uFF61";
+
+		Assert.assertTrue(emoji.compareTo(halfwidth) < 0);
+		Assert.assertTrue(MergingIterator.KEY_ORDER.compare(emoji, halfwidth) > 0);
+		Assert.assertTrue(MergingIterator.KEY_ORDER.compare("a", "ab") < 0);
+		Assert.assertEquals(MergingIterator.KEY_ORDER.compare("ab", "ab"), 0);
+	}
+
+	@Test
+	public void mergesSortedSources() {
+		final List<Iterator<String>> sources = Arrays.asList( //
+				Arrays.asList("a", "d", "e").iterator(), //
+				Collections.<String> emptyIterator(), //
+				Arrays.asList("b", "c", "f").iterator());
+
+		final List<String> actual = new ArrayList<>();
+		new MergingIterator<>(sources, Comparator.<String> naturalOrder()).forEachRemaining(actual::add);
+
+		Assert.assertEquals(actual, Arrays.asList("a", "b", "c", "d", "e", "f"));
+	}
+
+	@Test(expectedExceptions = NoSuchElementException.class)
+	public void nextWhenExhausted() {
+		final MergingIterator<String> iterator = new MergingIterator<>(
+				Collections.singletonList(Collections.<String> emptyIterator()), Comparator.<String> naturalOrder());
+
+		Assert.assertFalse(iterator.hasNext());
+		iterator.next();
+		Assert.fail("Expected exception!");
+	}
+}
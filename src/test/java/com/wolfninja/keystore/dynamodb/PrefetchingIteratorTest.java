@@ -0,0 +1,95 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+public class PrefetchingIteratorTest {
+
+	/**
+	 * Chain of in-memory pages, counting fetches
+	 */
+	static final class ListPage extends Page<Item, QueryOutcome> {
+
+		private final List<List<Item>> remaining;
+		private final AtomicInteger fetches;
+
+		ListPage(final List<List<Item>> pages, final AtomicInteger fetches) {
+			super(pages.get(0), new QueryOutcome(new QueryResult()));
+			this.remaining = pages.subList(1, pages.size());
+			this.fetches = fetches;
+			fetches.incrementAndGet();
+		}
+
+		@Override
+		public boolean hasNextPage() {
+			return !remaining.isEmpty();
+		}
+
+		@Override
+		public Page<Item, QueryOutcome> nextPage() {
+			if (remaining.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return new ListPage(remaining, fetches);
+		}
+	}
+
+	private static List<Item> items(final String... keys) {
+		final List<Item> items = new ArrayList<>();
+		for (final String key : keys) {
+			items.add(new Item().withString("key", key));
+		}
+		return items;
+	}
+
+	@Test
+	public void emptyTest() {
+		final AtomicInteger fetches = new AtomicInteger();
+		final PrefetchingIterator<QueryOutcome, String> iterator = new PrefetchingIterator<>(
+				() -> new ListPage(Arrays.asList(Collections.<Item> emptyList()), fetches),
+				item -> item.getString("key"), Runnable::run);
+
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertEquals(fetches.get(), 1);
+	}
+
+	@Test(expectedExceptions = NoSuchElementException.class)
+	public void nextPastEndTest() {
+		final PrefetchingIterator<QueryOutcome, String> iterator = new PrefetchingIterator<>(
+				() -> new ListPage(Arrays.asList(items("a")), new AtomicInteger()), item -> item.getString("key"),
+				Runnable::run);
+		iterator.next();
+		iterator.next();
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void prefetchesNextPageTest() {
+		final AtomicInteger fetches = new AtomicInteger();
+		final PrefetchingIterator<QueryOutcome, String> iterator = new PrefetchingIterator<>(
+				() -> new ListPage(Arrays.asList(items("a", "b"), Collections.<Item> emptyList(), items("c")),
+						fetches),
+				item -> item.getString("key"), Runnable::run);
+
+		Assert.assertEquals(fetches.get(), 0);
+		Assert.assertEquals(iterator.next(), "a");
+		// Second page requested as soon as the first is available
+		Assert.assertEquals(fetches.get(), 2);
+		Assert.assertEquals(iterator.next(), "b");
+		Assert.assertEquals(iterator.next(), "c");
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertEquals(fetches.get(), 3);
+	}
+}
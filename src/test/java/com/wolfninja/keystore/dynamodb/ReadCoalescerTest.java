@@ -0,0 +1,122 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.document.Item;
+
+public class ReadCoalescerTest {
+
+	private ReadCoalescer coalescer;
+
+	private CountDownLatch started;
+
+	private CountDownLatch release;
+
+	private AtomicInteger requests;
+
+	/**
+	 * Start a read of the whole item on another thread, blocking until released
+	 */
+	private CompletableFuture<Item> blockedRead(final String key, final boolean consistentRead, final Item result) {
+		return CompletableFuture.supplyAsync(() -> coalescer.read("ks", key, consistentRead, false, () -> {
+			requests.incrementAndGet();
+			started.countDown();
+			await(release);
+			return result;
+		}));
+	}
+
+	private static void await(final CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (final InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@BeforeMethod
+	public void ReadCoalescer() {
+		coalescer = new ReadCoalescer();
+		started = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		requests = new AtomicInteger();
+	}
+
+	@Test
+	public void concurrentReadsShareRequestTest() {
+		final Item item = new Item().withString("value", "chang");
+		final CompletableFuture<Item> leader = blockedRead("key", true, item);
+		await(started);
+
+		final CompletableFuture<Item> follower = CompletableFuture
+				.supplyAsync(() -> coalescer.read("ks", "key", true, false, () -> {
+					throw new AssertionError("Expected coalesced read");
+				}));
+		final CompletableFuture<Item> exists = CompletableFuture
+				.supplyAsync(() -> coalescer.read("ks", "key", true, true, () -> {
+					throw new AssertionError("Expected coalesced read");
+				}));
+		while (coalescer.getCoalescedCount() < 2) {
+			Thread.yield();
+		}
+		release.countDown();
+
+		Assert.assertSame(leader.join(), item);
+		Assert.assertSame(follower.join(), item);
+		Assert.assertSame(exists.join(), item);
+		Assert.assertEquals(coalescer.getRequestCount(), 1L);
+		Assert.assertEquals(requests.get(), 1);
+	}
+
+	@Test
+	public void differentConsistencyNotSharedTest() {
+		final CompletableFuture<Item> leader = blockedRead("key", true, null);
+		await(started);
+
+		final Item actual = coalescer.read("ks", "key", false, false, () -> new Item());
+		release.countDown();
+
+		Assert.assertNotNull(actual);
+		Assert.assertNull(leader.join());
+		Assert.assertEquals(coalescer.getRequestCount(), 2L);
+		Assert.assertEquals(coalescer.getCoalescedCount(), 0L);
+	}
+
+	@Test
+	public void failureIsSharedAndClearedTest() {
+		try {
+			coalescer.read("ks", "key", true, false, () -> {
+				throw new AmazonServiceException("Timeout");
+			});
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			// expected
+		}
+
+		final Item item = new Item();
+		Assert.assertSame(coalescer.read("ks", "key", true, false, () -> item), item);
+		Assert.assertEquals(coalescer.getRequestCount(), 2L);
+	}
+
+	@Test
+	public void writeStopsSharingTest() {
+		final CompletableFuture<Item> leader = blockedRead("key", true, null);
+		await(started);
+
+		coalescer.invalidate("ks", "key");
+		final Item item = new Item();
+		final Item actual = coalescer.read("ks", "key", true, false, () -> item);
+		release.countDown();
+
+		Assert.assertSame(actual, item);
+		Assert.assertNull(leader.join());
+		Assert.assertEquals(coalescer.getCoalescedCount(), 0L);
+	}
+}
@@ -0,0 +1,110 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Operation;
+import com.wolfninja.keystore.dynamodb.KeyspaceMetrics.Outcome;
+import com.wolfninja.keystore.dynamodb.RecordingKeyspaceMetrics.Snapshot;
+
+public class RecordingKeyspaceMetricsTest {
+
+	private RecordingKeyspaceMetrics metrics;
+
+	@BeforeMethod
+	public void recordingKeyspaceMetricsTest() {
+		metrics = new RecordingKeyspaceMetrics();
+	}
+
+	@Test
+	public void bucketTest() {
+		long previousLimit = -1;
+		for (int bucket = 0; bucket < RecordingKeyspaceMetrics.BUCKETS - 1; bucket++) {
+			final long limit = RecordingKeyspaceMetrics.bucketLimit(bucket);
+			Assert.assertTrue(limit > previousLimit);
+			Assert.assertEquals(RecordingKeyspaceMetrics.bucket(previousLimit + 1), bucket);
+			Assert.assertEquals(RecordingKeyspaceMetrics.bucket(limit), bucket);
+			previousLimit = limit;
+		}
+		Assert.assertEquals(RecordingKeyspaceMetrics.bucket(-1), 0);
+		Assert.assertEquals(RecordingKeyspaceMetrics.bucket(Long.MAX_VALUE), RecordingKeyspaceMetrics.BUCKETS - 1);
+	}
+
+	@Test
+	public void concurrentRecordTest() throws Exception {
+		final List<CompletableFuture<Void>> workers = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			workers.add(CompletableFuture.runAsync(() -> {
+				for (int i = 0; i < 1000; i++) {
+					metrics.recordOperation("ks", Operation.SET, Outcome.SUCCESS, 1000, 1);
+				}
+			}));
+		}
+		CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[workers.size()])).get();
+
+		final Snapshot snapshot = metrics.getSnapshot("ks", Operation.SET);
+		Assert.assertEquals(snapshot.getCount(), 4000);
+		Assert.assertEquals(snapshot.getPayloadSize(), 4000);
+	}
+
+	@Test
+	public void getSnapshotEmptyTest() {
+		final Snapshot snapshot = metrics.getSnapshot("ks", Operation.GET);
+
+		Assert.assertEquals(snapshot.getCount(), 0);
+		Assert.assertEquals(snapshot.getLatencyMicros(0.99), 0);
+		Assert.assertEquals(snapshot.getMeanLatencyNanos(), 0);
+		Assert.assertEquals(snapshot.getRetries(), 0);
+		Assert.assertEquals(snapshot.getMeanAttempts(), 0.0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void getLatencyMicrosRequiresQuantileTest() {
+		metrics.getSnapshot("ks", Operation.GET).getLatencyMicros(1.5);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void recordOperationTest() {
+		for (int i = 1; i <= 100; i++) {
+			metrics.recordOperation("ks", Operation.GET, Outcome.SUCCESS, TimeUnit.MILLISECONDS.toNanos(i), 10);
+		}
+		metrics.recordOperation("ks", Operation.GET, Outcome.THROTTLED, 0, 0);
+		metrics.recordOperation("other", Operation.GET, Outcome.SUCCESS, 0, 0);
+		metrics.recordOperation("ks", Operation.ADD, Outcome.CONDITION_FAILED, 0, 0);
+
+		final Snapshot snapshot = metrics.getSnapshot("ks", Operation.GET);
+		Assert.assertEquals(snapshot.getCount(), 101);
+		Assert.assertEquals(snapshot.getCount(Outcome.SUCCESS), 100);
+		Assert.assertEquals(snapshot.getCount(Outcome.THROTTLED), 1);
+		Assert.assertEquals(snapshot.getCount(Outcome.CONDITION_FAILED), 0);
+		Assert.assertEquals(snapshot.getPayloadSize(), 1000);
+		Assert.assertEquals(snapshot.getMeanLatencyNanos(), TimeUnit.MILLISECONDS.toNanos(5050) / 101);
+		final long median = snapshot.getLatencyMicros(0.5);
+		Assert.assertTrue(median >= 50_000 && median < 50_000 * 5 / 4, "Median " + median);
+		final long p99 = snapshot.getLatencyMicros(0.99);
+		Assert.assertTrue(p99 >= 99_000 && p99 < 99_000 * 5 / 4, "99th percentile " + p99);
+		Assert.assertEquals(snapshot.getLatencyMicros(0), 0);
+		Assert.assertEquals(metrics.getSnapshot("ks", Operation.ADD).getCount(Outcome.CONDITION_FAILED), 1);
+	}
+
+	@Test
+	public void recordRetryTest() {
+		metrics.recordRetry("ks", Operation.SET_ALL);
+		metrics.recordRetry("ks", Operation.SET_ALL);
+
+		Assert.assertEquals(metrics.getSnapshot("ks", Operation.SET_ALL).getRetries(), 2);
+		Assert.assertEquals(metrics.getSnapshot("ks", Operation.SET_ALL).getCount(), 0);
+		Assert.assertEquals(metrics.getSnapshot("ks", Operation.DELETE_ALL).getRetries(), 0);
+
+		metrics.recordOperation("ks", Operation.SET_ALL, Outcome.SUCCESS, 1000, 0);
+		metrics.recordOperation("ks", Operation.SET_ALL, Outcome.SUCCESS, 1000, 0);
+		Assert.assertEquals(metrics.getSnapshot("ks", Operation.SET_ALL).getMeanAttempts(), 2.0);
+	}
+}
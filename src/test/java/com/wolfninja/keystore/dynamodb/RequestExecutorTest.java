@@ -0,0 +1,47 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RequestExecutorTest {
+
+	@Test(timeOut = 30_000)
+	public void nestedChunksRunOnCallingThread() throws Exception {
+		final ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			final RequestExecutor executor = new RequestExecutor(pool);
+			// Would wait forever for the only thread of the pool, which runs the outer chunks
+			final List<List<Integer>> results = BatchRequests.executeChunks(executor, Arrays.asList(1, 2, 3),
+					outer -> BatchRequests.executeChunks(executor, Arrays.asList(outer, outer * 10),
+							inner -> inner));
+
+			Assert.assertEquals(results,
+					Arrays.asList(Arrays.asList(1, 10), Arrays.asList(2, 20), Arrays.asList(3, 30)));
+		} finally {
+			pool.shutdown();
+			Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void runningTaskIsNested() {
+		final RequestExecutor executor = new RequestExecutor(Runnable::run);
+		final List<Boolean> nested = new ArrayList<>();
+
+		executor.execute(() -> {
+			executor.execute(() -> nested.add(RequestExecutor.isNested(executor)));
+			nested.add(RequestExecutor.isNested(executor));
+		});
+
+		Assert.assertEquals(nested, Arrays.asList(true, true));
+		Assert.assertFalse(RequestExecutor.isNested(executor));
+		Assert.assertFalse(RequestExecutor.isNested(Runnable::run));
+	}
+}
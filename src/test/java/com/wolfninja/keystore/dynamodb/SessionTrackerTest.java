@@ -0,0 +1,62 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SessionTrackerTest {
+
+	private AtomicLong now;
+
+	@BeforeMethod
+	public void SessionTracker() {
+		now = new AtomicLong(1_000L);
+	}
+
+	@Test
+	public void consistencyTest() {
+		final SessionTracker tracker = new SessionTracker(100L, 10, now::get);
+		tracker.record("ks", "written");
+
+		Assert.assertTrue(tracker.isConsistentRead("ks", "other", ReadConsistency.STRONG));
+		Assert.assertFalse(tracker.isConsistentRead("ks", "written", ReadConsistency.EVENTUAL));
+		Assert.assertTrue(tracker.isConsistentRead("ks", "written", ReadConsistency.SESSION));
+		Assert.assertFalse(tracker.isConsistentRead("ks", "other", ReadConsistency.SESSION));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidMaxKeys() {
+		new SessionTracker(100L, 0, now::get);
+		Assert.fail("Expected exception!");
+	}
+
+	@Test
+	public void overflowTreatsEveryKeyAsRecent() {
+		final SessionTracker tracker = new SessionTracker(100L, 2, now::get);
+		tracker.record("ks", "a");
+		tracker.record("ks", "b");
+		tracker.record("ks", "c");
+
+		Assert.assertTrue(tracker.isRecent("ks", "a"));
+		Assert.assertTrue(tracker.isRecent("ks", "never_written"));
+
+		now.addAndGet(100L);
+		Assert.assertFalse(tracker.isRecent("ks", "a"));
+		Assert.assertFalse(tracker.isRecent("ks", "never_written"));
+	}
+
+	@Test
+	public void recentWithinWindow() {
+		final SessionTracker tracker = new SessionTracker(100L, 10, now::get);
+		tracker.record("ks", "key");
+
+		now.addAndGet(99L);
+		Assert.assertTrue(tracker.isRecent("ks", "key"));
+		Assert.assertFalse(tracker.isRecent("other_ks", "key"));
+
+		now.addAndGet(1L);
+		Assert.assertFalse(tracker.isRecent("ks", "key"));
+	}
+}
@@ -0,0 +1,182 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+public class TableExporterTest {
+
+	/**
+	 * Chain of in-memory scan pages, reporting the last item of each page as last evaluated key
+	 */
+	private static final class ScanPage extends Page<Item, ScanOutcome> {
+
+		private final List<List<Item>> remaining;
+
+		ScanPage(final List<List<Item>> pages) {
+			super(pages.get(0), new ScanOutcome(new ScanResult() //
+					.withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(0.5d)) //
+					.withLastEvaluatedKey(pages.size() > 1 ? lastKey(pages.get(0)) : null)));
+			this.remaining = pages.subList(1, pages.size());
+		}
+
+		@Override
+		public boolean hasNextPage() {
+			return !remaining.isEmpty();
+		}
+
+		@Override
+		public Page<Item, ScanOutcome> nextPage() {
+			if (remaining.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return new ScanPage(remaining);
+		}
+	}
+
+	private static Item item(final String key) {
+		return new Item().withPrimaryKey("keyspace", "ks", "key", key).withString("value", "v_" + key);
+	}
+
+	private static Map<String, AttributeValue> lastKey(final List<Item> page) {
+		final Item last = page.get(page.size() - 1);
+		final Map<String, AttributeValue> key = new HashMap<>();
+		key.put("keyspace", new AttributeValue(last.getString("keyspace")));
+		key.put("key", new AttributeValue(last.getString("key")));
+		return key;
+	}
+
+	private static Properties checkpoint(final Path file) throws IOException {
+		final Properties properties = new Properties();
+		try (final InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+		return properties;
+	}
+
+	private Path directory;
+
+	private Table mockTable;
+
+	@SuppressWarnings("unchecked")
+	private ItemCollection<ScanOutcome> collection(final List<List<Item>> pages) {
+		final ItemCollection<ScanOutcome> mockCollection = EasyMock.createMock(ItemCollection.class);
+		EasyMock.expect(mockCollection.firstPage()).andReturn(new ScanPage(pages));
+		EasyMock.replay(mockCollection);
+		return mockCollection;
+	}
+
+	private TableExporter exporter(final int segments) {
+		return TableExporter.builder(DynamoDbAdapter.create(mockTable), directory) //
+				.withSegments(segments) //
+				.withReadCapacityUnits(1000d) //
+				.build();
+	}
+
+	@BeforeMethod
+	public void TableExporter() throws IOException {
+		directory = Files.createTempDirectory("export");
+		mockTable = EasyMock.createMock(Table.class);
+	}
+
+	@Test
+	public void exportTest() throws IOException {
+		final Capture<ScanSpec> scans = Capture.newInstance(CaptureType.ALL);
+		EasyMock.expect(mockTable.scan(EasyMock.capture(scans))) //
+				.andReturn(collection(Arrays.asList(Arrays.asList(item("a"), item("b")), Arrays.asList(item("c"))))) //
+				.andReturn(collection(Arrays.asList(Collections.<Item> emptyList())));
+		EasyMock.replay(mockTable);
+
+		final long actual = exporter(2).export();
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(actual, 3L);
+		Assert.assertEquals(scans.getValues().size(), 2);
+		for (final ScanSpec scan : scans.getValues()) {
+			Assert.assertEquals(scan.getTotalSegments(), Integer.valueOf(2));
+		}
+
+		final List<String> lines = Files.readAllLines(directory.resolve("segment-0000.ndjson"));
+		final List<String> lines2 = Files.readAllLines(directory.resolve("segment-0001.ndjson"));
+		Assert.assertEquals(lines.size() + lines2.size(), 3);
+		final List<String> segmentLines = lines.isEmpty() ? lines2 : lines;
+		Assert.assertEquals(Item.fromJSON(segmentLines.get(2)).getString("value"), "v_c");
+		Assert.assertEquals(checkpoint(directory.resolve("segment-0000.checkpoint")).getProperty("complete"), "true");
+		Assert.assertEquals(checkpoint(directory.resolve("segment-0001.checkpoint")).getProperty("complete"), "true");
+	}
+
+	@Test
+	public void resumeTest() throws IOException {
+		final byte[] exported = (item("a").toJSON() + "\n").getBytes(StandardCharsets.UTF_8);
+		Files.write(directory.resolve("segment-0000.ndjson"),
+				(item("a").toJSON() + "\npartial line").getBytes(StandardCharsets.UTF_8));
+		final Properties checkpoint = new Properties();
+		checkpoint.setProperty("totalSegments", "1");
+		checkpoint.setProperty("offset", Integer.toString(exported.length));
+		checkpoint.setProperty("items", "1");
+		checkpoint.setProperty("lastKeyspace", "ks");
+		checkpoint.setProperty("lastKey", "a");
+		try (final OutputStream out = Files.newOutputStream(directory.resolve("segment-0000.checkpoint"))) {
+			checkpoint.store(out, null);
+		}
+
+		final Capture<ScanSpec> scan = Capture.newInstance();
+		EasyMock.expect(mockTable.scan(EasyMock.capture(scan)))
+				.andReturn(collection(Arrays.asList(Arrays.asList(item("b")))));
+		EasyMock.replay(mockTable);
+
+		final long actual = exporter(1).export();
+		// Completed segments are skipped
+		final long actual2 = exporter(1).export();
+
+		EasyMock.verify(mockTable);
+		Assert.assertEquals(actual, 1L);
+		Assert.assertEquals(actual2, 0L);
+		Assert.assertTrue(scan.getValue().getExclusiveStartKey().contains(new KeyAttribute("key", "a")));
+		final List<String> lines = Files.readAllLines(directory.resolve("segment-0000.ndjson"));
+		Assert.assertEquals(lines.size(), 2);
+		Assert.assertEquals(Item.fromJSON(lines.get(1)).getString("key"), "b");
+		Assert.assertEquals(checkpoint(directory.resolve("segment-0000.checkpoint")).getProperty("items"), "2");
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void resumeWithDifferentSegmentsTest() throws IOException {
+		final Properties checkpoint = new Properties();
+		checkpoint.setProperty("totalSegments", "4");
+		try (final OutputStream out = Files.newOutputStream(directory.resolve("segment-0000.checkpoint"))) {
+			checkpoint.store(out, null);
+		}
+		EasyMock.replay(mockTable);
+
+		exporter(1).export();
+		Assert.fail("Expected exception!");
+	}
+}
@@ -0,0 +1,200 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.wolfninja.keystore.api.KeyValue;
+
+public class WriteBehindKeyspaceTest {
+
+	private DynamoDbKeyspace mockDelegate;
+
+	private List<Set<String>> failures;
+
+	private List<Runnable> scheduled;
+
+	private WriteBehindKeyspace keyspace;
+
+	private WriteBehindKeyspace keyspace(final WriteBehindConfig.Builder config) {
+		return new WriteBehindKeyspace("ut_keyspace", mockDelegate, config //
+				.withFailureListener((keyspaceName, keys, cause) -> failures.add(keys)) //
+				.build(), scheduled::add);
+	}
+
+	@BeforeMethod
+	public void WriteBehindKeyspace() {
+		mockDelegate = EasyMock.createMock(DynamoDbKeyspace.class);
+		failures = new ArrayList<>();
+		scheduled = new ArrayList<>();
+		keyspace = keyspace(WriteBehindConfig.builder());
+	}
+
+	@Test
+	public void conditionalWriteStoresBufferedWriteFirstTest() {
+		mockDelegate.setAll(Collections.singletonMap("add_first", "annie"));
+		EasyMock.expect(mockDelegate.add("add_first", "jeff")).andReturn(false);
+		EasyMock.replay(mockDelegate);
+
+		keyspace.set("add_first", "annie");
+		final boolean actual = keyspace.add("add_first", "jeff");
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertFalse(actual);
+		Assert.assertEquals(keyspace.getPendingCount(), 0);
+	}
+
+	@Test
+	public void deleteTest() {
+		EasyMock.expect(mockDelegate.exists("delete_first")).andReturn(true);
+		mockDelegate.deleteAll(Arrays.asList("delete_first"));
+		EasyMock.replay(mockDelegate);
+
+		final boolean actual = keyspace.delete("delete_first");
+		final boolean actual2 = keyspace.delete("delete_first");
+		final boolean actual3 = keyspace.exists("delete_first");
+		keyspace.flush();
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertTrue(actual);
+		Assert.assertFalse(actual2);
+		Assert.assertFalse(actual3);
+	}
+
+	@Test
+	public void failedFlushNotifiesListenerTest() {
+		mockDelegate.setAll(Collections.singletonMap("set_first", "troy"));
+		EasyMock.expectLastCall().andThrow(new AmazonServiceException("Timeout"));
+		EasyMock.replay(mockDelegate);
+
+		keyspace.set("set_first", "troy");
+		try {
+			keyspace.flush();
+			Assert.fail("Expected exception!");
+		} catch (final AmazonServiceException e) {
+			// expected
+		}
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertEquals(failures, Arrays.asList(Collections.singleton("set_first")));
+		Assert.assertEquals(keyspace.getPendingCount(), 0);
+	}
+
+	@Test
+	public void flushThresholdSchedulesFlushTest() {
+		keyspace = keyspace(WriteBehindConfig.builder().withFlushThreshold(2));
+		final Map<String, String> expected = new HashMap<>();
+		expected.put("set_first", "pierce");
+		expected.put("set_second", "shirley");
+		mockDelegate.setAll(expected);
+		EasyMock.replay(mockDelegate);
+
+		keyspace.set("set_first", "pierce");
+		Assert.assertTrue(scheduled.isEmpty());
+		keyspace.set("set_second", "shirley");
+		keyspace.set("set_second", "shirley");
+		Assert.assertEquals(scheduled.size(), 1);
+		scheduled.get(0).run();
+
+		EasyMock.verify(mockDelegate);
+		Assert.assertEquals(keyspace.getPendingCount(), 0);
+	}
+
+	@Test
+	public void fullBufferWithSameThreadExecutorTest() throws InterruptedException {
+		final InMemoryDynamoDB dynamo = new InMemoryDynamoDB();
+		final DynamoDbKeyspace stored = new DynamoDbKeyspace("ut_keyspace", DynamoDbAdapter
+				.builder(dynamo.createTable("ut_table", "ut_attr_keyspace", "ut_attr_key")) //
+				.withAttributeNames("ut_attr_keyspace", "ut_attr_key", "ut_attr_val", "ut_attr_version") //
+				.build());
+		dynamo.setLatency(Duration.ofMillis(1));
+		final WriteBehindKeyspace sameThread = new WriteBehindKeyspace("ut_keyspace", stored,
+				WriteBehindConfig.builder().withMaxPendingKeys(2).withFlushThreshold(2).build(), Runnable::run);
+		final List<Thread> writers = new ArrayList<>();
+		for (int t = 0; t < 2; t++) {
+			final String prefix = "writer" + t + "_";
+			final Thread writer = new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					sameThread.set(prefix + i, "value" + i);
+				}
+			});
+			writers.add(writer);
+			writer.start();
+		}
+		for (final Thread writer : writers) {
+			writer.join(TimeUnit.SECONDS.toMillis(30));
+			Assert.assertFalse(writer.isAlive(), "Deadlocked writer");
+		}
+		sameThread.flush();
+
+		Assert.assertEquals(sameThread.getPendingCount(), 0);
+		Assert.assertEquals(stored.get("writer0_99"), Optional.of("value99"));
+		Assert.assertEquals(stored.get("writer1_99"), Optional.of("value99"));
+	}
+
+	@Test
+	public void lastWriteWinsTest() {
+		mockDelegate.setAll(Collections.singletonMap("set_first", "abed"));
+		EasyMock.replay(mockDelegate);
+
+		keyspace.set("set_first", "britta");
+		keyspace.delete("set_first");
+		keyspace.set("set_first", "abed");
+		Assert.assertEquals(keyspace.getPendingCount(), 1);
+		keyspace.flush();
+		keyspace.flush();
+
+		EasyMock.verify(mockDelegate);
+	}
+
+	@Test
+	public void readsSeeBufferedWritesTest() {
+		EasyMock.expect(mockDelegate.get("get_other")).andReturn(Optional.empty());
+		EasyMock.expect(mockDelegate.isMonotonic()).andReturn(false);
+		EasyMock.replay(mockDelegate);
+
+		keyspace.set("get_first", "dean");
+
+		Assert.assertEquals(keyspace.get("get_first"), Optional.of("dean"));
+		final KeyValue keyValue = keyspace.gets("get_first").get();
+		Assert.assertEquals(keyValue.getValue(), "dean");
+		Assert.assertEquals(keyValue.getVersion(), "dean".hashCode());
+		Assert.assertTrue(keyspace.exists("get_first"));
+		Assert.assertFalse(keyspace.get("get_other").isPresent());
+		EasyMock.verify(mockDelegate);
+	}
+
+	@Test
+	public void getsStoresBufferedWriteOfMonotonicVersionsTest() {
+		final KeyValue stored = KeyValue.create("gets_first", "dean", 3L);
+		EasyMock.expect(mockDelegate.isMonotonic()).andReturn(true);
+		mockDelegate.setAll(Collections.singletonMap("gets_first", "dean"));
+		EasyMock.expect(mockDelegate.gets("gets_first")).andReturn(Optional.of(stored));
+		EasyMock.replay(mockDelegate);
+
+		keyspace.set("gets_first", "dean");
+
+		Assert.assertEquals(keyspace.gets("gets_first"), Optional.of(stored));
+		Assert.assertEquals(keyspace.getPendingCount(), 0);
+		EasyMock.verify(mockDelegate);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void thresholdAboveMaxPendingTest() {
+		WriteBehindConfig.builder().withMaxPendingKeys(10).withFlushThreshold(11).build();
+		Assert.fail("Expected exception!");
+	}
+}
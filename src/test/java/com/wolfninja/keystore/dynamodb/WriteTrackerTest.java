@@ -0,0 +1,66 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.util.Arrays;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.dynamodbv2.document.Table;
+
+public class WriteTrackerTest {
+
+	@Test
+	public void consistencyWithoutSessionsTest() {
+		final WriteTracker tracker = new WriteTracker("ks",
+				DynamoDbAdapter.create(EasyMock.createMock(Table.class)));
+		tracker.written("written");
+
+		Assert.assertTrue(tracker.isConsistentRead("written", ReadConsistency.STRONG));
+		Assert.assertFalse(tracker.isConsistentRead("written", ReadConsistency.EVENTUAL));
+		// Writes are not tracked, so a session read cannot tell a recent write
+		Assert.assertTrue(tracker.isConsistentRead("other", ReadConsistency.SESSION));
+	}
+
+	@Test
+	public void mightContainWithoutKeyFilterTest() {
+		final WriteTracker tracker = new WriteTracker("ks",
+				DynamoDbAdapter.create(EasyMock.createMock(Table.class)));
+
+		Assert.assertTrue(tracker.mightContain("any"));
+		Assert.assertEquals(tracker.mightContainAll(Arrays.asList("a", "b")), Arrays.asList("a", "b"));
+	}
+
+	@Test
+	public void writtenAllRecordsFailedWritesTest() {
+		final WriteTracker tracker = new WriteTracker("ks", DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withReadConsistency(ReadConsistency.SESSION) //
+				.build());
+		try {
+			tracker.writtenAll(Arrays.asList("a", "b"), () -> {
+				throw new IllegalStateException("Failed");
+			});
+			Assert.fail("Expected exception!");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		Assert.assertTrue(tracker.isConsistentRead("a", ReadConsistency.SESSION));
+		Assert.assertTrue(tracker.isConsistentRead("b", ReadConsistency.SESSION));
+		Assert.assertFalse(tracker.isConsistentRead("c", ReadConsistency.SESSION));
+	}
+
+	@Test
+	public void writtenSharesSessionsAcrossTrackersTest() {
+		final DynamoDbAdapter adapter = DynamoDbAdapter.builder(EasyMock.createMock(Table.class)) //
+				.withReadConsistency(ReadConsistency.SESSION) //
+				.build();
+		final WriteTracker tracker = new WriteTracker("ks", adapter);
+		final WriteTracker other = new WriteTracker("ks", adapter);
+
+		tracker.written("written");
+
+		Assert.assertTrue(other.isConsistentRead("written", ReadConsistency.SESSION));
+		Assert.assertFalse(new WriteTracker("other", adapter).isConsistentRead("written", ReadConsistency.SESSION));
+	}
+}
@@ -0,0 +1,903 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.OperationType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.util.Throwables;
+
+/**
+ * In-memory, thread-safe stand-in for the DynamoDB service, for tests that need real storage semantics without AWS
+ * <p>
+ * {@link #getClient()} answers the item, batch, Query and Scan requests the keyspaces send, evaluating condition,
+ * update and projection expressions (see {@link InMemoryExpression}) as well as the legacy {@code Expected},
+ * {@code AttributeUpdates} and {@code AttributesToGet} parameters, and honouring {@code ReturnValues}. Query and Scan
+ * pages stop at {@code Limit} or 1 MB like the service does, and items beyond 400 KB are rejected. Table management
+ * is limited to creating, describing and deleting tables, which become active immediately. {@link #getAsyncClient()}
+ * answers the same requests on the calling thread, then invokes the handler.
+ * </p>
+ * <p>
+ * Each table serializes its requests, so conditional writes are atomic. {@link #setLatency(Duration)} delays every
+ * request outside of that lock, and {@link #throttle(int)} makes the next requests fail with
+ * {@link ProvisionedThroughputExceededException}, or, for batch requests, return all of their items unprocessed.
+ * </p>
+ * <p>
+ * Tables created with a stream enabled record every item change with its keys, new and old image, read through the
+ * {@link ChangeStreamSource}s of {@link #changeStream(String)}.
+ * </p>
+ */
+final class InMemoryDynamoDB {
+
+	/**
+	 * Maximum size of an item, in bytes
+	 */
+	static final int MAX_ITEM_BYTES = 400 * 1024;
+
+	private static final int MAX_PAGE_BYTES = 1024 * 1024;
+	private static final int MAX_BATCH_GET_KEYS = 100;
+	private static final int MAX_BATCH_WRITE_ITEMS = 25;
+
+	private final Map<String, MemoryTable> tables = new ConcurrentHashMap<>();
+	private final AtomicInteger throttledRequests = new AtomicInteger();
+	private final AtomicLong requests = new AtomicLong();
+	private final AmazonDynamoDB client;
+	private final AmazonDynamoDBAsync asyncClient;
+	private volatile long latencyNanos;
+
+	InMemoryDynamoDB() {
+		client = (AmazonDynamoDB) Proxy.newProxyInstance(AmazonDynamoDB.class.getClassLoader(),
+				new Class<?>[] { AmazonDynamoDB.class }, (proxy, method, args) -> invoke(method, args));
+		asyncClient = (AmazonDynamoDBAsync) Proxy.newProxyInstance(AmazonDynamoDBAsync.class.getClassLoader(),
+				new Class<?>[] { AmazonDynamoDBAsync.class }, (proxy, method, args) -> invokeAsync(method, args));
+	}
+
+	/**
+	 * Get a new reader of the changes of a table created with a stream enabled, starting at the end of the stream
+	 * once first polled
+	 * 
+	 * @param tableName
+	 *            Table name
+	 * @return {@link ChangeStreamSource} reading the changes of the table
+	 */
+	ChangeStreamSource changeStream(final String tableName) {
+		final MemoryTable table = table(tableName);
+		if (table.changes == null)
+			throw InMemoryExpression.validation("No stream is enabled on table " + tableName);
+		final AtomicInteger position = new AtomicInteger(-1);
+		return () -> {
+			synchronized (table) {
+				final int from = position.get() < 0 ? table.changes.size() : position.get();
+				position.set(table.changes.size());
+				return new ArrayList<>(table.changes.subList(from, table.changes.size()));
+			}
+		};
+	}
+
+	/**
+	 * Create a table with a String hash key and a String range key, the layout {@link DynamoDbAdapter} expects
+	 * 
+	 * @param tableName
+	 *            Table name
+	 * @param hashKey
+	 *            Name of the hash key attribute
+	 * @param rangeKey
+	 *            Name of the range key attribute
+	 * @return {@link Table} backed by this stand-in
+	 */
+	Table createTable(final String tableName, final String hashKey, final String rangeKey) {
+		return getDynamoDB().createTable(new CreateTableRequest() //
+				.withTableName(tableName) //
+				.withKeySchema(new KeySchemaElement(hashKey, KeyType.HASH),
+						new KeySchemaElement(rangeKey, KeyType.RANGE)) //
+				.withAttributeDefinitions(new AttributeDefinition(hashKey, ScalarAttributeType.S),
+						new AttributeDefinition(rangeKey, ScalarAttributeType.S)) //
+				.withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+	}
+
+	/**
+	 * Get the asynchronous client backed by this stand-in, completing each request on the calling thread
+	 * 
+	 * @return {@link AmazonDynamoDBAsync} client
+	 */
+	AmazonDynamoDBAsync getAsyncClient() {
+		return asyncClient;
+	}
+
+	/**
+	 * Get the low-level client backed by this stand-in
+	 * 
+	 * @return {@link AmazonDynamoDB} client
+	 */
+	AmazonDynamoDB getClient() {
+		return client;
+	}
+
+	/**
+	 * Get a new document API entry point backed by this stand-in
+	 * 
+	 * @return {@link DynamoDB} instance
+	 */
+	DynamoDB getDynamoDB() {
+		return new DynamoDB(client);
+	}
+
+	/**
+	 * Get the number of requests received so far, including throttled ones
+	 * 
+	 * @return Request count
+	 */
+	long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Delay every following request
+	 * 
+	 * @param latency
+	 *            Delay per request, zero for none
+	 */
+	void setLatency(final Duration latency) {
+		latencyNanos = latency.toNanos();
+	}
+
+	/**
+	 * Throttle the next requests
+	 * 
+	 * @param requests
+	 *            Number of requests to throttle, in addition to those still pending
+	 */
+	void throttle(final int requests) {
+		throttledRequests.addAndGet(requests);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object invokeAsync(final Method method, final Object[] args) throws Throwable {
+		if (!method.getName().endsWith("Async") || args == null || args.length == 0) {
+			return invoke(method, args);
+		}
+		final AmazonWebServiceRequest request = (AmazonWebServiceRequest) args[0];
+		final AsyncHandler<AmazonWebServiceRequest, Object> handler = args.length > 1
+				? (AsyncHandler<AmazonWebServiceRequest, Object>) args[1] : null;
+		final CompletableFuture<Object> future = new CompletableFuture<>();
+		try {
+			final Object result = invoke(method, new Object[] { request });
+			future.complete(result);
+			if (handler != null) {
+				handler.onSuccess(request, result);
+			}
+		} catch (final Exception e) {
+			future.completeExceptionally(e);
+			if (handler != null) {
+				handler.onError(e);
+			}
+		}
+		return future;
+	}
+
+	private Object invoke(final Method method, final Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			try {
+				return method.invoke(this, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+		if (args == null || args.length != 1 || !(args[0] instanceof AmazonWebServiceRequest)) {
+			if (method.getName().equals("shutdown")) {
+				return null;
+			}
+			throw new UnsupportedOperationException("Not supported by the in-memory stand-in: " + method);
+		}
+
+		requests.incrementAndGet();
+		final long latency = latencyNanos;
+		if (latency > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(latency);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw Throwables.failure(e);
+			}
+		}
+		final boolean throttled = throttledRequests.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0;
+
+		final Object request = args[0];
+		if (request instanceof BatchGetItemRequest) {
+			return batchGetItem((BatchGetItemRequest) request, throttled);
+		}
+		if (request instanceof BatchWriteItemRequest) {
+			return batchWriteItem((BatchWriteItemRequest) request, throttled);
+		}
+		if (throttled)
+			throw serviceException(new ProvisionedThroughputExceededException(
+					"The level of configured provisioned throughput for the table was exceeded"));
+
+		if (request instanceof GetItemRequest) {
+			return getItem((GetItemRequest) request);
+		} else if (request instanceof PutItemRequest) {
+			return putItem((PutItemRequest) request);
+		} else if (request instanceof UpdateItemRequest) {
+			return updateItem((UpdateItemRequest) request);
+		} else if (request instanceof DeleteItemRequest) {
+			return deleteItem((DeleteItemRequest) request);
+		} else if (request instanceof QueryRequest) {
+			return query((QueryRequest) request);
+		} else if (request instanceof ScanRequest) {
+			return scan((ScanRequest) request);
+		} else if (request instanceof CreateTableRequest) {
+			return createTable((CreateTableRequest) request);
+		} else if (request instanceof DescribeTableRequest) {
+			return new DescribeTableResult()
+					.withTable(table(((DescribeTableRequest) request).getTableName()).describe(TableStatus.ACTIVE));
+		} else if (request instanceof DeleteTableRequest) {
+			final MemoryTable removed = table(((DeleteTableRequest) request).getTableName());
+			tables.remove(removed.name);
+			return new DeleteTableResult().withTableDescription(removed.describe(TableStatus.DELETING));
+		}
+		throw new UnsupportedOperationException("Not supported by the in-memory stand-in: " + method);
+	}
+
+	private CreateTableResult createTable(final CreateTableRequest request) {
+		String hashKey = null;
+		String rangeKey = null;
+		for (final KeySchemaElement element : request.getKeySchema()) {
+			if (KeyType.HASH.toString().equals(element.getKeyType())) {
+				hashKey = element.getAttributeName();
+			} else {
+				rangeKey = element.getAttributeName();
+			}
+		}
+		final MemoryTable table = new MemoryTable(request, hashKey, rangeKey);
+		if (tables.putIfAbsent(request.getTableName(), table) != null)
+			throw serviceException(new ResourceInUseException("Table already exists: " + request.getTableName()));
+		return new CreateTableResult().withTableDescription(table.describe(TableStatus.ACTIVE));
+	}
+
+	private GetItemResult getItem(final GetItemRequest request) {
+		final MemoryTable table = table(request.getTableName());
+		final Map<String, AttributeValue> item;
+		synchronized (table) {
+			item = table.items.get(table.key(request.getKey()));
+		}
+		final Set<String> projection = projection(request.getProjectionExpression(),
+				request.getExpressionAttributeNames(), request.getAttributesToGet());
+		return new GetItemResult().withItem(item == null ? null : copy(item, projection));
+	}
+
+	private PutItemResult putItem(final PutItemRequest request) {
+		final MemoryTable table = table(request.getTableName());
+		final Map<String, AttributeValue> item = copy(request.getItem(), null);
+		checkSize(item);
+		final Map<String, AttributeValue> old;
+		synchronized (table) {
+			final MemoryTable.Key key = table.key(item);
+			old = table.items.get(key);
+			checkCondition(old, request.getConditionExpression(), request.getExpressionAttributeNames(),
+					request.getExpressionAttributeValues(), request.getExpected(), request.getConditionalOperator());
+			table.items.put(key, item);
+			table.recordChange(old, item);
+		}
+		return new PutItemResult().withAttributes(returned(request.getReturnValues(), old, null, null));
+	}
+
+	private UpdateItemResult updateItem(final UpdateItemRequest request) {
+		final MemoryTable table = table(request.getTableName());
+		final Map<String, AttributeValue> old;
+		final Map<String, AttributeValue> updated;
+		final Set<String> names;
+		synchronized (table) {
+			final MemoryTable.Key key = table.key(request.getKey());
+			old = table.items.get(key);
+			checkCondition(old, request.getConditionExpression(), request.getExpressionAttributeNames(),
+					request.getExpressionAttributeValues(), request.getExpected(), request.getConditionalOperator());
+			updated = old == null ? new HashMap<>(request.getKey()) : new HashMap<>(old);
+			if (request.getUpdateExpression() != null) {
+				names = InMemoryExpression.update(request.getUpdateExpression(), request.getExpressionAttributeNames(),
+						request.getExpressionAttributeValues(), updated);
+			} else {
+				names = applyAttributeUpdates(request.getAttributeUpdates(), updated);
+			}
+			if (names.contains(table.hashKey) || names.contains(table.rangeKey))
+				throw InMemoryExpression.validation("Cannot update attribute of the key");
+			checkSize(updated);
+			final Map<String, AttributeValue> stored = copy(updated, null);
+			table.items.put(key, stored);
+			table.recordChange(old, stored);
+		}
+		return new UpdateItemResult().withAttributes(returned(request.getReturnValues(), old, updated, names));
+	}
+
+	private DeleteItemResult deleteItem(final DeleteItemRequest request) {
+		final MemoryTable table = table(request.getTableName());
+		final Map<String, AttributeValue> old;
+		synchronized (table) {
+			final MemoryTable.Key key = table.key(request.getKey());
+			old = table.items.get(key);
+			checkCondition(old, request.getConditionExpression(), request.getExpressionAttributeNames(),
+					request.getExpressionAttributeValues(), request.getExpected(), request.getConditionalOperator());
+			table.items.remove(key);
+			table.recordChange(old, null);
+		}
+		return new DeleteItemResult().withAttributes(returned(request.getReturnValues(), old, null, null));
+	}
+
+	private QueryResult query(final QueryRequest request) {
+		final MemoryTable table = table(request.getTableName());
+		final InMemoryExpression.Condition keyCondition;
+		if (request.getKeyConditionExpression() != null) {
+			keyCondition = InMemoryExpression.condition(request.getKeyConditionExpression(),
+					request.getExpressionAttributeNames(), request.getExpressionAttributeValues());
+		} else {
+			keyCondition = legacyCondition(request.getKeyConditions());
+		}
+		final InMemoryExpression.Condition filter = request.getFilterExpression() == null ? item -> true
+				: InMemoryExpression.condition(request.getFilterExpression(), request.getExpressionAttributeNames(),
+						request.getExpressionAttributeValues());
+		final boolean forward = request.getScanIndexForward() == null || request.getScanIndexForward();
+
+		final Page page;
+		synchronized (table) {
+			NavigableMap<MemoryTable.Key, Map<String, AttributeValue>> items = forward ? table.items
+					: table.items.descendingMap();
+			if (request.getExclusiveStartKey() != null) {
+				items = items.tailMap(table.key(request.getExclusiveStartKey()), false);
+			}
+			page = page(table, items.values(), keyCondition, filter, request.getLimit());
+		}
+		final Set<String> projection = projection(request.getProjectionExpression(),
+				request.getExpressionAttributeNames(), request.getAttributesToGet());
+		final List<Map<String, AttributeValue>> items = new ArrayList<>(page.items.size());
+		for (final Map<String, AttributeValue> item : page.items) {
+			items.add(copy(item, projection));
+		}
+		return new QueryResult() //
+				.withItems(items) //
+				.withCount(items.size()) //
+				.withScannedCount(page.scanned) //
+				.withLastEvaluatedKey(page.lastEvaluatedKey);
+	}
+
+	private ScanResult scan(final ScanRequest request) {
+		final MemoryTable table = table(request.getTableName());
+		final int segment = request.getSegment() == null ? 0 : request.getSegment();
+		final int totalSegments = request.getTotalSegments() == null ? 1 : request.getTotalSegments();
+		final InMemoryExpression.Condition inSegment = item -> Math
+				.floorMod(item.get(table.hashKey).hashCode(), totalSegments) == segment;
+		final InMemoryExpression.Condition filter = request.getFilterExpression() == null ? item -> true
+				: InMemoryExpression.condition(request.getFilterExpression(), request.getExpressionAttributeNames(),
+						request.getExpressionAttributeValues());
+
+		final Page page;
+		synchronized (table) {
+			NavigableMap<MemoryTable.Key, Map<String, AttributeValue>> items = table.items;
+			if (request.getExclusiveStartKey() != null) {
+				items = items.tailMap(table.key(request.getExclusiveStartKey()), false);
+			}
+			page = page(table, items.values(), inSegment, filter, request.getLimit());
+		}
+		final Set<String> projection = projection(request.getProjectionExpression(),
+				request.getExpressionAttributeNames(), request.getAttributesToGet());
+		final List<Map<String, AttributeValue>> items = new ArrayList<>(page.items.size());
+		for (final Map<String, AttributeValue> item : page.items) {
+			items.add(copy(item, projection));
+		}
+		return new ScanResult() //
+				.withItems(items) //
+				.withCount(items.size()) //
+				.withScannedCount(page.scanned) //
+				.withLastEvaluatedKey(page.lastEvaluatedKey);
+	}
+
+	private BatchGetItemResult batchGetItem(final BatchGetItemRequest request, final boolean throttled) {
+		int keys = 0;
+		for (final KeysAndAttributes keysAndAttributes : request.getRequestItems().values()) {
+			keys += keysAndAttributes.getKeys().size();
+		}
+		if (keys > MAX_BATCH_GET_KEYS)
+			throw InMemoryExpression.validation("Too many items requested for the BatchGetItem call");
+		if (throttled) {
+			return new BatchGetItemResult() //
+					.withResponses(new HashMap<>()) //
+					.withUnprocessedKeys(request.getRequestItems());
+		}
+
+		final Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+		for (final Map.Entry<String, KeysAndAttributes> entry : request.getRequestItems().entrySet()) {
+			final MemoryTable table = table(entry.getKey());
+			final KeysAndAttributes keysAndAttributes = entry.getValue();
+			final Set<String> projection = projection(keysAndAttributes.getProjectionExpression(),
+					keysAndAttributes.getExpressionAttributeNames(), keysAndAttributes.getAttributesToGet());
+			final List<Map<String, AttributeValue>> items = new ArrayList<>();
+			synchronized (table) {
+				for (final Map<String, AttributeValue> key : keysAndAttributes.getKeys()) {
+					final Map<String, AttributeValue> item = table.items.get(table.key(key));
+					if (item != null) {
+						items.add(copy(item, projection));
+					}
+				}
+			}
+			responses.put(entry.getKey(), items);
+		}
+		return new BatchGetItemResult().withResponses(responses).withUnprocessedKeys(new HashMap<>());
+	}
+
+	private BatchWriteItemResult batchWriteItem(final BatchWriteItemRequest request, final boolean throttled) {
+		int writes = 0;
+		for (final List<WriteRequest> tableWrites : request.getRequestItems().values()) {
+			writes += tableWrites.size();
+		}
+		if (writes > MAX_BATCH_WRITE_ITEMS)
+			throw InMemoryExpression.validation("Too many items requested for the BatchWriteItem call");
+		if (throttled) {
+			return new BatchWriteItemResult().withUnprocessedItems(request.getRequestItems());
+		}
+
+		for (final Map.Entry<String, List<WriteRequest>> entry : request.getRequestItems().entrySet()) {
+			final MemoryTable table = table(entry.getKey());
+			for (final WriteRequest write : entry.getValue()) {
+				if (write.getPutRequest() != null) {
+					checkSize(write.getPutRequest().getItem());
+				}
+			}
+			synchronized (table) {
+				for (final WriteRequest write : entry.getValue()) {
+					if (write.getPutRequest() != null) {
+						final Map<String, AttributeValue> item = copy(write.getPutRequest().getItem(), null);
+						table.recordChange(table.items.put(table.key(item), item), item);
+					} else {
+						table.recordChange(table.items.remove(table.key(write.getDeleteRequest().getKey())), null);
+					}
+				}
+			}
+		}
+		return new BatchWriteItemResult().withUnprocessedItems(new HashMap<>());
+	}
+
+	private MemoryTable table(final String tableName) {
+		final MemoryTable table = tables.get(tableName);
+		if (table == null)
+			throw serviceException(new ResourceNotFoundException("Requested resource not found: " + tableName));
+		return table;
+	}
+
+	private static Page page(final MemoryTable table, final Collection<Map<String, AttributeValue>> items,
+			final InMemoryExpression.Condition keyCondition, final InMemoryExpression.Condition filter,
+			final Integer limit) {
+		final Page page = new Page();
+		int bytes = 0;
+		final Iterator<Map<String, AttributeValue>> iterator = items.iterator();
+		while (iterator.hasNext()) {
+			final Map<String, AttributeValue> item = iterator.next();
+			if (!keyCondition.test(item)) {
+				continue;
+			}
+			page.scanned++;
+			bytes += size(item);
+			if (filter.test(item)) {
+				page.items.add(item);
+			}
+			// Like the service, a full page reports its last key even when no items follow
+			if (limit != null && page.scanned >= limit || bytes >= MAX_PAGE_BYTES) {
+				page.lastEvaluatedKey = table.keyOf(item);
+				break;
+			}
+		}
+		return page;
+	}
+
+	private static void checkCondition(final Map<String, AttributeValue> current, final String conditionExpression,
+			final Map<String, String> names, final Map<String, AttributeValue> values,
+			final Map<String, ExpectedAttributeValue> expected, final String conditionalOperator) {
+		final Map<String, AttributeValue> item = current == null ? new HashMap<>() : current;
+		final boolean passed;
+		if (conditionExpression != null) {
+			passed = InMemoryExpression.condition(conditionExpression, names, values).test(item);
+		} else if (expected != null && !expected.isEmpty()) {
+			final boolean any = ConditionalOperator.OR.toString().equals(conditionalOperator);
+			boolean result = !any;
+			for (final Map.Entry<String, ExpectedAttributeValue> entry : expected.entrySet()) {
+				final boolean matches = expected(item.get(entry.getKey()), entry.getValue());
+				result = any ? result || matches : result && matches;
+			}
+			passed = result;
+		} else {
+			passed = true;
+		}
+		if (!passed)
+			throw serviceException(new ConditionalCheckFailedException("The conditional request failed"));
+	}
+
+	private static boolean expected(final AttributeValue actual, final ExpectedAttributeValue expected) {
+		if (expected.getComparisonOperator() != null) {
+			return compare(actual, expected.getComparisonOperator(), expected.getAttributeValueList() != null
+					? expected.getAttributeValueList() : singletonList(expected.getValue()));
+		}
+		if (Boolean.FALSE.equals(expected.getExists())) {
+			return actual == null;
+		}
+		if (expected.getValue() == null) {
+			return actual != null;
+		}
+		return InMemoryExpression.equal(actual, expected.getValue());
+	}
+
+	private static InMemoryExpression.Condition legacyCondition(final Map<String, Condition> conditions) {
+		return item -> {
+			for (final Map.Entry<String, Condition> entry : conditions.entrySet()) {
+				if (!compare(item.get(entry.getKey()), entry.getValue().getComparisonOperator(),
+						entry.getValue().getAttributeValueList())) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+	private static boolean compare(final AttributeValue actual, final String operator,
+			final List<AttributeValue> operands) {
+		final AttributeValue first = operands.isEmpty() ? null : operands.get(0);
+		switch (ComparisonOperator.fromValue(operator)) {
+		case NULL:
+			return actual == null;
+		case NOT_NULL:
+			return actual != null;
+		case EQ:
+			return InMemoryExpression.equal(actual, first);
+		case NE:
+			return actual == null || !InMemoryExpression.equal(actual, first);
+		case BEGINS_WITH:
+			return InMemoryExpression.beginsWith(actual, first);
+		case LT:
+			return InMemoryExpression.comparable(actual, first) && InMemoryExpression.compare(actual, first) < 0;
+		case LE:
+			return InMemoryExpression.comparable(actual, first) && InMemoryExpression.compare(actual, first) <= 0;
+		case GT:
+			return InMemoryExpression.comparable(actual, first) && InMemoryExpression.compare(actual, first) > 0;
+		case GE:
+			return InMemoryExpression.comparable(actual, first) && InMemoryExpression.compare(actual, first) >= 0;
+		case BETWEEN:
+			final AttributeValue last = operands.get(1);
+			return InMemoryExpression.comparable(actual, first) && InMemoryExpression.comparable(actual, last)
+					&& InMemoryExpression.compare(actual, first) >= 0 && InMemoryExpression.compare(actual, last) <= 0;
+		default:
+			throw InMemoryExpression.validation("Not supported by the in-memory stand-in: " + operator);
+		}
+	}
+
+	private static Set<String> applyAttributeUpdates(final Map<String, AttributeValueUpdate> updates,
+			final Map<String, AttributeValue> item) {
+		if (updates == null) {
+			return new HashSet<>();
+		}
+		for (final Map.Entry<String, AttributeValueUpdate> entry : updates.entrySet()) {
+			final String action = entry.getValue().getAction();
+			final AttributeValue value = entry.getValue().getValue();
+			if ("DELETE".equals(action)) {
+				if (value != null)
+					throw InMemoryExpression.validation("Set deletes are not supported by the in-memory stand-in");
+				item.remove(entry.getKey());
+			} else if ("ADD".equals(action)) {
+				final Map<String, AttributeValue> values = new HashMap<>();
+				values.put(":v", value);
+				InMemoryExpression.update("ADD #n :v", Collections.singletonMap("#n", entry.getKey()),
+						values, item);
+			} else {
+				item.put(entry.getKey(), value);
+			}
+		}
+		return updates.keySet();
+	}
+
+	private static Map<String, AttributeValue> returned(final String returnValues,
+			final Map<String, AttributeValue> old, final Map<String, AttributeValue> updated,
+			final Set<String> updatedNames) {
+		switch (returnValues == null ? ReturnValue.NONE : ReturnValue.fromValue(returnValues)) {
+		case ALL_OLD:
+			return old == null ? null : copy(old, null);
+		case UPDATED_OLD:
+			return old == null ? null : copy(old, updatedNames);
+		case ALL_NEW:
+			return copy(updated, null);
+		case UPDATED_NEW:
+			return copy(updated, updatedNames);
+		default:
+			return null;
+		}
+	}
+
+	private static Set<String> projection(final String projectionExpression, final Map<String, String> names,
+			final List<String> attributesToGet) {
+		if (projectionExpression != null) {
+			return InMemoryExpression.projection(projectionExpression, names);
+		}
+		return attributesToGet == null ? null : new HashSet<>(attributesToGet);
+	}
+
+	/**
+	 * Copy an item, so neither callers nor the SDK share mutable state with the stored item
+	 * 
+	 * @param item
+	 *            Item to copy
+	 * @param attributes
+	 *            Attributes to copy, null for all
+	 * @return Copied item
+	 */
+	private static Map<String, AttributeValue> copy(final Map<String, AttributeValue> item,
+			final Set<String> attributes) {
+		final Map<String, AttributeValue> copy = new HashMap<>();
+		for (final Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+			if (attributes == null || attributes.contains(entry.getKey())) {
+				copy.put(entry.getKey(), copy(entry.getValue()));
+			}
+		}
+		return copy;
+	}
+
+	private static AttributeValue copy(final AttributeValue value) {
+		final AttributeValue copy = value.clone();
+		if (value.getB() != null) {
+			copy.setB(value.getB().duplicate());
+		}
+		if (value.getBS() != null) {
+			final List<ByteBuffer> set = new ArrayList<>();
+			for (final ByteBuffer bytes : value.getBS()) {
+				set.add(bytes.duplicate());
+			}
+			copy.setBS(set);
+		}
+		if (value.getL() != null) {
+			final List<AttributeValue> list = new ArrayList<>();
+			for (final AttributeValue element : value.getL()) {
+				list.add(copy(element));
+			}
+			copy.setL(list);
+		}
+		if (value.getM() != null) {
+			copy.setM(copy(value.getM(), null));
+		}
+		return copy;
+	}
+
+	private static void checkSize(final Map<String, AttributeValue> item) {
+		if (size(item) > MAX_ITEM_BYTES)
+			throw InMemoryExpression.validation("Item size has exceeded the maximum allowed size");
+	}
+
+	private static int size(final Map<String, AttributeValue> item) {
+		int bytes = 0;
+		for (final Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+			bytes += entry.getKey().getBytes(StandardCharsets.UTF_8).length + size(entry.getValue());
+		}
+		return bytes;
+	}
+
+	private static int size(final AttributeValue value) {
+		int bytes = 1;
+		if (value.getS() != null) {
+			bytes += value.getS().getBytes(StandardCharsets.UTF_8).length;
+		} else if (value.getN() != null) {
+			bytes += (value.getN().length() + 1) / 2 + 1;
+		} else if (value.getB() != null) {
+			bytes += value.getB().remaining();
+		} else if (value.getSS() != null) {
+			for (final String element : value.getSS()) {
+				bytes += element.getBytes(StandardCharsets.UTF_8).length;
+			}
+		} else if (value.getNS() != null) {
+			for (final String element : value.getNS()) {
+				bytes += (element.length() + 1) / 2 + 1;
+			}
+		} else if (value.getBS() != null) {
+			for (final ByteBuffer element : value.getBS()) {
+				bytes += element.remaining();
+			}
+		} else if (value.getL() != null) {
+			for (final AttributeValue element : value.getL()) {
+				bytes += size(element) + 1;
+			}
+		} else if (value.getM() != null) {
+			bytes += size(value.getM()) + value.getM().size();
+		}
+		return bytes;
+	}
+
+	private static List<AttributeValue> singletonList(final AttributeValue value) {
+		final List<AttributeValue> list = new ArrayList<>(1);
+		list.add(value);
+		return list;
+	}
+
+	private static AmazonServiceException serviceException(final AmazonServiceException e) {
+		e.setStatusCode(400);
+		e.setErrorCode(e.getClass().getSimpleName());
+		e.setServiceName("AmazonDynamoDBv2");
+		return e;
+	}
+
+	/**
+	 * Items of a page of Query or Scan results
+	 */
+	private static final class Page {
+		final List<Map<String, AttributeValue>> items = new ArrayList<>();
+		int scanned;
+		Map<String, AttributeValue> lastEvaluatedKey;
+	}
+
+	/**
+	 * Items of a single table, ordered by hash key and then range key
+	 */
+	private static final class MemoryTable {
+
+		final String name;
+		final String hashKey;
+		final String rangeKey;
+		final CreateTableRequest definition;
+		final TreeMap<Key, Map<String, AttributeValue>> items = new TreeMap<>();
+		final List<Record> changes;
+
+		MemoryTable(final CreateTableRequest definition, final String hashKey, final String rangeKey) {
+			this.name = definition.getTableName();
+			this.definition = definition;
+			this.hashKey = hashKey;
+			this.rangeKey = rangeKey;
+			final boolean streamEnabled = definition.getStreamSpecification() != null
+					&& Boolean.TRUE.equals(definition.getStreamSpecification().getStreamEnabled());
+			this.changes = streamEnabled ? new ArrayList<>() : null;
+		}
+
+		/**
+		 * Record a change of an item in the stream of the table, if enabled; called holding the table lock
+		 * 
+		 * @param old
+		 *            Item before the change, null if it was created
+		 * @param updated
+		 *            Item after the change, null if it was deleted
+		 */
+		void recordChange(final Map<String, AttributeValue> old, final Map<String, AttributeValue> updated) {
+			if (changes == null || old == null && updated == null) {
+				return;
+			}
+			final OperationType type = old == null ? OperationType.INSERT
+					: updated == null ? OperationType.REMOVE : OperationType.MODIFY;
+			changes.add(new Record() //
+					.withEventName(type.toString()) //
+					.withDynamodb(new StreamRecord() //
+							.withKeys(keyOf(updated == null ? old : updated)) //
+							.withNewImage(updated == null ? null : copy(updated, null)) //
+							.withOldImage(old == null ? null : copy(old, null)) //
+							.withSequenceNumber(String.valueOf(changes.size())) //
+							.withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES)));
+		}
+
+		TableDescription describe(final TableStatus status) {
+			final ProvisionedThroughput throughput = definition.getProvisionedThroughput();
+			final int itemCount;
+			synchronized (this) {
+				itemCount = items.size();
+			}
+			return new TableDescription() //
+					.withTableName(name) //
+					.withTableStatus(status) //
+					.withKeySchema(definition.getKeySchema()) //
+					.withAttributeDefinitions(definition.getAttributeDefinitions()) //
+					.withItemCount((long) itemCount) //
+					.withProvisionedThroughput(throughput == null ? null
+							: new ProvisionedThroughputDescription() //
+									.withReadCapacityUnits(throughput.getReadCapacityUnits()) //
+									.withWriteCapacityUnits(throughput.getWriteCapacityUnits()));
+		}
+
+		Key key(final Map<String, AttributeValue> item) {
+			final AttributeValue hash = item.get(hashKey);
+			final AttributeValue range = rangeKey == null ? null : item.get(rangeKey);
+			if (hash == null || rangeKey != null && range == null)
+				throw InMemoryExpression.validation("The provided key element does not match the schema");
+			return new Key(hash, range);
+		}
+
+		Map<String, AttributeValue> keyOf(final Map<String, AttributeValue> item) {
+			final Map<String, AttributeValue> key = new HashMap<>();
+			key.put(hashKey, copy(item.get(hashKey)));
+			if (rangeKey != null) {
+				key.put(rangeKey, copy(item.get(rangeKey)));
+			}
+			return key;
+		}
+
+		/**
+		 * Primary key of an item
+		 */
+		static final class Key implements Comparable<Key> {
+
+			final AttributeValue hash;
+			final AttributeValue range;
+
+			Key(final AttributeValue hash, final AttributeValue range) {
+				this.hash = hash;
+				this.range = range;
+			}
+
+			@Override
+			public int compareTo(final Key other) {
+				final int byHash = InMemoryExpression.compare(hash, other.hash);
+				if (byHash != 0 || range == null) {
+					return byHash;
+				}
+				return InMemoryExpression.compare(range, other.range);
+			}
+		}
+	}
+}
@@ -0,0 +1,471 @@
+package com.wolfninja.keystore.dynamodb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Parser and evaluator of the DynamoDB expression language, as far as {@link InMemoryDynamoDB} needs it
+ * <p>
+ * Conditions support comparisons, {@code BETWEEN}, {@code attribute_exists}, {@code attribute_not_exists},
+ * {@code begins_with}, {@code AND}, {@code OR}, {@code NOT} and parentheses. Updates support {@code SET} with
+ * {@code +}, {@code -} and {@code if_not_exists}, {@code REMOVE} and numeric {@code ADD}. Only top-level attributes are
+ * addressed, there are no document paths.
+ * </p>
+ */
+final class InMemoryExpression {
+
+	/**
+	 * Condition, evaluated against an item
+	 */
+	interface Condition {
+		boolean test(Map<String, AttributeValue> item);
+	}
+
+	private interface Operand {
+		AttributeValue evaluate(Map<String, AttributeValue> item);
+	}
+
+	/**
+	 * Parse a condition expression
+	 * 
+	 * @param expression
+	 *            Condition expression
+	 * @param names
+	 *            Expression attribute names, may be null
+	 * @param values
+	 *            Expression attribute values, may be null
+	 * @return Parsed {@link Condition}
+	 */
+	static Condition condition(final String expression, final Map<String, String> names,
+			final Map<String, AttributeValue> values) {
+		final InMemoryExpression parser = new InMemoryExpression(expression, names, values);
+		final Condition condition = parser.parseOr();
+		parser.expectEnd();
+		return condition;
+	}
+
+	/**
+	 * Parse a projection expression
+	 * 
+	 * @param expression
+	 *            Projection expression
+	 * @param names
+	 *            Expression attribute names, may be null
+	 * @return Names of the projected attributes
+	 */
+	static Set<String> projection(final String expression, final Map<String, String> names) {
+		final InMemoryExpression parser = new InMemoryExpression(expression, names, null);
+		final Set<String> attributes = new LinkedHashSet<>();
+		do {
+			attributes.add(parser.parseName());
+		} while (parser.accept(","));
+		parser.expectEnd();
+		return attributes;
+	}
+
+	/**
+	 * Apply an update expression to an item
+	 * 
+	 * @param expression
+	 *            Update expression
+	 * @param names
+	 *            Expression attribute names, may be null
+	 * @param values
+	 *            Expression attribute values, may be null
+	 * @param item
+	 *            Item to update in place
+	 * @return Names of the updated attributes
+	 */
+	static Set<String> update(final String expression, final Map<String, String> names,
+			final Map<String, AttributeValue> values, final Map<String, AttributeValue> item) {
+		final InMemoryExpression parser = new InMemoryExpression(expression, names, values);
+		// All operands see the item as it was before the update
+		final Map<String, AttributeValue> before = new HashMap<>(item);
+		final Set<String> updated = new HashSet<>();
+		while (!parser.atEnd()) {
+			if (parser.acceptKeyword("SET")) {
+				do {
+					final String name = parser.parseName();
+					parser.expect("=");
+					final Operand operand = parser.parseValue();
+					final AttributeValue value = operand.evaluate(before);
+					if (value == null)
+						throw validation("The provided expression refers to an attribute that does not exist");
+					item.put(name, value);
+					updated.add(name);
+				} while (parser.accept(","));
+			} else if (parser.acceptKeyword("REMOVE")) {
+				do {
+					final String name = parser.parseName();
+					item.remove(name);
+					updated.add(name);
+				} while (parser.accept(","));
+			} else if (parser.acceptKeyword("ADD")) {
+				do {
+					final String name = parser.parseName();
+					final AttributeValue value = parser.parseOperand().evaluate(before);
+					if (value == null || value.getN() == null)
+						throw validation("Only numeric ADD is supported by the in-memory stand-in");
+					final AttributeValue current = before.get(name);
+					item.put(name, current == null ? value : add(current, value, false));
+					updated.add(name);
+				} while (parser.accept(","));
+			} else {
+				throw parser.syntaxError();
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * Compare two values for equality, numbers by their numeric value
+	 * 
+	 * @param a
+	 *            First value, may be null
+	 * @param b
+	 *            Second value, may be null
+	 * @return true if both are present and equal
+	 */
+	static boolean equal(final AttributeValue a, final AttributeValue b) {
+		if (a == null || b == null) {
+			return false;
+		}
+		if (a.getN() != null && b.getN() != null) {
+			return new BigDecimal(a.getN()).compareTo(new BigDecimal(b.getN())) == 0;
+		}
+		return a.equals(b);
+	}
+
+	/**
+	 * Order two scalar values of the same type, as DynamoDB orders keys
+	 * 
+	 * @param a
+	 *            First value
+	 * @param b
+	 *            Second value
+	 * @return Comparison result
+	 * @throws IllegalArgumentException
+	 *             if the values are not of the same scalar type
+	 */
+	static int compare(final AttributeValue a, final AttributeValue b) {
+		if (a.getS() != null && b.getS() != null) {
+			return compareBytes(ByteBuffer.wrap(a.getS().getBytes(StandardCharsets.UTF_8)),
+					ByteBuffer.wrap(b.getS().getBytes(StandardCharsets.UTF_8)));
+		}
+		if (a.getN() != null && b.getN() != null) {
+			return new BigDecimal(a.getN()).compareTo(new BigDecimal(b.getN()));
+		}
+		if (a.getB() != null && b.getB() != null) {
+			return compareBytes(a.getB().duplicate(), b.getB().duplicate());
+		}
+		throw new IllegalArgumentException("Values are not comparable: " + a + ", " + b);
+	}
+
+	/**
+	 * Check whether a value begins with a prefix of the same type
+	 * 
+	 * @param value
+	 *            Value, may be null
+	 * @param prefix
+	 *            Prefix, may be null
+	 * @return true if both are strings or both are binary, and the value begins with the prefix
+	 */
+	static boolean beginsWith(final AttributeValue value, final AttributeValue prefix) {
+		if (value == null || prefix == null) {
+			return false;
+		}
+		if (value.getS() != null && prefix.getS() != null) {
+			return value.getS().startsWith(prefix.getS());
+		}
+		if (value.getB() != null && prefix.getB() != null) {
+			final ByteBuffer bytes = value.getB().duplicate();
+			final ByteBuffer start = prefix.getB().duplicate();
+			if (bytes.remaining() < start.remaining()) {
+				return false;
+			}
+			bytes.limit(bytes.position() + start.remaining());
+			return bytes.equals(start);
+		}
+		return false;
+	}
+
+	static AmazonServiceException validation(final String message) {
+		final AmazonServiceException e = new AmazonServiceException(message);
+		e.setErrorCode("ValidationException");
+		e.setStatusCode(400);
+		e.setServiceName("AmazonDynamoDBv2");
+		return e;
+	}
+
+	private static int compareBytes(final ByteBuffer a, final ByteBuffer b) {
+		while (a.hasRemaining() && b.hasRemaining()) {
+			final int diff = (a.get() & 0xff) - (b.get() & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return a.remaining() - b.remaining();
+	}
+
+	static boolean comparable(final AttributeValue a, final AttributeValue b) {
+		return a != null && b != null && (a.getS() != null && b.getS() != null || a.getN() != null && b.getN() != null
+				|| a.getB() != null && b.getB() != null);
+	}
+
+	private static AttributeValue add(final AttributeValue a, final AttributeValue b, final boolean subtract) {
+		if (a == null || b == null || a.getN() == null || b.getN() == null)
+			throw validation("An operand in the update expression has an incorrect data type");
+		final BigDecimal left = new BigDecimal(a.getN());
+		final BigDecimal right = new BigDecimal(b.getN());
+		final BigDecimal result = subtract ? left.subtract(right) : left.add(right);
+		return new AttributeValue().withN(result.stripTrailingZeros().toPlainString());
+	}
+
+	private final String expression;
+	private final List<String> tokens;
+	private final Map<String, String> names;
+	private final Map<String, AttributeValue> values;
+	private int position;
+
+	private InMemoryExpression(final String expression, final Map<String, String> names,
+			final Map<String, AttributeValue> values) {
+		this.expression = expression;
+		this.tokens = tokenize(expression);
+		this.names = names == null ? Collections.<String, String> emptyMap() : names;
+		this.values = values == null ? Collections.<String, AttributeValue> emptyMap() : values;
+	}
+
+	private Condition parseOr() {
+		Condition condition = parseAnd();
+		while (acceptKeyword("OR")) {
+			final Condition left = condition;
+			final Condition right = parseAnd();
+			condition = item -> left.test(item) || right.test(item);
+		}
+		return condition;
+	}
+
+	private Condition parseAnd() {
+		Condition condition = parseNot();
+		while (acceptKeyword("AND")) {
+			final Condition left = condition;
+			final Condition right = parseNot();
+			condition = item -> left.test(item) && right.test(item);
+		}
+		return condition;
+	}
+
+	private Condition parseNot() {
+		if (acceptKeyword("NOT")) {
+			final Condition negated = parseNot();
+			return item -> !negated.test(item);
+		}
+		return parsePrimary();
+	}
+
+	private Condition parsePrimary() {
+		if (accept("(")) {
+			final Condition condition = parseOr();
+			expect(")");
+			return condition;
+		}
+		if (acceptKeyword("attribute_exists")) {
+			final String name = parseArgument();
+			return item -> item.containsKey(name);
+		}
+		if (acceptKeyword("attribute_not_exists")) {
+			final String name = parseArgument();
+			return item -> !item.containsKey(name);
+		}
+		if (acceptKeyword("begins_with")) {
+			expect("(");
+			final Operand value = parseOperand();
+			expect(",");
+			final Operand prefix = parseOperand();
+			expect(")");
+			return item -> beginsWith(value.evaluate(item), prefix.evaluate(item));
+		}
+
+		final Operand left = parseOperand();
+		if (acceptKeyword("BETWEEN")) {
+			final Operand low = parseOperand();
+			if (!acceptKeyword("AND"))
+				throw syntaxError();
+			final Operand high = parseOperand();
+			return item -> {
+				final AttributeValue value = left.evaluate(item);
+				final AttributeValue from = low.evaluate(item);
+				final AttributeValue to = high.evaluate(item);
+				return comparable(value, from) && comparable(value, to) && compare(value, from) >= 0
+						&& compare(value, to) <= 0;
+			};
+		}
+		final String comparator = next();
+		final Operand right = parseOperand();
+		switch (comparator) {
+		case "=":
+			return item -> equal(left.evaluate(item), right.evaluate(item));
+		case "<>":
+			return item -> {
+				final AttributeValue a = left.evaluate(item);
+				final AttributeValue b = right.evaluate(item);
+				return a != null && b != null && !equal(a, b);
+			};
+		case "<":
+			return item -> ordered(left.evaluate(item), right.evaluate(item), c -> c < 0);
+		case "<=":
+			return item -> ordered(left.evaluate(item), right.evaluate(item), c -> c <= 0);
+		case ">":
+			return item -> ordered(left.evaluate(item), right.evaluate(item), c -> c > 0);
+		case ">=":
+			return item -> ordered(left.evaluate(item), right.evaluate(item), c -> c >= 0);
+		default:
+			throw syntaxError();
+		}
+	}
+
+	private static boolean ordered(final AttributeValue a, final AttributeValue b,
+			final IntPredicate accept) {
+		return comparable(a, b) && accept.test(compare(a, b));
+	}
+
+	private Operand parseValue() {
+		final Operand left = parseOperand();
+		if (accept("+")) {
+			final Operand right = parseOperand();
+			return item -> add(left.evaluate(item), right.evaluate(item), false);
+		}
+		if (accept("-")) {
+			final Operand right = parseOperand();
+			return item -> add(left.evaluate(item), right.evaluate(item), true);
+		}
+		return left;
+	}
+
+	private Operand parseOperand() {
+		if (acceptKeyword("if_not_exists")) {
+			expect("(");
+			final String name = parseName();
+			expect(",");
+			final Operand fallback = parseValue();
+			expect(")");
+			return item -> item.containsKey(name) ? item.get(name) : fallback.evaluate(item);
+		}
+		final String token = peek();
+		if (token != null && token.startsWith(":")) {
+			position++;
+			final AttributeValue value = values.get(token);
+			if (value == null)
+				throw validation("Value provided in ExpressionAttributeValues unused or undefined: " + token);
+			return item -> value;
+		}
+		final String name = parseName();
+		return item -> item.get(name);
+	}
+
+	private String parseArgument() {
+		expect("(");
+		final String name = parseName();
+		expect(")");
+		return name;
+	}
+
+	private String parseName() {
+		final String token = next();
+		if (token.startsWith("#")) {
+			final String name = names.get(token);
+			if (name == null)
+				throw validation("An expression attribute name used in the document path is not defined: " + token);
+			return name;
+		}
+		if (!Character.isLetter(token.charAt(0)) && token.charAt(0) != '_')
+			throw syntaxError();
+		return token;
+	}
+
+	private boolean atEnd() {
+		return position >= tokens.size();
+	}
+
+	private String peek() {
+		return atEnd() ? null : tokens.get(position);
+	}
+
+	private String next() {
+		if (atEnd())
+			throw syntaxError();
+		return tokens.get(position++);
+	}
+
+	private boolean accept(final String token) {
+		if (token.equals(peek())) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean acceptKeyword(final String keyword) {
+		if (keyword.equalsIgnoreCase(peek())) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(final String token) {
+		if (!accept(token))
+			throw syntaxError();
+	}
+
+	private void expectEnd() {
+		if (!atEnd())
+			throw syntaxError();
+	}
+
+	private AmazonServiceException syntaxError() {
+		return validation("Invalid expression: syntax error near token " + position + " of \"" + expression + "\"");
+	}
+
+	private static List<String> tokenize(final String expression) {
+		final List<String> tokens = new ArrayList<>();
+		int i = 0;
+		while (i < expression.length()) {
+			final char c = expression.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '#' || c == ':' || Character.isLetterOrDigit(c) || c == '_') {
+				int end = i + 1;
+				while (end < expression.length()
+						&& (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_')) {
+					end++;
+				}
+				tokens.add(expression.substring(i, end));
+				i = end;
+			} else if ((c == '<' || c == '>') && i + 1 < expression.length()
+					&& (expression.charAt(i + 1) == '=' || c == '<' && expression.charAt(i + 1) == '>')) {
+				tokens.add(expression.substring(i, i + 2));
+				i += 2;
+			} else if ("()=<>,+-".indexOf(c) >= 0) {
+				tokens.add(String.valueOf(c));
+				i++;
+			} else {
+				throw validation("Invalid expression: unexpected character '" + c + "' in \"" + expression + "\"");
+			}
+		}
+		return tokens;
+	}
+}